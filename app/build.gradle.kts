@@ -27,6 +27,11 @@ kotlin {
     jvmToolchain(17)
 }
 
+// Room writes one JSON schema per database version here; MigrationTestHelper reads them back.
+ksp {
+    arg("room.schemaLocation", "$projectDir/schemas")
+}
+
 android {
     namespace = "com.example.myappnew" // 确保这里的包名和您项目的一致
     compileSdk = 34
@@ -81,6 +86,9 @@ android {
             // buildConfigField("String", "GEMINI_API_KEY", "\"$geminiApiKeyDebug\"")
         }
     }
+    sourceSets {
+        getByName("androidTest").assets.srcDir("$projectDir/schemas")
+    }
     compileOptions {
     }
     kotlinOptions {
@@ -99,13 +107,18 @@ dependencies {
     implementation(libs.androidx.room.runtime)
     implementation(libs.androidx.room.ktx)
     ksp(libs.androidx.room.compiler)
+    androidTestImplementation(libs.androidx.room.testing)
     implementation(libs.okhttp)
     implementation(libs.okhttp.logging.interceptor)
+    implementation(libs.okhttp.sse)
+    testImplementation(libs.okhttp.mockwebserver)
      implementation(libs.retrofit)
     implementation(libs.retrofit.converter.gson)
     implementation(libs.retrofit.mock)
     // implementation(libs.openai.kotlin.client) // Commented out as we are using Gemini
     implementation(libs.google.ai.client)
     implementation(libs.guava) // Added Guava dependency
+    implementation(libs.androidx.paging.runtime)
+    implementation(libs.androidx.paging.guava)
 
 }
@@ -0,0 +1,136 @@
+package com.example.myappnew.data;
+
+import android.database.Cursor;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs every migration in {@link DatabaseMigrations} from the oldest shipped schema (v1) to the
+ * latest and lets {@link MigrationTestHelper} validate the result against Room's exported schema.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppDatabaseMigrationTest {
+
+    private static final String TEST_DB = "migration-test";
+    private static final int LATEST_VERSION = 8;
+
+    /** Rows in the synthetic "heavy journaler" database. */
+    private static final int LARGE_ROW_COUNT = 20_000;
+    /** Migrations run on the first launch after an update, before any screen shows data. */
+    private static final long LARGE_MIGRATION_BUDGET_MS = 5_000;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    @Test
+    public void migrateFromV1_keepsEntriesAndIndexesThem() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1)) {
+            insertV1Entry(db, 1, "今天心情很好，去公园散步了", 1_000L);
+            insertV1Entry(db, 2, "A quiet evening with tea", 2_000L);
+        }
+
+        SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, LATEST_VERSION, true, DatabaseMigrations.ALL);
+
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM journal_entries"));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = 'index_journal_entries_timestamp'"));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM llm_cache"));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM llm_usage_daily"));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM journal_summaries"));
+        // Pre-existing rows must be searchable, not just rows inserted after the migration.
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM journal_fts WHERE journal_fts MATCH 'tea'"));
+        db.close();
+    }
+
+    @Test
+    public void migrateFromV1_deduplicatesProfileJson() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1)) {
+            insertV1Entry(db, 1, "one", 1_000L, "{\"mood\": \"calm\"}");
+            insertV1Entry(db, 2, "two", 2_000L, "{\"mood\":\"calm\"}");
+            insertV1Entry(db, 3, "three", 3_000L, "{\"mood\":\"anxious\"}");
+            insertV1Entry(db, 4, "four", 4_000L, null);
+        }
+
+        SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, LATEST_VERSION, true, DatabaseMigrations.ALL);
+
+        // Formatting differences collapse into one canonical snapshot.
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM profile_snapshots"));
+        assertEquals(1, count(db, "SELECT COUNT(DISTINCT profileHash) FROM journal_entries WHERE id IN (1, 2)"));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM journal_entries WHERE profileHash IS NULL"));
+        // Rebuilding journal_entries must keep the FTS sync triggers working.
+        db.execSQL("UPDATE journal_entries SET content = 'rewritten' WHERE id = 4");
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM journal_fts WHERE journal_fts MATCH 'rewritten'"));
+        db.close();
+    }
+
+    @Test
+    public void migrateFromV1_movesMediaUrisIntoAttachments() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1)) {
+            insertV1Entry(db, 1, "photo and voice", 1_000L);
+            insertV1Entry(db, 2, "text only", 2_000L);
+            db.execSQL("UPDATE journal_entries SET imageUri = 'content://media/1', audioUri = 'content://media/2' WHERE id = 1");
+            db.execSQL("UPDATE journal_entries SET videoUri = '' WHERE id = 2");
+        }
+
+        SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, LATEST_VERSION, true, DatabaseMigrations.ALL);
+
+        assertEquals(2, count(db, "SELECT COUNT(*) FROM attachments WHERE entryId = 1"));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM attachments WHERE entryId = 1 AND kind = 'image' AND uri = 'content://media/1'"));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM attachments WHERE entryId = 2"));
+        // Attachments go away with their entry.
+        db.execSQL("PRAGMA foreign_keys = ON");
+        db.execSQL("DELETE FROM journal_entries WHERE id = 1");
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM attachments"));
+        db.close();
+    }
+
+    @Test
+    public void migrateFromV1_largeDatabaseFinishesWithinBudget() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1)) {
+            db.beginTransaction();
+            try {
+                for (int i = 1; i <= LARGE_ROW_COUNT; i++) {
+                    insertV1Entry(db, i, "Synthetic entry " + i + " 日记内容 " + (i % 97), i * 60_000L);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        long start = System.nanoTime();
+        SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, LATEST_VERSION, true, DatabaseMigrations.ALL);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(LARGE_ROW_COUNT, count(db, "SELECT COUNT(*) FROM journal_entries"));
+        assertTrue("Migration took " + elapsedMs + " ms", elapsedMs < LARGE_MIGRATION_BUDGET_MS);
+        db.close();
+    }
+
+    private static void insertV1Entry(SupportSQLiteDatabase db, int id, String content, long timestamp) {
+        insertV1Entry(db, id, content, timestamp, null);
+    }
+
+    private static void insertV1Entry(SupportSQLiteDatabase db, int id, String content, long timestamp, String profileJson) {
+        db.execSQL("INSERT INTO journal_entries (id, content, timestamp, userProfileJson) VALUES (?, ?, ?, ?)",
+                new Object[]{id, content, timestamp, profileJson});
+    }
+
+    private static int count(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.myappnew.services.media;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.net.Uri;
+import android.os.Debug;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the old encode path (full-resolution decode, ByteArrayOutputStream, toByteArray,
+ * Base64.encodeToString) with {@link ImageEncoder} on a synthetic 12 MP camera-sized JPEG.
+ * Peak memory is sampled from a background thread (Java heap plus native heap, where bitmap
+ * pixels live on API 26+). Results are logged under the tag "ImageEncoderBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageEncoderBenchmark {
+
+    private static final String TAG = "ImageEncoderBenchmark";
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+    private static final int RUNS = 5;
+
+    private static File source;
+    private static Uri sourceUri;
+
+    @BeforeClass
+    public static void writeSourceImage() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        source = new File(context.getCacheDir(), "benchmark-12mp.jpg");
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint();
+        paint.setShader(new LinearGradient(0, 0, WIDTH, HEIGHT, 0xFF3366CC, 0xFFFFCC33, Shader.TileMode.MIRROR));
+        new Canvas(bitmap).drawRect(0, 0, WIDTH, HEIGHT, paint);
+        try (OutputStream out = new FileOutputStream(source)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
+        }
+        bitmap.recycle();
+        sourceUri = Uri.fromFile(source);
+    }
+
+    @AfterClass
+    public static void deleteSourceImage() {
+        source.delete();
+    }
+
+    @Test
+    public void downsampledPath_usesLessMemoryAndTime() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ImageEncoder encoder = new ImageEncoder(context);
+
+        // Warm up both paths so class loading and JIT do not count against the first one measured.
+        legacyEncode(context, sourceUri);
+        encoder.encodeBase64(sourceUri);
+
+        Measurement legacy = measure(() -> legacyEncode(context, sourceUri));
+        Measurement streamed = measure(() -> encoder.encodeBase64(sourceUri));
+
+        Log.i(TAG, "legacy:   " + legacy);
+        Log.i(TAG, "streamed: " + streamed);
+        assertTrue("peak " + streamed.peakBytes + " vs " + legacy.peakBytes, streamed.peakBytes < legacy.peakBytes / 2);
+        assertTrue("latency " + streamed.medianMs + " vs " + legacy.medianMs, streamed.medianMs < legacy.medianMs);
+    }
+
+    @Test
+    public void decodeScaled_respectsMaxDimensionAndAspectRatio() throws IOException {
+        ImageEncoder encoder = new ImageEncoder(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        Bitmap bitmap = encoder.decodeScaled(sourceUri, 1024);
+        assertEquals(1024, bitmap.getWidth());
+        assertEquals(768, bitmap.getHeight());
+        bitmap.recycle();
+    }
+
+    /** The pre-ImageEncoder implementation from ImageAnalysisService, kept here as the baseline. */
+    private static String legacyEncode(Context context, Uri uri) throws IOException {
+        Bitmap bitmap;
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            bitmap = BitmapFactory.decodeStream(in);
+        }
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 70, byteArrayOutputStream);
+        byte[] byteArray = byteArrayOutputStream.toByteArray();
+        return Base64.encodeToString(byteArray, Base64.DEFAULT);
+    }
+
+    private static Measurement measure(Encode encode) throws Exception {
+        long[] times = new long[RUNS];
+        long peak = 0;
+        for (int i = 0; i < RUNS; i++) {
+            Runtime.getRuntime().gc();
+            long baseline = usedBytes();
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicLong maxUsed = new AtomicLong(baseline);
+            Thread sampler = new Thread(() -> {
+                while (running.get()) {
+                    long used = usedBytes();
+                    if (used > maxUsed.get()) {
+                        maxUsed.set(used);
+                    }
+                }
+            });
+            sampler.start();
+            long start = System.nanoTime();
+            String result = encode.run();
+            times[i] = (System.nanoTime() - start) / 1_000_000;
+            running.set(false);
+            sampler.join();
+            assertNotNull(result);
+            peak = Math.max(peak, maxUsed.get() - baseline);
+        }
+        Arrays.sort(times);
+        return new Measurement(times[RUNS / 2], peak);
+    }
+
+    private static long usedBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+
+    private interface Encode {
+        String run() throws Exception;
+    }
+
+    private static final class Measurement {
+        final long medianMs;
+        final long peakBytes;
+
+        Measurement(long medianMs, long peakBytes) {
+            this.medianMs = medianMs;
+            this.peakBytes = peakBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "median " + medianMs + " ms, peak +" + (peakBytes / 1024) + " KB";
+        }
+    }
+}
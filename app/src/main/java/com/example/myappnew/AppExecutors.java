@@ -0,0 +1,129 @@
+package com.example.myappnew;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * App-scoped executor registry. Fragments and services submit background work here instead of
+ * creating their own threads, so thread count stays bounded and nothing leaks across navigation.
+ *
+ * <ul>
+ *     <li>{@link #diskRead()}: bounded pool for database queries. Room uses it as its query executor,
+ *     and with WAL enabled these readers run concurrently with the writer.</li>
+ *     <li>{@link #diskWrite()}: a single thread, so all database writes are serialized in submission
+ *     order and never contend for SQLite's write lock.</li>
+ *     <li>{@link #mediaIo()}: small pool for reading, hashing and decoding media files, kept apart
+ *     from the database pools so a large video never delays a query.</li>
+ *     <li>{@link #bulkIo()}: a single low-priority thread for whole-journal import and export. Each
+ *     import batch is its own short transaction, so writes queued on {@link #diskWrite()} and
+ *     queries on {@link #diskRead()} interleave with a long job instead of waiting behind it.</li>
+ *     <li>{@link #llmCallback()}: a single thread on which LLM clients deliver results and streamed
+ *     chunks, so chunks of one reply arrive in order. Listeners must only hand work off from it.</li>
+ *     <li>{@link #mainThread()}: posts to the UI thread.</li>
+ * </ul>
+ *
+ * The pools live for the whole process and are never shut down by callers.
+ */
+public final class AppExecutors {
+
+    private static final int READ_POOL_SIZE =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static volatile AppExecutors INSTANCE;
+
+    private final ExecutorService diskRead;
+    private final ExecutorService diskWrite;
+    private final ExecutorService mediaIo;
+    private final ExecutorService bulkIo;
+    private final ExecutorService llmCallback;
+    private final Executor mainThread;
+
+    private AppExecutors() {
+        ThreadPoolExecutor readPool = new ThreadPoolExecutor(
+                READ_POOL_SIZE, READ_POOL_SIZE, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("db-read"));
+        readPool.allowCoreThreadTimeOut(true);
+        this.diskRead = readPool;
+        this.diskWrite = new ThreadPoolExecutor(
+                1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("db-write"));
+        ThreadPoolExecutor mediaPool = new ThreadPoolExecutor(
+                2, 2, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("media-io"));
+        mediaPool.allowCoreThreadTimeOut(true);
+        this.mediaIo = mediaPool;
+        ThreadPoolExecutor bulkPool = new ThreadPoolExecutor(
+                1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("bulk-io", Thread.MIN_PRIORITY));
+        bulkPool.allowCoreThreadTimeOut(true);
+        this.bulkIo = bulkPool;
+        ThreadPoolExecutor llmPool = new ThreadPoolExecutor(
+                1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("llm-callback"));
+        llmPool.allowCoreThreadTimeOut(true);
+        this.llmCallback = llmPool;
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        this.mainThread = mainHandler::post;
+    }
+
+    public static AppExecutors getInstance() {
+        if (INSTANCE == null) {
+            synchronized (AppExecutors.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AppExecutors();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public ExecutorService diskRead() {
+        return diskRead;
+    }
+
+    public ExecutorService diskWrite() {
+        return diskWrite;
+    }
+
+    public ExecutorService mediaIo() {
+        return mediaIo;
+    }
+
+    public ExecutorService bulkIo() {
+        return bulkIo;
+    }
+
+    public ExecutorService llmCallback() {
+        return llmCallback;
+    }
+
+    public Executor mainThread() {
+        return mainThread;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        return namedThreads(prefix, Thread.NORM_PRIORITY - 1);
+    }
+
+    private static ThreadFactory namedThreads(String prefix, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+                thread.setPriority(priority);
+                return thread;
+            }
+        };
+    }
+}
@@ -5,6 +5,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.navigation.NavController;
 import androidx.navigation.fragment.NavHostFragment;
 import androidx.navigation.ui.NavigationUI;
+import com.example.myappnew.services.journal.JournalSummarizer;
+import com.example.myappnew.services.llm.LlmServiceProvider;
 import com.example.myappnew.ui.settings.SettingsFragment;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
@@ -22,7 +24,8 @@ import com.google.android.material.bottomnavigation.BottomNavigationView;
  * <ul>
  *     <li><strong>Database Access (Room):</strong>
  *         <ul>
- *             <li>Write operations (inserts, updates, deletes) in <code>JournalFragment</code> are performed on a background thread using an <code>ExecutorService</code>.</li>
+ *             <li>Write operations (inserts, updates, deletes, imports) go through the single serialized writer in <code>AppExecutors.diskWrite()</code>; searches and exports use the bounded <code>diskRead()</code> pool.</li>
+ *             <li><code>AppDatabase</code> runs in WAL mode with Room's query/transaction executors set to the same pools.</li>
  *             <li>Read operations (queries returning <code>LiveData</code>) are inherently asynchronous and update UI observers on the main thread.</li>
  *         </ul>
  *     </li>
@@ -96,5 +99,13 @@ public class MainActivity extends AppCompatActivity {
             NavController navController = navHostFragment.getNavController();
             NavigationUI.setupWithNavController(bottomNavView, navController);
         }
+
+        if (savedInstanceState == null) {
+            // Cold start only: set up the LLM client and its connection while the user is still
+            // looking at the first screen.
+            LlmServiceProvider.getInstance(this).warmUp();
+            // Catch up on journal summaries for days that ended since the last launch.
+            JournalSummarizer.getInstance(this).requestUpdate();
+        }
     }
 }
\ No newline at end of file
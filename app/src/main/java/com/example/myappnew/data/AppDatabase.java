@@ -5,20 +5,39 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 
-@Database(entities = {JournalEntry.class}, version = 1, exportSchema = false)
+import com.example.myappnew.AppExecutors;
+
+@Database(entities = {JournalEntry.class, JournalFts.class, ProfileSnapshot.class, Attachment.class,
+        LlmCacheEntry.class, LlmUsageDay.class, JournalSummary.class},
+        version = 8, exportSchema = true)
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract JournalDao journalDao();
 
+    public abstract ProfileSnapshotDao profileSnapshotDao();
+
+    public abstract AttachmentDao attachmentDao();
+
+    public abstract LlmCacheDao llmCacheDao();
+
+    public abstract LlmUsageDao llmUsageDao();
+
+    public abstract JournalSummaryDao journalSummaryDao();
+
     private static volatile AppDatabase INSTANCE;
 
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
+                    AppExecutors executors = AppExecutors.getInstance();
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                             AppDatabase.class, "app_database")
-                            .fallbackToDestructiveMigration()
+                            .addMigrations(DatabaseMigrations.ALL)
+                            // WAL lets list/search reads proceed while an import or insert is writing.
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                            .setQueryExecutor(executors.diskRead())
+                            .setTransactionExecutor(executors.diskWrite())
                             .build();
                 }
             }
@@ -0,0 +1,63 @@
+package com.example.myappnew.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A media file attached to a journal entry, with metadata probed once at capture time so that
+ * list and detail screens never have to reopen the file through the ContentResolver.
+ * An entry can have any number of attachments; they are deleted together with the entry.
+ */
+@Entity(tableName = "attachments",
+        indices = {@Index(value = "entryId")},
+        foreignKeys = @ForeignKey(entity = JournalEntry.class, parentColumns = "id", childColumns = "entryId",
+                onDelete = ForeignKey.CASCADE))
+public class Attachment {
+    public static final String KIND_IMAGE = "image";
+    public static final String KIND_AUDIO = "audio";
+    public static final String KIND_VIDEO = "video";
+
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    public int entryId;
+
+    /** One of {@link #KIND_IMAGE}, {@link #KIND_AUDIO}, {@link #KIND_VIDEO}. */
+    @NonNull
+    public String kind = KIND_IMAGE;
+
+    @NonNull
+    public String uri = "";
+
+    public String mimeType;
+
+    /** 0 when unknown (e.g. rows migrated from the old single-URI columns and not yet probed). */
+    public long byteSize;
+    public int width;
+    public int height;
+    public long durationMs;
+
+    /** SHA-256 (hex) of the file bytes; null until probed. */
+    public String contentHash;
+
+    /** Absolute path of a small JPEG preview in app storage, or null. */
+    public String thumbnailPath;
+
+    public long createdAt;
+
+    public Attachment() {}
+
+    public Attachment(int entryId, @NonNull String kind, @NonNull String uri) {
+        this.entryId = entryId;
+        this.kind = kind;
+        this.uri = uri;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public boolean isProbed() {
+        return contentHash != null;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.myappnew.data;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Update;
+
+import java.util.List;
+
+@Dao
+public interface AttachmentDao {
+    @Insert
+    long insert(Attachment attachment);
+
+    @Insert
+    void insertAll(List<Attachment> attachments);
+
+    @Update
+    void update(Attachment attachment);
+
+    @Query("SELECT * FROM attachments WHERE entryId = :entryId ORDER BY id")
+    LiveData<List<Attachment>> getForEntry(int entryId);
+
+    @Query("SELECT * FROM attachments WHERE entryId = :entryId ORDER BY id")
+    List<Attachment> getForEntrySync(int entryId);
+}
@@ -0,0 +1,182 @@
+package com.example.myappnew.data;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Schema migrations for {@link AppDatabase}. Every schema change must add a step here instead of
+ * relying on destructive fallback, which would wipe the user's journal.
+ *
+ * The SQL mirrors what Room generates for the entities (see the exported JSON under
+ * <code>app/schemas/</code>); <code>AppDatabaseMigrationTest</code> validates each step against it.
+ */
+public final class DatabaseMigrations {
+
+    private DatabaseMigrations() {}
+
+    /** v2: index on journal_entries.timestamp for the keyset-paged list. */
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_journal_entries_timestamp` ON `journal_entries` (`timestamp`)");
+        }
+    };
+
+    /** v3: external-content FTS4 index over journal_entries.content, plus Room's sync triggers. */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `journal_fts` USING FTS4("
+                    + "`content` TEXT, tokenize=icu, content=`journal_entries`)");
+            createJournalFtsTriggers(db);
+            // Index the rows that existed before the triggers did.
+            db.execSQL("INSERT INTO `journal_fts`(`journal_fts`) VALUES ('rebuild')");
+        }
+    };
+
+    /**
+     * v4: userProfileJson moves into the content-addressed profile_snapshots table and entries keep
+     * only profileHash. SQLite cannot drop a column on older devices, so journal_entries is rebuilt.
+     */
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `profile_snapshots` (`hash` TEXT NOT NULL, `json` TEXT NOT NULL, "
+                    + "`createdAt` INTEGER NOT NULL, PRIMARY KEY(`hash`))");
+
+            // Hashing happens in Java; the temp table maps each distinct JSON string to its snapshot.
+            db.execSQL("CREATE TEMP TABLE `profile_map` (`json` TEXT PRIMARY KEY NOT NULL, `hash` TEXT NOT NULL)");
+            long now = System.currentTimeMillis();
+            try (Cursor cursor = db.query("SELECT DISTINCT userProfileJson FROM journal_entries "
+                    + "WHERE userProfileJson IS NOT NULL AND userProfileJson != ''")) {
+                while (cursor.moveToNext()) {
+                    String original = cursor.getString(0);
+                    String canonical = ProfileSnapshot.canonicalize(original);
+                    String hash = ProfileSnapshot.hashOf(canonical);
+                    db.execSQL("INSERT OR IGNORE INTO profile_snapshots (hash, json, createdAt) VALUES (?, ?, ?)",
+                            new Object[]{hash, canonical, now});
+                    db.execSQL("INSERT OR IGNORE INTO temp.profile_map (json, hash) VALUES (?, ?)",
+                            new Object[]{original, hash});
+                }
+            }
+
+            db.execSQL("CREATE TABLE IF NOT EXISTS `journal_entries_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`content` TEXT, `timestamp` INTEGER NOT NULL, `imageUri` TEXT, `audioUri` TEXT, `videoUri` TEXT, "
+                    + "`profileHash` TEXT, FOREIGN KEY(`profileHash`) REFERENCES `profile_snapshots`(`hash`) "
+                    + "ON UPDATE NO ACTION ON DELETE NO ACTION )");
+            db.execSQL("INSERT INTO journal_entries_new (id, content, timestamp, imageUri, audioUri, videoUri, profileHash) "
+                    + "SELECT e.id, e.content, e.timestamp, e.imageUri, e.audioUri, e.videoUri, m.hash "
+                    + "FROM journal_entries e LEFT JOIN temp.profile_map m ON m.json = e.userProfileJson");
+            db.execSQL("DROP TABLE temp.profile_map");
+            // Dropping the old table also drops its index and the FTS sync triggers; rowids are kept,
+            // so the external-content FTS index stays valid and only the triggers need recreating.
+            db.execSQL("DROP TABLE journal_entries");
+            db.execSQL("ALTER TABLE journal_entries_new RENAME TO journal_entries");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_journal_entries_timestamp` ON `journal_entries` (`timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_journal_entries_profileHash` ON `journal_entries` (`profileHash`)");
+            createJournalFtsTriggers(db);
+        }
+    };
+
+    /**
+     * v5: one-to-many attachments table, which becomes the only place media is recorded. Existing
+     * image/audio/video URIs are copied in with unknown metadata (the detail screen probes them
+     * lazily the first time they are shown) and journal_entries is rebuilt without those columns.
+     */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            // The URIs are parked in a temp table first: attachments references journal_entries with
+            // ON DELETE CASCADE, so it can only be filled once the old table has been dropped.
+            db.execSQL("CREATE TEMP TABLE `legacy_media` AS SELECT id, timestamp, imageUri, audioUri, videoUri "
+                    + "FROM journal_entries WHERE (imageUri IS NOT NULL AND imageUri != '') "
+                    + "OR (audioUri IS NOT NULL AND audioUri != '') OR (videoUri IS NOT NULL AND videoUri != '')");
+
+            db.execSQL("CREATE TABLE IF NOT EXISTS `journal_entries_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`content` TEXT, `timestamp` INTEGER NOT NULL, `profileHash` TEXT, "
+                    + "FOREIGN KEY(`profileHash`) REFERENCES `profile_snapshots`(`hash`) "
+                    + "ON UPDATE NO ACTION ON DELETE NO ACTION )");
+            db.execSQL("INSERT INTO journal_entries_new (id, content, timestamp, profileHash) "
+                    + "SELECT id, content, timestamp, profileHash FROM journal_entries");
+            // As in MIGRATION_3_4: rowids are kept, so only the FTS sync triggers need recreating.
+            db.execSQL("DROP TABLE journal_entries");
+            db.execSQL("ALTER TABLE journal_entries_new RENAME TO journal_entries");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_journal_entries_timestamp` ON `journal_entries` (`timestamp`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_journal_entries_profileHash` ON `journal_entries` (`profileHash`)");
+            createJournalFtsTriggers(db);
+
+            db.execSQL("CREATE TABLE IF NOT EXISTS `attachments` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`entryId` INTEGER NOT NULL, `kind` TEXT NOT NULL, `uri` TEXT NOT NULL, `mimeType` TEXT, "
+                    + "`byteSize` INTEGER NOT NULL, `width` INTEGER NOT NULL, `height` INTEGER NOT NULL, "
+                    + "`durationMs` INTEGER NOT NULL, `contentHash` TEXT, `thumbnailPath` TEXT, `createdAt` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`entryId`) REFERENCES `journal_entries`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_attachments_entryId` ON `attachments` (`entryId`)");
+            backfillAttachments(db, "image", "imageUri");
+            backfillAttachments(db, "audio", "audioUri");
+            backfillAttachments(db, "video", "videoUri");
+            db.execSQL("DROP TABLE temp.legacy_media");
+        }
+    };
+
+    /** v6: persistent tier of the LLM response cache. */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `llm_cache` (`cacheKey` TEXT NOT NULL, `model` TEXT NOT NULL, "
+                    + "`responseText` TEXT NOT NULL, `createdAt` INTEGER NOT NULL, `lastAccessedAt` INTEGER NOT NULL, "
+                    + "`expiresAt` INTEGER NOT NULL, `sizeBytes` INTEGER NOT NULL, PRIMARY KEY(`cacheKey`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_llm_cache_lastAccessedAt` ON `llm_cache` (`lastAccessedAt`)");
+        }
+    };
+
+    /** v7: daily LLM token usage per model, for budgets. */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `llm_usage_daily` (`day` TEXT NOT NULL, `model` TEXT NOT NULL, "
+                    + "`requests` INTEGER NOT NULL, `promptTokens` INTEGER NOT NULL, `outputTokens` INTEGER NOT NULL, "
+                    + "`costMicros` INTEGER NOT NULL, PRIMARY KEY(`day`, `model`))");
+        }
+    };
+
+    /** v8: day, week and month summaries of the journal; built in the background, so it starts empty. */
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `journal_summaries` (`level` TEXT NOT NULL, `periodStart` TEXT NOT NULL, "
+                    + "`summary` TEXT NOT NULL, `sourceCount` INTEGER NOT NULL, `sourceVersion` TEXT NOT NULL, "
+                    + "`updatedAt` INTEGER NOT NULL, PRIMARY KEY(`level`, `periodStart`))");
+        }
+    };
+
+    public static final Migration[] ALL = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+    };
+
+    private static void backfillAttachments(SupportSQLiteDatabase db, String kind, String uriColumn) {
+        db.execSQL("INSERT INTO attachments (entryId, kind, uri, byteSize, width, height, durationMs, createdAt) "
+                + "SELECT id, '" + kind + "', " + uriColumn + ", 0, 0, 0, 0, timestamp FROM temp.legacy_media "
+                + "WHERE " + uriColumn + " IS NOT NULL AND " + uriColumn + " != ''");
+    }
+
+    /** Same triggers Room creates for {@code @Fts4(contentEntity = JournalEntry.class)}. */
+    static void createJournalFtsTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_journal_fts_BEFORE_UPDATE BEFORE UPDATE ON `journal_entries` "
+                + "BEGIN DELETE FROM `journal_fts` WHERE `docid`=OLD.`rowid`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_journal_fts_BEFORE_DELETE BEFORE DELETE ON `journal_entries` "
+                + "BEGIN DELETE FROM `journal_fts` WHERE `docid`=OLD.`rowid`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_journal_fts_AFTER_UPDATE AFTER UPDATE ON `journal_entries` "
+                + "BEGIN INSERT INTO `journal_fts`(`docid`, `content`) VALUES (NEW.`rowid`, NEW.`content`); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_journal_fts_AFTER_INSERT AFTER INSERT ON `journal_entries` "
+                + "BEGIN INSERT INTO `journal_fts`(`docid`, `content`) VALUES (NEW.`rowid`, NEW.`content`); END");
+    }
+}
@@ -3,11 +3,18 @@ package com.example.myappnew.data;
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
+import androidx.room.Upsert;
 import androidx.room.Delete;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object for JournalEntry entities.
@@ -17,7 +24,10 @@ import java.util.List;
  * <ul>
  *     <li>Use an in-memory Room database for hermetic testing (<code>Room.inMemoryDatabaseBuilder()</code>).</li>
  *     <li>Test basic CRUD operations: insert, update, delete, deleteAll.</li>
+ *     <li>Test <code>insertAll</code>/<code>upsertAll</code>/<code>importBatch</code> with entries that do and do not carry an existing id.</li>
  *     <li>Verify that queries (e.g., <code>getAllEntries</code>) return expected data after operations.</li>
+ *     <li>Verify the keyset page queries never skip or repeat rows when several entries share a timestamp.</li>
+ *     <li>Verify <code>search</code> finds Chinese words inside longer sentences and that updates/deletes keep the FTS index in sync.</li>
  *     <li>Test LiveData observation by ensuring observers are notified of data changes.</li>
  *     <li>Requires AndroidJUnit4 runner and Room testing artifacts.</li>
  * </ul>
@@ -26,7 +36,7 @@ import java.util.List;
 @Dao
 public interface JournalDao {
     @Insert
-    void insert(JournalEntry entry);
+    long insert(JournalEntry entry);
 
     @Update
     void update(JournalEntry entry);
@@ -37,6 +47,161 @@ public interface JournalDao {
     @Query("DELETE FROM journal_entries")
     void deleteAllEntries();
 
+    // --- Bulk writes. Each call is a single transaction (one fsync) instead of one per row. ---
+
+    /** Note: REPLACE deletes the old row first, which cascades to its attachments. Prefer upsertAll for edits. */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<JournalEntry> entries);
+
+    /** Inserts new rows (id == 0) and updates rows whose id already exists, without delete+insert churn. */
+    @Upsert
+    void upsertAll(List<JournalEntry> entries);
+
+    /**
+     * Writes one import chunk atomically. Importers call this once per fixed-size batch so a
+     * failure never leaves half a batch behind and readers are only blocked for one chunk.
+     */
+    @Transaction
+    default void importBatch(List<JournalEntry> batch) {
+        for (JournalEntry entry : batch) {
+            long rowId = upsert(entry);
+            if (entry.attachments == null) {
+                continue;
+            }
+            // Upsert reports -1 when it updated an existing row, whose id the entry already carries.
+            int entryId = rowId > 0 ? (int) rowId : entry.id;
+            // The record lists the entry's complete media, so re-importing an archive does not duplicate rows.
+            deleteAttachmentsFor(entryId);
+            for (Attachment attachment : entry.attachments) {
+                attachment.id = 0;
+                attachment.entryId = entryId;
+            }
+            insertAttachments(entry.attachments);
+        }
+    }
+
+    @Upsert
+    long upsert(JournalEntry entry);
+
+    // --- Attachments that travel with entries through import and export. ---
+
+    @Insert
+    void insertAttachments(List<Attachment> attachments);
+
+    @Query("DELETE FROM attachments WHERE entryId = :entryId")
+    void deleteAttachmentsFor(int entryId);
+
+    @Query("SELECT * FROM attachments WHERE entryId IN (:entryIds) ORDER BY entryId, id")
+    List<Attachment> getAttachmentsFor(List<Integer> entryIds);
+
     @Query("SELECT * FROM journal_entries ORDER BY timestamp DESC")
     LiveData<List<JournalEntry>> getAllEntries();
+
+    @Query("SELECT * FROM journal_entries WHERE id = :id")
+    LiveData<JournalEntry> getEntryById(int id);
+
+    // --- Keyset pagination over (timestamp, id), newest first. ---
+    // The timestamp index also carries the rowid (id), so these stay index range scans
+    // no matter how deep the user scrolls, unlike LIMIT/OFFSET.
+    // Pages return the JournalListItem projection: the snippet is truncated in SQL and media is
+    // reduced to flags and one thumbnail, each an indexed lookup on attachments.entryId.
+
+    String LIST_ITEM_COLUMNS = "id, substr(content, 1, " + JournalListItem.SNIPPET_LENGTH + ") AS snippet, timestamp, " +
+            "EXISTS (SELECT 1 FROM attachments a WHERE a.entryId = journal_entries.id AND a.kind = 'image') AS hasImage, " +
+            "EXISTS (SELECT 1 FROM attachments a WHERE a.entryId = journal_entries.id AND a.kind = 'audio') AS hasAudio, " +
+            "EXISTS (SELECT 1 FROM attachments a WHERE a.entryId = journal_entries.id AND a.kind = 'video') AS hasVideo, " +
+            "(SELECT CASE WHEN a.thumbnailPath IS NOT NULL THEN 'file://' || a.thumbnailPath ELSE a.uri END " +
+            "FROM attachments a WHERE a.entryId = journal_entries.id AND a.kind = 'image' ORDER BY a.id LIMIT 1) AS thumbnailUri";
+
+    @Query("SELECT " + LIST_ITEM_COLUMNS + " FROM journal_entries ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    List<JournalListItem> getNewestPage(int limit);
+
+    /** Entries at or older than the (timestamp, id) cursor. Used to refresh around an anchor. */
+    @Query("SELECT " + LIST_ITEM_COLUMNS + " FROM journal_entries " +
+            "WHERE timestamp <= :timestamp AND (timestamp < :timestamp OR id <= :id) " +
+            "ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    List<JournalListItem> getPageFrom(long timestamp, int id, int limit);
+
+    /** Entries strictly older than the (timestamp, id) cursor. */
+    @Query("SELECT " + LIST_ITEM_COLUMNS + " FROM journal_entries " +
+            "WHERE timestamp <= :timestamp AND (timestamp < :timestamp OR id < :id) " +
+            "ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    List<JournalListItem> getPageOlderThan(long timestamp, int id, int limit);
+
+    /** Entries strictly newer than the (timestamp, id) cursor, oldest first; callers reverse the result. */
+    @Query("SELECT " + LIST_ITEM_COLUMNS + " FROM journal_entries " +
+            "WHERE timestamp >= :timestamp AND (timestamp > :timestamp OR id > :id) " +
+            "ORDER BY timestamp ASC, id ASC LIMIT :limit")
+    List<JournalListItem> getPageNewerThan(long timestamp, int id, int limit);
+
+    // --- Full-row keyset scan for export: bounded pages of complete entities, newest first. ---
+
+    @Query("SELECT COUNT(*) FROM journal_entries")
+    int countEntries();
+
+    @Query("SELECT * FROM journal_entries " +
+            "WHERE timestamp <= :timestamp AND (timestamp < :timestamp OR id < :id) " +
+            "ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    List<JournalEntry> getEntriesOlderThan(long timestamp, int id, int limit);
+
+    // --- Full-text search over journal_fts (see JournalFts). ---
+
+    /**
+     * Every match with its BM25 inputs, no snippet. Android's SQLite has no FTS4 ranking function
+     * and no way to register one, so {@link #search} ranks these rows in Java: one pass over small
+     * rows, and older entries compete on equal terms with new ones.
+     */
+    @Query("SELECT journal_entries.id AS id, journal_entries.timestamp AS timestamp, NULL AS snippet, " +
+            "matchinfo(journal_fts, '" + JournalSearchResult.MATCHINFO_FORMAT + "') AS matchInfo " +
+            "FROM journal_fts JOIN journal_entries ON journal_entries.id = journal_fts.rowid " +
+            "WHERE journal_fts MATCH :matchQuery")
+    List<JournalSearchResult> searchMatches(String matchQuery);
+
+    /** Highlighted snippets for one page of ranked hits; callers restore the ranked order. */
+    @Query("SELECT journal_entries.id AS id, journal_entries.timestamp AS timestamp, " +
+            "snippet(journal_fts, char(2), char(3), '…', -1, 16) AS snippet, NULL AS matchInfo " +
+            "FROM journal_fts JOIN journal_entries ON journal_entries.id = journal_fts.rowid " +
+            "WHERE journal_fts MATCH :matchQuery AND journal_fts.rowid IN (:ids)")
+    List<JournalSearchResult> snippetsFor(String matchQuery, List<Integer> ids);
+
+    /** First page of {@link #search(String, int, int)}. */
+    default List<JournalSearchResult> search(String query, int limit) {
+        return search(query, 0, limit);
+    }
+
+    /**
+     * Searches journal content and returns hits {@code offset} to {@code offset + limit} of the
+     * whole match set, best BM25 score first and newer first among equal scores.
+     * {@code query} is raw user input; see {@link JournalSearchResult#toMatchQuery}.
+     * Must be called off the main thread.
+     */
+    default List<JournalSearchResult> search(String query, int offset, int limit) {
+        String matchQuery = JournalSearchResult.toMatchQuery(query);
+        if (matchQuery == null || limit <= 0 || offset < 0) {
+            return Collections.emptyList();
+        }
+        List<JournalSearchResult> matches = searchMatches(matchQuery);
+        if (offset >= matches.size()) {
+            return Collections.emptyList();
+        }
+        for (JournalSearchResult match : matches) {
+            match.rank = JournalSearchResult.score(match.matchInfo);
+            match.matchInfo = null;
+        }
+        Collections.sort(matches, JournalSearchResult.BEST_FIRST);
+        List<JournalSearchResult> page = matches.subList(offset, Math.min(matches.size(), offset + limit));
+        Map<Integer, JournalSearchResult> byId = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(page.size());
+        for (JournalSearchResult hit : page) {
+            byId.put(hit.id, hit);
+            ids.add(hit.id);
+        }
+        for (JournalSearchResult withSnippet : snippetsFor(matchQuery, ids)) {
+            JournalSearchResult hit = byId.get(withSnippet.id);
+            if (hit != null) {
+                hit.snippet = withSnippet.snippet;
+            }
+        }
+        return new ArrayList<>(page);
+    }
 }
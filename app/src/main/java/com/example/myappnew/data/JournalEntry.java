@@ -1,10 +1,17 @@
 package com.example.myappnew.data;
 
 import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import java.util.Date;
+import java.util.List;
 
-@Entity(tableName = "journal_entries")
+// timestamp 索引支撑按时间倒序的 keyset 分页；id 是 rowid 别名，已隐含在索引中
+@Entity(tableName = "journal_entries",
+        indices = {@Index(value = "timestamp"), @Index(value = "profileHash")},
+        foreignKeys = @ForeignKey(entity = ProfileSnapshot.class, parentColumns = "hash", childColumns = "profileHash"))
 public class JournalEntry {
     @PrimaryKey(autoGenerate = true)
     public int id;
@@ -12,12 +19,12 @@ public class JournalEntry {
     public String content;
     public long timestamp;
 
-    // 多模态内容字段
-    public String imageUri;    // 照片
-    public String audioUri;    // 语音
-    public String videoUri;    // 视频
-    // 用户画像字段（可扩展为JSON或单独表）
-    public String userProfileJson;
+    // 用户画像：只保存 profile_snapshots 的内容哈希，画像 JSON 去重存放（见 ProfileStore）
+    public String profileHash;
+
+    // 照片/语音/视频只存放在 attachments 表；此字段仅在导入导出时随条目携带附件，不是表中的列
+    @Ignore
+    public List<Attachment> attachments;
 
     public JournalEntry(String content) {
         this.content = content;
@@ -39,14 +46,8 @@ public class JournalEntry {
     public void setContent(String content) { this.content = content; }
     public long getTimestamp() { return timestamp; }
     public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
-    public String getImageUri() { return imageUri; }
-    public void setImageUri(String imageUri) { this.imageUri = imageUri; }
-    public String getAudioUri() { return audioUri; }
-    public void setAudioUri(String audioUri) { this.audioUri = audioUri; }
-    public String getVideoUri() { return videoUri; }
-    public void setVideoUri(String videoUri) { this.videoUri = videoUri; }
-    public String getUserProfileJson() { return userProfileJson; }
-    public void setUserProfileJson(String userProfileJson) { this.userProfileJson = userProfileJson; }
+    public String getProfileHash() { return profileHash; }
+    public void setProfileHash(String profileHash) { this.profileHash = profileHash; }
 
     public Date getDate() { return new Date(timestamp); }
 }
@@ -0,0 +1,25 @@
+package com.example.myappnew.data;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+import androidx.room.PrimaryKey;
+
+/**
+ * FTS4 shadow index over {@link JournalEntry#content}.
+ *
+ * It is an external-content table: the text itself is only stored in <code>journal_entries</code>,
+ * and Room generates the triggers that keep this index in sync on insert/update/delete.
+ * The ICU tokenizer segments Chinese text into words (plain "simple"/"porter" tokenizers would
+ * treat a whole CJK sentence as one token), so queries like "心情" match inside longer sentences.
+ */
+@Fts4(contentEntity = JournalEntry.class, tokenizer = FtsOptions.TOKENIZER_ICU)
+@Entity(tableName = "journal_fts")
+public class JournalFts {
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public int rowid;
+
+    public String content;
+}
@@ -0,0 +1,308 @@
+package com.example.myappnew.data;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Streaming importer for journal entries in JSONL or CSV form.
+ *
+ * Input is parsed record by record and written through {@link JournalDao#importBatch} in
+ * fixed-size chunks, one transaction each, so only one batch of entries is ever held in memory
+ * regardless of file size and other writers are not blocked for the whole import. Must be called
+ * off the main thread, on {@code AppExecutors.bulkIo()} rather than the shared writer.
+ *
+ * <p>Both formats use the {@link JournalEntry} field names: <code>id</code> (optional; when present
+ * the row is upserted), <code>content</code>, <code>timestamp</code>, plus <code>userProfileJson</code>,
+ * which is interned through {@link ProfileStore} so repeated profiles are stored once. Media comes
+ * from an <code>attachments</code> array of {@link Attachment} fields (JSONL), or from the single
+ * <code>imageUri</code>, <code>audioUri</code> and <code>videoUri</code> fields of older exports
+ * and CSV; a record that lists media replaces the entry's attachments. CSV needs a header row.</p>
+ *
+ * ---
+ * <h4>Testing Strategy:</h4>
+ * <ul>
+ *     <li>Import into an in-memory Room database and verify row counts and field mapping for both formats.</li>
+ *     <li>Cover CSV quoting: embedded commas, doubled quotes and newlines inside quoted fields.</li>
+ *     <li>Verify <code>ProgressListener</code> is called once per batch and that cancellation stops between batches.</li>
+ * </ul>
+ * ---
+ */
+public class JournalImporter {
+
+    /** Rows per transaction; small enough that the write lock is held only briefly per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    public enum Format { JSONL, CSV }
+
+    public interface ProgressListener {
+        /** Called after each committed batch. Returning false stops the import. */
+        boolean onBatchImported(int importedSoFar);
+    }
+
+    private final JournalDao journalDao;
+    /** Profile JSON to snapshot hash; {@link ProfileStore#intern} in the app. */
+    private final Function<String, String> profileInterner;
+    private final int batchSize;
+
+    public JournalImporter(JournalDao journalDao, ProfileStore profileStore) {
+        this(journalDao, profileStore, DEFAULT_BATCH_SIZE);
+    }
+
+    public JournalImporter(JournalDao journalDao, ProfileStore profileStore, int batchSize) {
+        this(journalDao, profileStore::intern, batchSize);
+    }
+
+    JournalImporter(JournalDao journalDao, Function<String, String> profileInterner, int batchSize) {
+        this.journalDao = journalDao;
+        this.profileInterner = profileInterner;
+        this.batchSize = batchSize;
+    }
+
+    /** Picks the format from a file name or MIME type; defaults to JSONL. */
+    public static Format detectFormat(String nameOrMimeType) {
+        if (nameOrMimeType != null) {
+            String lower = nameOrMimeType.toLowerCase();
+            if (lower.endsWith(".csv") || lower.contains("csv")) {
+                return Format.CSV;
+            }
+        }
+        return Format.JSONL;
+    }
+
+    /** Imports every record from {@code in} and returns the number of entries written. */
+    public int importFrom(InputStream in, Format format, ProgressListener listener) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        return format == Format.CSV ? importCsv(reader, listener) : importJsonLines(reader, listener);
+    }
+
+    private int importJsonLines(Reader in, ProgressListener listener) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        // Lenient mode accepts a stream of top-level objects, which is exactly JSONL.
+        reader.setLenient(true);
+        Batch batch = new Batch(listener);
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+            JournalEntry entry = new JournalEntry();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id": entry.setId(reader.nextInt()); break;
+                    case "timestamp": entry.setTimestamp(reader.nextLong()); break;
+                    case "content": entry.setContent(reader.nextString()); break;
+                    case "attachments": readAttachments(reader, entry); break;
+                    case "imageUri": addAttachment(entry, Attachment.KIND_IMAGE, reader.nextString()); break;
+                    case "audioUri": addAttachment(entry, Attachment.KIND_AUDIO, reader.nextString()); break;
+                    case "videoUri": addAttachment(entry, Attachment.KIND_VIDEO, reader.nextString()); break;
+                    case "userProfileJson": entry.setProfileHash(profileInterner.apply(reader.nextString())); break;
+                    default: reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (!batch.add(entry)) {
+                return batch.imported;
+            }
+        }
+        batch.flush();
+        return batch.imported;
+    }
+
+    private int importCsv(Reader in, ProgressListener listener) throws IOException {
+        CsvRecordReader csv = new CsvRecordReader(in);
+        List<String> header = csv.next();
+        if (header == null) {
+            return 0;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim(), i);
+        }
+
+        Batch batch = new Batch(listener);
+        List<String> record;
+        while ((record = csv.next()) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue; // blank line
+            }
+            JournalEntry entry = new JournalEntry();
+            String id = field(record, columns, "id");
+            if (id != null) entry.setId(Integer.parseInt(id));
+            String timestamp = field(record, columns, "timestamp");
+            entry.setTimestamp(timestamp != null ? Long.parseLong(timestamp) : System.currentTimeMillis());
+            entry.setContent(field(record, columns, "content"));
+            addAttachment(entry, Attachment.KIND_IMAGE, field(record, columns, "imageUri"));
+            addAttachment(entry, Attachment.KIND_AUDIO, field(record, columns, "audioUri"));
+            addAttachment(entry, Attachment.KIND_VIDEO, field(record, columns, "videoUri"));
+            entry.setProfileHash(profileInterner.apply(field(record, columns, "userProfileJson")));
+            if (!batch.add(entry)) {
+                return batch.imported;
+            }
+        }
+        batch.flush();
+        return batch.imported;
+    }
+
+    private static void readAttachments(JsonReader reader, JournalEntry entry) throws IOException {
+        if (entry.attachments == null) {
+            entry.attachments = new ArrayList<>();
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Attachment attachment = new Attachment();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "kind": attachment.kind = reader.nextString(); break;
+                    case "uri": attachment.uri = reader.nextString(); break;
+                    case "mimeType": attachment.mimeType = reader.nextString(); break;
+                    case "byteSize": attachment.byteSize = reader.nextLong(); break;
+                    case "width": attachment.width = reader.nextInt(); break;
+                    case "height": attachment.height = reader.nextInt(); break;
+                    case "durationMs": attachment.durationMs = reader.nextLong(); break;
+                    case "contentHash": attachment.contentHash = reader.nextString(); break;
+                    case "createdAt": attachment.createdAt = reader.nextLong(); break;
+                    default: reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (!attachment.uri.isEmpty()) {
+                entry.attachments.add(attachment);
+            }
+        }
+        reader.endArray();
+    }
+
+    /** Older archives and CSV carry one URI per kind; they become unprobed attachment rows. */
+    private static void addAttachment(JournalEntry entry, String kind, String uri) {
+        if (uri == null || uri.isEmpty()) {
+            return;
+        }
+        if (entry.attachments == null) {
+            entry.attachments = new ArrayList<>();
+        }
+        Attachment attachment = new Attachment();
+        attachment.kind = kind;
+        attachment.uri = uri;
+        entry.attachments.add(attachment);
+    }
+
+    private static String field(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index);
+        return value.isEmpty() ? null : value;
+    }
+
+    /** Accumulates entries and commits them one transaction per {@link #batchSize} rows. */
+    private class Batch {
+        private final List<JournalEntry> entries = new ArrayList<>(batchSize);
+        private final ProgressListener listener;
+        int imported;
+
+        Batch(ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        /** Returns false if the listener asked to stop. */
+        boolean add(JournalEntry entry) {
+            if (entry.attachments != null) {
+                // JSONL fields come in any order, so the entry's timestamp is only known here.
+                for (Attachment attachment : entry.attachments) {
+                    if (attachment.createdAt == 0) {
+                        attachment.createdAt = entry.getTimestamp();
+                    }
+                }
+            }
+            entries.add(entry);
+            return entries.size() < batchSize || flush();
+        }
+
+        boolean flush() {
+            if (entries.isEmpty()) {
+                return true;
+            }
+            journalDao.importBatch(entries);
+            imported += entries.size();
+            // Room binds the rows synchronously, so the same list is reused for the next chunk.
+            entries.clear();
+            return listener == null || listener.onBatchImported(imported);
+        }
+    }
+
+    /** Minimal RFC 4180 reader: quoted fields may contain commas, doubled quotes and newlines. */
+    static class CsvRecordReader {
+        private final Reader in;
+        private final StringBuilder field = new StringBuilder();
+        private boolean eof;
+
+        CsvRecordReader(Reader in) {
+            this.in = in;
+        }
+
+        List<String> next() throws IOException {
+            if (eof) {
+                return null;
+            }
+            List<String> record = new ArrayList<>();
+            field.setLength(0);
+            boolean quoted = false;
+            boolean sawAny = false;
+            int c;
+            while ((c = in.read()) != -1) {
+                sawAny = true;
+                if (quoted) {
+                    if (c == '"') {
+                        in.mark(1);
+                        int nextChar = in.read();
+                        if (nextChar == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            if (nextChar != -1) in.reset();
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    record.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    record.add(field.toString());
+                    return record;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+            }
+            eof = true;
+            if (!sawAny) {
+                return null;
+            }
+            record.add(field.toString());
+            return record;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.myappnew.data;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Lightweight projection of a journal entry for the list screen.
+ * Only a truncated snippet of the content, has-media flags and the first image's thumbnail source
+ * are read from SQLite; the profile JSON and other media stay on disk until the detail screen
+ * loads the full entity.
+ */
+public class JournalListItem {
+    /** Characters of content kept by the SQL-side substr(); enough for the list's line clamp. */
+    public static final int SNIPPET_LENGTH = 120;
+
+    public int id;
+    public String snippet;
+    public long timestamp;
+    public boolean hasImage;
+    public boolean hasAudio;
+    public boolean hasVideo;
+    /** Stored thumbnail file of the first image attachment, else that image's URI; null if none. */
+    public String thumbnailUri;
+
+    public int getId() { return id; }
+    public String getSnippet() { return snippet; }
+    public long getTimestamp() { return timestamp; }
+    public boolean hasImage() { return hasImage; }
+    public boolean hasAudio() { return hasAudio; }
+    public boolean hasVideo() { return hasVideo; }
+    public String getThumbnailUri() { return thumbnailUri; }
+
+    public Date getDate() { return new Date(timestamp); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof JournalListItem)) return false;
+        JournalListItem that = (JournalListItem) o;
+        return id == that.id
+                && timestamp == that.timestamp
+                && hasImage == that.hasImage
+                && hasAudio == that.hasAudio
+                && hasVideo == that.hasVideo
+                && Objects.equals(snippet, that.snippet)
+                && Objects.equals(thumbnailUri, that.thumbnailUri);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, snippet, timestamp, hasImage, hasAudio, hasVideo, thumbnailUri);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.myappnew.data;
+
+import androidx.annotation.NonNull;
+
+import java.util.Objects;
+
+/**
+ * Keyset cursor for paging through journal entries, ordered by (timestamp DESC, id DESC).
+ * Unlike a row offset, the cursor stays valid when entries are inserted above it.
+ */
+public final class JournalPageKey {
+    public final long timestamp;
+    public final int id;
+
+    public JournalPageKey(long timestamp, int id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static JournalPageKey of(JournalEntry entry) {
+        return new JournalPageKey(entry.getTimestamp(), entry.getId());
+    }
+
+    public static JournalPageKey of(JournalListItem item) {
+        return new JournalPageKey(item.getTimestamp(), item.getId());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof JournalPageKey)) return false;
+        JournalPageKey that = (JournalPageKey) o;
+        return timestamp == that.timestamp && id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timestamp, id);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "JournalPageKey{timestamp=" + timestamp + ", id=" + id + "}";
+    }
+}
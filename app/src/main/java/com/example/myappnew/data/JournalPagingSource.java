@@ -0,0 +1,107 @@
+package com.example.myappnew.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+import androidx.room.InvalidationTracker;
+
+import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Keyset-paged source of journal list items, newest first.
+ *
+ * Each page is a bounded index range scan on (timestamp, id), so loading the 50th page costs the
+ * same as loading the first one. The source invalidates itself whenever Room reports a change to
+ * <code>journal_entries</code> or <code>attachments</code> (list rows show the first image's
+ * thumbnail); the Pager then creates a fresh source anchored at the
+ * currently visible item (see {@link #getRefreshKey}).
+ *
+ * ---
+ * <h4>Testing Strategy:</h4>
+ * <ul>
+ *     <li>Use an in-memory Room database and <code>TestPager</code> from <code>paging-testing</code>.</li>
+ *     <li>Insert entries with duplicate timestamps and verify append/prepend pages neither skip nor repeat rows.</li>
+ *     <li>Verify that an insert invalidates the source.</li>
+ * </ul>
+ * ---
+ */
+public class JournalPagingSource extends ListenableFuturePagingSource<JournalPageKey, JournalListItem> {
+
+    private final JournalDao journalDao;
+    private final Executor queryExecutor;
+
+    public JournalPagingSource(AppDatabase db) {
+        this.journalDao = db.journalDao();
+        this.queryExecutor = db.getQueryExecutor();
+
+        InvalidationTracker.Observer observer = new InvalidationTracker.Observer("journal_entries", "attachments") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        db.getInvalidationTracker().addObserver(observer);
+        registerInvalidatedCallback(() -> {
+            db.getInvalidationTracker().removeObserver(observer);
+            return kotlin.Unit.INSTANCE;
+        });
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<JournalPageKey, JournalListItem>> loadFuture(@NonNull LoadParams<JournalPageKey> params) {
+        return FluentFuture.from(Futures.submit(() -> load(params), queryExecutor))
+                .catching(Exception.class, e -> new LoadResult.Error<>(e), MoreExecutors.directExecutor());
+    }
+
+    private LoadResult<JournalPageKey, JournalListItem> load(LoadParams<JournalPageKey> params) {
+        JournalPageKey key = params.getKey();
+        int limit = params.getLoadSize();
+
+        if (params instanceof LoadParams.Prepend) {
+            List<JournalListItem> newer = journalDao.getPageNewerThan(key.timestamp, key.id, limit);
+            Collections.reverse(newer);
+            JournalPageKey prevKey = newer.size() < limit ? null : JournalPageKey.of(newer.get(0));
+            return new LoadResult.Page<>(newer, prevKey, key);
+        }
+
+        List<JournalListItem> page;
+        if (key == null) {
+            page = journalDao.getNewestPage(limit);
+        } else if (params instanceof LoadParams.Append) {
+            page = journalDao.getPageOlderThan(key.timestamp, key.id, limit);
+        } else {
+            page = journalDao.getPageFrom(key.timestamp, key.id, limit);
+        }
+
+        JournalPageKey prevKey;
+        if (params instanceof LoadParams.Append) {
+            prevKey = key;
+        } else {
+            // A refresh from the top has nothing newer; a refresh around an anchor may.
+            prevKey = (key == null || page.isEmpty()) ? null : JournalPageKey.of(page.get(0));
+        }
+        JournalPageKey nextKey = page.size() < limit ? null : JournalPageKey.of(page.get(page.size() - 1));
+        return new LoadResult.Page<>(page, prevKey, nextKey);
+    }
+
+    @Nullable
+    @Override
+    public JournalPageKey getRefreshKey(@NonNull PagingState<JournalPageKey, JournalListItem> state) {
+        Integer anchorPosition = state.getAnchorPosition();
+        if (anchorPosition == null) {
+            return null;
+        }
+        JournalListItem anchor = state.closestItemToPosition(anchorPosition);
+        return anchor == null ? null : JournalPageKey.of(anchor);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.myappnew.data;
+
+import androidx.room.Ignore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * One full-text search hit: the entry id, its timestamp, a highlighted snippet and the raw
+ * FTS4 <code>matchinfo(…, 'pcnalx')</code> blob used for ranking.
+ */
+public class JournalSearchResult {
+    /** Marks the start/end of a matched term inside {@link #snippet}. */
+    public static final char HIGHLIGHT_START = '\u0002';
+    public static final char HIGHLIGHT_END = '\u0003';
+    /** Phrases, columns, rows, average and row token counts, and per-phrase hit counts. */
+    static final String MATCHINFO_FORMAT = "pcnalx";
+    /** Standard BM25 parameters: term-frequency saturation and length normalization. */
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /** Higher {@link #rank} first, then newer first. */
+    static final Comparator<JournalSearchResult> BEST_FIRST = (a, b) -> {
+        int byRank = Double.compare(b.rank, a.rank);
+        if (byRank != 0) {
+            return byRank;
+        }
+        int byTime = Long.compare(b.timestamp, a.timestamp);
+        return byTime != 0 ? byTime : Integer.compare(b.id, a.id);
+    };
+
+    public int id;
+    public long timestamp;
+    public String snippet;
+    public byte[] matchInfo;
+
+    /** Score computed from {@link #matchInfo}; higher is more relevant. */
+    @Ignore
+    public double rank;
+
+    public int getId() { return id; }
+    public long getTimestamp() { return timestamp; }
+    public String getSnippet() { return snippet; }
+    public Date getDate() { return new Date(timestamp); }
+
+    /**
+     * Okapi BM25 from matchinfo 'pcnalx', summed over phrases and columns: rare terms score higher
+     * (idf), repeated hits saturate, and hits in long entries count for less than in short ones.
+     */
+    public static double score(byte[] matchInfo) {
+        if (matchInfo == null || matchInfo.length < 12) {
+            return 0;
+        }
+        IntBuffer ints = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phraseCount = ints.get(0);
+        int columnCount = ints.get(1);
+        int rowCount = ints.get(2);
+        int hitsBase = 3 + 2 * columnCount;
+        if (ints.limit() < hitsBase + 3 * phraseCount * columnCount) {
+            return 0;
+        }
+        double score = 0;
+        for (int column = 0; column < columnCount; column++) {
+            double averageLength = Math.max(1, ints.get(3 + column));
+            double length = ints.get(3 + columnCount + column);
+            double lengthNorm = 1 - B + B * length / averageLength;
+            for (int phrase = 0; phrase < phraseCount; phrase++) {
+                int base = hitsBase + 3 * (phrase * columnCount + column);
+                int hitsThisRow = ints.get(base);
+                int rowsWithHits = ints.get(base + 2);
+                if (hitsThisRow == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (rowCount - rowsWithHits + 0.5) / (rowsWithHits + 0.5));
+                score += idf * hitsThisRow * (K1 + 1) / (hitsThisRow + K1 * lengthNorm);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Turns free user input into an FTS MATCH expression: every whitespace-separated term becomes a
+     * quoted prefix query, ANDed together. Quoting neutralises FTS operators typed by the user.
+     * Returns null when there is nothing to search for.
+     */
+    public static String toMatchQuery(String userInput) {
+        if (userInput == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String term : userInput.trim().split("\\s+")) {
+            String cleaned = term.replace("\"", "").replace("*", "");
+            if (cleaned.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(cleaned).append("\"*");
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.myappnew.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+
+import java.util.Calendar;
+
+/**
+ * A model-written summary of one day, week or month of journal entries. Days summarize entries,
+ * weeks fold their days' summaries and months fold their weeks', so each level costs one short
+ * call per period no matter how much was written.
+ *
+ * Periods are keyed by their first local day as {@code yyyy-MM-dd}, so keys of every level sort
+ * and compare as text. Weeks start on Monday; a week belongs to the month it starts in.
+ */
+@Entity(tableName = "journal_summaries", primaryKeys = {"level", "periodStart"})
+public class JournalSummary {
+    public static final String LEVEL_DAY = "day";
+    public static final String LEVEL_WEEK = "week";
+    public static final String LEVEL_MONTH = "month";
+
+    @NonNull
+    public String level = LEVEL_DAY;
+
+    @NonNull
+    public String periodStart = "";
+
+    /** Empty when the period had nothing to summarize (e.g. only photos); such rows are skipped. */
+    @NonNull
+    public String summary = "";
+
+    /** Entries (for days) or child summaries (for weeks and months) folded into {@link #summary}. */
+    public int sourceCount;
+
+    /** Fingerprint of the inputs; the period is summarized again only when it changes. */
+    @NonNull
+    public String sourceVersion = "";
+
+    public long updatedAt;
+
+    public JournalSummary() {}
+
+    public JournalSummary(@NonNull String level, @NonNull String periodStart, @NonNull String summary,
+                          int sourceCount, @NonNull String sourceVersion, long updatedAt) {
+        this.level = level;
+        this.periodStart = periodStart;
+        this.summary = summary;
+        this.sourceCount = sourceCount;
+        this.sourceVersion = sourceVersion;
+        this.updatedAt = updatedAt;
+    }
+
+    /** Local midnight starting the day, Monday-started week or month of {@code level} containing {@code millis}. */
+    public static long startOf(String level, long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (LEVEL_WEEK.equals(level)) {
+            int sinceMonday = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+            calendar.add(Calendar.DAY_OF_MONTH, -sinceMonday);
+        } else if (LEVEL_MONTH.equals(level)) {
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    /** Start of the period after the one of {@code level} starting at {@code periodStartMillis}. */
+    public static long nextStart(String level, long periodStartMillis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(periodStartMillis);
+        if (LEVEL_WEEK.equals(level)) {
+            calendar.add(Calendar.DAY_OF_MONTH, 7);
+        } else if (LEVEL_MONTH.equals(level)) {
+            calendar.add(Calendar.MONTH, 1);
+        } else {
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    /** Start of the period {@code count} periods of {@code level} before the one containing {@code millis}. */
+    public static long startBefore(String level, long millis, int count) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(startOf(level, millis));
+        if (LEVEL_WEEK.equals(level)) {
+            calendar.add(Calendar.DAY_OF_MONTH, -7 * count);
+        } else if (LEVEL_MONTH.equals(level)) {
+            calendar.add(Calendar.MONTH, -count);
+        } else {
+            calendar.add(Calendar.DAY_OF_MONTH, -count);
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    /** The {@code yyyy-MM-dd} key of the local day containing {@code millis}. */
+    public static String keyOf(long millis) {
+        return LlmUsageStore.dayKey(millis);
+    }
+}
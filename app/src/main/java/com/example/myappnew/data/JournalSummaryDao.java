@@ -0,0 +1,53 @@
+package com.example.myappnew.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface JournalSummaryDao {
+
+    /** Identity and text of one journal entry, enough to tell whether its day changed. */
+    class EntryStamp {
+        public int id;
+        public long timestamp;
+        public String content;
+    }
+
+    /**
+     * Entries in {@code [from, until)}, oldest first; uses the timestamp index. The text is read
+     * so the caller can hash it: SQLite has no hash function, and an edit may keep the length.
+     */
+    @Query("SELECT id, timestamp, content FROM journal_entries "
+            + "WHERE timestamp >= :from AND timestamp < :until ORDER BY timestamp, id")
+    List<EntryStamp> entryStamps(long from, long until);
+
+    @Query("SELECT content FROM journal_entries WHERE timestamp >= :from AND timestamp < :until "
+            + "AND content IS NOT NULL AND content != '' ORDER BY timestamp, id")
+    List<String> contentsBetween(long from, long until);
+
+    @Query("SELECT * FROM journal_summaries WHERE level = :level AND periodStart = :periodStart")
+    JournalSummary get(String level, String periodStart);
+
+    /** Summaries of {@code level} with keys in {@code [fromKey, untilKey)}, oldest first. */
+    @Query("SELECT * FROM journal_summaries WHERE level = :level AND periodStart >= :fromKey "
+            + "AND periodStart < :untilKey ORDER BY periodStart")
+    List<JournalSummary> between(String level, String fromKey, String untilKey);
+
+    /** The newest {@code limit} non-empty summaries of {@code level} before {@code untilKey}, newest first. */
+    @Query("SELECT * FROM journal_summaries WHERE level = :level AND periodStart < :untilKey "
+            + "AND summary != '' ORDER BY periodStart DESC LIMIT :limit")
+    List<JournalSummary> latestBefore(String level, String untilKey, int limit);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(JournalSummary summary);
+
+    @Query("DELETE FROM journal_summaries WHERE level = :level AND periodStart = :periodStart")
+    void delete(String level, String periodStart);
+
+    @Query("DELETE FROM journal_summaries WHERE periodStart < :firstKey")
+    int deleteBefore(String firstKey);
+}
@@ -0,0 +1,38 @@
+package com.example.myappnew.data;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Upsert;
+
+import java.util.List;
+
+@Dao
+public interface LlmCacheDao {
+    @Query("SELECT * FROM llm_cache WHERE cacheKey = :cacheKey AND expiresAt > :now")
+    LlmCacheEntry get(String cacheKey, long now);
+
+    @Upsert
+    void upsert(LlmCacheEntry entry);
+
+    @Query("UPDATE llm_cache SET lastAccessedAt = :now WHERE cacheKey = :cacheKey")
+    void touch(String cacheKey, long now);
+
+    @Query("DELETE FROM llm_cache WHERE expiresAt <= :now")
+    int deleteExpired(long now);
+
+    @Query("SELECT COALESCE(SUM(sizeBytes), 0) FROM llm_cache")
+    long totalSizeBytes();
+
+    @Query("SELECT COUNT(*) FROM llm_cache")
+    int count();
+
+    /** Keys of the {@code limit} least recently used rows. */
+    @Query("SELECT cacheKey FROM llm_cache ORDER BY lastAccessedAt ASC LIMIT :limit")
+    List<String> leastRecentlyUsedKeys(int limit);
+
+    @Query("DELETE FROM llm_cache WHERE cacheKey IN (:cacheKeys)")
+    int delete(List<String> cacheKeys);
+
+    @Query("DELETE FROM llm_cache")
+    void clear();
+}
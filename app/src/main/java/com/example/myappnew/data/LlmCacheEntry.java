@@ -0,0 +1,31 @@
+package com.example.myappnew.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A cached LLM reply, addressed by a hash of the normalized request (prompt, model and the hashes
+ * of any attached media). Rows expire at {@link #expiresAt}; the least recently used rows are
+ * evicted when the table grows past its byte budget.
+ */
+@Entity(tableName = "llm_cache", indices = {@Index(value = "lastAccessedAt")})
+public class LlmCacheEntry {
+    @PrimaryKey
+    @NonNull
+    public String cacheKey = "";
+
+    @NonNull
+    public String model = "";
+
+    @NonNull
+    public String responseText = "";
+
+    public long createdAt;
+    public long lastAccessedAt;
+    public long expiresAt;
+
+    /** Approximate storage cost (UTF-16 length of the reply × 2), used for size-bounded eviction. */
+    public int sizeBytes;
+}
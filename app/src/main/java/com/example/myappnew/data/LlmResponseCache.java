@@ -0,0 +1,215 @@
+package com.example.myappnew.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.myappnew.AppExecutors;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Two-tier store for LLM replies: an in-memory LRU in front of the {@code llm_cache} table.
+ *
+ * <ul>
+ *     <li>The memory tier is bounded by {@link #MEMORY_CHARS} characters of key and reply rather
+ *     than an entry count, since replies range from one line to several pages.</li>
+ *     <li>Rows expire {@link #TTL_MS} after they were written; expired rows are never returned,
+ *     from either tier. Memory entries carry the row's expiry and are dropped with it.</li>
+ *     <li>The table is kept under {@link #MAX_DISK_BYTES} by deleting the least recently used rows,
+ *     checked every {@link #TRIM_EVERY_WRITES} writes. Rows deleted by the trim are also dropped
+ *     from memory, so the two tiers never disagree.</li>
+ *     <li>A memory hit refreshes the row's access time at most once per {@link #TOUCH_INTERVAL_MS}
+ *     per key; that is precise enough for LRU order and keeps hot keys from queueing a write each.</li>
+ *     <li>Writes, access-time updates and trimming run on the writer executor,
+ *     {@code AppExecutors.diskWrite()} in the app.</li>
+ * </ul>
+ *
+ * {@link #get} may query the database on a memory miss, so call it off the main thread.
+ */
+public final class LlmResponseCache {
+
+    /** Hit/miss counters since process start. */
+    public static final class Stats {
+        public final long memoryHits;
+        public final long diskHits;
+        public final long misses;
+
+        Stats(long memoryHits, long diskHits, long misses) {
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+        }
+
+        public double hitRate() {
+            long total = memoryHits + diskHits + misses;
+            return total == 0 ? 0 : (double) (memoryHits + diskHits) / total;
+        }
+
+        @Override
+        public String toString() {
+            return "memoryHits=" + memoryHits + " diskHits=" + diskHits + " misses=" + misses;
+        }
+    }
+
+    /** A reply held in memory, with the expiry of its row. */
+    private static final class Memo {
+        final String text;
+        final long expiresAt;
+        volatile long touchedAt;
+
+        Memo(String text, long expiresAt, long touchedAt) {
+            this.text = text;
+            this.expiresAt = expiresAt;
+            this.touchedAt = touchedAt;
+        }
+    }
+
+    private static final String TAG = "LlmResponseCache";
+
+    static final long TTL_MS = TimeUnit.DAYS.toMillis(7);
+    static final long TOUCH_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+    /** About 512 KB of UTF-16; a few hundred typical replies. */
+    static final long MEMORY_CHARS = 256 * 1024;
+    private static final int TRIM_EVERY_WRITES = 16;
+    private static final int EVICT_BATCH = 16;
+
+    private static volatile LlmResponseCache INSTANCE;
+
+    private final LlmCacheDao dao;
+    private final Executor writer;
+    private final LongSupplier clock;
+    private final Cache<String, Memo> memory;
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicInteger writesSinceTrim = new AtomicInteger();
+
+    /** For tests; the app uses {@link #getInstance}. */
+    public LlmResponseCache(LlmCacheDao dao, Executor writer, LongSupplier clock) {
+        this.dao = dao;
+        this.writer = writer;
+        this.clock = clock;
+        this.memory = CacheBuilder.newBuilder()
+                .maximumWeight(MEMORY_CHARS)
+                .weigher((String key, Memo memo) -> key.length() + memo.text.length())
+                .build();
+    }
+
+    public static LlmResponseCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (LlmResponseCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new LlmResponseCache(AppDatabase.getDatabase(context).llmCacheDao(),
+                            AppExecutors.getInstance().diskWrite(), System::currentTimeMillis);
+                    INSTANCE.scheduleTrim();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /** Returns the cached reply for {@code key}, or null. Counts as a hit or a miss. */
+    @Nullable
+    public String get(String key) {
+        long now = clock.getAsLong();
+        Memo memo = live(key, now);
+        if (memo != null) {
+            memoryHits.incrementAndGet();
+            if (now - memo.touchedAt >= TOUCH_INTERVAL_MS) {
+                memo.touchedAt = now;
+                touch(key, now);
+            }
+            return memo.text;
+        }
+        LlmCacheEntry entry = dao.get(key, now);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        memory.put(key, new Memo(entry.responseText, entry.expiresAt, now));
+        touch(key, now);
+        return entry.responseText;
+    }
+
+    /** Returns the reply only if it is in memory; never touches the database or the counters. */
+    @Nullable
+    public String peekMemory(String key) {
+        Memo memo = live(key, clock.getAsLong());
+        return memo != null ? memo.text : null;
+    }
+
+    public void put(String key, String model, String responseText) {
+        long now = clock.getAsLong();
+        memory.put(key, new Memo(responseText, now + TTL_MS, now));
+        LlmCacheEntry entry = new LlmCacheEntry();
+        entry.cacheKey = key;
+        entry.model = model;
+        entry.responseText = responseText;
+        entry.createdAt = now;
+        entry.lastAccessedAt = now;
+        entry.expiresAt = now + TTL_MS;
+        entry.sizeBytes = responseText.length() * 2;
+        writer.execute(() -> dao.upsert(entry));
+        if (writesSinceTrim.incrementAndGet() >= TRIM_EVERY_WRITES) {
+            writesSinceTrim.set(0);
+            scheduleTrim();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(memoryHits.get(), diskHits.get(), misses.get());
+    }
+
+    public void clear() {
+        memory.invalidateAll();
+        writer.execute(dao::clear);
+    }
+
+    /** The memory entry for {@code key} if it has not expired; an expired one is dropped. */
+    @Nullable
+    private Memo live(String key, long now) {
+        Memo memo = memory.getIfPresent(key);
+        if (memo != null && memo.expiresAt <= now) {
+            memory.asMap().remove(key, memo);
+            return null;
+        }
+        return memo;
+    }
+
+    private void touch(String key, long now) {
+        // Keeps replies that are hot in memory from being the first evicted on disk.
+        writer.execute(() -> dao.touch(key, now));
+    }
+
+    private void scheduleTrim() {
+        writer.execute(() -> {
+            long now = clock.getAsLong();
+            int expired = dao.deleteExpired(now);
+            memory.asMap().values().removeIf(memo -> memo.expiresAt <= now);
+            int evicted = 0;
+            while (dao.totalSizeBytes() > MAX_DISK_BYTES) {
+                List<String> keys = dao.leastRecentlyUsedKeys(EVICT_BATCH);
+                if (keys.isEmpty()) {
+                    break;
+                }
+                evicted += dao.delete(keys);
+                memory.invalidateAll(keys);
+            }
+            if (expired + evicted > 0) {
+                Log.i(TAG, "trimmed " + expired + " expired and " + evicted
+                        + " least recently used replies; " + getStats());
+            }
+        });
+    }
+}
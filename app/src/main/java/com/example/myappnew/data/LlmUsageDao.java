@@ -0,0 +1,36 @@
+package com.example.myappnew.data;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+@Dao
+public interface LlmUsageDao {
+    @Query("INSERT OR IGNORE INTO llm_usage_daily (day, model, requests, promptTokens, outputTokens, costMicros) "
+            + "VALUES (:day, :model, 0, 0, 0, 0)")
+    void insertEmpty(String day, String model);
+
+    @Query("UPDATE llm_usage_daily SET requests = requests + 1, promptTokens = promptTokens + :promptTokens, "
+            + "outputTokens = outputTokens + :outputTokens, costMicros = costMicros + :costMicros "
+            + "WHERE day = :day AND model = :model")
+    void increment(String day, String model, long promptTokens, long outputTokens, long costMicros);
+
+    /** Adds one call to the day's row for {@code model}, creating the row on the first call. */
+    @Transaction
+    default void add(String day, String model, long promptTokens, long outputTokens, long costMicros) {
+        insertEmpty(day, model);
+        increment(day, model, promptTokens, outputTokens, costMicros);
+    }
+
+    @Query("SELECT * FROM llm_usage_daily WHERE day = :day")
+    List<LlmUsageDay> forDay(String day);
+
+    /** Rows from {@code firstDay} on, newest day first. */
+    @Query("SELECT * FROM llm_usage_daily WHERE day >= :firstDay ORDER BY day DESC, model")
+    List<LlmUsageDay> since(String firstDay);
+
+    @Query("DELETE FROM llm_usage_daily WHERE day < :firstDay")
+    int deleteBefore(String firstDay);
+}
@@ -0,0 +1,28 @@
+package com.example.myappnew.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+
+/**
+ * Token usage of one model on one local calendar day, accumulated call by call. Days are
+ * {@code yyyy-MM-dd} strings so they sort and compare as text.
+ */
+@Entity(tableName = "llm_usage_daily", primaryKeys = {"day", "model"})
+public class LlmUsageDay {
+    @NonNull
+    public String day = "";
+
+    @NonNull
+    public String model = "";
+
+    public int requests;
+    public long promptTokens;
+    public long outputTokens;
+
+    /** Estimated cost in millionths of a US dollar, from the list prices in {@code LlmBudget}. */
+    public long costMicros;
+
+    public long totalTokens() {
+        return promptTokens + outputTokens;
+    }
+}
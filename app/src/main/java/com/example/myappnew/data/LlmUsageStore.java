@@ -0,0 +1,128 @@
+package com.example.myappnew.data;
+
+import android.content.Context;
+
+import com.example.myappnew.AppExecutors;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Daily LLM token usage: the {@code llm_usage_daily} table plus today's running totals in memory.
+ *
+ * <ul>
+ *     <li>{@link #record} updates the in-memory totals at once, so budget checks see a call as soon
+ *     as it finishes, and adds it to the table on {@code AppExecutors.diskWrite()}.</li>
+ *     <li>On start-up today's rows are read back on the same serialized writer, before any queued
+ *     write, so totals survive a restart without counting a call twice.</li>
+ *     <li>Days are local calendar days; totals reset when the date changes. Rows older than
+ *     {@link #RETENTION_DAYS} are deleted on start-up.</li>
+ * </ul>
+ *
+ * {@link #todayTokens()} and {@link #todayCostMicros()} never touch the database.
+ */
+public final class LlmUsageStore {
+
+    static final int RETENTION_DAYS = 90;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private static volatile LlmUsageStore INSTANCE;
+
+    private final LlmUsageDao dao;
+    private final Executor writer;
+    private final LongSupplier clock;
+
+    // Totals for currentDay; guarded by this.
+    private String currentDay;
+    private long tokens;
+    private long costMicros;
+    private int requests;
+
+    LlmUsageStore(LlmUsageDao dao, Executor writer, LongSupplier clock) {
+        this.dao = dao;
+        this.writer = writer;
+        this.clock = clock;
+        this.currentDay = dayKey(clock.getAsLong());
+    }
+
+    public static LlmUsageStore getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (LlmUsageStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new LlmUsageStore(AppDatabase.getDatabase(context).llmUsageDao(),
+                            AppExecutors.getInstance().diskWrite(), System::currentTimeMillis);
+                    INSTANCE.load();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /** Reads today's rows into the running totals and drops expired days. */
+    void load() {
+        writer.execute(() -> {
+            long now = clock.getAsLong();
+            dao.deleteBefore(dayKey(now - RETENTION_DAYS * DAY_MS));
+            String day = dayKey(now);
+            List<LlmUsageDay> rows = dao.forDay(day);
+            synchronized (this) {
+                if (!day.equals(currentDay)) {
+                    return; // the date changed while loading; today starts empty
+                }
+                for (LlmUsageDay row : rows) {
+                    tokens += row.totalTokens();
+                    costMicros += row.costMicros;
+                    requests += row.requests;
+                }
+            }
+        });
+    }
+
+    public void record(String model, long promptTokens, long outputTokens, long callCostMicros) {
+        String day = dayKey(clock.getAsLong());
+        synchronized (this) {
+            rollOver(day);
+            tokens += promptTokens + outputTokens;
+            costMicros += callCostMicros;
+            requests++;
+        }
+        writer.execute(() -> dao.add(day, model, promptTokens, outputTokens, callCostMicros));
+    }
+
+    public synchronized long todayTokens() {
+        rollOver(dayKey(clock.getAsLong()));
+        return tokens;
+    }
+
+    public synchronized long todayCostMicros() {
+        rollOver(dayKey(clock.getAsLong()));
+        return costMicros;
+    }
+
+    public synchronized int todayRequests() {
+        rollOver(dayKey(clock.getAsLong()));
+        return requests;
+    }
+
+    /** Per-model rows of the last {@code days} days, newest first. Queries the database. */
+    public List<LlmUsageDay> recentDays(int days) {
+        return dao.since(dayKey(clock.getAsLong() - (days - 1) * DAY_MS));
+    }
+
+    private void rollOver(String day) {
+        if (!day.equals(currentDay)) {
+            currentDay = day;
+            tokens = 0;
+            costMicros = 0;
+            requests = 0;
+        }
+    }
+
+    static String dayKey(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date(millis));
+    }
+}
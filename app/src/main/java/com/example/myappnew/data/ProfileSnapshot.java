@@ -0,0 +1,61 @@
+package com.example.myappnew.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A user-profile JSON document stored once and referenced by hash from {@link JournalEntry#profileHash}.
+ * Profiles change rarely, so thousands of entries typically share a handful of snapshots.
+ */
+@Entity(tableName = "profile_snapshots")
+public class ProfileSnapshot {
+    /** SHA-256 (hex) of the canonical JSON; see {@link #hashOf}. */
+    @PrimaryKey
+    @NonNull
+    public String hash = "";
+
+    @NonNull
+    public String json = "";
+
+    public long createdAt;
+
+    public ProfileSnapshot() {}
+
+    public ProfileSnapshot(@NonNull String hash, @NonNull String json, long createdAt) {
+        this.hash = hash;
+        this.json = json;
+        this.createdAt = createdAt;
+    }
+
+    /** Re-serializes valid JSON compactly so formatting differences do not create new snapshots. */
+    public static String canonicalize(String json) {
+        try {
+            return JsonParser.parseString(json).toString();
+        } catch (JsonParseException e) {
+            return json;
+        }
+    }
+
+    /** Content hash of already-canonical JSON. */
+    public static String hashOf(String canonicalJson) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(canonicalJson.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
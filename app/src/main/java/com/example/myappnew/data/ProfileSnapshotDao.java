@@ -0,0 +1,16 @@
+package com.example.myappnew.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+@Dao
+public interface ProfileSnapshotDao {
+    /** Snapshots are content-addressed, so an existing row with the same hash is already identical. */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insert(ProfileSnapshot snapshot);
+
+    @Query("SELECT * FROM profile_snapshots WHERE hash = :hash")
+    ProfileSnapshot getByHash(String hash);
+}
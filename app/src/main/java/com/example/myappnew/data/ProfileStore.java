@@ -0,0 +1,103 @@
+package com.example.myappnew.data;
+
+import android.content.Context;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Interns user-profile JSON into {@code profile_snapshots} and serves parsed profiles from memory.
+ *
+ * Both {@link #intern} and {@link #getProfile} may touch the database on a cache miss, so call
+ * them off the main thread. Repeated lookups of the same profile (the common case: every entry
+ * written since the profile last changed) are served from the LRU cache.
+ */
+public final class ProfileStore {
+
+    /** A snapshot's JSON together with its parsed form. */
+    public static final class Profile {
+        public final String hash;
+        public final String json;
+        @Nullable public final JsonObject parsed;
+
+        Profile(String hash, String json, @Nullable JsonObject parsed) {
+            this.hash = hash;
+            this.json = json;
+            this.parsed = parsed;
+        }
+    }
+
+    private static final int CACHE_SIZE = 16;
+    private static volatile ProfileStore INSTANCE;
+
+    private final ProfileSnapshotDao dao;
+    private final LruCache<String, Profile> cache = new LruCache<>(CACHE_SIZE);
+
+    ProfileStore(ProfileSnapshotDao dao) {
+        this.dao = dao;
+    }
+
+    public static ProfileStore getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (ProfileStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ProfileStore(AppDatabase.getDatabase(context).profileSnapshotDao());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /** Stores {@code json} if it is new and returns its hash, or null for an empty profile. */
+    @Nullable
+    public String intern(@Nullable String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return null;
+        }
+        String canonical = ProfileSnapshot.canonicalize(json);
+        String hash = ProfileSnapshot.hashOf(canonical);
+        if (cache.get(hash) == null) {
+            dao.insert(new ProfileSnapshot(hash, canonical, System.currentTimeMillis()));
+            cache.put(hash, new Profile(hash, canonical, parse(canonical)));
+        }
+        return hash;
+    }
+
+    @Nullable
+    public Profile getProfile(@Nullable String hash) {
+        if (hash == null) {
+            return null;
+        }
+        Profile profile = cache.get(hash);
+        if (profile == null) {
+            ProfileSnapshot snapshot = dao.getByHash(hash);
+            if (snapshot == null) {
+                return null;
+            }
+            profile = new Profile(hash, snapshot.json, parse(snapshot.json));
+            cache.put(hash, profile);
+        }
+        return profile;
+    }
+
+    @Nullable
+    public String getJson(@Nullable String hash) {
+        Profile profile = getProfile(hash);
+        return profile != null ? profile.json : null;
+    }
+
+    @Nullable
+    private static JsonObject parse(String json) {
+        try {
+            JsonElement element = JsonParser.parseString(json);
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+}
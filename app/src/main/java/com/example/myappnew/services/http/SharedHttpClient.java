@@ -0,0 +1,56 @@
+package com.example.myappnew.services.http;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The one {@link OkHttpClient} for the app. Every HTTP user derives its client from {@link #get()}
+ * with {@code newBuilder()}, which shares the connection pool, dispatcher threads and TLS state.
+ *
+ * <ul>
+ *     <li>HTTP/2 is preferred, so concurrent requests to one API host are multiplexed over a
+ *     single connection instead of each paying for its own TLS handshake.</li>
+ *     <li>Idle connections are kept for {@link #KEEP_ALIVE_MINUTES} minutes, long enough to span
+ *     the gap between two analyses in one session.</li>
+ *     <li>Responses are gzip-compressed on the wire: OkHttp sends {@code Accept-Encoding: gzip}
+ *     and decompresses transparently as long as callers do not set that header themselves.</li>
+ *     <li>The read timeout is generous because streamed completions can pause between events.</li>
+ * </ul>
+ *
+ * Never shut down the client's dispatcher or pool; they live for the whole process.
+ */
+public final class SharedHttpClient {
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static volatile OkHttpClient INSTANCE;
+
+    private SharedHttpClient() {}
+
+    public static OkHttpClient get() {
+        if (INSTANCE == null) {
+            synchronized (SharedHttpClient.class) {
+                if (INSTANCE == null) {
+                    Dispatcher dispatcher = new Dispatcher();
+                    dispatcher.setMaxRequestsPerHost(8);
+                    INSTANCE = new OkHttpClient.Builder()
+                            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                            .dispatcher(dispatcher)
+                            .connectTimeout(10, TimeUnit.SECONDS)
+                            .readTimeout(60, TimeUnit.SECONDS)
+                            .writeTimeout(30, TimeUnit.SECONDS)
+                            .retryOnConnectionFailure(true)
+                            .build();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.myappnew.services.journal;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.myappnew.AppExecutors;
+import com.example.myappnew.data.AppDatabase;
+import com.example.myappnew.data.JournalSummary;
+import com.example.myappnew.data.JournalSummaryDao;
+import com.example.myappnew.services.llm.LlmRequest;
+import com.example.myappnew.services.llm.LlmResponse;
+import com.example.myappnew.services.llm.LlmService;
+import com.example.myappnew.services.llm.LlmServiceProvider;
+import com.example.myappnew.services.llm.Prompts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static com.example.myappnew.data.JournalSummary.LEVEL_DAY;
+import static com.example.myappnew.data.JournalSummary.LEVEL_MONTH;
+import static com.example.myappnew.data.JournalSummary.LEVEL_WEEK;
+
+/**
+ * Keeps a rolling day → week → month summary of the journal in {@code journal_summaries}, so the
+ * detail screen's prompt can carry months of history at a fixed cost (see {@link #contextFor}).
+ *
+ * <ul>
+ *     <li>Only finished periods are summarized: days before today, weeks whose days are all
+ *     finished, months whose weeks are. Each period stores a fingerprint of its inputs (entry ids
+ *     and content hashes for a day, child summaries for a week or month) and is summarized again
+ *     only when that changes, so a new or edited entry costs one call for its day once the day is
+ *     over, and one more when its week and month close.</li>
+ *     <li>Calls are {@link LlmRequest.Priority#BACKGROUND} economy requests, one at a time. They
+ *     are refused past the soft daily budget, which ends the pass; the next
+ *     {@link #requestUpdate()} picks up where it stopped. A pass that has not progressed for
+ *     {@link #STALL_TIMEOUT_MS} (a callback that never came) is abandoned, so it cannot block
+ *     later passes; its late results are dropped.</li>
+ *     <li>Only the last {@link #MONTHS_KEPT} months are kept; older summaries are deleted.</li>
+ * </ul>
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>JournalSummarizerTest</code>: which periods get summarized, that a second pass
+ *     makes no calls, that a changed day re-summarizes its week, budget refusals, stalled passes,
+ *     and the order and bounds of {@link #contextFor}.</li>
+ * </ul>
+ * ---
+ */
+public final class JournalSummarizer {
+
+    private static final String TAG = "JournalSummarizer";
+
+    /** Months of history kept summarized; the prompt uses at most {@link #CONTEXT_MONTHS}. */
+    static final int MONTHS_KEPT = 3;
+    /** Calls per pass, so a first run over a long history is spread over several app sessions. */
+    static final int MAX_CALLS_PER_PASS = 8;
+    static final int CONTEXT_WEEKS = 4;
+    static final int CONTEXT_MONTHS = 2;
+    /** A pass with no progress for this long is presumed lost; see {@link #requestUpdate()}. */
+    static final long STALL_TIMEOUT_MS = 10 * 60_000L;
+
+    private static volatile JournalSummarizer INSTANCE;
+
+    private final JournalSummaryDao dao;
+    private final LlmService llm;
+    private final Executor reader;
+    private final Executor writer;
+    private final LongSupplier clock;
+    /** Id of the latest pass; callbacks of older passes are ignored. Guarded by this. */
+    private int pass;
+    /** When the running pass last made progress, or 0 when no pass is running. Guarded by this. */
+    private long lastProgressAt;
+
+    JournalSummarizer(JournalSummaryDao dao, LlmService llm, Executor reader, Executor writer, LongSupplier clock) {
+        this.dao = dao;
+        this.llm = llm;
+        this.reader = reader;
+        this.writer = writer;
+        this.clock = clock;
+    }
+
+    public static JournalSummarizer getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (JournalSummarizer.class) {
+                if (INSTANCE == null) {
+                    AppExecutors executors = AppExecutors.getInstance();
+                    INSTANCE = new JournalSummarizer(AppDatabase.getDatabase(context).journalSummaryDao(),
+                            LlmServiceProvider.getInstance(context).getService(),
+                            executors.diskRead(), executors.diskWrite(), System::currentTimeMillis);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Starts a pass in the background unless one is already running and has made progress within
+     * {@link #STALL_TIMEOUT_MS}. Safe from any thread.
+     */
+    public void requestUpdate() {
+        int id;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (lastProgressAt != 0 && now - lastProgressAt < STALL_TIMEOUT_MS) {
+                return;
+            }
+            if (lastProgressAt != 0) {
+                Log.w(TAG, "pass " + pass + " stalled, starting over");
+            }
+            id = ++pass;
+            lastProgressAt = Math.max(1, now);
+        }
+        writer.execute(() -> {
+            try {
+                dao.deleteBefore(JournalSummary.keyOf(horizon(clock.getAsLong())));
+            } catch (RuntimeException e) {
+                Log.w(TAG, "pruning failed", e);
+            }
+            reader.execute(() -> step(id, 0));
+        });
+    }
+
+    /** Records progress of pass {@code id}; false if a newer pass has replaced it. */
+    private synchronized boolean progress(int id) {
+        if (id != pass || lastProgressAt == 0) {
+            return false;
+        }
+        lastProgressAt = Math.max(1, clock.getAsLong());
+        return true;
+    }
+
+    private synchronized void finish(int id) {
+        if (id == pass) {
+            lastProgressAt = 0;
+        }
+    }
+
+    /**
+     * Long-term context for an entry written at {@code timestamp}: the last {@link #CONTEXT_MONTHS}
+     * month summaries, the last {@link #CONTEXT_WEEKS} week summaries and the earlier days of the
+     * entry's own week, oldest first and one per line. Empty if nothing is summarized yet. Reads
+     * the database; call off the main thread.
+     */
+    public String contextFor(long timestamp) {
+        String dayKey = JournalSummary.keyOf(JournalSummary.startOf(LEVEL_DAY, timestamp));
+        String weekKey = JournalSummary.keyOf(JournalSummary.startOf(LEVEL_WEEK, timestamp));
+        List<JournalSummary> weeks = dao.latestBefore(LEVEL_WEEK, weekKey, CONTEXT_WEEKS);
+        Collections.reverse(weeks);
+        String monthsBefore = monthKey(weeks.isEmpty() ? weekKey : weeks.get(0).periodStart);
+        List<JournalSummary> months = dao.latestBefore(LEVEL_MONTH, monthsBefore, CONTEXT_MONTHS);
+        Collections.reverse(months);
+
+        StringBuilder context = new StringBuilder();
+        for (JournalSummary month : months) {
+            appendLine(context, label(month), month.summary);
+        }
+        for (JournalSummary week : weeks) {
+            appendLine(context, label(week), week.summary);
+        }
+        for (JournalSummary day : dao.between(LEVEL_DAY, weekKey, dayKey)) {
+            appendLine(context, label(day), day.summary);
+        }
+        return context.toString();
+    }
+
+    /** A period to (re)summarize, or to delete when {@code sourceCount} is 0. */
+    static final class Task {
+        final String level;
+        final String periodStart;
+        final int sourceCount;
+        final String sourceVersion;
+        /** Null when there is nothing to send; the period is stored with an empty summary. */
+        final String prompt;
+
+        Task(String level, String periodStart, int sourceCount, String sourceVersion, String prompt) {
+            this.level = level;
+            this.periodStart = periodStart;
+            this.sourceCount = sourceCount;
+            this.sourceVersion = sourceVersion;
+            this.prompt = prompt;
+        }
+    }
+
+    /** Runs on the reader: finds the next task and either stores it directly or sends its prompt. */
+    private void step(int id, int calls) {
+        if (!progress(id)) {
+            return;
+        }
+        Task task;
+        try {
+            task = calls < MAX_CALLS_PER_PASS ? nextTask(clock.getAsLong()) : null;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "planning failed", e);
+            task = null;
+        }
+        if (task == null) {
+            finish(id);
+            return;
+        }
+        if (task.prompt == null) {
+            store(id, task, "", calls);
+            return;
+        }
+        Task current = task;
+        LlmRequest request = new LlmRequest(task.prompt)
+                .setPriority(LlmRequest.Priority.BACKGROUND)
+                .setCallSite("journal_summary")
+                .setEconomy(true);
+        try {
+            llm.generateText(request).enqueue(new Callback<LlmResponse>() {
+                @Override
+                public void onResponse(Call<LlmResponse> call, Response<LlmResponse> response) {
+                    LlmResponse body = response.body();
+                    String text = body != null ? body.getGeneratedText() : null;
+                    if (!response.isSuccessful() || text == null || text.trim().isEmpty()) {
+                        stop(id, current, "HTTP " + response.code() + " with no summary");
+                        return;
+                    }
+                    store(id, current, text.trim(), calls + 1);
+                }
+
+                @Override
+                public void onFailure(Call<LlmResponse> call, Throwable t) {
+                    stop(id, current, t.toString());
+                }
+            });
+        } catch (RuntimeException e) {
+            stop(id, current, e.toString());
+        }
+    }
+
+    private void store(int id, Task task, String summary, int calls) {
+        writer.execute(() -> {
+            if (!progress(id)) {
+                return; // abandoned as stalled; a newer pass redoes this task
+            }
+            try {
+                if (task.sourceCount == 0) {
+                    dao.delete(task.level, task.periodStart);
+                } else {
+                    dao.upsert(new JournalSummary(task.level, task.periodStart, summary, task.sourceCount,
+                            task.sourceVersion, clock.getAsLong()));
+                }
+            } catch (RuntimeException e) {
+                stop(id, task, e.toString());
+                return;
+            }
+            reader.execute(() -> step(id, calls));
+        });
+    }
+
+    private void stop(int id, Task task, String reason) {
+        Log.d(TAG, "stopped at " + task.level + " " + task.periodStart + ": " + reason);
+        finish(id);
+    }
+
+    /** The first out-of-date period, days before weeks before months; null when all are current. */
+    Task nextTask(long now) {
+        long today = JournalSummary.startOf(LEVEL_DAY, now);
+        long horizon = horizon(now);
+        Task task = nextDay(horizon, today);
+        if (task == null) {
+            task = nextFold(LEVEL_WEEK, LEVEL_DAY, horizon, today);
+        }
+        if (task == null) {
+            task = nextFold(LEVEL_MONTH, LEVEL_WEEK, JournalSummary.startBefore(LEVEL_MONTH, now, MONTHS_KEPT),
+                    JournalSummary.startOf(LEVEL_WEEK, now));
+        }
+        return task;
+    }
+
+    private Task nextDay(long from, long until) {
+        Map<String, long[]> days = new LinkedHashMap<>(); // key -> {start, count, id and content checksum}
+        for (JournalSummaryDao.EntryStamp stamp : dao.entryStamps(from, until)) {
+            long start = JournalSummary.startOf(LEVEL_DAY, stamp.timestamp);
+            long[] day = days.get(JournalSummary.keyOf(start));
+            if (day == null) {
+                day = new long[] {start, 0, 0};
+                days.put(JournalSummary.keyOf(start), day);
+            }
+            day[1]++;
+            day[2] = day[2] * 31 + stamp.id * 1_000_003L + (stamp.content != null ? stamp.content.hashCode() : 0);
+        }
+        Map<String, JournalSummary> stored = new LinkedHashMap<>();
+        for (JournalSummary summary : dao.between(LEVEL_DAY, JournalSummary.keyOf(from), JournalSummary.keyOf(until))) {
+            stored.put(summary.periodStart, summary);
+        }
+        for (Map.Entry<String, long[]> day : days.entrySet()) {
+            long[] source = day.getValue();
+            String version = source[1] + ":" + Long.toHexString(source[2]);
+            JournalSummary existing = stored.remove(day.getKey());
+            if (existing != null && existing.sourceVersion.equals(version)) {
+                continue;
+            }
+            List<String> contents = dao.contentsBetween(source[0], JournalSummary.nextStart(LEVEL_DAY, source[0]));
+            String prompt = contents.isEmpty() ? null
+                    : Prompts.DAY_SUMMARY.fill().set("entries", String.join("\n\n", contents)).render();
+            return new Task(LEVEL_DAY, day.getKey(), (int) source[1], version, prompt);
+        }
+        // Left over: days whose entries were all deleted.
+        return stored.isEmpty() ? null : new Task(LEVEL_DAY, stored.keySet().iterator().next(), 0, "", null);
+    }
+
+    /**
+     * The first out-of-date period of {@code level} from {@code from} whose {@code childLevel}
+     * periods all ended by {@code childrenDoneBefore}.
+     */
+    private Task nextFold(String level, String childLevel, long from, long childrenDoneBefore) {
+        for (long start = JournalSummary.startOf(level, from); ; start = JournalSummary.nextStart(level, start)) {
+            long end = JournalSummary.nextStart(level, start);
+            long lastChildEnd = JournalSummary.nextStart(childLevel, JournalSummary.startOf(childLevel, end - 1));
+            if (lastChildEnd > childrenDoneBefore) {
+                return null;
+            }
+            String key = JournalSummary.keyOf(start);
+            List<JournalSummary> children = dao.between(childLevel, key, JournalSummary.keyOf(end));
+            JournalSummary existing = dao.get(level, key);
+            if (children.isEmpty()) {
+                if (existing != null) {
+                    return new Task(level, key, 0, "", null);
+                }
+                continue;
+            }
+            long newest = 0;
+            List<String> lines = new ArrayList<>();
+            for (JournalSummary child : children) {
+                newest = Math.max(newest, child.updatedAt);
+                if (!child.summary.isEmpty()) {
+                    lines.add(label(child) + child.summary);
+                }
+            }
+            String version = children.size() + ":" + newest;
+            if (existing != null && existing.sourceVersion.equals(version)) {
+                continue;
+            }
+            String prompt = lines.isEmpty() ? null : Prompts.PERIOD_SUMMARY.fill()
+                    .set("period", LEVEL_WEEK.equals(level) ? "这一周" : "这个月")
+                    .set("parts", String.join("\n", lines))
+                    .render();
+            return new Task(level, key, children.size(), version, prompt);
+        }
+    }
+
+    /** First day still summarized: the Monday on or before the first of the oldest kept month. */
+    private static long horizon(long now) {
+        return JournalSummary.startOf(LEVEL_WEEK, JournalSummary.startBefore(LEVEL_MONTH, now, MONTHS_KEPT));
+    }
+
+    /** "2024-05-06" -> "2024-05-01". */
+    private static String monthKey(String dayKey) {
+        return dayKey.substring(0, 8) + "01";
+    }
+
+    private static String label(JournalSummary summary) {
+        String key = summary.periodStart;
+        int month = Integer.parseInt(key.substring(5, 7));
+        int day = Integer.parseInt(key.substring(8, 10));
+        if (LEVEL_MONTH.equals(summary.level)) {
+            return key.substring(0, 4) + "年" + month + "月：";
+        }
+        if (LEVEL_WEEK.equals(summary.level)) {
+            return month + "月" + day + "日起的一周：";
+        }
+        return month + "月" + day + "日：";
+    }
+
+    private static void appendLine(StringBuilder context, String label, String summary) {
+        if (summary.isEmpty()) {
+            return;
+        }
+        if (context.length() > 0) {
+            context.append('\n');
+        }
+        context.append(label).append(summary.replace('\n', ' '));
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.myappnew.services.llm;
+
+import java.io.IOException;
+
+/**
+ * A request was refused by {@link BudgetLlmService} because today's LLM budget is used up. Not a
+ * provider fault, so it is neither retried nor failed over. The message is shown to the user.
+ */
+public class BudgetExceededException extends IOException {
+    private final LlmBudget.Level level;
+
+    public BudgetExceededException(LlmBudget.Level level, String message) {
+        super(message);
+        this.level = level;
+    }
+
+    public LlmBudget.Level getLevel() {
+        return level;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.myappnew.services.llm;
+
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+import retrofit2.Call;
+import retrofit2.mock.Calls;
+
+/**
+ * {@link LlmService} decorator that enforces the daily {@link LlmBudget} before a call is sent.
+ *
+ * Sits below the cache and the coalescer, so cache hits are always served and requests that share
+ * one upstream call are admitted once. Past the soft limit it sends interactive requests on as
+ * {@linkplain LlmRequest#withEconomy() economy copies}, leaving the caller's request untouched,
+ * and refuses background and batch work; past the hard limit it refuses everything with
+ * {@link BudgetExceededException}. Usage itself is recorded per attempt by {@link MetricsLlmService}.
+ */
+public class BudgetLlmService implements LlmService {
+
+    private static final String TAG = "BudgetLlmService";
+
+    private final LlmService delegate;
+    private final LlmBudget budget;
+    private final Executor callbackExecutor;
+
+    public BudgetLlmService(LlmService delegate, LlmBudget budget, Executor callbackExecutor) {
+        this.delegate = delegate;
+        this.budget = budget;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public Call<LlmResponse> generateText(LlmRequest request) {
+        LlmBudget.Level level = budget.level();
+        BudgetExceededException refusal = refusal(level, request);
+        if (refusal != null) {
+            return Calls.failure(refusal);
+        }
+        return delegate.generateText(admitted(level, request));
+    }
+
+    @Override
+    public LlmStream streamText(LlmRequest request, StreamListener listener) {
+        LlmBudget.Level level = budget.level();
+        BudgetExceededException refusal = refusal(level, request);
+        if (refusal == null) {
+            return delegate.streamText(admitted(level, request), listener);
+        }
+        PendingLlmStream handle = new PendingLlmStream();
+        callbackExecutor.execute(() -> {
+            if (!handle.isCanceled()) {
+                listener.onError(refusal);
+            }
+        });
+        return handle;
+    }
+
+    /** Returns the refusal for {@code request} at {@code level}, or null if it may be sent. */
+    private BudgetExceededException refusal(LlmBudget.Level level, LlmRequest request) {
+        switch (level) {
+            case HARD:
+                Log.w(TAG, "hard limit reached (" + budget.todayTokens()
+                        + " tokens today), refusing " + request.getCallSite());
+                return new BudgetExceededException(level, "今日 AI 用量已达上限，请明天再试");
+            case SOFT:
+                if (request.getPriority() != LlmRequest.Priority.INTERACTIVE) {
+                    Log.i(TAG, "soft limit reached, deferring "
+                            + request.getPriority() + " request from " + request.getCallSite());
+                    return new BudgetExceededException(level, "今日 AI 用量接近上限，后台分析已暂停");
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /** The request to send for an admitted {@code request}: an economy copy past the soft limit. */
+    private static LlmRequest admitted(LlmBudget.Level level, LlmRequest request) {
+        return level == LlmBudget.Level.SOFT && !request.isEconomy() ? request.withEconomy() : request;
+    }
+}
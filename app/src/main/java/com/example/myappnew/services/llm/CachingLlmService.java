@@ -0,0 +1,240 @@
+package com.example.myappnew.services.llm;
+
+import android.os.SystemClock;
+
+import com.example.myappnew.AppExecutors;
+import com.example.myappnew.data.LlmResponseCache;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link LlmService} decorator that answers repeated requests from {@link LlmResponseCache}.
+ *
+ * Requests are keyed with {@link LlmRequestKeys} (model, normalized prompt, media hashes). A hit
+ * is delivered from a background thread without contacting the provider, so re-analysing the same
+ * entry returns immediately and also works offline. Only complete replies are stored: no error,
+ * non-empty text and finish reason STOP, so a reply cut off at the token limit is never replayed.
+ * Economy requests have their own keys, and a reply is stored only if it was generated in the mode
+ * its key was computed for ({@link LlmResponse#isEconomy()}): when {@link BudgetLlmService}
+ * downgrades a request below the cache, its capped reply never answers a full-quality request.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>Wrap a fake <code>LlmService</code> that counts calls; verify the second identical request
+ *     does not reach it and returns the first reply.</li>
+ *     <li>Verify error responses, failed streams and truncated replies are not cached, and that
+ *     economy replies never answer a full-quality request.</li>
+ *     <li>Verify that cancelling a stream before the lookup finishes delivers no callbacks.</li>
+ * </ul>
+ * ---
+ */
+public class CachingLlmService implements LlmService {
+
+    private final LlmService delegate;
+    private final LlmResponseCache cache;
+    private final String model;
+    private final Executor lookupExecutor;
+    private final LongSupplier clock;
+
+    public CachingLlmService(LlmService delegate, LlmResponseCache cache, String model) {
+        this(delegate, cache, model, AppExecutors.getInstance().diskRead(), SystemClock::elapsedRealtime);
+    }
+
+    CachingLlmService(LlmService delegate, LlmResponseCache cache, String model, Executor lookupExecutor,
+            LongSupplier clock) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.model = model;
+        this.lookupExecutor = lookupExecutor;
+        this.clock = clock;
+    }
+
+    public LlmResponseCache.Stats getStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    public Call<LlmResponse> generateText(LlmRequest request) {
+        return new CachingCall(request);
+    }
+
+    @Override
+    public LlmStream streamText(LlmRequest request, StreamListener listener) {
+        CachingStream stream = new CachingStream();
+        lookupExecutor.execute(() -> {
+            if (stream.isCanceled()) {
+                return;
+            }
+            String key = LlmRequestKeys.keyFor(model, request);
+            boolean economy = request.isEconomy();
+            String cached = cache.get(key);
+            if (cached != null) {
+                TimedStreamListener timed = new TimedStreamListener("CachingLlmService", listener, clock);
+                stream.attach(timed::cancel);
+                timed.onChunk(cached);
+                timed.onComplete(cachedResponse(cached));
+                return;
+            }
+            LlmStream upstream = delegate.streamText(request, new StreamListener() {
+                @Override
+                public void onChunk(String delta) {
+                    listener.onChunk(delta);
+                }
+
+                @Override
+                public void onComplete(LlmResponse response) {
+                    store(key, economy, response);
+                    listener.onComplete(response);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    listener.onError(t);
+                }
+            });
+            stream.attach(upstream::cancel);
+        });
+        return stream;
+    }
+
+    /** {@code economy} is whether {@code key} was computed for an economy request. */
+    private void store(String key, boolean economy, LlmResponse response) {
+        if (response == null || response.isEconomy() != economy) {
+            return; // e.g. downgraded by the budget below the cache; the reply does not match the key
+        }
+        if (response.getError() == null && "STOP".equalsIgnoreCase(response.getFinishReason())
+                && response.getGeneratedText() != null && !response.getGeneratedText().isEmpty()) {
+            cache.put(key, model, response.getGeneratedText());
+        }
+    }
+
+    private static LlmResponse cachedResponse(String text) {
+        LlmResponse response = new LlmResponse();
+        response.setGeneratedText(text);
+        response.setFinishReason("STOP");
+        return response;
+    }
+
+    /** Cancels whatever the lookup ended up starting, even if cancel() came first. */
+    private static final class CachingStream implements LlmStream {
+        private Runnable onCancel;
+        private boolean canceled;
+
+        synchronized void attach(Runnable cancelAction) {
+            if (canceled) {
+                cancelAction.run();
+            } else {
+                onCancel = cancelAction;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Runnable action;
+            synchronized (this) {
+                if (canceled) {
+                    return;
+                }
+                canceled = true;
+                action = onCancel;
+            }
+            if (action != null) {
+                action.run();
+            }
+        }
+
+        @Override
+        public synchronized boolean isCanceled() {
+            return canceled;
+        }
+    }
+
+    /** Looks the request up on a background thread and only creates the provider call on a miss. */
+    private final class CachingCall implements Call<LlmResponse> {
+        private final LlmRequest request;
+        private volatile Call<LlmResponse> upstream;
+        private volatile boolean executed;
+        private volatile boolean canceled;
+
+        CachingCall(LlmRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public Response<LlmResponse> execute() throws IOException {
+            executed = true;
+            String key = LlmRequestKeys.keyFor(model, request);
+            boolean economy = request.isEconomy();
+            String cached = cache.get(key);
+            if (cached != null) {
+                return Response.success(cachedResponse(cached));
+            }
+            upstream = delegate.generateText(request);
+            Response<LlmResponse> response = upstream.execute();
+            if (response.isSuccessful()) {
+                store(key, economy, response.body());
+            }
+            return response;
+        }
+
+        @Override
+        public void enqueue(Callback<LlmResponse> callback) {
+            executed = true;
+            lookupExecutor.execute(() -> {
+                if (canceled) {
+                    return;
+                }
+                String key = LlmRequestKeys.keyFor(model, request);
+                boolean economy = request.isEconomy();
+                String cached = cache.get(key);
+                if (cached != null) {
+                    callback.onResponse(CachingCall.this, Response.success(cachedResponse(cached)));
+                    return;
+                }
+                Call<LlmResponse> call = delegate.generateText(request);
+                upstream = call;
+                if (canceled) {
+                    call.cancel();
+                    return;
+                }
+                call.enqueue(new Callback<LlmResponse>() {
+                    @Override
+                    public void onResponse(Call<LlmResponse> c, Response<LlmResponse> response) {
+                        if (response.isSuccessful()) {
+                            store(key, economy, response.body());
+                        }
+                        callback.onResponse(CachingCall.this, response);
+                    }
+
+                    @Override
+                    public void onFailure(Call<LlmResponse> c, Throwable t) {
+                        callback.onFailure(CachingCall.this, t);
+                    }
+                });
+            });
+        }
+
+        @Override public boolean isExecuted() { return executed; }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            Call<LlmResponse> call = upstream;
+            if (call != null) {
+                call.cancel();
+            }
+        }
+
+        @Override public boolean isCanceled() { return canceled; }
+        @Override public Call<LlmResponse> clone() { return new CachingCall(request); }
+        @Override public okhttp3.Request request() { return new okhttp3.Request.Builder().url("http://localhost/llm-cache").build(); }
+        @Override public okio.Timeout timeout() { return okio.Timeout.NONE; }
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.myappnew.services.llm;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link LlmService} decorator that merges concurrent identical requests into one provider call.
+ *
+ * Double-taps on an analyze button, or a fragment recreated mid-request, issue the same request
+ * again while the first is still running. Requests with the same {@link LlmRequestKeys} key share
+ * one in-flight call through {@link SingleFlight}; everyone who joined receives its result. A
+ * streamed reply is fanned out to every subscriber, and late joiners first receive the text
+ * produced so far as one chunk.
+ *
+ * Cancelling a {@link Call} or {@link LlmStream} returned here detaches only that caller. The
+ * provider call is cancelled when the last caller waiting on it cancels.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>SingleFlightTest</code> for sharing, per-subscriber cancellation and key release.</li>
+ *     <li>Wrap a fake <code>LlmService</code> whose stream is driven by the test; verify two overlapping
+ *     <code>streamText</code> calls reach it once and both listeners receive every chunk.</li>
+ *     <li>Verify a late subscriber first receives the text so far, that one subscriber cancelling
+ *     leaves the others streaming, and that the provider call is made outside the flight lock.</li>
+ * </ul>
+ * ---
+ */
+public class CoalescingLlmService implements LlmService {
+
+    private final LlmService delegate;
+    private final String model;
+    // One instance per provider for the whole process (see LlmServiceProvider), so a request
+    // repeated by a fragment recreated on rotation still finds the one started before.
+    private final SingleFlight<String, Response<LlmResponse>> calls = new SingleFlight<>();
+    private final SingleFlight<String, LlmResponse> streams = new SingleFlight<>();
+
+    public CoalescingLlmService(LlmService delegate, String model) {
+        this.delegate = delegate;
+        this.model = model;
+    }
+
+    /** Requests that joined an identical one in flight instead of reaching the provider. */
+    public long getCoalescedCount() {
+        return calls.joinedCount() + streams.joinedCount();
+    }
+
+    @Override
+    public Call<LlmResponse> generateText(LlmRequest request) {
+        return new CoalescedCall(request);
+    }
+
+    @Override
+    public LlmStream streamText(LlmRequest request, StreamListener listener) {
+        String key = LlmRequestKeys.keyFor(model, request);
+        Broadcast[] created = new Broadcast[1];
+        Broadcast[] joined = new Broadcast[1];
+        // The starter runs under SingleFlight's lock, so it only creates the broadcast; the provider
+        // call is made below, once the lock is released and this caller has subscribed.
+        ListenableFuture<LlmResponse> result = streams.execute(key, () -> created[0] = new Broadcast(),
+                shared -> {
+                    joined[0] = (Broadcast) shared;
+                    joined[0].subscribe(listener);
+                });
+        if (created[0] != null) {
+            created[0].start(delegate, request);
+        }
+        Broadcast broadcast = joined[0];
+        Futures.addCallback(result, new FutureCallback<LlmResponse>() {
+            @Override
+            public void onSuccess(LlmResponse response) {
+                broadcast.unsubscribe(listener);
+                listener.onComplete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                broadcast.unsubscribe(listener);
+                if (!(t instanceof CancellationException)) {
+                    listener.onError(t);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return new LlmStream() {
+            @Override
+            public void cancel() {
+                broadcast.unsubscribe(listener);
+                result.cancel(false);
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return result.isCancelled();
+            }
+        };
+    }
+
+    /**
+     * The shared side of a coalesced stream: completes with the final response and relays chunks
+     * to the current subscribers. Chunks are delivered while holding the lock so a subscriber that
+     * joins mid-stream sees the text so far followed by exactly the chunks after it.
+     */
+    private static final class Broadcast extends AbstractFuture<LlmResponse> implements StreamListener {
+        private final StringBuilder text = new StringBuilder();
+        private final List<StreamListener> subscribers = new ArrayList<>(2);
+        private volatile LlmStream upstream;
+
+        void start(LlmService delegate, LlmRequest request) {
+            LlmStream stream;
+            try {
+                stream = delegate.streamText(request, this);
+            } catch (RuntimeException e) {
+                setException(e);
+                return;
+            }
+            upstream = stream;
+            // Every subscriber may have cancelled before upstream was set, when afterDone saw null.
+            if (isCancelled()) {
+                stream.cancel();
+            }
+        }
+
+        synchronized void subscribe(StreamListener listener) {
+            if (text.length() > 0) {
+                listener.onChunk(text.toString());
+            }
+            subscribers.add(listener);
+        }
+
+        synchronized void unsubscribe(StreamListener listener) {
+            subscribers.remove(listener);
+        }
+
+        @Override
+        public synchronized void onChunk(String delta) {
+            text.append(delta);
+            for (StreamListener subscriber : subscribers) {
+                subscriber.onChunk(delta);
+            }
+        }
+
+        @Override
+        public void onComplete(LlmResponse response) {
+            set(response);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            setException(t);
+        }
+
+        @Override
+        protected void afterDone() {
+            LlmStream stream = upstream;
+            if (isCancelled() && stream != null) {
+                stream.cancel();
+            }
+        }
+    }
+
+    /** A Retrofit call whose execution goes through {@link #calls}. */
+    private final class CoalescedCall implements Call<LlmResponse> {
+        private final LlmRequest request;
+        private volatile ListenableFuture<Response<LlmResponse>> result;
+
+        CoalescedCall(LlmRequest request) {
+            this.request = request;
+        }
+
+        private ListenableFuture<Response<LlmResponse>> start() {
+            String key = LlmRequestKeys.keyFor(model, request);
+            List<SettableFuture<Response<LlmResponse>>> created = new ArrayList<>(1);
+            ListenableFuture<Response<LlmResponse>> future = calls.execute(key, () -> {
+                SettableFuture<Response<LlmResponse>> shared = SettableFuture.create();
+                created.add(shared);
+                return shared;
+            });
+            result = future;
+            // As in streamText, the provider call is made after SingleFlight's lock is released.
+            if (!created.isEmpty()) {
+                enqueueUpstream(request, created.get(0));
+            }
+            return future;
+        }
+
+        @Override
+        public Response<LlmResponse> execute() throws IOException {
+            try {
+                return start().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for LLM response", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } catch (CancellationException e) {
+                throw new IOException("Canceled", e);
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<LlmResponse> callback) {
+            Futures.addCallback(start(), new FutureCallback<Response<LlmResponse>>() {
+                @Override
+                public void onSuccess(Response<LlmResponse> response) {
+                    callback.onResponse(CoalescedCall.this, response);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (!(t instanceof CancellationException)) {
+                        callback.onFailure(CoalescedCall.this, t);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        @Override public boolean isExecuted() { return result != null; }
+
+        @Override
+        public void cancel() {
+            ListenableFuture<Response<LlmResponse>> future = result;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override public boolean isCanceled() { return result != null && result.isCancelled(); }
+        @Override public Call<LlmResponse> clone() { return new CoalescedCall(request); }
+        @Override public okhttp3.Request request() { return new okhttp3.Request.Builder().url("http://localhost/llm-coalesced").build(); }
+        @Override public okio.Timeout timeout() { return okio.Timeout.NONE; }
+    }
+
+    private void enqueueUpstream(LlmRequest request, SettableFuture<Response<LlmResponse>> future) {
+        Call<LlmResponse> call = delegate.generateText(request);
+        future.addListener(() -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        }, MoreExecutors.directExecutor());
+        call.enqueue(new Callback<LlmResponse>() {
+            @Override
+            public void onResponse(Call<LlmResponse> c, Response<LlmResponse> response) {
+                future.set(response);
+            }
+
+            @Override
+            public void onFailure(Call<LlmResponse> c, Throwable t) {
+                future.setException(t);
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.myappnew.services.llm;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+import retrofit2.Call;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+
+/**
+ * Retrofit definition of DeepSeek's OpenAI-compatible chat completions endpoint, with the subset
+ * of the request and response schema this app uses. Streaming uses the same endpoint with
+ * {@code stream: true} over server-sent events; see {@link DeepSeekLlmServiceImpl#streamText}.
+ */
+public interface DeepSeekApi {
+
+    String BASE_URL = "https://api.deepseek.com/";
+
+    @POST("chat/completions")
+    Call<ChatCompletionResponse> createChatCompletion(@Body ChatCompletionRequest request);
+
+    final class ChatMessage {
+        String role;
+        String content;
+
+        ChatMessage(String role, String content) {
+            this.role = role;
+            this.content = content;
+        }
+    }
+
+    final class ChatCompletionRequest {
+        String model;
+        List<ChatMessage> messages;
+        boolean stream;
+        /** Only sent when streaming; asks for a final chunk carrying {@link Usage}. */
+        @SerializedName("stream_options")
+        StreamOptions streamOptions;
+        /** Reply length cap; null (omitted) means the model's default. */
+        @SerializedName("max_tokens")
+        Integer maxTokens;
+
+        ChatCompletionRequest(String model, List<ChatMessage> messages, boolean stream) {
+            this.model = model;
+            this.messages = messages;
+            this.stream = stream;
+            this.streamOptions = stream ? new StreamOptions() : null;
+        }
+    }
+
+    final class StreamOptions {
+        @SerializedName("include_usage")
+        boolean includeUsage = true;
+    }
+
+    /** A full response, or one streamed chunk (which carries {@code delta} instead of {@code message}). */
+    final class ChatCompletionResponse {
+        List<Choice> choices;
+        Usage usage;
+    }
+
+    final class Choice {
+        ChatMessage message;
+        ChatMessage delta;
+        @SerializedName("finish_reason")
+        String finishReason;
+    }
+
+    final class Usage {
+        @SerializedName("prompt_tokens")
+        int promptTokens;
+        @SerializedName("completion_tokens")
+        int completionTokens;
+        @SerializedName("total_tokens")
+        int totalTokens;
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.myappnew.services.llm;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import okhttp3.sse.EventSources;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.mock.Calls;
+
+/**
+ * {@link LlmService} for DeepSeek's OpenAI-compatible chat completions API.
+ *
+ * Built on a client derived from {@code SharedHttpClient}, so it shares the app's HTTP/2
+ * connection pool and dispatcher; only an auth header interceptor is added. Non-streamed calls go
+ * through Retrofit ({@link DeepSeekApi}); {@link #streamText} reads the same endpoint as
+ * server-sent events. Callbacks are delivered on the given executor, like the Gemini client.
+ * The API is text-only, so requests with image or audio parts fail fast instead of sending a
+ * prompt that refers to media the model cannot see.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>DeepSeekLlmServiceImplTest</code>: a <code>MockWebServer</code> checks the request
+ *     (path, auth header, JSON body) and replays JSON and SSE responses, including HTTP errors and
+ *     truncated streams, with no network access. An injected clock makes stream timings exact.</li>
+ * </ul>
+ * ---
+ */
+public class DeepSeekLlmServiceImpl implements LlmService {
+
+    public static final String MODEL_NAME = "deepseek-chat";
+
+    private static final String TAG = "DeepSeekLlmServiceImpl";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final String DONE = "[DONE]";
+
+    private final OkHttpClient client;
+    private final DeepSeekApi api;
+    private final HttpUrl completionsUrl;
+    private final Executor callbackExecutor;
+    private final LongSupplier clock;
+    private final Gson gson = new Gson();
+
+    public DeepSeekLlmServiceImpl(String apiKey, String baseUrl, OkHttpClient sharedClient, Executor callbackExecutor) {
+        this(apiKey, baseUrl, sharedClient, callbackExecutor, SystemClock::elapsedRealtime);
+    }
+
+    /** For tests: {@code clock} stamps streamed replies' time-to-first-token and latency. */
+    DeepSeekLlmServiceImpl(String apiKey, String baseUrl, OkHttpClient sharedClient, Executor callbackExecutor,
+            LongSupplier clock) {
+        this.clock = clock;
+        this.client = sharedClient.newBuilder()
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .header("Authorization", "Bearer " + apiKey)
+                        .build()))
+                .build();
+        this.callbackExecutor = callbackExecutor;
+        this.api = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .callbackExecutor(callbackExecutor)
+                .build()
+                .create(DeepSeekApi.class);
+        this.completionsUrl = HttpUrl.get(baseUrl).resolve("chat/completions");
+    }
+
+    @Override
+    public Call<LlmResponse> generateText(LlmRequest request) {
+        if (request.hasMedia()) {
+            return Calls.failure(new IOException(mediaUnsupported(request)));
+        }
+        return new ChatCall(api.createChatCompletion(toChatRequest(request, false)), request.isEconomy());
+    }
+
+    @Override
+    public LlmStream streamText(LlmRequest request, StreamListener listener) {
+        TimedStreamListener timed = new TimedStreamListener("DeepSeekLlmServiceImpl", listener, clock);
+        if (request.hasMedia()) {
+            callbackExecutor.execute(() -> timed.onError(new IOException(mediaUnsupported(request))));
+            return streamHandle(timed, null);
+        }
+        Request httpRequest = new Request.Builder()
+                .url(completionsUrl)
+                .header("Accept", "text/event-stream")
+                .post(RequestBody.create(gson.toJson(toChatRequest(request, true)), JSON))
+                .build();
+        EventSource source = EventSources.createFactory(client).newEventSource(httpRequest, new EventSourceListener() {
+            private String finishReason;
+            private DeepSeekApi.Usage usage;
+            private boolean finished;
+
+            @Override
+            public void onEvent(EventSource eventSource, String id, String type, String data) {
+                if (DONE.equals(data.trim())) {
+                    finish();
+                    return;
+                }
+                DeepSeekApi.ChatCompletionResponse chunk;
+                try {
+                    chunk = gson.fromJson(data, DeepSeekApi.ChatCompletionResponse.class);
+                } catch (JsonParseException e) {
+                    Log.w(TAG, "skipping malformed event: " + e.getMessage());
+                    return;
+                }
+                if (chunk != null && chunk.usage != null) {
+                    usage = chunk.usage; // sent in a final chunk with no choices
+                }
+                if (chunk == null || chunk.choices == null || chunk.choices.isEmpty()) {
+                    return;
+                }
+                DeepSeekApi.Choice choice = chunk.choices.get(0);
+                if (choice.finishReason != null) {
+                    finishReason = choice.finishReason;
+                }
+                String delta = choice.delta != null ? choice.delta.content : null;
+                if (delta != null && !delta.isEmpty()) {
+                    callbackExecutor.execute(() -> timed.onChunk(delta));
+                }
+            }
+
+            @Override
+            public void onClosed(EventSource eventSource) {
+                // Normally preceded by [DONE]. A stream that ends without it still finishes if the
+                // model gave a finish reason; otherwise the reply was cut off and the call fails,
+                // so routing can fail over rather than keep half a reply.
+                if (finished || timed.isCancelled()) {
+                    return;
+                }
+                if (finishReason == null) {
+                    finished = true;
+                    Log.w(TAG, "stream closed before [DONE]");
+                    callbackExecutor.execute(() -> timed.onError(new EOFException("DeepSeek stream closed before [DONE]")));
+                    return;
+                }
+                finish();
+            }
+
+            @Override
+            public void onFailure(EventSource eventSource, Throwable t, okhttp3.Response response) {
+                if (finished || timed.isCancelled()) {
+                    return;
+                }
+                finished = true;
+                IOException error = response != null && !response.isSuccessful()
+                        ? new IOException("DeepSeek HTTP " + response.code() + ": " + errorBody(response))
+                        : new IOException("DeepSeek stream failed", t);
+                Log.w(TAG, "stream failed: " + error.getMessage());
+                callbackExecutor.execute(() -> timed.onError(error));
+            }
+
+            private void finish() {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                LlmResponse response = new LlmResponse();
+                response.setModel(MODEL_NAME);
+                response.setEconomy(request.isEconomy());
+                applyUsage(response, usage);
+                response.setFinishReason(finishReason);
+                if (finishReason != null && !"stop".equals(finishReason)) {
+                    Log.w(TAG, "stream finished with reason " + finishReason);
+                    response.setError("DeepSeek stream finished early. Finish Reason: " + finishReason);
+                }
+                callbackExecutor.execute(() -> timed.onComplete(response));
+            }
+        });
+        return streamHandle(timed, source);
+    }
+
+    private static LlmStream streamHandle(TimedStreamListener timed, EventSource source) {
+        return new LlmStream() {
+            @Override
+            public void cancel() {
+                timed.cancel();
+                if (source != null) {
+                    source.cancel();
+                }
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return timed.isCancelled();
+            }
+        };
+    }
+
+    /** One user message: text parts in order, then the prompt. Economy requests cap the reply length. */
+    private static DeepSeekApi.ChatCompletionRequest toChatRequest(LlmRequest request, boolean stream) {
+        StringBuilder content = new StringBuilder();
+        for (LlmRequest.Part part : request.getParts()) {
+            if (part.getKind() == LlmRequest.Part.Kind.TEXT && part.getText() != null) {
+                content.append(part.getText()).append('\n');
+            }
+        }
+        if (request.getPrompt() != null) {
+            content.append(request.getPrompt());
+        }
+        DeepSeekApi.ChatCompletionRequest chatRequest = new DeepSeekApi.ChatCompletionRequest(MODEL_NAME,
+                Collections.singletonList(new DeepSeekApi.ChatMessage("user", content.toString())), stream);
+        if (request.isEconomy()) {
+            // There is no cheaper chat model; economy only shortens the reply.
+            chatRequest.maxTokens = LlmRequest.ECONOMY_MAX_OUTPUT_TOKENS;
+        }
+        return chatRequest;
+    }
+
+    private static String mediaUnsupported(LlmRequest request) {
+        return "DeepSeek does not accept image or audio input (" + request.getParts().size() + " part(s)).";
+    }
+
+    private static String errorBody(okhttp3.Response response) {
+        try {
+            String body = response.body() != null ? response.body().string() : "";
+            return body.length() > 200 ? body.substring(0, 200) : body;
+        } catch (IOException e) {
+            return response.message();
+        }
+    }
+
+    private static void applyUsage(LlmResponse response, DeepSeekApi.Usage usage) {
+        if (usage != null) {
+            response.setUsage(usage.promptTokens, usage.completionTokens);
+        }
+    }
+
+    static LlmResponse toLlmResponse(DeepSeekApi.ChatCompletionResponse body) {
+        LlmResponse response = new LlmResponse();
+        response.setModel(MODEL_NAME);
+        if (body != null) {
+            applyUsage(response, body.usage);
+        }
+        DeepSeekApi.Choice choice = body != null && body.choices != null && !body.choices.isEmpty() ? body.choices.get(0) : null;
+        String text = choice != null && choice.message != null ? choice.message.content : null;
+        if (choice != null) {
+            response.setFinishReason(choice.finishReason);
+        }
+        if (text != null && !text.isEmpty()) {
+            response.setGeneratedText(text);
+            if (choice.finishReason != null && !"stop".equals(choice.finishReason)) {
+                response.setError("DeepSeek response finished early. Finish Reason: " + choice.finishReason);
+            }
+        } else {
+            response.setError("DeepSeek response content is null or empty."
+                    + (choice != null && choice.finishReason != null ? " Finish Reason: " + choice.finishReason : ""));
+        }
+        return response;
+    }
+
+    /** Maps the Retrofit call's body to {@link LlmResponse}; status codes and errors pass through. */
+    private static final class ChatCall implements Call<LlmResponse> {
+        private final Call<DeepSeekApi.ChatCompletionResponse> delegate;
+        private final boolean economy;
+
+        ChatCall(Call<DeepSeekApi.ChatCompletionResponse> delegate, boolean economy) {
+            this.delegate = delegate;
+            this.economy = economy;
+        }
+
+        private Response<LlmResponse> map(Response<DeepSeekApi.ChatCompletionResponse> response) {
+            if (!response.isSuccessful()) {
+                return Response.error(response.errorBody(), response.raw());
+            }
+            LlmResponse body = toLlmResponse(response.body());
+            body.setEconomy(economy);
+            return Response.success(body, response.raw());
+        }
+
+        @Override
+        public Response<LlmResponse> execute() throws IOException {
+            return map(delegate.execute());
+        }
+
+        @Override
+        public void enqueue(Callback<LlmResponse> callback) {
+            delegate.enqueue(new Callback<DeepSeekApi.ChatCompletionResponse>() {
+                @Override
+                public void onResponse(Call<DeepSeekApi.ChatCompletionResponse> call, Response<DeepSeekApi.ChatCompletionResponse> response) {
+                    callback.onResponse(ChatCall.this, map(response));
+                }
+
+                @Override
+                public void onFailure(Call<DeepSeekApi.ChatCompletionResponse> call, Throwable t) {
+                    callback.onFailure(ChatCall.this, t);
+                }
+            });
+        }
+
+        @Override public boolean isExecuted() { return delegate.isExecuted(); }
+        @Override public void cancel() { delegate.cancel(); }
+        @Override public boolean isCanceled() { return delegate.isCanceled(); }
+        /** Retrofit's clone() is a fresh, unsent request, so retries really go out again. */
+        @Override public Call<LlmResponse> clone() { return new ChatCall(delegate.clone(), economy); }
+        @Override public okhttp3.Request request() { return delegate.request(); }
+        @Override public okio.Timeout timeout() { return delegate.timeout(); }
+    }
+}
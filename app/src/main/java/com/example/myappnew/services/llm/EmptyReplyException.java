@@ -0,0 +1,20 @@
+package com.example.myappnew.services.llm;
+
+import java.io.IOException;
+
+/**
+ * The provider answered but produced no text, typically because the prompt or the reply was
+ * blocked. Carries the response so its finish/block reason and token usage are not lost.
+ */
+public class EmptyReplyException extends IOException {
+    private final LlmResponse response;
+
+    public EmptyReplyException(LlmResponse response) {
+        super(response.getError() != null ? response.getError() : "Response content is empty.");
+        this.response = response;
+    }
+
+    public LlmResponse getResponse() {
+        return response;
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.myappnew.services.llm;
 
+import android.util.Log;
+
 import com.google.ai.client.generativeai.GenerativeModel;
 import com.google.ai.client.generativeai.java.GenerativeModelFutures;
 import com.google.ai.client.generativeai.type.BlockThreshold;
 import com.google.ai.client.generativeai.type.Candidate;
 import com.google.ai.client.generativeai.type.Content;
+import com.google.ai.client.generativeai.type.CountTokensResponse;
 import com.google.ai.client.generativeai.type.FinishReason;
 import com.google.ai.client.generativeai.type.GenerateContentResponse;
 import com.google.ai.client.generativeai.type.GenerationConfig;
@@ -13,17 +16,17 @@ import com.google.ai.client.generativeai.type.Part;
 import com.google.ai.client.generativeai.type.PromptFeedback;
 import com.google.ai.client.generativeai.type.SafetySetting;
 import com.google.ai.client.generativeai.type.TextPart;
+import com.google.ai.client.generativeai.type.UsageMetadata;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
-// Consider using Android's Log class for better log management in production apps.
-// import android.util.Log;
 
 import retrofit2.Call;
 import retrofit2.Callback;
@@ -31,15 +34,21 @@ import retrofit2.Response;
 
 public class GeminiLlmServiceImpl implements LlmService {
 
-    // private static final String TAG = "GeminiLlmServiceImpl"; // For Log.d/e
+    private static final String TAG = "GeminiLlmServiceImpl";
+
+    static final String MODEL_NAME = "gemini-1.5-flash-latest";
+    /** Half the price of {@link #MODEL_NAME}; used for economy requests (see {@link LlmBudget}). */
+    static final String ECONOMY_MODEL_NAME = "gemini-1.5-flash-8b-latest";
 
     private GenerativeModelFutures generativeModelFutures;
-    private final Executor mainExecutor = Executors.newSingleThreadExecutor();
+    private GenerativeModelFutures economyModelFutures;
+    /** Shared app-wide callback thread (see AppExecutors.llmCallback()); single-threaded so chunks stay in order. */
+    private final Executor mainExecutor;
 
-    public GeminiLlmServiceImpl(String apiKey) {
+    public GeminiLlmServiceImpl(String apiKey, Executor callbackExecutor) {
+        this.mainExecutor = callbackExecutor;
         if (apiKey == null || apiKey.isEmpty()) {
-            System.err.println("GeminiLlmServiceImpl: API Key is null or empty. Service will not function.");
-            // Log.e(TAG, "API Key is null or empty. Service will not function.");
+            Log.e(TAG, "API Key is null or empty. Service will not function.");
             return;
         }
 
@@ -51,19 +60,31 @@ public class GeminiLlmServiceImpl implements LlmService {
         // List<SafetySetting> safetySettings = Arrays.asList(harassmentSafety, hateSpeechSafety);
 
         GenerativeModel gm = new GenerativeModel(
-                "gemini-1.5-flash-latest", // Or "gemini-pro" or other applicable models
+                MODEL_NAME, // Or "gemini-pro" or other applicable models
                 apiKey,
                 generationConfig,
                 Collections.singletonList(harassmentSafety) // Replace with 'safetySettings' if using multiple
         );
         this.generativeModelFutures = GenerativeModelFutures.from(gm);
+
+        GenerationConfig.Builder economyConfig = new GenerationConfig.Builder();
+        economyConfig.maxOutputTokens = LlmRequest.ECONOMY_MAX_OUTPUT_TOKENS;
+        this.economyModelFutures = GenerativeModelFutures.from(new GenerativeModel(
+                ECONOMY_MODEL_NAME, apiKey, economyConfig.build(), Collections.singletonList(harassmentSafety)));
+    }
+
+    private GenerativeModelFutures modelFor(LlmRequest request) {
+        return request.isEconomy() ? economyModelFutures : generativeModelFutures;
+    }
+
+    private static String modelNameFor(LlmRequest request) {
+        return request.isEconomy() ? ECONOMY_MODEL_NAME : MODEL_NAME;
     }
 
     @Override
     public Call<LlmResponse> generateText(LlmRequest llmRequest) {
         if (generativeModelFutures == null) {
-            System.err.println("GeminiLlmServiceImpl: GenerativeModelFutures not initialized (likely due to missing API key).");
-            // Log.e(TAG, "GenerativeModelFutures not initialized (likely due to missing API key).");
+            Log.e(TAG, "GenerativeModelFutures not initialized (likely due to missing API key).");
             return new Call<LlmResponse>() {
                 @Override
                 public Response<LlmResponse> execute() throws java.io.IOException {
@@ -82,25 +103,215 @@ public class GeminiLlmServiceImpl implements LlmService {
             };
         }
 
-        Content content = new Content.Builder()
-                .addText(llmRequest.getPrompt())
-                .build();
+        // Nothing is sent until execute() or enqueue(); see GeminiCall.
+        return new GeminiCall(modelFor(llmRequest), modelNameFor(llmRequest), toContent(llmRequest), mainExecutor);
+    }
+
+    /**
+     * Streams via {@code generateContentStream}; each response in the stream carries the next
+     * piece of text. Callbacks run on the same single callback thread as {@link #generateText}.
+     */
+    @Override
+    public LlmStream streamText(LlmRequest llmRequest, StreamListener listener) {
+        TimedStreamListener timed = new TimedStreamListener("GeminiLlmServiceImpl", listener);
+        Subscription[] subscription = new Subscription[1];
+        LlmStream stream = new LlmStream() {
+            @Override
+            public void cancel() {
+                timed.cancel();
+                synchronized (subscription) {
+                    if (subscription[0] != null) {
+                        subscription[0].cancel();
+                    }
+                }
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return timed.isCancelled();
+            }
+        };
+        if (generativeModelFutures == null) {
+            Log.e(TAG, "GenerativeModelFutures not initialized (likely due to missing API key).");
+            mainExecutor.execute(() -> timed.onError(new IllegalStateException("Gemini client not initialized.")));
+            return stream;
+        }
+
+        String modelName = modelNameFor(llmRequest);
+        modelFor(llmRequest).generateContentStream(toContent(llmRequest)).subscribe(new Subscriber<GenerateContentResponse>() {
+            private FinishReason finishReason;
+            private String blockReason;
+            private UsageMetadata usage;
+            private boolean produced;
+
+            @Override
+            public void onSubscribe(Subscription s) {
+                synchronized (subscription) {
+                    subscription[0] = s;
+                }
+                if (timed.isCancelled()) {
+                    s.cancel();
+                } else {
+                    s.request(Long.MAX_VALUE);
+                }
+            }
+
+            @Override
+            public void onNext(GenerateContentResponse response) {
+                // getText() throws on a chunk without a text candidate (e.g. a blocked prompt),
+                // so the feedback and candidates are read first and text only from a candidate.
+                if (response.getPromptFeedback() != null && response.getPromptFeedback().getBlockReason() != null) {
+                    blockReason = response.getPromptFeedback().getBlockReason().name();
+                }
+                if (response.getUsageMetadata() != null) {
+                    usage = response.getUsageMetadata(); // cumulative; the last one covers the whole reply
+                }
+                if (response.getCandidates() == null || response.getCandidates().isEmpty()) {
+                    return;
+                }
+                Candidate candidate = response.getCandidates().get(0);
+                if (candidate == null) {
+                    return;
+                }
+                if (candidate.getFinishReason() != null) {
+                    finishReason = candidate.getFinishReason();
+                }
+                String delta = GeminiCall.extractTextFromCandidate(candidate);
+                if (delta != null && !delta.isEmpty()) {
+                    produced = true;
+                    mainExecutor.execute(() -> timed.onChunk(delta));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                Log.w(TAG, "stream failed: " + t.getMessage(), t);
+                mainExecutor.execute(() -> timed.onError(t));
+            }
+
+            @Override
+            public void onComplete() {
+                LlmResponse response = new LlmResponse();
+                response.setModel(modelName);
+                response.setEconomy(llmRequest.isEconomy());
+                applyUsage(response, usage);
+                response.setFinishReason(finishReason != null ? finishReason.name() : null);
+                response.setBlockReason(blockReason);
+                if (!produced) {
+                    // Same outcome as generateText: a blocked prompt or an early stop with no text fails.
+                    String errorMessage = "Gemini response content is null or empty.";
+                    if (finishReason != null) {
+                        errorMessage += " Finish Reason: " + finishReason;
+                    }
+                    if (blockReason != null) {
+                        errorMessage += (finishReason != null ? " | " : " ") + "Prompt Feedback Block Reason: " + blockReason;
+                    }
+                    Log.e(TAG, "Error case: " + errorMessage);
+                    response.setError(errorMessage);
+                    mainExecutor.execute(() -> timed.onError(new EmptyReplyException(response)));
+                    return;
+                }
+                if (finishReason != null && finishReason != FinishReason.STOP) {
+                    Log.w(TAG, "stream finished with reason " + finishReason);
+                    response.setError("Gemini stream finished early. Finish Reason: " + finishReason);
+                }
+                mainExecutor.execute(() -> timed.onComplete(response));
+            }
+        });
+        return stream;
+    }
+
+    private static void applyUsage(LlmResponse response, UsageMetadata usage) {
+        if (usage != null) {
+            response.setUsage(usage.getPromptTokenCount(), usage.getCandidatesTokenCount());
+        }
+    }
+
+    /**
+     * Sends a token-count request, which is not billed, so the SDK's HTTP client resolves the host
+     * and completes the TLS handshake before the first real request needs the connection.
+     */
+    void warmUp() {
+        if (generativeModelFutures == null) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        Content probe = new Content.Builder().addText("warm-up").build();
+        Futures.addCallback(generativeModelFutures.countTokens(probe), new FutureCallback<CountTokensResponse>() {
+            @Override
+            public void onSuccess(CountTokensResponse result) {
+                Log.d(TAG, "connection warmed up in "
+                        + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                Log.w(TAG, "warm-up failed: " + t.getMessage());
+            }
+        }, mainExecutor);
+    }
 
-        ListenableFuture<GenerateContentResponse> future = generativeModelFutures.generateContent(content);
-        return new ListenableFutureCall<>(future, mainExecutor);
+    /**
+     * Maps the request to a single Gemini {@link Content}: media parts first (Gemini recommends
+     * placing images before the text that refers to them), then the prompt. Image and audio bytes
+     * are passed as inline blobs as-is, so they are encoded once by the caller and Base64-encoded
+     * once by the SDK on the wire.
+     */
+    static Content toContent(LlmRequest llmRequest) {
+        Content.Builder builder = new Content.Builder();
+        for (LlmRequest.Part part : llmRequest.getParts()) {
+            switch (part.getKind()) {
+                case TEXT:
+                    builder.addText(part.getText());
+                    break;
+                case IMAGE:
+                case AUDIO:
+                    builder.addBlob(part.getMimeType(), part.getData());
+                    break;
+            }
+        }
+        if (llmRequest.getPrompt() != null && !llmRequest.getPrompt().isEmpty()) {
+            builder.addText(llmRequest.getPrompt());
+        }
+        return builder.build();
     }
 
-    private static class ListenableFutureCall<T> implements Call<T> {
-        private final ListenableFuture<GenerateContentResponse> future;
+    /**
+     * A {@link Call} over {@code generateContent} with Retrofit's semantics: the request is only sent
+     * by {@link #execute()} or {@link #enqueue}, a call runs at most once, and {@link #clone()}
+     * returns a new, unsent call for the same content (which is what the scheduler's retries use).
+     * {@link #cancel()} cancels the SDK future, which aborts the HTTP request, and suppresses callbacks.
+     */
+    private static final class GeminiCall implements Call<LlmResponse> {
+        private final GenerativeModelFutures model;
+        private final String modelName;
+        private final Content content;
         private final Executor callbackExecutor;
+        private ListenableFuture<GenerateContentResponse> future; // guarded by this
+        private boolean executed; // guarded by this
         private volatile boolean cancelled = false;
 
-        ListenableFutureCall(ListenableFuture<GenerateContentResponse> future, Executor callbackExecutor) {
-            this.future = future;
+        GeminiCall(GenerativeModelFutures model, String modelName, Content content, Executor callbackExecutor) {
+            this.model = model;
+            this.modelName = modelName;
+            this.content = content;
             this.callbackExecutor = callbackExecutor;
         }
 
-        private String extractTextFromCandidate(Candidate candidate) {
+        /** Sends the request; returns null if the call was cancelled before it started. */
+        private synchronized ListenableFuture<GenerateContentResponse> start() {
+            if (executed) {
+                throw new IllegalStateException("Already executed.");
+            }
+            executed = true;
+            if (cancelled) {
+                return null;
+            }
+            future = model.generateContent(content);
+            return future;
+        }
+
+        private static String extractTextFromCandidate(Candidate candidate) {
             if (candidate != null) {
                 Content content = candidate.getContent();
                 if (content != null) {
@@ -111,8 +322,7 @@ public class GeminiLlmServiceImpl implements LlmService {
                             TextPart textPart = (TextPart) firstPart;
                             return textPart.getText();
                         } else {
-                             System.err.println("GeminiLlmServiceImpl: First part is not an instance of TextPart. Actual type: " + (firstPart != null ? firstPart.getClass().getName() : "null"));
-                            // Log.e(TAG, "First part is not an instance of TextPart. Actual type: " + (firstPart != null ? firstPart.getClass().getName() : "null"));
+                            Log.e(TAG, "First part is not an instance of TextPart. Actual type: " + (firstPart != null ? firstPart.getClass().getName() : "null"));
                         }
                     }
                 }
@@ -120,97 +330,81 @@ public class GeminiLlmServiceImpl implements LlmService {
             return null; 
         }
 
-        @Override
-        public Response<T> execute() throws java.io.IOException {
-            // This method is less commonly used for Futures-based APIs in Android, enqueue is preferred.
-            try {
-                GenerateContentResponse geminiResponse = future.get(); 
-                LlmResponse llmResp = new LlmResponse();
-                String extractedText = null;
-                FinishReason finishReason = null;
-                String blockReasonText = null;
-
-                if (geminiResponse != null && geminiResponse.getCandidates() != null && !geminiResponse.getCandidates().isEmpty()) {
-                    Candidate candidate = geminiResponse.getCandidates().get(0);
-                    if (candidate != null) {
-                        finishReason = candidate.getFinishReason();
-                        extractedText = extractTextFromCandidate(candidate);
-                    }
+        private LlmResponse toLlmResponse(GenerateContentResponse geminiResponse) {
+            LlmResponse llmResp = new LlmResponse();
+            llmResp.setModel(modelName);
+            llmResp.setEconomy(ECONOMY_MODEL_NAME.equals(modelName));
+            String extractedText = null;
+            FinishReason finishReason = null;
+            String blockReasonText = null;
+
+            if (geminiResponse != null && geminiResponse.getCandidates() != null && !geminiResponse.getCandidates().isEmpty()) {
+                Candidate candidate = geminiResponse.getCandidates().get(0);
+                if (candidate != null) {
+                    finishReason = candidate.getFinishReason();
+                    extractedText = extractTextFromCandidate(candidate);
                 }
+            }
 
-                if (geminiResponse != null && geminiResponse.getPromptFeedback() != null) {
-                    PromptFeedback promptFeedback = geminiResponse.getPromptFeedback();
-                    if (promptFeedback.getBlockReason() != null) {
-                         blockReasonText = "Prompt Feedback Block Reason: " + promptFeedback.getBlockReason().toString();
-                    }
+            if (geminiResponse != null && geminiResponse.getPromptFeedback() != null) {
+                PromptFeedback promptFeedback = geminiResponse.getPromptFeedback();
+                if (promptFeedback.getBlockReason() != null) {
+                    blockReasonText = "Prompt Feedback Block Reason: " + promptFeedback.getBlockReason().toString();
+                    llmResp.setBlockReason(promptFeedback.getBlockReason().name());
                 }
+            }
+            if (geminiResponse != null) {
+                applyUsage(llmResp, geminiResponse.getUsageMetadata());
+            }
+            llmResp.setFinishReason(finishReason != null ? finishReason.name() : null);
 
-                if (extractedText != null && !extractedText.isEmpty()) {
-                    llmResp.setGeneratedText(extractedText);
-                } else {
-                    String errorMessage = "Gemini response content is null or empty.";
-                    if (finishReason != null) {
-                        errorMessage += " Finish Reason: " + finishReason.toString();
-                    }
-                    if (blockReasonText != null) {
-                        errorMessage += (finishReason != null ? " | " : " ") + blockReasonText;
-                    }
-                    llmResp.setError(errorMessage);
-                     System.err.println("GeminiLlmServiceImpl: execute - Error case: " + errorMessage);
-                    // Log.e(TAG, "execute - Error case: " + errorMessage);
+            if (extractedText != null && !extractedText.isEmpty()) {
+                llmResp.setGeneratedText(extractedText);
+            } else {
+                String errorMessage = "Gemini response content is null or empty.";
+                if (finishReason != null) {
+                    errorMessage += " Finish Reason: " + finishReason.toString();
+                }
+                if (blockReasonText != null) {
+                    errorMessage += (finishReason != null ? " | " : " ") + blockReasonText;
                 }
-                return Response.success((T) llmResp);
+                llmResp.setError(errorMessage);
+                Log.e(TAG, "Error case: " + errorMessage);
+            }
+            return llmResp;
+        }
+
+        @Override
+        public Response<LlmResponse> execute() throws java.io.IOException {
+            // This method is less commonly used for Futures-based APIs in Android, enqueue is preferred.
+            ListenableFuture<GenerateContentResponse> started = start();
+            if (started == null) {
+                throw new java.io.IOException("Canceled");
+            }
+            try {
+                return Response.success(toLlmResponse(started.get()));
+            } catch (InterruptedException e) {
+                started.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new java.io.IOException("Interrupted waiting for Gemini response", e);
             } catch (Exception e) {
-                System.err.println("GeminiLlmServiceImpl: execute - Exception: " + e.getMessage());
-                // Log.e(TAG, "execute - Exception: " + e.getMessage(), e);
-                e.printStackTrace();
-                throw new java.io.IOException("Failed to execute Gemini request", e);
+                Log.e(TAG, "execute - Exception: " + e.getMessage(), e);
+                throw new java.io.IOException(cancelled ? "Canceled" : "Failed to execute Gemini request", e);
             }
         }
 
         @Override
-        public void enqueue(Callback<T> callback) {
-            Futures.addCallback(future, new FutureCallback<GenerateContentResponse>() {
+        public void enqueue(Callback<LlmResponse> callback) {
+            ListenableFuture<GenerateContentResponse> started = start();
+            if (started == null) {
+                callbackExecutor.execute(() -> callback.onFailure(this, new java.io.IOException("Canceled")));
+                return;
+            }
+            Futures.addCallback(started, new FutureCallback<GenerateContentResponse>() {
                 @Override
                 public void onSuccess(GenerateContentResponse geminiResponse) {
                     if (cancelled) return;
-
-                    LlmResponse llmResp = new LlmResponse();
-                    String extractedText = null;
-                    FinishReason finishReason = null;
-                    String blockReasonText = null;
-
-                    if (geminiResponse != null && geminiResponse.getCandidates() != null && !geminiResponse.getCandidates().isEmpty()) {
-                        Candidate candidate = geminiResponse.getCandidates().get(0);
-                        if (candidate != null) {
-                            finishReason = candidate.getFinishReason();
-                            extractedText = extractTextFromCandidate(candidate);
-                        }
-                    }
-
-                    if (geminiResponse != null && geminiResponse.getPromptFeedback() != null) {
-                        PromptFeedback promptFeedback = geminiResponse.getPromptFeedback();
-                         if (promptFeedback.getBlockReason() != null) {
-                            blockReasonText = "Prompt Feedback Block Reason: " + promptFeedback.getBlockReason().toString();
-                        }
-                    }
-
-                    if (extractedText != null && !extractedText.isEmpty()) {
-                        llmResp.setGeneratedText(extractedText);
-                        callbackExecutor.execute(() -> callback.onResponse(ListenableFutureCall.this, Response.success((T) llmResp)));
-                    } else {
-                        String errorMessage = "Gemini response content is null or empty.";
-                        if (finishReason != null) {
-                            errorMessage += " Finish Reason: " + finishReason.toString();
-                        }
-                         if (blockReasonText != null) {
-                            errorMessage += (finishReason != null ? " | " : " ") + blockReasonText;
-                        }
-                        llmResp.setError(errorMessage);
-                        System.err.println("GeminiLlmServiceImpl: onSuccess - Error case: " + errorMessage);
-                        // Log.e(TAG, "onSuccess - Error case: " + errorMessage);
-                        callbackExecutor.execute(() -> callback.onResponse(ListenableFutureCall.this, Response.success((T) llmResp)));
-                    }
+                    callback.onResponse(GeminiCall.this, Response.success(toLlmResponse(geminiResponse)));
                 }
 
                 @Override
@@ -218,29 +412,32 @@ public class GeminiLlmServiceImpl implements LlmService {
                     if (cancelled) return;
                     
                     if (t != null) {
-                        System.err.println("GeminiLlmServiceImpl: Failure from Gemini SDK. Class: " + t.getClass().getName() + ", Message: " + t.getMessage());
-                        // Log.e(TAG, "Failure from Gemini SDK. Class: " + t.getClass().getName() + ", Message: " + t.getMessage(), t);
-                        t.printStackTrace(); 
-                        Throwable cause = t.getCause();
-                        if (cause != null) {
-                             System.err.println("GeminiLlmServiceImpl: Caused by: " + cause.getClass().getName() + " - " + cause.getMessage());
-                             // Log.e(TAG, "Caused by: " + cause.getClass().getName() + " - " + cause.getMessage(), cause);
-                             cause.printStackTrace();
-                        }
+                        // The stack trace includes the cause chain.
+                        Log.e(TAG, "Failure from Gemini SDK: " + t.getClass().getName() + ": " + t.getMessage(), t);
                     } else {
-                        System.err.println("GeminiLlmServiceImpl: Failure from Gemini SDK: Throwable t is null.");
-                        // Log.e(TAG, "Failure from Gemini SDK: Throwable t is null.");
+                        Log.e(TAG, "Failure from Gemini SDK: Throwable t is null.");
                     }
-                    final Throwable finalT = t; 
-                    callbackExecutor.execute(() -> callback.onFailure(ListenableFutureCall.this, finalT));
+                    callback.onFailure(GeminiCall.this, t);
                 }
             }, callbackExecutor);
         }
 
-        @Override public boolean isExecuted() { return future.isDone(); }
-        @Override public void cancel() { cancelled = true; future.cancel(true); }
-        @Override public boolean isCanceled() { return cancelled || future.isCancelled(); }
-        @Override public Call<T> clone() { return new ListenableFutureCall<>(future, callbackExecutor); }
+        @Override public synchronized boolean isExecuted() { return executed; }
+
+        @Override
+        public void cancel() {
+            ListenableFuture<GenerateContentResponse> running;
+            synchronized (this) {
+                cancelled = true;
+                running = future;
+            }
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+
+        @Override public boolean isCanceled() { return cancelled; }
+        @Override public Call<LlmResponse> clone() { return new GeminiCall(model, modelName, content, callbackExecutor); }
         @Override public okhttp3.Request request() { return new okhttp3.Request.Builder().url("http://localhost/gemini-sdk-internal").build(); }
         @Override public okio.Timeout timeout() { return okio.Timeout.NONE; }
     }
@@ -0,0 +1,95 @@
+package com.example.myappnew.services.llm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative longs (milliseconds, bytes) for {@link LlmMetrics}.
+ *
+ * Values 0..3 get their own bucket; above that every power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so a percentile is reported as the upper edge of its
+ * bucket and is at most 25% above the true value. Recording is one atomic increment plus two
+ * {@link LongAdder} adds and never blocks; reads are not an atomic snapshot, which is fine for
+ * diagnostics.
+ */
+public final class Histogram {
+
+    static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 62 * SUB_BUCKETS; // up to values of 2^63 - 1
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucketFor(v));
+        count.increment();
+        sum.add(v);
+        long current;
+        while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+            // another thread raised max; re-check against it
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long mean() {
+        long n = count();
+        return n == 0 ? 0 : sum() / n;
+    }
+
+    /** Value at quantile {@code q} (0..1), rounded up to its bucket's upper edge; 0 when empty. */
+    public long percentile(double q) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(value); // >= 2
+        int sub = (int) ((value >>> (power - 2)) & (SUB_BUCKETS - 1)); // the two bits below the top one
+        return (power - 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest value that falls into {@code bucket}. */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int power = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        long upper = ((long) (SUB_BUCKETS + sub + 1) << (power - 2)) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.myappnew.services.llm;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Daily token and cost budget for LLM calls, checked by {@link BudgetLlmService} before each call.
+ *
+ * <ul>
+ *     <li>Below the soft limits everything is sent as requested.</li>
+ *     <li>Past a soft limit interactive requests are sent in economy mode (a cheaper model and a
+ *     shorter reply, see {@link LlmRequest#isEconomy()}) and background/batch work is refused.</li>
+ *     <li>Past a hard limit every request is refused until the next local day.</li>
+ * </ul>
+ *
+ * Cached replies are served above this check and never count. A limit of 0 disables it. Costs are
+ * estimates from list prices, in millionths of a US dollar.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>BudgetLlmServiceTest</code>: levels switch at each limit, disabled limits are
+ *     ignored, and costs follow the price table.</li>
+ * </ul>
+ * ---
+ */
+public final class LlmBudget {
+
+    public enum Level { NORMAL, SOFT, HARD }
+
+    public static final class Limits {
+        /** About 100 journal analyses a day before degrading; a runaway loop stops at about 250. */
+        public static final Limits DEFAULT = new Limits(200_000, 500_000, 500_000, 1_000_000);
+
+        public final long softTokens;
+        public final long hardTokens;
+        public final long softCostMicros;
+        public final long hardCostMicros;
+
+        public Limits(long softTokens, long hardTokens, long softCostMicros, long hardCostMicros) {
+            this.softTokens = softTokens;
+            this.hardTokens = hardTokens;
+            this.softCostMicros = softCostMicros;
+            this.hardCostMicros = hardCostMicros;
+        }
+    }
+
+    /** List prices per million input/output tokens, in micro-dollars (prompts up to 128k tokens). */
+    private static long inputPricePerMillion(String model) {
+        switch (model) {
+            case GeminiLlmServiceImpl.MODEL_NAME:
+                return 75_000;
+            case GeminiLlmServiceImpl.ECONOMY_MODEL_NAME:
+                return 37_500;
+            case DeepSeekLlmServiceImpl.MODEL_NAME:
+                return 270_000;
+            default:
+                return 0;
+        }
+    }
+
+    private static long outputPricePerMillion(String model) {
+        switch (model) {
+            case GeminiLlmServiceImpl.MODEL_NAME:
+                return 300_000;
+            case GeminiLlmServiceImpl.ECONOMY_MODEL_NAME:
+                return 150_000;
+            case DeepSeekLlmServiceImpl.MODEL_NAME:
+                return 1_100_000;
+            default:
+                return 0;
+        }
+    }
+
+    /** Estimated cost of one call, rounded to the nearest micro-dollar; 0 for unknown models. */
+    public static long costMicros(String model, long promptTokens, long outputTokens) {
+        if (model == null) {
+            return 0;
+        }
+        long scaled = promptTokens * inputPricePerMillion(model) + outputTokens * outputPricePerMillion(model);
+        return (scaled + 500_000) / 1_000_000;
+    }
+
+    static Level levelFor(Limits limits, long tokens, long costMicros) {
+        if (exceeds(tokens, limits.hardTokens) || exceeds(costMicros, limits.hardCostMicros)) {
+            return Level.HARD;
+        }
+        if (exceeds(tokens, limits.softTokens) || exceeds(costMicros, limits.softCostMicros)) {
+            return Level.SOFT;
+        }
+        return Level.NORMAL;
+    }
+
+    private static boolean exceeds(long used, long limit) {
+        return limit > 0 && used >= limit;
+    }
+
+    private final LongSupplier todayTokens;
+    private final LongSupplier todayCostMicros;
+    private volatile Limits limits;
+
+    public LlmBudget(LongSupplier todayTokens, LongSupplier todayCostMicros, Limits limits) {
+        this.todayTokens = todayTokens;
+        this.todayCostMicros = todayCostMicros;
+        this.limits = limits;
+    }
+
+    public Level level() {
+        return levelFor(limits, todayTokens.getAsLong(), todayCostMicros.getAsLong());
+    }
+
+    public long todayTokens() {
+        return todayTokens.getAsLong();
+    }
+
+    public long todayCostMicros() {
+        return todayCostMicros.getAsLong();
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    public void setLimits(Limits limits) {
+        this.limits = limits;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.myappnew.services.llm;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * The LLM calls a screen has in flight, cancelled together when the screen goes away.
+ *
+ * Bind it to the fragment's view lifecycle ({@code bindTo(getViewLifecycleOwner())} in
+ * {@code onViewCreated}) and start calls through it. On {@code onDestroyView} every outstanding
+ * call is cancelled, which aborts the HTTP request (or removes it from the scheduler's queue), and
+ * callbacks that are already on their way are dropped, so no reply is parsed for a dead view.
+ * Calls started after that are cancelled immediately.
+ *
+ * Streams and calls started through the registry are forgotten when they finish; handles passed
+ * to {@link #track} are kept until the view is destroyed.
+ */
+public final class LlmCallRegistry implements DefaultLifecycleObserver {
+
+    private static final String TAG = "LlmCallRegistry";
+
+    private final Set<LlmStream> streams = new LinkedHashSet<>(); // guarded by this
+    private final Set<Call<?>> calls = new LinkedHashSet<>(); // guarded by this
+    private boolean destroyed; // guarded by this
+
+    private LlmCallRegistry() {}
+
+    public static LlmCallRegistry bindTo(LifecycleOwner owner) {
+        LlmCallRegistry registry = new LlmCallRegistry();
+        owner.getLifecycle().addObserver(registry);
+        return registry;
+    }
+
+    /** Streams through {@code service}; {@code listener} hears nothing once the view is destroyed. */
+    public LlmStream streamText(LlmService service, LlmRequest request, StreamListener listener) {
+        PendingLlmStream handle = new PendingLlmStream();
+        if (!add(handle)) {
+            handle.cancel();
+            return handle;
+        }
+        handle.attach(service.streamText(request, new StreamListener() {
+            @Override
+            public void onChunk(String delta) {
+                if (isLive(handle)) {
+                    listener.onChunk(delta);
+                }
+            }
+
+            @Override
+            public void onComplete(LlmResponse response) {
+                if (remove(handle)) {
+                    listener.onComplete(response);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (remove(handle)) {
+                    listener.onError(t);
+                }
+            }
+        }));
+        return handle;
+    }
+
+    /** Enqueues {@code call}; {@code callback} hears nothing once the view is destroyed. */
+    public <T> void enqueue(Call<T> call, Callback<T> callback) {
+        boolean accepted;
+        synchronized (this) {
+            accepted = !destroyed;
+            if (accepted) {
+                calls.add(call);
+            }
+        }
+        if (!accepted) {
+            call.cancel();
+            return;
+        }
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> c, Response<T> response) {
+                if (removeCall(call)) {
+                    callback.onResponse(c, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> c, Throwable t) {
+                if (removeCall(call)) {
+                    callback.onFailure(c, t);
+                }
+            }
+        });
+    }
+
+    /** Cancels {@code stream} with the view; for handles returned by services that start calls themselves. */
+    public LlmStream track(LlmStream stream) {
+        if (!add(stream)) {
+            stream.cancel();
+        }
+        return stream;
+    }
+
+    public synchronized boolean isDestroyed() {
+        return destroyed;
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        owner.getLifecycle().removeObserver(this);
+        cancelAll();
+    }
+
+    /** Cancels everything in flight; also what happens on {@code onDestroyView}. */
+    public void cancelAll() {
+        List<LlmStream> pendingStreams;
+        List<Call<?>> pendingCalls;
+        synchronized (this) {
+            destroyed = true;
+            pendingStreams = new ArrayList<>(streams);
+            pendingCalls = new ArrayList<>(calls);
+            streams.clear();
+            calls.clear();
+        }
+        for (LlmStream stream : pendingStreams) {
+            stream.cancel();
+        }
+        for (Call<?> call : pendingCalls) {
+            call.cancel();
+        }
+        if (!pendingStreams.isEmpty() || !pendingCalls.isEmpty()) {
+            Log.d(TAG, "cancelled " + pendingStreams.size() + " stream(s) and "
+                    + pendingCalls.size() + " call(s) with the view");
+        }
+    }
+
+    private synchronized boolean add(LlmStream stream) {
+        if (destroyed) {
+            return false;
+        }
+        streams.add(stream);
+        return true;
+    }
+
+    private synchronized boolean isLive(LlmStream stream) {
+        return streams.contains(stream);
+    }
+
+    private synchronized boolean remove(LlmStream stream) {
+        return streams.remove(stream);
+    }
+
+    private synchronized boolean removeCall(Call<?> call) {
+        return calls.remove(call);
+    }
+}
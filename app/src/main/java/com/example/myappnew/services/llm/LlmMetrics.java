@@ -0,0 +1,267 @@
+package com.example.myappnew.services.llm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Counters and histograms for LLM calls, one {@link Series} per provider and call site
+ * ({@link LlmRequest#getCallSite()}). Filled by {@link MetricsLlmService}; read by the
+ * diagnostics panel in Settings and dumped as JSON for bug reports.
+ *
+ * Everything is lock-free: counters are {@link LongAdder}s, which stripe contended updates over
+ * per-thread cells, and latencies and sizes go into {@link Histogram}s. Recording from many
+ * callback threads therefore never waits on a reader.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>LlmMetricsTest</code>: successes, failures and cancellations land in the right
+ *     series, HTTP errors are classed by status, and usage and finish reasons are summed.</li>
+ * </ul>
+ * ---
+ */
+public final class LlmMetrics {
+
+    private static final Pattern HTTP_STATUS = Pattern.compile("HTTP (\\d{3})");
+
+    /** Measurements for one provider at one call site. */
+    public static final class Series {
+        public final String provider;
+        public final String callSite;
+
+        final LongAdder requests = new LongAdder();
+        final LongAdder successes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder cancellations = new LongAdder();
+        final LongAdder promptTokens = new LongAdder();
+        final LongAdder outputTokens = new LongAdder();
+        final Histogram latencyMs = new Histogram();
+        final Histogram timeToFirstByteMs = new Histogram();
+        final Histogram requestBytes = new Histogram();
+        final Histogram responseBytes = new Histogram();
+        final ConcurrentHashMap<String, LongAdder> finishReasons = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> errorClasses = new ConcurrentHashMap<>();
+
+        Series(String provider, String callSite) {
+            this.provider = provider;
+            this.callSite = callSite;
+        }
+
+        public long requests() { return requests.sum(); }
+        public long successes() { return successes.sum(); }
+        public long failures() { return failures.sum(); }
+        public long cancellations() { return cancellations.sum(); }
+        public long promptTokens() { return promptTokens.sum(); }
+        public long outputTokens() { return outputTokens.sum(); }
+        public Histogram latencyMs() { return latencyMs; }
+        public Histogram timeToFirstByteMs() { return timeToFirstByteMs; }
+        public Map<String, Long> finishReasons() { return snapshot(finishReasons); }
+        public Map<String, Long> errorClasses() { return snapshot(errorClasses); }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("provider", provider);
+            json.addProperty("callSite", callSite);
+            json.addProperty("requests", requests());
+            json.addProperty("successes", successes());
+            json.addProperty("failures", failures());
+            json.addProperty("cancellations", cancellations());
+            json.addProperty("promptTokens", promptTokens());
+            json.addProperty("outputTokens", outputTokens());
+            json.add("latencyMs", histogramJson(latencyMs));
+            json.add("timeToFirstByteMs", histogramJson(timeToFirstByteMs));
+            json.add("requestBytes", histogramJson(requestBytes));
+            json.add("responseBytes", histogramJson(responseBytes));
+            json.add("finishReasons", countsJson(finishReasons()));
+            json.add("errorClasses", countsJson(errorClasses()));
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return provider + "/" + callSite + ": " + requests() + " req, " + successes() + " ok, "
+                    + failures() + " failed, " + cancellations() + " cancelled"
+                    + "\n  latency p50/p95/p99=" + latencyMs.percentile(0.5) + "/" + latencyMs.percentile(0.95)
+                    + "/" + latencyMs.percentile(0.99) + "ms, ttfb p50/p95=" + timeToFirstByteMs.percentile(0.5)
+                    + "/" + timeToFirstByteMs.percentile(0.95) + "ms"
+                    + "\n  tokens in/out=" + promptTokens() + "/" + outputTokens()
+                    + ", bytes in/out p50=" + requestBytes.percentile(0.5) + "/" + responseBytes.percentile(0.5)
+                    + (finishReasons.isEmpty() ? "" : "\n  finish " + finishReasons())
+                    + (errorClasses.isEmpty() ? "" : "\n  errors " + errorClasses());
+        }
+    }
+
+    /** Told about every reply that reported token usage, successful or not. */
+    public interface UsageListener {
+        void onUsage(String provider, LlmResponse response);
+    }
+
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+    private final long startedAtMs = System.currentTimeMillis();
+    private volatile UsageListener usageListener;
+
+    /** Used to feed the daily token budget; see {@code LlmUsageStore}. */
+    public void setUsageListener(UsageListener listener) {
+        this.usageListener = listener;
+    }
+
+    public Series series(String provider, String callSite) {
+        String site = callSite != null ? callSite : "other";
+        return series.computeIfAbsent(provider + "/" + site, key -> new Series(provider, site));
+    }
+
+    /** Called when a request is sent, with the size of its prompt and parts. */
+    void recordRequest(Series s, long requestBytes) {
+        s.requests.increment();
+        s.requestBytes.record(requestBytes);
+    }
+
+    void recordFirstByte(Series s, long elapsedMs) {
+        s.timeToFirstByteMs.record(elapsedMs);
+    }
+
+    void recordSuccess(Series s, long latencyMs, LlmResponse response) {
+        s.successes.increment();
+        s.latencyMs.record(latencyMs);
+        String text = response.getGeneratedText();
+        s.responseBytes.record(text != null ? utf8Length(text) : 0);
+        recordUsage(s, response);
+    }
+
+    void recordFailure(Series s, long latencyMs, Throwable t) {
+        s.failures.increment();
+        s.latencyMs.record(latencyMs);
+        Throwable cause = unwrap(t);
+        if (cause instanceof EmptyReplyException) {
+            recordUsage(s, ((EmptyReplyException) cause).getResponse());
+        }
+        increment(s.errorClasses, errorClass(cause));
+    }
+
+    void recordCancelled(Series s) {
+        s.cancellations.increment();
+    }
+
+    private void recordUsage(Series s, LlmResponse response) {
+        if (response == null) {
+            return;
+        }
+        s.promptTokens.add(response.getPromptTokens());
+        s.outputTokens.add(response.getOutputTokens());
+        UsageListener listener = usageListener;
+        if (listener != null && response.getPromptTokens() + response.getOutputTokens() > 0) {
+            listener.onUsage(s.provider, response);
+        }
+        if (response.getBlockReason() != null) {
+            increment(s.finishReasons, "BLOCKED_" + response.getBlockReason());
+        } else if (response.getFinishReason() != null) {
+            increment(s.finishReasons, response.getFinishReason().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /** A short, stable name for grouping errors: the HTTP status when there is one, else the type. */
+    static String errorClass(Throwable t) {
+        Throwable cause = unwrap(t);
+        if (cause instanceof SchedulingLlmService.HttpStatusException) {
+            return "HTTP " + ((SchedulingLlmService.HttpStatusException) cause).response.code();
+        }
+        if (cause.getMessage() != null) {
+            Matcher status = HTTP_STATUS.matcher(cause.getMessage());
+            if (status.find()) {
+                return "HTTP " + status.group(1);
+            }
+        }
+        return cause.getClass().getSimpleName();
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        Throwable cause = t;
+        while ((cause instanceof ExecutionException || cause instanceof CompletionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /** All series, ordered by provider then call site. */
+    public List<Series> getSeries() {
+        List<Series> all = new ArrayList<>(new TreeMap<>(series).values());
+        return Collections.unmodifiableList(all);
+    }
+
+    public void reset() {
+        series.clear();
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("since", startedAtMs);
+        JsonArray all = new JsonArray();
+        for (Series s : getSeries()) {
+            all.add(s.toJson());
+        }
+        json.add("series", all);
+        return json;
+    }
+
+    private static void increment(ConcurrentHashMap<String, LongAdder> counts, String key) {
+        counts.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> snapshot(ConcurrentHashMap<String, LongAdder> counts) {
+        Map<String, Long> copy = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().sum());
+        }
+        return copy;
+    }
+
+    private static JsonObject histogramJson(Histogram h) {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", h.count());
+        json.addProperty("mean", h.mean());
+        json.addProperty("p50", h.percentile(0.5));
+        json.addProperty("p95", h.percentile(0.95));
+        json.addProperty("p99", h.percentile(0.99));
+        json.addProperty("max", h.max());
+        return json;
+    }
+
+    private static JsonObject countsJson(Map<String, Long> counts) {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            json.addProperty(entry.getKey(), entry.getValue());
+        }
+        return json;
+    }
+
+    static long utf8Length(String s) {
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
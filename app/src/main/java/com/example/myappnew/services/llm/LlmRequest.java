@@ -1,10 +1,47 @@
 package com.example.myappnew.services.llm;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class LlmRequest {
+    /** Scheduling lane; see {@link LlmScheduler}. Interactive requests are dispatched first. */
+    public enum Priority { INTERACTIVE, BACKGROUND, BATCH }
+
     String prompt;
     // Add other common parameters like temperature, maxTokens, etc.
     // Potentially a way to specify the target model/provider
 
+    /**
+     * Inline media sent along with the prompt, in order. Transient so the Retrofit/Gson body of
+     * text-only providers never serializes raw bytes; providers that accept media map these
+     * parts themselves (see {@link GeminiLlmServiceImpl}).
+     */
+    transient List<Part> parts;
+
+    /** Client-side only, like {@link #parts}; never sent to a provider. */
+    transient Priority priority = Priority.INTERACTIVE;
+
+    /** Feature that issued the request, for {@link LlmMetrics}; client-side only and not part of the cache key. */
+    transient String callSite = "other";
+
+    /** Reply length cap for economy requests, in output tokens. */
+    static final int ECONOMY_MAX_OUTPUT_TOKENS = 512;
+
+    /**
+     * Set on a copy ({@link #withEconomy()}) by {@link BudgetLlmService} past the daily soft limit,
+     * or by callers whose work is cheap anyway: providers use their cheaper model if they have one,
+     * cap the reply at {@link #ECONOMY_MAX_OUTPUT_TOKENS} and mark the reply
+     * {@linkplain LlmResponse#isEconomy() economy}. Client-side only.
+     */
+    transient boolean economy;
+
+    /**
+     * Whether {@link SchedulingLlmService} may retry transient failures. Cleared by
+     * {@link RoutingLlmService} when another provider can take over. Client-side only.
+     */
+    transient boolean retries = true;
+
     public LlmRequest(String prompt) {
         this.prompt = prompt;
     }
@@ -12,4 +49,104 @@ public class LlmRequest {
     // Getters and setters
     public String getPrompt() { return prompt; }
     public void setPrompt(String prompt) { this.prompt = prompt; }
+
+    public Priority getPriority() { return priority; }
+
+    public LlmRequest setPriority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public String getCallSite() { return callSite; }
+
+    public LlmRequest setCallSite(String callSite) {
+        this.callSite = callSite;
+        return this;
+    }
+
+    public boolean isEconomy() { return economy; }
+
+    public LlmRequest setEconomy(boolean economy) {
+        this.economy = economy;
+        return this;
+    }
+
+    public boolean allowsRetries() { return retries; }
+
+    /** A copy of this request that {@link SchedulingLlmService} tries only once. */
+    LlmRequest withoutRetries() {
+        LlmRequest copy = copy();
+        copy.retries = false;
+        return copy;
+    }
+
+    /** A copy of this request in economy mode; the caller's request is left as it was. */
+    LlmRequest withEconomy() {
+        LlmRequest copy = copy();
+        copy.economy = true;
+        return copy;
+    }
+
+    private LlmRequest copy() {
+        LlmRequest copy = new LlmRequest(prompt);
+        copy.parts = parts;
+        copy.priority = priority;
+        copy.callSite = callSite;
+        copy.economy = economy;
+        copy.retries = retries;
+        return copy;
+    }
+
+    /** Media parts in the order they were added; never null. */
+    public List<Part> getParts() {
+        return parts == null ? Collections.emptyList() : Collections.unmodifiableList(parts);
+    }
+
+    public boolean hasMedia() {
+        return parts != null && !parts.isEmpty();
+    }
+
+    public LlmRequest addText(String text) {
+        return addPart(new Part(Part.Kind.TEXT, text, null, null));
+    }
+
+    /** {@code data} is the already-encoded file (e.g. JPEG/WebP bytes); it is not copied. */
+    public LlmRequest addImage(byte[] data, String mimeType) {
+        return addPart(new Part(Part.Kind.IMAGE, null, data, mimeType));
+    }
+
+    /** {@code data} is the recorded file as-is (e.g. AAC/AMR/MP4 audio); it is not copied. */
+    public LlmRequest addAudio(byte[] data, String mimeType) {
+        return addPart(new Part(Part.Kind.AUDIO, null, data, mimeType));
+    }
+
+    private LlmRequest addPart(Part part) {
+        if (parts == null) {
+            parts = new ArrayList<>(2);
+        }
+        parts.add(part);
+        return this;
+    }
+
+    /** One piece of a multimodal request: text, or inline bytes with their MIME type. */
+    public static final class Part {
+        public enum Kind { TEXT, IMAGE, AUDIO }
+
+        private final Kind kind;
+        private final String text;
+        private final byte[] data;
+        private final String mimeType;
+
+        Part(Kind kind, String text, byte[] data, String mimeType) {
+            this.kind = kind;
+            this.text = text;
+            this.data = data;
+            this.mimeType = mimeType;
+        }
+
+        public Kind getKind() { return kind; }
+        public String getText() { return text; }
+        public byte[] getData() { return data; }
+        public String getMimeType() { return mimeType; }
+    }
 }
@@ -0,0 +1,78 @@
+package com.example.myappnew.services.llm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+/**
+ * Derives a stable identity for an {@link LlmRequest}: SHA-256 (hex) over the model, the
+ * normalized prompt and every part in order. Economy requests hash as a distinct model, since
+ * they are answered by a cheaper model with a capped reply length. Media parts contribute their kind, MIME type and a
+ * hash of their bytes, so the key stays small no matter how large the attachment is.
+ *
+ * Normalization applies Unicode NFC, trims, and collapses whitespace runs to one space, so prompts
+ * that differ only in formatting share a key. Hashing media reads every byte; call off the main
+ * thread for requests with attachments.
+ */
+public final class LlmRequestKeys {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final byte SEPARATOR = 0;
+
+    private LlmRequestKeys() {}
+
+    public static String keyFor(String model, LlmRequest request) {
+        MessageDigest digest = sha256();
+        update(digest, request.isEconomy() ? model + "#economy" : model);
+        update(digest, normalize(request.getPrompt()));
+        for (LlmRequest.Part part : request.getParts()) {
+            update(digest, part.getKind().name());
+            if (part.getKind() == LlmRequest.Part.Kind.TEXT) {
+                update(digest, normalize(part.getText()));
+            } else {
+                update(digest, part.getMimeType());
+                MessageDigest media = sha256();
+                if (part.getData() != null) {
+                    media.update(part.getData());
+                }
+                digest.update(media.digest());
+                digest.update(SEPARATOR);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String composed = Normalizer.normalize(text, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(composed.trim()).replaceAll(" ");
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // Field boundary, so ("ab", "c") and ("a", "bc") hash differently.
+        digest.update(SEPARATOR);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
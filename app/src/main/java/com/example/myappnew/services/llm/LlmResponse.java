@@ -4,10 +4,38 @@ public class LlmResponse {
     String generatedText;
     String error;
     // Add other relevant fields from a typical LLM response
+    /** Milliseconds from request to first streamed chunk; equals latencyMs for non-streamed replies. */
+    long timeToFirstTokenMs;
+    long latencyMs;
+    /** Token counts reported by the provider; 0 when it did not report usage. */
+    int promptTokens;
+    int outputTokens;
+    /** Why generation stopped (e.g. STOP, MAX_TOKENS, SAFETY) and why a prompt was blocked, if reported. */
+    String finishReason;
+    String blockReason;
+    /** Model that produced the reply, for usage accounting; null if unknown (e.g. cached or mocked). */
+    String model;
+    /** Whether the provider answered in economy mode (see {@link LlmRequest#isEconomy()}); not part of the JSON. */
+    transient boolean economy;
 
     // Constructors, getters, and setters
     public String getGeneratedText() { return generatedText; }
     public void setGeneratedText(String generatedText) { this.generatedText = generatedText; }
     public String getError() { return error; }
     public void setError(String error) { this.error = error; }
+    public long getTimeToFirstTokenMs() { return timeToFirstTokenMs; }
+    public void setTimeToFirstTokenMs(long timeToFirstTokenMs) { this.timeToFirstTokenMs = timeToFirstTokenMs; }
+    public long getLatencyMs() { return latencyMs; }
+    public void setLatencyMs(long latencyMs) { this.latencyMs = latencyMs; }
+    public int getPromptTokens() { return promptTokens; }
+    public int getOutputTokens() { return outputTokens; }
+    public void setUsage(int promptTokens, int outputTokens) { this.promptTokens = promptTokens; this.outputTokens = outputTokens; }
+    public String getFinishReason() { return finishReason; }
+    public void setFinishReason(String finishReason) { this.finishReason = finishReason; }
+    public String getBlockReason() { return blockReason; }
+    public void setBlockReason(String blockReason) { this.blockReason = blockReason; }
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+    public boolean isEconomy() { return economy; }
+    public void setEconomy(boolean economy) { this.economy = economy; }
 }
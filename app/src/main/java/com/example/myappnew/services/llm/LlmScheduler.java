@@ -0,0 +1,294 @@
+package com.example.myappnew.services.llm;
+
+import android.util.Log;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Dispatches LLM calls for one provider.
+ *
+ * <ul>
+ *     <li>One FIFO lane per {@link LlmRequest.Priority}; a lane is served only when every more
+ *     urgent lane is empty, so a tap never waits behind batch work that has not started yet.</li>
+ *     <li>At most {@link Config#maxConcurrent} attempts run at once.</li>
+ *     <li>Every attempt, retries included, takes a permit from a {@link TokenBucket} sized to the
+ *     provider's requests-per-minute quota. When it is empty, dispatch resumes once a permit refills.</li>
+ *     <li>Failures the task marks as retryable (rate limiting, timeouts, 5xx) are retried up to
+ *     {@link Config#maxAttempts} times with exponential backoff and full jitter, re-entering the
+ *     back of their lane.</li>
+ * </ul>
+ * Cancelling the future returned by {@link #submit} removes a queued task or cancels the running
+ * attempt. Queue depth, wait time and retry counters are available from {@link #getStats()}.
+ *
+ * The scheduler uses no Android classes other than {@code Log} and is unit-tested in <code>LlmSchedulerTest</code>.
+ */
+public final class LlmScheduler {
+
+    private static final String TAG = "LlmScheduler";
+
+    /** Limits for one provider. */
+    public static final class Config {
+        final int maxConcurrent;
+        final int requestsPerMinute;
+        final int burst;
+        final int maxAttempts;
+        final long baseBackoffMs;
+        final long maxBackoffMs;
+
+        public Config(int maxConcurrent, int requestsPerMinute, int burst,
+                      int maxAttempts, long baseBackoffMs, long maxBackoffMs) {
+            this.maxConcurrent = maxConcurrent;
+            this.requestsPerMinute = requestsPerMinute;
+            this.burst = burst;
+            this.maxAttempts = maxAttempts;
+            this.baseBackoffMs = baseBackoffMs;
+            this.maxBackoffMs = maxBackoffMs;
+        }
+    }
+
+    /** Snapshot of the scheduler's counters. Wait times run from submission (or retry) to dispatch. */
+    public static final class Stats {
+        public final Map<LlmRequest.Priority, Integer> queueDepth;
+        public final Map<LlmRequest.Priority, Long> averageWaitMs;
+        public final Map<LlmRequest.Priority, Long> maxWaitMs;
+        public final int running;
+        public final long dispatched;
+        public final long retries;
+        public final long rateLimitedWaits;
+
+        Stats(Map<LlmRequest.Priority, Integer> queueDepth, Map<LlmRequest.Priority, Long> averageWaitMs,
+              Map<LlmRequest.Priority, Long> maxWaitMs, int running, long dispatched, long retries, long rateLimitedWaits) {
+            this.queueDepth = queueDepth;
+            this.averageWaitMs = averageWaitMs;
+            this.maxWaitMs = maxWaitMs;
+            this.running = running;
+            this.dispatched = dispatched;
+            this.retries = retries;
+            this.rateLimitedWaits = rateLimitedWaits;
+        }
+
+        @Override
+        public String toString() {
+            return "queued=" + queueDepth + " avgWaitMs=" + averageWaitMs + " maxWaitMs=" + maxWaitMs
+                    + " running=" + running + " dispatched=" + dispatched + " retries=" + retries
+                    + " rateLimitedWaits=" + rateLimitedWaits;
+        }
+    }
+
+    private static final class Task<T> {
+        final LlmRequest.Priority priority;
+        final Supplier<ListenableFuture<T>> attempt;
+        final Predicate<Throwable> retryable;
+        final SettableFuture<T> result = SettableFuture.create();
+        long enqueuedNanos;
+        int attempts;
+        volatile ListenableFuture<T> current;
+
+        Task(LlmRequest.Priority priority, Supplier<ListenableFuture<T>> attempt, Predicate<Throwable> retryable) {
+            this.priority = priority;
+            this.attempt = attempt;
+            this.retryable = retryable;
+        }
+    }
+
+    private final String name;
+    private final Config config;
+    private final TokenBucket bucket;
+    private final ScheduledExecutorService timer;
+    private final LongSupplier nanoClock;
+    private final Random random = new Random();
+
+    private final Map<LlmRequest.Priority, ArrayDeque<Task<?>>> lanes = new EnumMap<>(LlmRequest.Priority.class);
+    private final Map<LlmRequest.Priority, long[]> waitTotals = new EnumMap<>(LlmRequest.Priority.class); // {count, totalNanos, maxNanos}
+    private int running;
+    private boolean wakeUpScheduled;
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rateLimitedWaits = new AtomicLong();
+
+    public LlmScheduler(String name, Config config, ScheduledExecutorService timer) {
+        this(name, config, timer, System::nanoTime);
+    }
+
+    LlmScheduler(String name, Config config, ScheduledExecutorService timer, LongSupplier nanoClock) {
+        this.name = name;
+        this.config = config;
+        this.timer = timer;
+        this.nanoClock = nanoClock;
+        this.bucket = TokenBucket.forQuota(config.requestsPerMinute, config.burst, nanoClock);
+        for (LlmRequest.Priority priority : LlmRequest.Priority.values()) {
+            lanes.put(priority, new ArrayDeque<>());
+            waitTotals.put(priority, new long[3]);
+        }
+    }
+
+    /**
+     * Queues {@code attempt} in {@code priority}'s lane. {@code attempt} is called once per try and
+     * must only start the work; {@code retryable} decides whether a failed try is retried.
+     */
+    public <T> ListenableFuture<T> submit(LlmRequest.Priority priority, Supplier<ListenableFuture<T>> attempt,
+                                          Predicate<Throwable> retryable) {
+        Task<T> task = new Task<>(priority, attempt, retryable);
+        task.result.addListener(() -> {
+            if (task.result.isCancelled()) {
+                synchronized (this) {
+                    lanes.get(task.priority).remove(task);
+                }
+                ListenableFuture<T> current = task.current;
+                if (current != null) {
+                    current.cancel(true);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        enqueue(task);
+        return task.result;
+    }
+
+    public synchronized Stats getStats() {
+        Map<LlmRequest.Priority, Integer> depth = new EnumMap<>(LlmRequest.Priority.class);
+        Map<LlmRequest.Priority, Long> average = new EnumMap<>(LlmRequest.Priority.class);
+        Map<LlmRequest.Priority, Long> max = new EnumMap<>(LlmRequest.Priority.class);
+        for (LlmRequest.Priority priority : LlmRequest.Priority.values()) {
+            long[] totals = waitTotals.get(priority);
+            depth.put(priority, lanes.get(priority).size());
+            average.put(priority, totals[0] == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totals[1] / totals[0]));
+            max.put(priority, TimeUnit.NANOSECONDS.toMillis(totals[2]));
+        }
+        return new Stats(depth, average, max, running, dispatched.get(), retries.get(), rateLimitedWaits.get());
+    }
+
+    private void enqueue(Task<?> task) {
+        if (task.result.isDone()) {
+            return;
+        }
+        synchronized (this) {
+            task.enqueuedNanos = nanoClock.getAsLong();
+            lanes.get(task.priority).addLast(task);
+        }
+        drain();
+    }
+
+    private void drain() {
+        List<Task<?>> toStart = new ArrayList<>();
+        synchronized (this) {
+            while (running < config.maxConcurrent) {
+                ArrayDeque<Task<?>> lane = nextLane();
+                if (lane == null) {
+                    break;
+                }
+                if (!bucket.tryAcquire()) {
+                    scheduleWakeUp(bucket.nanosUntilAvailable());
+                    break;
+                }
+                Task<?> task = lane.pollFirst();
+                recordWait(task);
+                running++;
+                toStart.add(task);
+            }
+        }
+        for (Task<?> task : toStart) {
+            start(task);
+        }
+    }
+
+    private ArrayDeque<Task<?>> nextLane() {
+        for (LlmRequest.Priority priority : LlmRequest.Priority.values()) {
+            ArrayDeque<Task<?>> lane = lanes.get(priority);
+            if (!lane.isEmpty()) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    private void recordWait(Task<?> task) {
+        long waited = nanoClock.getAsLong() - task.enqueuedNanos;
+        long[] totals = waitTotals.get(task.priority);
+        totals[0]++;
+        totals[1] += waited;
+        totals[2] = Math.max(totals[2], waited);
+    }
+
+    private void scheduleWakeUp(long delayNanos) {
+        if (wakeUpScheduled) {
+            return;
+        }
+        wakeUpScheduled = true;
+        rateLimitedWaits.incrementAndGet();
+        timer.schedule(() -> {
+            synchronized (this) {
+                wakeUpScheduled = false;
+            }
+            drain();
+        }, Math.max(1, delayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private <T> void start(Task<T> task) {
+        task.attempts++;
+        dispatched.incrementAndGet();
+        ListenableFuture<T> attempt;
+        try {
+            attempt = task.attempt.get();
+        } catch (RuntimeException e) {
+            SettableFuture<T> failed = SettableFuture.create();
+            failed.setException(e);
+            attempt = failed;
+        }
+        task.current = attempt;
+        if (task.result.isCancelled()) {
+            attempt.cancel(true);
+        }
+        ListenableFuture<T> finished = attempt;
+        attempt.addListener(() -> onAttemptDone(task, finished), MoreExecutors.directExecutor());
+    }
+
+    private <T> void onAttemptDone(Task<T> task, ListenableFuture<T> attempt) {
+        synchronized (this) {
+            running--;
+        }
+        try {
+            task.result.set(attempt.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (task.attempts < config.maxAttempts && !task.result.isDone() && task.retryable.test(cause)) {
+                long delayMs = backoffMs(task.attempts);
+                retries.incrementAndGet();
+                Log.w(TAG, name + ": attempt " + task.attempts + " failed ("
+                        + cause + "), retrying in " + delayMs + " ms");
+                timer.schedule(() -> enqueue(task), delayMs, TimeUnit.MILLISECONDS);
+            } else {
+                task.result.setException(cause);
+            }
+        } catch (InterruptedException e) {
+            // Not reachable: the attempt is done, so get() does not block.
+            Thread.currentThread().interrupt();
+            task.result.setException(e);
+        } catch (CancellationException e) {
+            task.result.cancel(false);
+        }
+        drain();
+    }
+
+    /** Full jitter: uniformly random in [0, min(max, base * 2^(attempt-1))]. */
+    long backoffMs(int attempt) {
+        long ceiling = Math.min(config.maxBackoffMs, config.baseBackoffMs << Math.min(20, attempt - 1));
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.myappnew.services.llm;
 
 import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
 import retrofit2.http.Body;
 import retrofit2.http.POST;
 
@@ -10,6 +12,56 @@ public interface LlmService {
     @POST("generate") // This is a generic placeholder path
     Call<LlmResponse> generateText(@Body LlmRequest request);
 
+    /**
+     * Streams the reply to {@code listener} as it is generated. Providers that cannot stream
+     * inherit this fallback, which delivers the whole reply as a single chunk.
+     */
+    default LlmStream streamText(LlmRequest request, StreamListener listener) {
+        TimedStreamListener timed = new TimedStreamListener("LlmService", listener);
+        Call<LlmResponse> call = generateText(request);
+        call.enqueue(new Callback<LlmResponse>() {
+            @Override
+            public void onResponse(Call<LlmResponse> call, Response<LlmResponse> response) {
+                LlmResponse body = response.body();
+                if (response.isSuccessful() && body != null && body.getGeneratedText() != null) {
+                    timed.onChunk(body.getGeneratedText());
+                    timed.onComplete(body);
+                } else if (response.isSuccessful() && body != null) {
+                    timed.onError(new EmptyReplyException(body));
+                } else {
+                    // A non-2xx response has no body; the provider's explanation is in the error body.
+                    String error = "HTTP " + response.code();
+                    try {
+                        String detail = response.errorBody() != null ? response.errorBody().string() : "";
+                        if (!detail.isEmpty()) {
+                            error += ": " + detail;
+                        }
+                    } catch (java.io.IOException e) {
+                        // keep just the status
+                    }
+                    timed.onError(new java.io.IOException(error));
+                }
+            }
+
+            @Override
+            public void onFailure(Call<LlmResponse> call, Throwable t) {
+                timed.onError(t);
+            }
+        });
+        return new LlmStream() {
+            @Override
+            public void cancel() {
+                timed.cancel();
+                call.cancel();
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return timed.isCancelled();
+            }
+        };
+    }
+
     // Add other methods as needed, e.g., for specific models or tasks
     // LlmResponse analyzeSentiment(LlmRequest request);
     // LlmResponse translateText(LlmRequest request);
@@ -1,10 +1,32 @@
 package com.example.myappnew.services.llm;
 
+import com.example.myappnew.AppExecutors;
 import com.example.myappnew.BuildConfig;
+import com.example.myappnew.data.LlmResponseCache;
+import com.example.myappnew.data.LlmUsageStore;
+import com.example.myappnew.services.http.SharedHttpClient;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
 import android.util.Log; // Import Log for debugging
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import retrofit2.Call;
 import retrofit2.mock.Calls;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Provides access to Large Language Model (LLM) services.
  * This class will decide which LLM implementation to use (e.g., Gemini, DeepSeek).
@@ -104,9 +126,14 @@ import retrofit2.mock.Calls;
  */
 public class LlmServiceProvider {
 
-    private LlmService serviceImplementation;
+    private final LlmResponseCache responseCache;
+    private final LlmUsageStore usageStore;
+    private final LlmBudget budget;
+    private final SharedPreferences prefs;
+    private final Executor callbackExecutor;
     private String geminiApiKey;
-    // private String deepSeekApiKey; // For future use
+    private String deepSeekApiKey;
+    private String mockMessage;
 
     // Enum to represent the selected LLM provider
     public enum LlmProvider {
@@ -116,28 +143,86 @@ public class LlmServiceProvider {
         MOCK // For when no API key is valid or for testing
     }
 
-    private LlmProvider currentProvider = LlmProvider.MOCK; // Default to MOCK
     private static final String TAG_LLM_PROVIDER = "LlmServiceProvider"; // Log TAG
+    /** Budget limits live next to the other user settings (see SettingsFragment). */
+    private static final String PREFS_NAME = "user_settings";
+    private static final String KEY_BUDGET_SOFT_TOKENS = "llm_budget_soft_tokens";
+    private static final String KEY_BUDGET_HARD_TOKENS = "llm_budget_hard_tokens";
+    private static final String KEY_BUDGET_SOFT_COST = "llm_budget_soft_cost_micros";
+    private static final String KEY_BUDGET_HARD_COST = "llm_budget_hard_cost_micros";
+    private static volatile LlmServiceProvider INSTANCE;
+
+    /** Mock streaming: characters per chunk and delay between chunks, roughly a fast model. */
+    private static final int MOCK_CHUNK_CHARS = 8;
+    private static final long MOCK_CHUNK_DELAY_MS = 40;
+    private static final long MOCK_FIRST_CHUNK_DELAY_MS = 300;
+    private static ScheduledExecutorService mockStreamExecutor;
+
+    /**
+     * Gemini free tier for flash models: 15 requests/minute. Two calls in flight keep a tap
+     * responsive while a background request runs; 429s and 5xx get up to three retries.
+     */
+    private static final LlmScheduler.Config GEMINI_LIMITS = new LlmScheduler.Config(2, 15, 4, 4, 1000, 16_000);
+    /** DeepSeek does not publish a fixed quota; stay well clear of its dynamic throttling. */
+    private static final LlmScheduler.Config DEEPSEEK_LIMITS = new LlmScheduler.Config(4, 60, 8, 4, 1000, 16_000);
+    private static final LlmScheduler.Config MOCK_LIMITS = new LlmScheduler.Config(4, 600, 20, 1, 0, 0);
+
+    /** Preferred provider for new calls (others on its route hedge for it); swapped atomically by {@link #setActiveProvider}. */
+    private final AtomicReference<LlmProvider> activeProvider;
+    /** Routed, cached services keyed by preferred provider, built on first use and kept for the life of the process. */
+    private final Map<LlmProvider, LlmService> services = new EnumMap<>(LlmProvider.class);
+    private final Map<LlmProvider, RoutingLlmService> routers = new EnumMap<>(LlmProvider.class);
+    /** Scheduled client per provider, shared by every route that includes it. */
+    private final Map<LlmProvider, LlmService> backends = new EnumMap<>(LlmProvider.class);
+    private final Map<LlmProvider, LlmScheduler> schedulers = new EnumMap<>(LlmProvider.class);
+    private final Map<LlmProvider, ProviderHealth> health = new EnumMap<>(LlmProvider.class);
+    /** Per-provider, per-call-site counters; recorded below each scheduler, so every attempt counts. */
+    private final LlmMetrics metrics = new LlmMetrics();
+    private ScheduledExecutorService schedulerTimer;
+    private GeminiLlmServiceImpl geminiService;
+
+    /**
+     * The service handed to callers. Each call is routed to the provider active at that moment, so
+     * screens keep one reference across provider switches and in-flight calls finish where they started.
+     */
+    private final LlmService activeService = new LlmService() {
+        @Override
+        public Call<LlmResponse> generateText(LlmRequest request) {
+            return serviceFor(activeProvider.get()).generateText(request);
+        }
 
-    public LlmServiceProvider() {
+        @Override
+        public LlmStream streamText(LlmRequest request, StreamListener listener) {
+            return serviceFor(activeProvider.get()).streamText(request, listener);
+        }
+    };
+
+    private LlmServiceProvider(Context context) {
+        this.responseCache = LlmResponseCache.getInstance(context);
+        this.callbackExecutor = AppExecutors.getInstance().llmCallback();
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.usageStore = LlmUsageStore.getInstance(context);
+        this.budget = new LlmBudget(usageStore::todayTokens, usageStore::todayCostMicros, loadBudgetLimits(prefs));
+        metrics.setUsageListener((provider, response) -> {
+            String model = response.getModel() != null ? response.getModel() : provider;
+            usageStore.record(model, response.getPromptTokens(), response.getOutputTokens(),
+                    LlmBudget.costMicros(model, response.getPromptTokens(), response.getOutputTokens()));
+        });
         this.geminiApiKey = BuildConfig.GEMINI_API_KEY;
-        Log.d(TAG_LLM_PROVIDER, "Read from BuildConfig.GEMINI_API_KEY: [" + this.geminiApiKey + "]"); // DEBUG LINE
-        // this.deepSeekApiKey = BuildConfig.DEEPSEEK_API_KEY; // For future use
+        this.deepSeekApiKey = BuildConfig.DEEPSEEK_API_KEY;
 
-        // Priority: Gemini first for now. This logic will be expanded for user selection.
+        // Only the choice is made here; clients are built on first use by serviceFor().
+        this.mockMessage = "No valid API Key (Gemini, DeepSeek checked). Calls are mocked.";
         if (isValidApiKey(this.geminiApiKey)) {
-            Log.i(TAG_LLM_PROVIDER, "Valid Gemini API Key found. Initializing GeminiLlmServiceImpl.");
-            this.serviceImplementation = new GeminiLlmServiceImpl(this.geminiApiKey);
-            this.currentProvider = LlmProvider.GEMINI;
-        }
-        // else if (isValidApiKey(this.deepSeekApiKey)) { // Future: Add DeepSeek
-        //     System.out.println("LlmServiceProvider: Valid DeepSeek API Key found. Initializing DeepSeekLlmServiceImpl.");
-        //     // this.serviceImplementation = new DeepSeekLlmServiceImpl(this.deepSeekApiKey);
-        //     // this.currentProvider = LlmProvider.DEEPSEEK;
-        // }
+            Log.i(TAG_LLM_PROVIDER, "Valid Gemini API Key found. Gemini is the active provider.");
+            this.activeProvider = new AtomicReference<>(LlmProvider.GEMINI);
+        }
+        else if (isValidApiKey(this.deepSeekApiKey)) {
+            Log.i(TAG_LLM_PROVIDER, "Valid DeepSeek API Key found. DeepSeek is the active provider.");
+            this.activeProvider = new AtomicReference<>(LlmProvider.DEEPSEEK);
+        }
         else {
             Log.w(TAG_LLM_PROVIDER, "No valid API Key found for configured providers. Using MockLlmServiceImpl.");
-            String mockMessage = "No valid API Key (Gemini checked). Calls are mocked.";
             if (this.geminiApiKey == null || this.geminiApiKey.isEmpty()){
                  mockMessage = "Gemini API Key is missing from BuildConfig. Calls are mocked.";
                  Log.w(TAG_LLM_PROVIDER, mockMessage);
@@ -150,9 +235,256 @@ public class LlmServiceProvider {
                  mockMessage = "Gemini API Key [" + this.geminiApiKey + "] was considered invalid by isValidApiKey. Calls are mocked.";
                  Log.w(TAG_LLM_PROVIDER, mockMessage);
             }
-            this.serviceImplementation = createMockService(mockMessage);
-            this.currentProvider = LlmProvider.MOCK;
+            this.activeProvider = new AtomicReference<>(LlmProvider.MOCK);
+        }
+    }
+
+    /** The process-wide provider. Cheap to call; no client is built until the first request or {@link #warmUp()}. */
+    public static LlmServiceProvider getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (LlmServiceProvider.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new LlmServiceProvider(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the active route's clients in the background and, if Gemini is on it, opens the
+     * connection with a token-count request, so the first analysis does not pay for DNS, TLS and setup.
+     */
+    public void warmUp() {
+        callbackExecutor.execute(() -> {
+            serviceFor(activeProvider.get());
+            GeminiLlmServiceImpl gemini;
+            synchronized (this) {
+                gemini = geminiService;
+            }
+            if (gemini != null) {
+                gemini.warmUp();
+            }
+        });
+    }
+
+    /**
+     * The service for calls while {@code preferred} is active. With a real provider preferred, every
+     * other provider with a key joins the route as a hedge and failover target; the mock provider
+     * only ever serves on its own.
+     */
+    private synchronized LlmService serviceFor(LlmProvider preferred) {
+        LlmService service = services.get(preferred);
+        if (service != null) {
+            return service;
+        }
+        List<RoutingLlmService.Route> routes = new ArrayList<>();
+        routes.add(routeFor(preferred));
+        if (preferred != LlmProvider.MOCK) {
+            for (LlmProvider other : LlmProvider.values()) {
+                if (other != preferred && other != LlmProvider.MOCK && isAvailable(other)) {
+                    routes.add(routeFor(other));
+                }
+            }
+        }
+        RoutingLlmService router = new RoutingLlmService(routes, timer());
+        routers.put(preferred, router);
+        service = decorate(router, cacheModelFor(routes));
+        services.put(preferred, service);
+        return service;
+    }
+
+    private RoutingLlmService.Route routeFor(LlmProvider provider) {
+        ProviderHealth providerHealth = health.get(provider);
+        if (providerHealth == null) {
+            providerHealth = new ProviderHealth(provider.name());
+            health.put(provider, providerHealth);
+        }
+        // DeepSeek's chat API is text-only; media requests are routed to the others.
+        return new RoutingLlmService.Route(provider.name(), backendFor(provider), providerHealth,
+                provider != LlmProvider.DEEPSEEK);
+    }
+
+    private LlmService backendFor(LlmProvider provider) {
+        LlmService backend = backends.get(provider);
+        if (backend != null) {
+            return backend;
+        }
+        LlmService implementation;
+        switch (provider) {
+            case GEMINI:
+                Log.i(TAG_LLM_PROVIDER, "Initializing GeminiLlmServiceImpl.");
+                geminiService = new GeminiLlmServiceImpl(geminiApiKey, callbackExecutor);
+                implementation = geminiService;
+                break;
+            case DEEPSEEK:
+                Log.i(TAG_LLM_PROVIDER, "Initializing DeepSeekLlmServiceImpl.");
+                implementation = new DeepSeekLlmServiceImpl(deepSeekApiKey, DeepSeekApi.BASE_URL,
+                        SharedHttpClient.get(), callbackExecutor);
+                break;
+            default:
+                implementation = createMockService(mockMessage);
+                break;
+        }
+        backend = new SchedulingLlmService(new MetricsLlmService(implementation, provider.name(), metrics),
+                schedulerFor(provider));
+        backends.put(provider, backend);
+        return backend;
+    }
+
+    /**
+     * Cache entries are keyed by the set of models a reply may come from, not by which one served
+     * it, so switching the preferred provider keeps the cache. Mock replies get their own id and are
+     * never served once a real key is set.
+     */
+    private static String cacheModelFor(List<RoutingLlmService.Route> routes) {
+        List<String> models = new ArrayList<>();
+        for (RoutingLlmService.Route route : routes) {
+            models.add(modelFor(LlmProvider.valueOf(route.name)));
+        }
+        Collections.sort(models);
+        return TextUtils.join("+", models);
+    }
+
+    private static String modelFor(LlmProvider provider) {
+        switch (provider) {
+            case GEMINI:
+                return GeminiLlmServiceImpl.MODEL_NAME;
+            case DEEPSEEK:
+                return DeepSeekLlmServiceImpl.MODEL_NAME;
+            default:
+                return "mock";
+        }
+    }
+
+    /**
+     * Cache first, so hits never reach the coalescer or the budget; concurrent misses for the same
+     * request then share one budget check and one routed call, whose legs wait their turn in each
+     * provider's scheduler.
+     */
+    private LlmService decorate(LlmService router, String model) {
+        return new CachingLlmService(new CoalescingLlmService(
+                new BudgetLlmService(router, budget, callbackExecutor), model), responseCache, model);
+    }
+
+    private synchronized ScheduledExecutorService timer() {
+        if (schedulerTimer == null) {
+            schedulerTimer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "llm-scheduler"));
+        }
+        return schedulerTimer;
+    }
+
+    private synchronized LlmScheduler schedulerFor(LlmProvider provider) {
+        LlmScheduler scheduler = schedulers.get(provider);
+        if (scheduler == null) {
+            scheduler = new LlmScheduler(provider.name(), limitsFor(provider), timer());
+            schedulers.put(provider, scheduler);
         }
+        return scheduler;
+    }
+
+    private static LlmScheduler.Config limitsFor(LlmProvider provider) {
+        switch (provider) {
+            case GEMINI:
+                return GEMINI_LIMITS;
+            case DEEPSEEK:
+                return DEEPSEEK_LIMITS;
+            default:
+                return MOCK_LIMITS;
+        }
+    }
+
+    /** Hit/miss counters of the response cache shared by all providers. */
+    public LlmResponseCache.Stats getCacheStats() {
+        return responseCache.getStats();
+    }
+
+    /** Hedging and failover counters of the active route. */
+    public synchronized RoutingLlmService.Stats getRoutingStats() {
+        serviceFor(activeProvider.get());
+        return routers.get(activeProvider.get()).getStats();
+    }
+
+    /** Latency percentiles, error rate and circuit state of every provider used so far. */
+    public synchronized List<ProviderHealth.Snapshot> getProviderHealth() {
+        List<ProviderHealth.Snapshot> snapshots = new ArrayList<>();
+        for (ProviderHealth providerHealth : health.values()) {
+            snapshots.add(providerHealth.snapshot());
+        }
+        return snapshots;
+    }
+
+    /** Queue depth, wait times and retries of the active provider's scheduler. */
+    public LlmScheduler.Stats getSchedulerStats() {
+        return schedulerFor(activeProvider.get()).getStats();
+    }
+
+    public LlmMetrics getMetrics() {
+        return metrics;
+    }
+
+    public LlmBudget getBudget() {
+        return budget;
+    }
+
+    /** Daily token usage per model, persisted in Room. */
+    public LlmUsageStore getUsageStore() {
+        return usageStore;
+    }
+
+    /** Applies new daily limits at once and keeps them for the next launch. */
+    public void setBudgetLimits(LlmBudget.Limits limits) {
+        budget.setLimits(limits);
+        prefs.edit()
+                .putLong(KEY_BUDGET_SOFT_TOKENS, limits.softTokens)
+                .putLong(KEY_BUDGET_HARD_TOKENS, limits.hardTokens)
+                .putLong(KEY_BUDGET_SOFT_COST, limits.softCostMicros)
+                .putLong(KEY_BUDGET_HARD_COST, limits.hardCostMicros)
+                .apply();
+    }
+
+    private static LlmBudget.Limits loadBudgetLimits(SharedPreferences prefs) {
+        LlmBudget.Limits defaults = LlmBudget.Limits.DEFAULT;
+        return new LlmBudget.Limits(
+                prefs.getLong(KEY_BUDGET_SOFT_TOKENS, defaults.softTokens),
+                prefs.getLong(KEY_BUDGET_HARD_TOKENS, defaults.hardTokens),
+                prefs.getLong(KEY_BUDGET_SOFT_COST, defaults.softCostMicros),
+                prefs.getLong(KEY_BUDGET_HARD_COST, defaults.hardCostMicros));
+    }
+
+    /**
+     * Everything the diagnostics panel shows, as JSON to attach to bug reports: call metrics,
+     * provider health, routing, scheduler and cache counters. Contains no prompts or replies.
+     */
+    public synchronized String dumpDiagnosticsJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("generatedAt", System.currentTimeMillis());
+        json.addProperty("appVersion", BuildConfig.VERSION_NAME);
+        json.addProperty("activeProvider", activeProvider.get().name());
+        json.add("metrics", metrics.toJson());
+        JsonObject budgetJson = new JsonObject();
+        budgetJson.addProperty("level", budget.level().name());
+        budgetJson.addProperty("todayTokens", budget.todayTokens());
+        budgetJson.addProperty("todayCostMicros", budget.todayCostMicros());
+        budgetJson.addProperty("softTokens", budget.getLimits().softTokens);
+        budgetJson.addProperty("hardTokens", budget.getLimits().hardTokens);
+        json.add("budget", budgetJson);
+        JsonArray providers = new JsonArray();
+        for (ProviderHealth.Snapshot snapshot : getProviderHealth()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("name", snapshot.name);
+            entry.addProperty("state", snapshot.state.name());
+            entry.addProperty("samples", snapshot.samples);
+            entry.addProperty("p50Ms", snapshot.p50Ms);
+            entry.addProperty("p95Ms", snapshot.p95Ms);
+            entry.addProperty("errorRate", snapshot.errorRate);
+            providers.add(entry);
+        }
+        json.add("providerHealth", providers);
+        json.addProperty("routing", getRoutingStats().toString());
+        json.addProperty("scheduler", getSchedulerStats().toString());
+        json.addProperty("cache", getCacheStats().toString());
+        return new GsonBuilder().setPrettyPrinting().create().toJson(json);
     }
 
     private boolean isPlaceholderKey(String apiKey) {
@@ -165,23 +497,37 @@ public class LlmServiceProvider {
         return apiKey != null && !apiKey.isEmpty() && !isPlaceholderKey(apiKey);
     }
 
-    // Public method to allow changing the provider, e.g., from user settings
-    // This is a simplified version; a real app might need more robust lifecycle management
-    public void setActiveProvider(LlmProvider provider) {
-        // This is a placeholder for future user selection logic.
-        // For now, it's determined at construction.
-        // If we were to implement dynamic switching:
-        // switch (provider) {
-        //     case GEMINI:
-        //         if (isValidApiKey(geminiApiKey)) serviceImplementation = new GeminiLlmServiceImpl(geminiApiKey);
-        //         else serviceImplementation = createMockService("Gemini key invalid, using mock.");
-        //         break;
-        //     // Add other cases
-        //     default:
-        //         serviceImplementation = createMockService("Defaulting to mock service.");
-        // }
-        // currentProvider = provider;
-        Log.i(TAG_LLM_PROVIDER, "setActiveProvider called, but dynamic switching is not fully implemented yet. Current provider: " + currentProvider.name());
+    public boolean isAvailable(LlmProvider provider) {
+        switch (provider) {
+            case GEMINI:
+                return isValidApiKey(geminiApiKey);
+            case DEEPSEEK:
+                return isValidApiKey(deepSeekApiKey);
+            case MOCK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public LlmProvider getActiveProvider() {
+        return activeProvider.get();
+    }
+
+    /**
+     * Switches the provider used by every holder of {@link #getService()}. The swap is a single
+     * atomic write: calls already started finish on the previous provider, and clients built
+     * earlier are reused rather than rebuilt. Returns false (and changes nothing) if
+     * {@code provider} has no usable key or implementation.
+     */
+    public boolean setActiveProvider(LlmProvider provider) {
+        if (!isAvailable(provider)) {
+            Log.w(TAG_LLM_PROVIDER, "setActiveProvider: " + provider.name() + " is not available. Current provider: " + activeProvider.get().name());
+            return false;
+        }
+        LlmProvider previous = activeProvider.getAndSet(provider);
+        Log.i(TAG_LLM_PROVIDER, "Active provider switched from " + previous.name() + " to " + provider.name());
+        return true;
     }
 
 
@@ -191,13 +537,15 @@ public class LlmServiceProvider {
             public Call<LlmResponse> generateText(LlmRequest request) {
                 Log.i(TAG_LLM_PROVIDER, "LlmService (Mock): " + logMessagePrefix + " | Prompt: " + request.getPrompt());
                 LlmResponse llmResponse = new LlmResponse();
+                llmResponse.setEconomy(request.isEconomy());
 
                 if (request.getPrompt() == null || request.getPrompt().isEmpty()) {
                     llmResponse.setError("Prompt cannot be empty (from mock).");
                 } else if (request.getPrompt().toLowerCase().contains("error_test")) {
                     llmResponse.setError("Simulated error from LLM (mock).");
                 } else {
-                    llmResponse.setGeneratedText("(Mock Response) " + logMessagePrefix + ": " + request.getPrompt());
+                    String media = request.hasMedia() ? " [+" + request.getParts().size() + " media part(s)]" : "";
+                    llmResponse.setGeneratedText("(Mock Response) " + logMessagePrefix + ": " + request.getPrompt() + media);
                 }
 
                 if (llmResponse.getError() != null) {
@@ -207,11 +555,68 @@ public class LlmServiceProvider {
                     return Calls.response(llmResponse);
                 }
             }
+
+            @Override
+            public LlmStream streamText(LlmRequest request, StreamListener listener) {
+                // Replays the mock reply in small timed chunks so streaming UI can be exercised without a key.
+                TimedStreamListener timed = new TimedStreamListener("LlmService (Mock)", listener);
+                String prompt = request.getPrompt();
+                ScheduledExecutorService executor = mockStreamExecutor();
+                ScheduledFuture<?>[] pending = new ScheduledFuture<?>[1];
+                if (prompt == null || prompt.isEmpty() || prompt.toLowerCase().contains("error_test")) {
+                    String error = prompt == null || prompt.isEmpty() ? "Prompt cannot be empty (from mock)." : "Simulated error from LLM (mock).";
+                    pending[0] = executor.schedule(() -> timed.onError(new Throwable(error)), MOCK_FIRST_CHUNK_DELAY_MS, TimeUnit.MILLISECONDS);
+                } else {
+                    String media = request.hasMedia() ? " [+" + request.getParts().size() + " media part(s)]" : "";
+                    String text = "(Mock Response) " + logMessagePrefix + ": " + prompt + media;
+                    scheduleChunk(executor, timed, text, 0, MOCK_FIRST_CHUNK_DELAY_MS, pending);
+                }
+                return new LlmStream() {
+                    @Override
+                    public void cancel() {
+                        timed.cancel();
+                        synchronized (pending) {
+                            if (pending[0] != null) {
+                                pending[0].cancel(false);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public boolean isCanceled() {
+                        return timed.isCancelled();
+                    }
+                };
+            }
         };
     }
 
+    private static void scheduleChunk(ScheduledExecutorService executor, TimedStreamListener listener,
+                                      String text, int offset, long delayMs, ScheduledFuture<?>[] pending) {
+        synchronized (pending) {
+            pending[0] = executor.schedule(() -> {
+                if (listener.isCancelled()) {
+                    return;
+                }
+                int end = Math.min(text.length(), offset + MOCK_CHUNK_CHARS);
+                listener.onChunk(text.substring(offset, end));
+                if (end < text.length()) {
+                    scheduleChunk(executor, listener, text, end, MOCK_CHUNK_DELAY_MS, pending);
+                } else {
+                    listener.onComplete(new LlmResponse());
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService mockStreamExecutor() {
+        if (mockStreamExecutor == null) {
+            mockStreamExecutor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "llm-mock-stream"));
+        }
+        return mockStreamExecutor;
+    }
+
     public LlmService getService() {
-        Log.i(TAG_LLM_PROVIDER, "Providing service implementation for " + currentProvider.name());
-        return serviceImplementation;
+        return activeService;
     }
 }
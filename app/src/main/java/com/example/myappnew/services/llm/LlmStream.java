@@ -0,0 +1,9 @@
+package com.example.myappnew.services.llm;
+
+/** Handle for an in-flight streamed request returned by {@link LlmService#streamText}. */
+public interface LlmStream {
+    /** Stops delivery; no further listener callbacks are made after this returns. */
+    void cancel();
+
+    boolean isCanceled();
+}
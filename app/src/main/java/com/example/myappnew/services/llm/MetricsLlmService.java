@@ -0,0 +1,210 @@
+package com.example.myappnew.services.llm;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link LlmService} decorator that records every call into {@link LlmMetrics}, under the
+ * provider it wraps and the request's call site.
+ *
+ * It sits directly on the provider client, below {@link SchedulingLlmService}, so each attempt is
+ * measured on its own: latency excludes queueing, and a 429 that was retried still shows up in the
+ * error classes. Cancelled calls (hedge losers, closed screens) are counted separately and do not
+ * contribute latency samples.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>LlmMetricsTest</code>: wrap a fake <code>LlmService</code> and verify successes,
+ *     HTTP errors and cancellations are recorded once each.</li>
+ * </ul>
+ * ---
+ */
+public class MetricsLlmService implements LlmService {
+
+    private final LlmService delegate;
+    private final String provider;
+    private final LlmMetrics metrics;
+
+    public MetricsLlmService(LlmService delegate, String provider, LlmMetrics metrics) {
+        this.delegate = delegate;
+        this.provider = provider;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Call<LlmResponse> generateText(LlmRequest request) {
+        return new MeasuredCall(delegate.generateText(request), request);
+    }
+
+    @Override
+    public LlmStream streamText(LlmRequest request, StreamListener listener) {
+        Measurement m = new Measurement(request);
+        LlmStream upstream = delegate.streamText(request, new StreamListener() {
+            @Override
+            public void onChunk(String delta) {
+                m.firstByte();
+                listener.onChunk(delta);
+            }
+
+            @Override
+            public void onComplete(LlmResponse response) {
+                m.success(response);
+                listener.onComplete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                m.failure(t);
+                listener.onError(t);
+            }
+        });
+        return new LlmStream() {
+            @Override
+            public void cancel() {
+                m.cancelled();
+                upstream.cancel();
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return upstream.isCanceled();
+            }
+        };
+    }
+
+    static long requestBytes(LlmRequest request) {
+        long bytes = request.getPrompt() != null ? LlmMetrics.utf8Length(request.getPrompt()) : 0;
+        for (LlmRequest.Part part : request.getParts()) {
+            if (part.getText() != null) {
+                bytes += LlmMetrics.utf8Length(part.getText());
+            } else if (part.getData() != null) {
+                bytes += part.getData().length;
+            }
+        }
+        return bytes;
+    }
+
+    /** One attempt; the first of success, failure or cancellation is recorded and the rest ignored. */
+    private final class Measurement {
+        private final LlmMetrics.Series series;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean firstByte = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Measurement(LlmRequest request) {
+            series = metrics.series(provider, request.getCallSite());
+            metrics.recordRequest(series, requestBytes(request));
+        }
+
+        private long elapsedMs() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        void firstByte() {
+            if (firstByte.compareAndSet(false, true)) {
+                metrics.recordFirstByte(series, elapsedMs());
+            }
+        }
+
+        void success(LlmResponse response) {
+            if (finished.compareAndSet(false, true)) {
+                firstByte(); // a non-streamed reply arrives all at once
+                metrics.recordSuccess(series, elapsedMs(), response != null ? response : new LlmResponse());
+            }
+        }
+
+        void failure(Throwable t) {
+            if (finished.compareAndSet(false, true)) {
+                metrics.recordFailure(series, elapsedMs(), t);
+            }
+        }
+
+        void cancelled() {
+            if (finished.compareAndSet(false, true)) {
+                metrics.recordCancelled(series);
+            }
+        }
+
+        void response(Response<LlmResponse> response) {
+            LlmResponse body = response.body();
+            if (!response.isSuccessful()) {
+                failure(new SchedulingLlmService.HttpStatusException(response));
+            } else if (body == null || body.getGeneratedText() == null || body.getGeneratedText().isEmpty()) {
+                failure(new EmptyReplyException(body != null ? body : new LlmResponse()));
+            } else {
+                success(body);
+            }
+        }
+    }
+
+    private final class MeasuredCall implements Call<LlmResponse> {
+        private final Call<LlmResponse> call;
+        private final LlmRequest request;
+        private volatile Measurement measurement;
+
+        MeasuredCall(Call<LlmResponse> call, LlmRequest request) {
+            this.call = call;
+            this.request = request;
+        }
+
+        @Override
+        public Response<LlmResponse> execute() throws IOException {
+            Measurement m = measurement = new Measurement(request);
+            try {
+                Response<LlmResponse> response = call.execute();
+                m.response(response);
+                return response;
+            } catch (IOException | RuntimeException e) {
+                if (call.isCanceled()) {
+                    m.cancelled();
+                } else {
+                    m.failure(e);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<LlmResponse> callback) {
+            Measurement m = measurement = new Measurement(request);
+            call.enqueue(new Callback<LlmResponse>() {
+                @Override
+                public void onResponse(Call<LlmResponse> c, Response<LlmResponse> response) {
+                    m.response(response);
+                    callback.onResponse(MeasuredCall.this, response);
+                }
+
+                @Override
+                public void onFailure(Call<LlmResponse> c, Throwable t) {
+                    if (call.isCanceled()) {
+                        m.cancelled();
+                    } else {
+                        m.failure(t);
+                    }
+                    callback.onFailure(MeasuredCall.this, t);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            Measurement m = measurement;
+            if (m != null) {
+                m.cancelled();
+            }
+            call.cancel();
+        }
+
+        @Override public boolean isExecuted() { return call.isExecuted(); }
+        @Override public boolean isCanceled() { return call.isCanceled(); }
+        @Override public Call<LlmResponse> clone() { return new MeasuredCall(call.clone(), request); }
+        @Override public okhttp3.Request request() { return call.request(); }
+        @Override public okio.Timeout timeout() { return call.timeout(); }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.myappnew.services.llm;
+
+/**
+ * Handle for a stream that starts after some preparation work (encoding media, building a
+ * prompt). It can be cancelled before the stream exists: the preparation checks
+ * {@link #isCanceled()} and skips the request, and a stream attached afterwards is cancelled at once.
+ */
+public final class PendingLlmStream implements LlmStream {
+    private LlmStream stream; // guarded by this
+    private boolean cancelled; // guarded by this
+
+    /** Hands over the started stream; returns false (and cancels it) if this handle was already cancelled. */
+    public boolean attach(LlmStream started) {
+        synchronized (this) {
+            if (!cancelled) {
+                stream = started;
+                return true;
+            }
+        }
+        started.cancel();
+        return false;
+    }
+
+    @Override
+    public void cancel() {
+        LlmStream started;
+        synchronized (this) {
+            cancelled = true;
+            started = stream;
+        }
+        if (started != null) {
+            started.cancel();
+        }
+    }
+
+    @Override
+    public synchronized boolean isCanceled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.myappnew.services.llm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A prompt with named {@code {{slot}}} placeholders, parsed once and rendered many times.
+ *
+ * Every slot is declared with a token budget and a {@link Truncation} policy. Values longer than
+ * their budget are cut at a sentence or word boundary near the limit, with {@link #ELLIPSIS} marking
+ * the gap, so a rendered prompt never exceeds {@link #maxTokens()} (as counted by
+ * {@link TokenEstimator}) no matter how long the diary entry or profile is.
+ *
+ * <pre>
+ * static final PromptTemplate GREETING = PromptTemplate.builder("你好，{{name}}！")
+ *         .slot("name", 20, PromptTemplate.Truncation.HEAD)
+ *         .build();
+ * String prompt = GREETING.fill().set("name", userName).render();
+ * </pre>
+ *
+ * Templates are immutable and thread-safe. Rendering appends into a per-thread reused
+ * {@link StringBuilder}, so the only allocation per prompt is the resulting string.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>PromptTemplateTest</code>: parsing errors, slot filling, each truncation policy
+ *     on CJK and English text, and the {@link #maxTokens()} bound.</li>
+ * </ul>
+ * ---
+ */
+public final class PromptTemplate {
+
+    /** Which part of an over-long value is kept. */
+    public enum Truncation {
+        /** Keep the beginning (structured data, where the start matters most). */
+        HEAD,
+        /** Keep the end (most recent messages). */
+        TAIL,
+        /** Keep the beginning and the end, dropping the middle (diary entries: context and conclusion). */
+        MIDDLE
+    }
+
+    /** Marks where text was dropped. */
+    static final String ELLIPSIS = "……";
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    /** How far back from the cut a sentence or word boundary is looked for, as a share of the kept text. */
+    private static final double BOUNDARY_WINDOW = 0.2;
+    /** Buffers that grew past this are not kept for reuse. */
+    private static final int MAX_REUSED_CAPACITY = 32 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(1024);
+        }
+    };
+
+    private final String source;
+    /** Literal text between slots: literals[i] precedes slot i; the last literal ends the prompt. */
+    private final String[] literals;
+    /** Slot index (into names/budgets) at each placeholder position. */
+    private final int[] placeholders;
+    private final String[] names;
+    private final int[] budgets;
+    private final Truncation[] truncations;
+    private final Map<String, Integer> indexByName;
+    private final int maxTokens;
+
+    private PromptTemplate(String source, String[] literals, int[] placeholders, String[] names,
+                           int[] budgets, Truncation[] truncations, Map<String, Integer> indexByName) {
+        this.source = source;
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.names = names;
+        this.budgets = budgets;
+        this.truncations = truncations;
+        this.indexByName = indexByName;
+        int total = 0;
+        for (String literal : literals) {
+            total += TokenEstimator.estimate(literal);
+        }
+        for (int placeholder : placeholders) {
+            total += budgets[placeholder];
+        }
+        this.maxTokens = total;
+    }
+
+    public static Builder builder(String text) {
+        return new Builder(text);
+    }
+
+    /** Upper bound on the estimated tokens of any rendering of this template. */
+    public int maxTokens() {
+        return maxTokens;
+    }
+
+    public Fill fill() {
+        return new Fill();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    public static final class Builder {
+        private final String text;
+        private final Map<String, Integer> indexByName = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<Integer> budgets = new ArrayList<>();
+        private final List<Truncation> truncations = new ArrayList<>();
+
+        private Builder(String text) {
+            this.text = text;
+        }
+
+        /** Declares slot {@code name}; values are cut to {@code maxTokens} by {@code truncation}. */
+        public Builder slot(String name, int maxTokens, Truncation truncation) {
+            if (indexByName.containsKey(name)) {
+                throw new IllegalArgumentException("Slot declared twice: " + name);
+            }
+            if (maxTokens < 0) {
+                throw new IllegalArgumentException("Negative budget for slot " + name);
+            }
+            indexByName.put(name, names.size());
+            names.add(name);
+            budgets.add(maxTokens);
+            truncations.add(truncation);
+            return this;
+        }
+
+        /** Parses the text; every placeholder must be a declared slot and every slot must be used. */
+        public PromptTemplate build() {
+            List<String> literals = new ArrayList<>();
+            List<Integer> placeholders = new ArrayList<>();
+            boolean[] used = new boolean[names.size()];
+            int from = 0;
+            while (true) {
+                int open = text.indexOf(OPEN, from);
+                if (open < 0) {
+                    literals.add(text.substring(from));
+                    break;
+                }
+                int close = text.indexOf(CLOSE, open + OPEN.length());
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed placeholder at " + open + " in: " + text);
+                }
+                String name = text.substring(open + OPEN.length(), close).trim();
+                Integer index = indexByName.get(name);
+                if (index == null) {
+                    throw new IllegalArgumentException("Placeholder {{" + name + "}} has no declared slot");
+                }
+                used[index] = true;
+                literals.add(text.substring(from, open));
+                placeholders.add(index);
+                from = close + CLOSE.length();
+            }
+            for (int i = 0; i < used.length; i++) {
+                if (!used[i]) {
+                    throw new IllegalArgumentException("Slot " + names.get(i) + " is not used in the template");
+                }
+            }
+            int[] placeholderArray = new int[placeholders.size()];
+            for (int i = 0; i < placeholderArray.length; i++) {
+                placeholderArray[i] = placeholders.get(i);
+            }
+            int[] budgetArray = new int[budgets.size()];
+            for (int i = 0; i < budgetArray.length; i++) {
+                budgetArray[i] = budgets.get(i);
+            }
+            return new PromptTemplate(text, literals.toArray(new String[0]), placeholderArray,
+                    names.toArray(new String[0]), budgetArray, truncations.toArray(new Truncation[0]),
+                    new HashMap<>(indexByName));
+        }
+    }
+
+    /** Slot values for one rendering. Unset slots render empty. Not thread-safe; cheap to create. */
+    public final class Fill {
+        private final String[] values = new String[names.length];
+
+        private Fill() {
+        }
+
+        public Fill set(String slot, String value) {
+            Integer index = indexByName.get(slot);
+            if (index == null) {
+                throw new IllegalArgumentException("Unknown slot " + slot + " in template: " + source);
+            }
+            values[index] = value;
+            return this;
+        }
+
+        /** The prompt text, with every value cut to its slot's budget. */
+        public String render() {
+            StringBuilder out = BUFFER.get();
+            out.setLength(0);
+            for (int i = 0; i < placeholders.length; i++) {
+                out.append(literals[i]);
+                int slot = placeholders[i];
+                appendTruncated(out, values[slot], budgets[slot], truncations[slot]);
+            }
+            out.append(literals[literals.length - 1]);
+            String prompt = out.toString();
+            if (out.capacity() > MAX_REUSED_CAPACITY) {
+                BUFFER.remove();
+            }
+            return prompt;
+        }
+
+        /** Names of the slots whose values had to be cut, for logging. */
+        public List<String> truncatedSlots() {
+            List<String> truncated = new ArrayList<>();
+            for (int i = 0; i < names.length; i++) {
+                if (values[i] != null && TokenEstimator.estimate(values[i]) > budgets[i]) {
+                    truncated.add(names[i]);
+                }
+            }
+            return truncated;
+        }
+
+        @Override
+        public String toString() {
+            return "Fill" + Arrays.toString(values);
+        }
+    }
+
+    static void appendTruncated(StringBuilder out, String value, int budget, Truncation truncation) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (TokenEstimator.estimate(value) <= budget) {
+            out.append(value);
+            return;
+        }
+        int room = budget - TokenEstimator.estimate(ELLIPSIS);
+        if (room <= 0) {
+            return;
+        }
+        switch (truncation) {
+            case HEAD:
+                out.append(value, 0, headEnd(value, room)).append(ELLIPSIS);
+                break;
+            case TAIL:
+                out.append(ELLIPSIS).append(value, tailStart(value, room), value.length());
+                break;
+            case MIDDLE:
+                int headRoom = room * 2 / 3;
+                int headEnd = headEnd(value, headRoom);
+                int tailStart = Math.max(headEnd, tailStart(value, room - headRoom));
+                out.append(value, 0, headEnd).append(ELLIPSIS).append(value, tailStart, value.length());
+                break;
+        }
+    }
+
+    /** End of the kept head, moved back to just after a sentence end or space if one is near. */
+    private static int headEnd(String value, int tokens) {
+        int end = TokenEstimator.prefixEnd(value, tokens);
+        int floor = end - (int) (end * BOUNDARY_WINDOW);
+        for (int i = end; i > floor && i > 0; i--) {
+            if (isSentenceEnd(value.charAt(i - 1))) {
+                return i;
+            }
+        }
+        for (int i = end; i > floor && i > 0; i--) {
+            if (Character.isWhitespace(value.charAt(i - 1))) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /** Start of the kept tail, moved forward to just after a sentence end or space if one is near. */
+    private static int tailStart(String value, int tokens) {
+        int start = TokenEstimator.suffixStart(value, tokens);
+        int ceiling = start + (int) ((value.length() - start) * BOUNDARY_WINDOW);
+        for (int i = start; i < ceiling && i < value.length(); i++) {
+            if (i > 0 && isSentenceEnd(value.charAt(i - 1))) {
+                return i;
+            }
+        }
+        for (int i = start; i < ceiling && i < value.length(); i++) {
+            if (i > 0 && Character.isWhitespace(value.charAt(i - 1))) {
+                return i;
+            }
+        }
+        return start;
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '；' || c == '.' || c == '!' || c == '?' || c == '\n';
+    }
+}
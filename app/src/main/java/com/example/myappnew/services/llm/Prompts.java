@@ -0,0 +1,107 @@
+package com.example.myappnew.services.llm;
+
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * The app's prompts, compiled once at class load. Budgets are in estimated tokens (see
+ * {@link TokenEstimator}); {@link PromptTemplate#maxTokens()} bounds each whole prompt.
+ */
+public final class Prompts {
+
+    private static final String TAG = "Prompts";
+
+    /** A long diary entry keeps its opening and its conclusion; about 1500 Chinese characters. */
+    static final int JOURNAL_CONTENT_TOKENS = 1500;
+    static final int PROFILE_TOKENS = 400;
+    static final int MEDIA_TOKENS = 120;
+    static final int CHAT_MESSAGE_TOKENS = 2000;
+    /** Long-term context from the rolling journal summaries; a fixed cost however long the history. */
+    static final int HISTORY_TOKENS = 300;
+    /** Text sent to summarize one day, or to fold a week's or a month's summaries. */
+    static final int SUMMARY_SOURCE_TOKENS = 1500;
+
+    static final PromptTemplate JOURNAL_ANALYSIS = PromptTemplate.builder(
+            "请作为一名专业的心理陪伴AI，根据以下用户日记内容和多模态信息，结合用户画像，给予个性化的情绪分析和疗愈建议。\n"
+                    + "【日记内容】：{{content}}\n"
+                    + "{{media}}"
+                    + "【用户画像】：{{profile}}\n"
+                    + "【近期回顾】：{{history}}\n"
+                    + "请用温暖、鼓励的语言，输出分析和建议。")
+            .slot("content", JOURNAL_CONTENT_TOKENS, PromptTemplate.Truncation.MIDDLE)
+            .slot("media", MEDIA_TOKENS, PromptTemplate.Truncation.HEAD)
+            .slot("profile", PROFILE_TOKENS, PromptTemplate.Truncation.HEAD)
+            // Oldest first, so cutting the head drops months before days.
+            .slot("history", HISTORY_TOKENS, PromptTemplate.Truncation.TAIL)
+            .build();
+
+    /** One day's entries; the reply is stored as that day's summary. */
+    public static final PromptTemplate DAY_SUMMARY = PromptTemplate.builder(
+            "以下是用户同一天写的日记。请用不超过80个字概括这一天发生的主要事情和用户的情绪，只输出概括本身。\n"
+                    + "{{entries}}")
+            .slot("entries", SUMMARY_SOURCE_TOKENS, PromptTemplate.Truncation.MIDDLE)
+            .build();
+
+    /** A week's day summaries or a month's week summaries, one per line, oldest first. */
+    public static final PromptTemplate PERIOD_SUMMARY = PromptTemplate.builder(
+            "以下是用户{{period}}日记的分段概括，按时间排列。请用不超过120个字总结这段时间的主要事情、"
+                    + "情绪变化和反复出现的主题，只输出总结本身。\n"
+                    + "{{parts}}")
+            .slot("period", 10, PromptTemplate.Truncation.HEAD)
+            .slot("parts", SUMMARY_SOURCE_TOKENS, PromptTemplate.Truncation.MIDDLE)
+            .build();
+
+    /** A chat message is sent as typed, only capped in length. */
+    public static final PromptTemplate CHAT_MESSAGE = PromptTemplate.builder("{{message}}")
+            .slot("message", CHAT_MESSAGE_TOKENS, PromptTemplate.Truncation.HEAD)
+            .build();
+
+    public static final PromptTemplate IMAGE_ANALYSIS = PromptTemplate.builder(
+            "The user has shared this photo as part of their mood journal. Describe the mood and atmosphere it conveys, "
+                    + "then, based on general positive psychology principles, offer a brief, uplifting piece of advice "
+                    + "or a thoughtful question related to finding joy in everyday moments.")
+            .build();
+
+    public static final PromptTemplate VOICE_ANALYSIS = PromptTemplate.builder(
+            "The user has recorded this voice note for their mood journal. Listen to what they say and how they sound, "
+                    + "briefly reflect the emotions you notice, then, based on general positive psychology principles, "
+                    + "offer an encouraging piece of advice or a supportive question.")
+            .build();
+
+    /** For when the recording could not be read; the model only knows that one exists. */
+    public static final PromptTemplate VOICE_ANALYSIS_WITHOUT_AUDIO = PromptTemplate.builder(
+            "The user has provided a voice recording. Based on general positive psychology principles, offer a brief, "
+                    + "encouraging piece of advice or a supportive question. (Audio content is not available to you "
+                    + "for this recording).")
+            .build();
+
+    private Prompts() {
+    }
+
+    /** The detail screen's analysis prompt; at most {@code JOURNAL_ANALYSIS.maxTokens()} tokens. */
+    public static String journalAnalysis(String content, boolean hasImage, boolean hasAudio, boolean hasVideo,
+                                         String profileJson, String history) {
+        StringBuilder media = new StringBuilder();
+        if (hasImage) {
+            media.append("【照片】：用户上传了照片，请结合图片内容分析情绪。\n");
+        }
+        if (hasAudio) {
+            media.append("【语音】：用户上传了语音，请结合语音内容分析情绪。\n");
+        }
+        if (hasVideo) {
+            media.append("【视频】：用户上传了视频，请结合视频内容分析情绪。\n");
+        }
+        PromptTemplate.Fill fill = JOURNAL_ANALYSIS.fill()
+                .set("content", content == null || content.isEmpty() ? "无" : content)
+                .set("media", media.toString())
+                .set("profile", profileJson == null || profileJson.isEmpty() ? "无" : profileJson)
+                .set("history", history == null || history.isEmpty() ? "无" : history);
+        List<String> truncated = fill.truncatedSlots();
+        if (!truncated.isEmpty()) {
+            Log.d(TAG, "journal analysis truncated " + truncated
+                    + " to stay within " + JOURNAL_ANALYSIS.maxTokens() + " tokens");
+        }
+        return fill.render();
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.myappnew.services.llm;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Recent latency and error statistics for one provider, and a circuit breaker driven by them.
+ *
+ * <ul>
+ *     <li>Latency is time to first output: the first streamed chunk, or the whole reply for a
+ *     non-streamed call. The last {@link #WINDOW_SIZE} outcomes within {@link #WINDOW_MS} are kept.</li>
+ *     <li>Only provider faults count as failures (rate limiting, 5xx, timeouts; see
+ *     {@link SchedulingLlmService#isTransient}). A blocked prompt says nothing about the provider.</li>
+ *     <li>{@link #FAILURE_THRESHOLD} consecutive failures, or an error rate of at least
+ *     {@link #ERROR_RATE_THRESHOLD} over {@link #MIN_SAMPLES} or more outcomes, open the breaker for
+ *     {@link #COOL_DOWN_MS}. After the cool-down one probe request is let through: success closes the
+ *     breaker, failure opens it for another cool-down.</li>
+ * </ul>
+ *
+ * Uses no Android classes other than {@code Log}; unit-tested in <code>ProviderHealthTest</code>.
+ */
+public final class ProviderHealth {
+
+    private static final String TAG = "ProviderHealth";
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    static final int WINDOW_SIZE = 64;
+    static final long WINDOW_MS = 5 * 60_000;
+    static final int MIN_SAMPLES = 5;
+    static final int FAILURE_THRESHOLD = 3;
+    static final double ERROR_RATE_THRESHOLD = 0.5;
+    static final long COOL_DOWN_MS = 30_000;
+
+    /** Snapshot for diagnostics. Percentiles are -1 until {@link #MIN_SAMPLES} latencies are known. */
+    public static final class Snapshot {
+        public final String name;
+        public final State state;
+        public final int samples;
+        public final long p50Ms;
+        public final long p95Ms;
+        public final double errorRate;
+
+        Snapshot(String name, State state, int samples, long p50Ms, long p95Ms, double errorRate) {
+            this.name = name;
+            this.state = state;
+            this.samples = samples;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+            this.errorRate = errorRate;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + state + " samples=" + samples + " p50=" + p50Ms + "ms p95=" + p95Ms
+                    + "ms errors=" + Math.round(errorRate * 100) + "%";
+        }
+    }
+
+    private final String name;
+    private final LongSupplier nanoClock;
+
+    // Ring buffer of outcomes.
+    private final long[] latencyMs = new long[WINDOW_SIZE];
+    private final long[] recordedAtNanos = new long[WINDOW_SIZE];
+    private final boolean[] failed = new boolean[WINDOW_SIZE];
+    private int next;
+    private int size;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+    private boolean probeInFlight;
+
+    public ProviderHealth(String name) {
+        this(name, System::nanoTime);
+    }
+
+    ProviderHealth(String name, LongSupplier nanoClock) {
+        this.name = name;
+        this.nanoClock = nanoClock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Whether a request could be sent now, without claiming the half-open probe. */
+    public synchronized boolean isAvailable() {
+        switch (state) {
+            case OPEN:
+                return nanoClock.getAsLong() >= openUntilNanos;
+            case HALF_OPEN:
+                return !probeInFlight;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Claims permission to send one request. In the half-open state only one probe is in flight;
+     * its outcome must be reported with one of the record methods or {@link #release()}.
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() < openUntilNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    synchronized void recordSuccess(long latencyMs) {
+        add(latencyMs, false);
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            Log.i(TAG, name + " recovered, closing circuit");
+            state = State.CLOSED;
+            probeInFlight = false;
+        }
+    }
+
+    synchronized void recordFailure(long latencyMs) {
+        add(latencyMs, true);
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN
+                || consecutiveFailures >= FAILURE_THRESHOLD
+                || (size >= MIN_SAMPLES && errorRateLocked() >= ERROR_RATE_THRESHOLD)) {
+            open();
+        }
+    }
+
+    /**
+     * A request that was abandoned after {@code elapsedMs} because another provider answered
+     * first. Its latency is at least that long, so it is kept as a sample; otherwise the slow
+     * provider's percentiles would only ever show its fast replies.
+     */
+    synchronized void recordLowerBound(long elapsedMs) {
+        add(elapsedMs, false);
+        probeInFlight = false;
+    }
+
+    /** The request ended without telling anything about the provider (cancelled, client error). */
+    synchronized void release() {
+        probeInFlight = false;
+    }
+
+    /** Latency at quantile {@code q} (0..1) of successful outcomes in the window, or -1 if too few. */
+    public synchronized long percentile(double q) {
+        long[] sorted = recentLatencies();
+        if (sorted.length < MIN_SAMPLES) {
+            return -1;
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    public synchronized double errorRate() {
+        return errorRateLocked();
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && nanoClock.getAsLong() >= openUntilNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public Snapshot snapshot() {
+        synchronized (this) {
+            return new Snapshot(name, getState(), recentLatencies().length, percentile(0.5), percentile(0.95), errorRateLocked());
+        }
+    }
+
+    private void open() {
+        Log.w(TAG, name + " opening circuit for " + COOL_DOWN_MS + "ms after "
+                + consecutiveFailures + " consecutive failure(s)");
+        state = State.OPEN;
+        openUntilNanos = nanoClock.getAsLong() + COOL_DOWN_MS * 1_000_000L;
+        probeInFlight = false;
+        consecutiveFailures = 0;
+        // Start the next period with a clean window, so old failures cannot re-open it at once.
+        size = 0;
+        next = 0;
+    }
+
+    private void add(long latency, boolean failure) {
+        latencyMs[next] = Math.max(0, latency);
+        recordedAtNanos[next] = nanoClock.getAsLong();
+        failed[next] = failure;
+        next = (next + 1) % WINDOW_SIZE;
+        size = Math.min(size + 1, WINDOW_SIZE);
+    }
+
+    private boolean inWindow(int index, long cutoffNanos) {
+        return recordedAtNanos[index] - cutoffNanos >= 0;
+    }
+
+    private long[] recentLatencies() {
+        long cutoff = nanoClock.getAsLong() - WINDOW_MS * 1_000_000L;
+        long[] values = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!failed[i] && inWindow(i, cutoff)) {
+                values[count++] = latencyMs[i];
+            }
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    private double errorRateLocked() {
+        long cutoff = nanoClock.getAsLong() - WINDOW_MS * 1_000_000L;
+        int total = 0;
+        int failures = 0;
+        for (int i = 0; i < size; i++) {
+            if (inWindow(i, cutoff)) {
+                total++;
+                if (failed[i]) {
+                    failures++;
+                }
+            }
+        }
+        return total == 0 ? 0 : (double) failures / total;
+    }
+}
@@ -0,0 +1,624 @@
+package com.example.myappnew.services.llm;
+
+import android.util.Log;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link LlmService} that spreads calls over several providers by their recent latency and health.
+ *
+ * <ul>
+ *     <li>Each call goes to the healthy provider with the lowest median time to first output (see
+ *     {@link ProviderHealth}); providers without enough samples yet keep their configured order.
+ *     Providers that cannot take image or audio input are skipped for such requests.</li>
+ *     <li>{@link LlmRequest.Priority#INTERACTIVE} calls are hedged: if the first provider has not
+ *     produced output by its own p95, the same request is also sent to the next provider. Whichever
+ *     produces output first wins and the other is cancelled, so the cost is roughly 5% more requests
+ *     in exchange for cutting off the slowest tail.</li>
+ *     <li>If a provider fails with a provider fault before producing output, the request moves on
+ *     to the next one. Faults also feed each provider's circuit breaker, which takes it out of
+ *     rotation for a cool-down. A leg that still has a provider to fail over to is sent
+ *     {@linkplain LlmRequest#withoutRetries() without scheduler retries}, so a struggling
+ *     provider is left after one attempt instead of after its whole backoff.</li>
+ * </ul>
+ * Text already streamed to the caller is never replaced, so failover and hedging only happen
+ * before the first chunk.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>RoutingLlmServiceTest</code>: fake providers with controllable delays check
+ *     ranking, hedging (and cancellation of the loser), failover, the circuit breaker and the
+ *     {@code Call} contract of non-streamed calls.</li>
+ * </ul>
+ * ---
+ */
+public class RoutingLlmService implements LlmService {
+
+    private static final String TAG = "RoutingLlmService";
+
+    /** One provider the router can send requests to. */
+    public static final class Route {
+        final String name;
+        final LlmService service;
+        final ProviderHealth health;
+        final boolean acceptsMedia;
+
+        public Route(String name, LlmService service, ProviderHealth health, boolean acceptsMedia) {
+            this.name = name;
+            this.service = service;
+            this.health = health;
+            this.acceptsMedia = acceptsMedia;
+        }
+    }
+
+    /** Counters of hedged and failed-over requests. */
+    public static final class Stats {
+        public final long requests;
+        public final long hedged;
+        public final long hedgeWins;
+        public final long failovers;
+
+        Stats(long requests, long hedged, long hedgeWins, long failovers) {
+            this.requests = requests;
+            this.hedged = hedged;
+            this.hedgeWins = hedgeWins;
+            this.failovers = failovers;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + " hedged=" + hedged + " hedgeWins=" + hedgeWins + " failovers=" + failovers;
+        }
+    }
+
+    /** Never hedge sooner than this, even for a provider whose p95 is tiny. */
+    static final long MIN_HEDGE_DELAY_MS = 300;
+    /** Hedge delay until a provider has a measured p95. */
+    static final long DEFAULT_HEDGE_DELAY_MS = 4_000;
+
+    private final List<Route> routes;
+    private final ScheduledExecutorService timer;
+    private final LongSupplier nanoClock;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+
+    /** {@code routes} in order of preference; the first one is used while nothing is measured. */
+    public RoutingLlmService(List<Route> routes, ScheduledExecutorService timer) {
+        this(routes, timer, System::nanoTime);
+    }
+
+    RoutingLlmService(List<Route> routes, ScheduledExecutorService timer, LongSupplier nanoClock) {
+        this.routes = new ArrayList<>(routes);
+        this.timer = timer;
+        this.nanoClock = nanoClock;
+    }
+
+    public Stats getStats() {
+        return new Stats(requests.get(), hedged.get(), hedgeWins.get(), failovers.get());
+    }
+
+    /** Healthy providers able to serve {@code request}, fastest first. */
+    List<Route> candidatesFor(LlmRequest request) {
+        List<Route> eligible = new ArrayList<>();
+        for (Route route : routes) {
+            if ((route.acceptsMedia || !request.hasMedia()) && route.health.isAvailable()) {
+                eligible.add(route);
+            }
+        }
+        Route preferred = routes.get(0);
+        // Stable sort: unmeasured providers keep their configured order behind the preferred one.
+        eligible.sort(Comparator.comparingLong(route -> {
+            long p50 = route.health.percentile(0.5);
+            if (p50 >= 0) {
+                return p50;
+            }
+            return route == preferred ? 0 : Long.MAX_VALUE;
+        }));
+        return eligible;
+    }
+
+    static long hedgeDelayMs(Route route) {
+        long p95 = route.health.percentile(0.95);
+        return Math.max(MIN_HEDGE_DELAY_MS, p95 >= 0 ? p95 : DEFAULT_HEDGE_DELAY_MS);
+    }
+
+    @Override
+    public Call<LlmResponse> generateText(LlmRequest request) {
+        return new RoutedCall(request);
+    }
+
+    @Override
+    public LlmStream streamText(LlmRequest request, StreamListener listener) {
+        Race<LlmResponse> race = new Race<LlmResponse>(request) {
+            @Override
+            Runnable start(Route route, Leg leg) {
+                LlmStream stream = route.service.streamText(leg.request, new StreamListener() {
+                    @Override
+                    public void onChunk(String delta) {
+                        if (leg.claim()) {
+                            listener.onChunk(delta);
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(LlmResponse response) {
+                        leg.result(response);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        leg.error(t);
+                    }
+                });
+                return stream::cancel;
+            }
+
+            @Override
+            boolean succeeded(LlmResponse response) {
+                return response.getError() == null;
+            }
+
+            @Override
+            void deliver(LlmResponse response) {
+                listener.onComplete(response);
+            }
+
+            @Override
+            void fail(Throwable t) {
+                listener.onError(t);
+            }
+        };
+        race.run();
+        return new LlmStream() {
+            @Override
+            public void cancel() {
+                race.cancel();
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return race.isCancelled();
+            }
+        };
+    }
+
+    /**
+     * One request raced over the candidate providers. At most two legs run at once: the current
+     * one and, for interactive requests, its hedge. The first leg to produce output wins.
+     */
+    private abstract class Race<T> {
+        private final LlmRequest request;
+        private final List<Route> candidates;
+        private final boolean hedging;
+        private final List<Leg> legs = new ArrayList<>();
+        private int nextCandidate;
+        private Leg winner;
+        private boolean finished;
+        private boolean cancelled;
+        private Throwable lastError;
+        private ScheduledFuture<?> hedgeTimer;
+
+        Race(LlmRequest request) {
+            this.request = request;
+            this.candidates = candidatesFor(request);
+            this.hedging = request.getPriority() == LlmRequest.Priority.INTERACTIVE;
+        }
+
+        /** Sends the request to {@code route}, reporting to {@code leg}; returns how to cancel it. */
+        abstract Runnable start(Route route, Leg leg);
+
+        /** Whether {@code result} is a usable reply, as opposed to e.g. a client error. */
+        abstract boolean succeeded(T result);
+
+        abstract void deliver(T result);
+
+        abstract void fail(Throwable t);
+
+        final void run() {
+            requests.incrementAndGet();
+            launch(false);
+        }
+
+        private void launch(boolean hedge) {
+            Route route = null;
+            Leg leg;
+            Throwable failure = null;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                while (route == null && nextCandidate < candidates.size()) {
+                    Route candidate = candidates.get(nextCandidate++);
+                    if (candidate.health.tryAcquire()) {
+                        route = candidate;
+                    }
+                }
+                if (route == null) {
+                    if (runningLegs() > 0) {
+                        return; // nothing left to hedge with; the running leg carries on
+                    }
+                    finished = true;
+                    failure = lastError != null ? lastError
+                            : new IOException("No LLM provider available for this request (all cooling down or unsupported).");
+                    leg = null;
+                } else {
+                    // Failing over beats retrying a provider that just failed; keep retries for the last one.
+                    boolean lastResort = nextCandidate >= candidates.size();
+                    leg = new Leg(route, hedge, lastResort ? request : request.withoutRetries());
+                    legs.add(leg);
+                }
+            }
+            if (leg == null) {
+                fail(failure);
+                return;
+            }
+            if (hedge) {
+                Log.i(TAG, "hedging to " + route.name);
+            }
+            leg.attach(start(route, leg));
+            if (!hedge) {
+                scheduleHedge(route);
+            }
+        }
+
+        private void scheduleHedge(Route route) {
+            synchronized (this) {
+                if (!hedging || finished || winner != null || nextCandidate >= candidates.size()) {
+                    return;
+                }
+                hedgeTimer = timer.schedule(() -> {
+                    synchronized (Race.this) {
+                        if (finished || winner != null) {
+                            return;
+                        }
+                    }
+                    hedged.incrementAndGet();
+                    launch(true);
+                }, hedgeDelayMs(route), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private int runningLegs() {
+            int running = 0;
+            for (Leg leg : legs) {
+                if (!leg.done) {
+                    running++;
+                }
+            }
+            return running;
+        }
+
+        private void cancelHedgeTimer() {
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+                hedgeTimer = null;
+            }
+        }
+
+        /**
+         * First output from {@code leg}. Returns whether it is the winner and may deliver. The
+         * winner's health is updated once its outcome is known, in {@link #result} or {@link #error}.
+         */
+        boolean claim(Leg leg) {
+            List<Leg> losers = new ArrayList<>();
+            synchronized (this) {
+                if (finished) {
+                    return false;
+                }
+                if (winner != null) {
+                    return winner == leg;
+                }
+                if (leg.done) {
+                    return false;
+                }
+                winner = leg;
+                leg.firstOutputMs = leg.elapsedMs();
+                cancelHedgeTimer();
+                for (Leg other : legs) {
+                    if (other != leg && !other.done) {
+                        other.done = true;
+                        losers.add(other);
+                    }
+                }
+            }
+            if (leg.hedge) {
+                hedgeWins.incrementAndGet();
+            }
+            for (Leg loser : losers) {
+                loser.cancel();
+                loser.route.health.recordLowerBound(loser.elapsedMs());
+            }
+            return true;
+        }
+
+        void result(Leg leg, T result) {
+            if (!claim(leg)) {
+                return;
+            }
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                leg.done = true;
+            }
+            // Only a usable reply counts as a latency sample; a rejected request says nothing about speed.
+            if (succeeded(result)) {
+                leg.route.health.recordSuccess(leg.firstOutputMs);
+            } else {
+                leg.route.health.release();
+            }
+            deliver(result);
+        }
+
+        void error(Leg leg, Throwable t) {
+            boolean providerFault = SchedulingLlmService.isTransient(t);
+            boolean failover = false;
+            boolean report = false;
+            synchronized (this) {
+                if (finished || leg.done) {
+                    return;
+                }
+                leg.done = true;
+                if (winner == leg) {
+                    finished = true;
+                    report = true;
+                } else {
+                    lastError = t;
+                    if (runningLegs() == 0) {
+                        cancelHedgeTimer();
+                        if (providerFault && nextCandidate < candidates.size()) {
+                            failover = true;
+                        } else {
+                            finished = true;
+                            report = true;
+                        }
+                    }
+                }
+            }
+            if (providerFault) {
+                leg.route.health.recordFailure(leg.elapsedMs());
+            } else {
+                leg.route.health.release();
+            }
+            if (failover) {
+                failovers.incrementAndGet();
+                Log.w(TAG, leg.route.name + " failed (" + t.getMessage() + "), failing over");
+                launch(false);
+            } else if (report) {
+                fail(t);
+            }
+        }
+
+        void cancel() {
+            List<Leg> running = new ArrayList<>();
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                cancelled = true;
+                cancelHedgeTimer();
+                for (Leg leg : legs) {
+                    if (!leg.done) {
+                        leg.done = true;
+                        running.add(leg);
+                    }
+                }
+            }
+            for (Leg leg : running) {
+                leg.cancel();
+                leg.route.health.release();
+            }
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** One attempt on one provider. {@code done} is guarded by the race. */
+        final class Leg {
+            final Route route;
+            final boolean hedge;
+            final LlmRequest request;
+            private final long startNanos = nanoClock.getAsLong();
+            boolean done;
+            long firstOutputMs;
+            private Runnable canceller;
+            private boolean cancelRequested;
+
+            Leg(Route route, boolean hedge, LlmRequest request) {
+                this.route = route;
+                this.hedge = hedge;
+                this.request = request;
+            }
+
+            long elapsedMs() {
+                return (nanoClock.getAsLong() - startNanos) / 1_000_000;
+            }
+
+            boolean claim() {
+                return Race.this.claim(this);
+            }
+
+            void result(T result) {
+                Race.this.result(this, result);
+            }
+
+            void error(Throwable t) {
+                Race.this.error(this, t);
+            }
+
+            void attach(Runnable cancel) {
+                boolean cancelNow;
+                synchronized (this) {
+                    canceller = cancel;
+                    cancelNow = cancelRequested;
+                }
+                if (cancelNow) {
+                    cancel.run();
+                }
+            }
+
+            void cancel() {
+                Runnable cancel;
+                synchronized (this) {
+                    cancelRequested = true;
+                    cancel = canceller;
+                }
+                if (cancel != null) {
+                    cancel.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@link Call} over one race, with Retrofit's contract: it runs at most once, a call cancelled
+     * before it starts fails with "Canceled" without reaching a provider, and {@link #clone()}
+     * returns a fresh, unsent call.
+     */
+    private final class RoutedCall implements Call<LlmResponse> {
+        private final LlmRequest request;
+        private final AtomicBoolean executed = new AtomicBoolean();
+        private volatile boolean canceled;
+        private volatile Race<Response<LlmResponse>> race;
+        private volatile SettableFuture<Response<LlmResponse>> pending;
+
+        RoutedCall(LlmRequest request) {
+            this.request = request;
+        }
+
+        private void start(Callback<LlmResponse> callback) {
+            if (!executed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Already executed");
+            }
+            if (canceled) {
+                callback.onFailure(this, new IOException("Canceled"));
+                return;
+            }
+            Race<Response<LlmResponse>> started = new Race<Response<LlmResponse>>(request) {
+                @Override
+                Runnable start(Route route, Leg leg) {
+                    Call<LlmResponse> call = route.service.generateText(leg.request);
+                    call.enqueue(new Callback<LlmResponse>() {
+                        @Override
+                        public void onResponse(Call<LlmResponse> c, Response<LlmResponse> response) {
+                            if (!response.isSuccessful() && (response.code() == 429 || response.code() >= 500)) {
+                                leg.error(new SchedulingLlmService.HttpStatusException(response));
+                            } else {
+                                leg.result(response);
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Call<LlmResponse> c, Throwable t) {
+                            leg.error(t);
+                        }
+                    });
+                    return call::cancel;
+                }
+
+                @Override
+                boolean succeeded(Response<LlmResponse> response) {
+                    return response.isSuccessful() && response.body() != null && response.body().getError() == null;
+                }
+
+                @Override
+                void deliver(Response<LlmResponse> response) {
+                    callback.onResponse(RoutedCall.this, response);
+                }
+
+                @Override
+                void fail(Throwable t) {
+                    if (t instanceof SchedulingLlmService.HttpStatusException) {
+                        callback.onResponse(RoutedCall.this, ((SchedulingLlmService.HttpStatusException) t).response);
+                    } else {
+                        callback.onFailure(RoutedCall.this, t);
+                    }
+                }
+            };
+            race = started;
+            started.run();
+            if (canceled) {
+                // cancel() ran before the race was published and could not reach it.
+                started.cancel();
+            }
+        }
+
+        @Override
+        public Response<LlmResponse> execute() throws IOException {
+            SettableFuture<Response<LlmResponse>> result = SettableFuture.create();
+            pending = result;
+            start(new Callback<LlmResponse>() {
+                @Override
+                public void onResponse(Call<LlmResponse> call, Response<LlmResponse> response) {
+                    result.set(response);
+                }
+
+                @Override
+                public void onFailure(Call<LlmResponse> call, Throwable t) {
+                    result.setException(t);
+                }
+            });
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for LLM response", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } catch (CancellationException e) {
+                throw new IOException("Canceled", e);
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<LlmResponse> callback) {
+            start(callback);
+        }
+
+        @Override public boolean isExecuted() { return executed.get(); }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            Race<Response<LlmResponse>> current = race;
+            if (current != null) {
+                current.cancel();
+            }
+            // A cancelled race reports nothing; release a thread blocked in execute().
+            SettableFuture<Response<LlmResponse>> waiting = pending;
+            if (waiting != null) {
+                waiting.cancel(false);
+            }
+        }
+
+        @Override public boolean isCanceled() { return canceled; }
+        @Override public Call<LlmResponse> clone() { return new RoutedCall(request); }
+        @Override public okhttp3.Request request() { return new okhttp3.Request.Builder().url("http://localhost/llm-routed").build(); }
+        @Override public okio.Timeout timeout() { return okio.Timeout.NONE; }
+    }
+}
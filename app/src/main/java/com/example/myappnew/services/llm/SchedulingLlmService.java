@@ -0,0 +1,245 @@
+package com.example.myappnew.services.llm;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link LlmService} decorator that routes every call through an {@link LlmScheduler}, using the
+ * request's {@link LlmRequest.Priority} as its lane. Rate limiting (HTTP 429 / RESOURCE_EXHAUSTED),
+ * timeouts and server errors are retried by the scheduler; a stream is only retried if it failed
+ * before its first chunk, since delivered text cannot be taken back. Requests marked
+ * {@linkplain LlmRequest#allowsRetries() without retries} are tried once.
+ *
+ * ---
+ * <h4>Testing Strategy (Unit Tests):</h4>
+ * <ul>
+ *     <li>See <code>LlmSchedulerTest</code> for lane order, concurrency, rate limiting and retries.</li>
+ *     <li>Verify {@link #isTransient} accepts 429/5xx and timeouts and rejects blocked prompts.</li>
+ * </ul>
+ * ---
+ */
+public class SchedulingLlmService implements LlmService {
+
+    private final LlmService delegate;
+    private final LlmScheduler scheduler;
+
+    public SchedulingLlmService(LlmService delegate, LlmScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    public LlmScheduler.Stats getStats() {
+        return scheduler.getStats();
+    }
+
+    @Override
+    public Call<LlmResponse> generateText(LlmRequest request) {
+        return new ScheduledCall(request);
+    }
+
+    @Override
+    public LlmStream streamText(LlmRequest request, StreamListener listener) {
+        AtomicBoolean delivered = new AtomicBoolean();
+        ListenableFuture<LlmResponse> result = scheduler.submit(request.getPriority(), () -> {
+            SettableFuture<LlmResponse> attempt = SettableFuture.create();
+            LlmStream stream = delegate.streamText(request, new StreamListener() {
+                @Override
+                public void onChunk(String delta) {
+                    if (!attempt.isDone()) {
+                        delivered.set(true);
+                        listener.onChunk(delta);
+                    }
+                }
+
+                @Override
+                public void onComplete(LlmResponse response) {
+                    attempt.set(response);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    attempt.setException(t);
+                }
+            });
+            attempt.addListener(() -> {
+                if (attempt.isCancelled()) {
+                    stream.cancel();
+                }
+            }, MoreExecutors.directExecutor());
+            return attempt;
+        }, t -> request.allowsRetries() && !delivered.get() && isTransient(t));
+        Futures.addCallback(result, new FutureCallback<LlmResponse>() {
+            @Override
+            public void onSuccess(LlmResponse response) {
+                listener.onComplete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (!(t instanceof CancellationException)) {
+                    listener.onError(t);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return new LlmStream() {
+            @Override
+            public void cancel() {
+                result.cancel(false);
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return result.isCancelled();
+            }
+        };
+    }
+
+    /**
+     * Whether a failure is worth retrying: quota/rate limiting, server-side errors, network
+     * timeouts and connections dropped mid-reply. Blocked prompts, invalid keys and other client errors fail the same way again.
+     */
+    static boolean isTransient(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpStatusException) {
+                int code = ((HttpStatusException) cause).response.code();
+                return code == 429 || code >= 500;
+            }
+            if (cause instanceof SocketTimeoutException || cause instanceof ConnectException
+                    || cause instanceof InterruptedIOException || cause instanceof EOFException) {
+                return true;
+            }
+            String type = cause.getClass().getSimpleName();
+            if (type.contains("Quota") || type.equals("ServerException") || type.equals("RequestTimeoutException")) {
+                return true;
+            }
+            String message = cause.getMessage() != null ? cause.getMessage().toUpperCase(Locale.ROOT) : "";
+            if (message.contains("429") || message.contains("RESOURCE_EXHAUSTED")
+                    || message.contains("503") || message.contains("UNAVAILABLE")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Carries a retryable non-2xx response through the scheduler; unwrapped again if retries run out. */
+    static final class HttpStatusException extends IOException {
+        final Response<LlmResponse> response;
+
+        HttpStatusException(Response<LlmResponse> response) {
+            super("HTTP " + response.code());
+            this.response = response;
+        }
+    }
+
+    private final class ScheduledCall implements Call<LlmResponse> {
+        private final LlmRequest request;
+        private volatile ListenableFuture<Response<LlmResponse>> result;
+
+        ScheduledCall(LlmRequest request) {
+            this.request = request;
+        }
+
+        private ListenableFuture<Response<LlmResponse>> start() {
+            ListenableFuture<Response<LlmResponse>> future = scheduler.submit(request.getPriority(),
+                    this::attempt, t -> request.allowsRetries() && isTransient(t));
+            result = future;
+            return future;
+        }
+
+        private ListenableFuture<Response<LlmResponse>> attempt() {
+            // A fresh provider call per attempt; a finished Call cannot be enqueued again.
+            Call<LlmResponse> call = delegate.generateText(request);
+            SettableFuture<Response<LlmResponse>> attempt = SettableFuture.create();
+            attempt.addListener(() -> {
+                if (attempt.isCancelled()) {
+                    call.cancel();
+                }
+            }, MoreExecutors.directExecutor());
+            call.enqueue(new Callback<LlmResponse>() {
+                @Override
+                public void onResponse(Call<LlmResponse> c, Response<LlmResponse> response) {
+                    if (!response.isSuccessful() && (response.code() == 429 || response.code() >= 500)) {
+                        attempt.setException(new HttpStatusException(response));
+                    } else {
+                        attempt.set(response);
+                    }
+                }
+
+                @Override
+                public void onFailure(Call<LlmResponse> c, Throwable t) {
+                    attempt.setException(t);
+                }
+            });
+            return attempt;
+        }
+
+        @Override
+        public Response<LlmResponse> execute() throws IOException {
+            try {
+                return start().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for LLM response", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof HttpStatusException) {
+                    return ((HttpStatusException) cause).response;
+                }
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } catch (CancellationException e) {
+                throw new IOException("Canceled", e);
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<LlmResponse> callback) {
+            Futures.addCallback(start(), new FutureCallback<Response<LlmResponse>>() {
+                @Override
+                public void onSuccess(Response<LlmResponse> response) {
+                    callback.onResponse(ScheduledCall.this, response);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (t instanceof HttpStatusException) {
+                        callback.onResponse(ScheduledCall.this, ((HttpStatusException) t).response);
+                    } else if (!(t instanceof CancellationException)) {
+                        callback.onFailure(ScheduledCall.this, t);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        @Override public boolean isExecuted() { return result != null; }
+
+        @Override
+        public void cancel() {
+            ListenableFuture<Response<LlmResponse>> future = result;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override public boolean isCanceled() { return result != null && result.isCancelled(); }
+        @Override public Call<LlmResponse> clone() { return new ScheduledCall(request); }
+        @Override public okhttp3.Request request() { return new okhttp3.Request.Builder().url("http://localhost/llm-scheduled").build(); }
+        @Override public okio.Timeout timeout() { return okio.Timeout.NONE; }
+    }
+}
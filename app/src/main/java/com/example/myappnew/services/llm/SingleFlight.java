@@ -0,0 +1,126 @@
+package com.example.myappnew.services.llm;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most one operation per key at a time. Callers that arrive while an operation for their
+ * key is in flight join it instead of starting another, and all of them receive its result.
+ *
+ * Each caller gets its own view of the shared future. Cancelling a view detaches only that caller;
+ * the shared operation is cancelled once every caller that joined it has cancelled. The key is
+ * released as soon as the operation completes, so later calls start a fresh one (caching finished
+ * results is {@link CachingLlmService}'s job, not this class's).
+ */
+final class SingleFlight<K, V> {
+
+    private final class Flight {
+        final K key;
+        final ListenableFuture<V> shared;
+        int subscribers;
+
+        Flight(K key, ListenableFuture<V> shared) {
+            this.key = key;
+            this.shared = shared;
+        }
+    }
+
+    private final Map<K, Flight> inFlight = new HashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    /**
+     * Returns a future for {@code key}'s result, calling {@code starter} only if no operation for
+     * {@code key} is in flight. {@code starter} runs while the internal lock is held, which blocks
+     * every other key too, so it should only create the future and leave starting the work (a
+     * provider call, say) to the caller once this method has returned.
+     */
+    ListenableFuture<V> execute(K key, Supplier<ListenableFuture<V>> starter) {
+        return execute(key, starter, null);
+    }
+
+    /**
+     * Like {@link #execute(Object, Supplier)}, and passes the shared future (the one returned by
+     * {@code starter}, whether this call started it or joined it) to {@code onJoin} before returning.
+     * Lets callers attach to side channels of the operation, such as streamed chunks.
+     */
+    ListenableFuture<V> execute(K key, Supplier<ListenableFuture<V>> starter,
+                                Consumer<ListenableFuture<V>> onJoin) {
+        Flight flight;
+        boolean isNew = false;
+        synchronized (inFlight) {
+            flight = inFlight.get(key);
+            if (flight == null) {
+                flight = new Flight(key, starter.get());
+                inFlight.put(key, flight);
+                isNew = true;
+                started.incrementAndGet();
+            } else {
+                joined.incrementAndGet();
+            }
+            flight.subscribers++;
+        }
+        if (isNew) {
+            Flight owner = flight;
+            flight.shared.addListener(() -> remove(owner), MoreExecutors.directExecutor());
+        }
+        if (onJoin != null) {
+            onJoin.accept(flight.shared);
+        }
+        ListenableFuture<V> view = Futures.nonCancellationPropagating(flight.shared);
+        Flight subscribed = flight;
+        view.addListener(() -> {
+            if (view.isCancelled()) {
+                release(subscribed);
+            }
+        }, MoreExecutors.directExecutor());
+        return view;
+    }
+
+    /** Number of keys with an operation in flight. */
+    int inFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    /** Operations actually started. */
+    long startedCount() {
+        return started.get();
+    }
+
+    /** Calls that were served by joining an operation already in flight. */
+    long joinedCount() {
+        return joined.get();
+    }
+
+    private void remove(Flight flight) {
+        synchronized (inFlight) {
+            if (inFlight.get(flight.key) == flight) {
+                inFlight.remove(flight.key);
+            }
+        }
+    }
+
+    private void release(Flight flight) {
+        boolean cancelShared;
+        synchronized (inFlight) {
+            flight.subscribers--;
+            cancelShared = flight.subscribers == 0 && !flight.shared.isDone();
+            if (cancelShared && inFlight.get(flight.key) == flight) {
+                // Removed before cancelling so a caller arriving now starts a fresh operation.
+                inFlight.remove(flight.key);
+            }
+        }
+        if (cancelShared) {
+            flight.shared.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.myappnew.services.llm;
+
+/**
+ * Receives a streamed LLM reply. Callbacks arrive in order on a background thread; UI code must
+ * post to the main thread itself. Exactly one of {@link #onComplete} or {@link #onError} is called
+ * last, unless the stream is cancelled, in which case neither is.
+ */
+public interface StreamListener {
+    /** A new piece of the reply, to be appended to what came before. */
+    void onChunk(String delta);
+
+    /**
+     * The stream finished. {@code response} carries the full concatenated text plus
+     * time-to-first-token and total latency.
+     */
+    void onComplete(LlmResponse response);
+
+    void onError(Throwable t);
+}
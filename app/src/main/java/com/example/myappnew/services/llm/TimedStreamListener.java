@@ -0,0 +1,84 @@
+package com.example.myappnew.services.llm;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Wraps a {@link StreamListener} to accumulate the reply and stamp it with time-to-first-token
+ * and total latency, measured from construction (i.e. when the request was issued). Also drops
+ * callbacks after {@link #cancel()}, so implementations only have to stop their transport.
+ * Times come from {@code SystemClock.elapsedRealtime()} unless a clock is passed in.
+ */
+class TimedStreamListener implements StreamListener {
+    private final String source;
+    private final StreamListener delegate;
+    private final LongSupplier clock;
+    private final long startMs;
+    private final StringBuilder text = new StringBuilder();
+    private long firstChunkMs = -1;
+    private volatile boolean cancelled;
+
+    TimedStreamListener(String source, StreamListener delegate) {
+        this(source, delegate, SystemClock::elapsedRealtime);
+    }
+
+    TimedStreamListener(String source, StreamListener delegate, LongSupplier clock) {
+        this.source = source;
+        this.delegate = delegate;
+        this.clock = clock;
+        this.startMs = clock.getAsLong();
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void onChunk(String delta) {
+        if (cancelled || delta == null || delta.isEmpty()) {
+            return;
+        }
+        if (firstChunkMs < 0) {
+            firstChunkMs = clock.getAsLong() - startMs;
+        }
+        text.append(delta);
+        delegate.onChunk(delta);
+    }
+
+    @Override
+    public void onComplete(LlmResponse response) {
+        if (cancelled) {
+            return;
+        }
+        LlmResponse result = response != null ? response : new LlmResponse();
+        if (result.getGeneratedText() == null && text.length() > 0) {
+            result.setGeneratedText(text.toString());
+        }
+        if (result.getGeneratedText() == null || result.getGeneratedText().isEmpty()) {
+            // e.g. the prompt was blocked before any text was produced
+            delegate.onError(new EmptyReplyException(result));
+            return;
+        }
+        long totalMs = clock.getAsLong() - startMs;
+        result.setTimeToFirstTokenMs(firstChunkMs >= 0 ? firstChunkMs : totalMs);
+        result.setLatencyMs(totalMs);
+        if (Log.isLoggable(source, Log.DEBUG)) {
+            Log.d(source, "stream finished, ttft=" + result.getTimeToFirstTokenMs()
+                    + "ms total=" + totalMs + "ms chars=" + text.length());
+        }
+        delegate.onComplete(result);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (!cancelled) {
+            delegate.onError(t);
+        }
+    }
+}
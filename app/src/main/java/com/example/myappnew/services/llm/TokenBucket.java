@@ -0,0 +1,55 @@
+package com.example.myappnew.services.llm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token-bucket rate limiter: holds up to {@code capacity} permits and refills continuously at a
+ * fixed rate. Thread-safe. The clock is injectable (nanoseconds) so tests can advance time.
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double permitsPerNano;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    TokenBucket(int capacity, double permitsPerSecond, LongSupplier nanoClock) {
+        this.capacity = capacity;
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * A bucket that never lets more than {@code requestsPerMinute} through in any 60 s window: a
+     * full burst plus one minute of refill adds up to exactly the quota.
+     */
+    static TokenBucket forQuota(int requestsPerMinute, int burst, LongSupplier nanoClock) {
+        int refillPerMinute = Math.max(1, requestsPerMinute - burst);
+        return new TokenBucket(burst, refillPerMinute / 60.0, nanoClock);
+    }
+
+    synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /** Nanoseconds until {@link #tryAcquire()} can succeed; 0 if a permit is available now. */
+    synchronized long nanosUntilAvailable() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+}
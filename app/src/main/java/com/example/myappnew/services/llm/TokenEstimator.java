@@ -0,0 +1,98 @@
+package com.example.myappnew.services.llm;
+
+/**
+ * Fast, tokenizer-free estimate of how many tokens a text costs, for budgeting prompts.
+ *
+ * Each code point has a fixed cost in quarter tokens, so the estimate of a text is the sum of its
+ * parts and can be scanned from either end (see {@link #prefixEnd} and {@link #suffixStart}):
+ * <ul>
+ *     <li>CJK ideographs, kana, Hangul and full-width punctuation: 1 token each, which is what
+ *     Gemini's tokenizer spends on common Chinese characters and slightly more than DeepSeek's.</li>
+ *     <li>ASCII letters and digits: a quarter token (English averages about 4 characters per
+ *     token); spaces are free because tokenizers fold them into the next word.</li>
+ *     <li>ASCII punctuation and line breaks: 1 token; other letters (accented Latin, Cyrillic): half;
+ *     emoji and other supplementary characters: 2.</li>
+ * </ul>
+ * Errs on the high side so a budgeted prompt stays under its limit with real tokenizers. One
+ * pass, no allocation.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    /** Estimated tokens in {@code text}; 0 for null. */
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        long quarters = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            quarters += quarterTokens(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return (int) ((quarters + 3) / 4);
+    }
+
+    /**
+     * Index just past the longest prefix of {@code text} that fits in {@code maxTokens}. Never
+     * splits a surrogate pair.
+     */
+    static int prefixEnd(CharSequence text, int maxTokens) {
+        long budget = Math.max(0, maxTokens) * 4L;
+        long used = 0;
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = Character.codePointAt(text, i);
+            used += quarterTokens(codePoint);
+            if (used > budget) {
+                break;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return i;
+    }
+
+    /** Start index of the longest suffix of {@code text} that fits in {@code maxTokens}. */
+    static int suffixStart(CharSequence text, int maxTokens) {
+        long budget = Math.max(0, maxTokens) * 4L;
+        long used = 0;
+        int i = text.length();
+        while (i > 0) {
+            int codePoint = Character.codePointBefore(text, i);
+            used += quarterTokens(codePoint);
+            if (used > budget) {
+                break;
+            }
+            i -= Character.charCount(codePoint);
+        }
+        return i;
+    }
+
+    static int quarterTokens(int codePoint) {
+        if (codePoint < 0x80) {
+            if (codePoint == ' ' || codePoint == '\t') {
+                return 0;
+            }
+            return Character.isLetterOrDigit(codePoint) ? 1 : 4;
+        }
+        if (isCjk(codePoint)) {
+            return 4;
+        }
+        if (Character.isSupplementaryCodePoint(codePoint)) {
+            return 8;
+        }
+        return Character.isLetter(codePoint) ? 2 : 4;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        return (codePoint >= 0x4E00 && codePoint <= 0x9FFF)   // CJK unified ideographs
+                || (codePoint >= 0x3400 && codePoint <= 0x4DBF) // extension A
+                || (codePoint >= 0x3000 && codePoint <= 0x30FF) // CJK punctuation, hiragana, katakana
+                || (codePoint >= 0xAC00 && codePoint <= 0xD7AF) // Hangul syllables
+                || (codePoint >= 0xF900 && codePoint <= 0xFAFF) // compatibility ideographs
+                || (codePoint >= 0xFF00 && codePoint <= 0xFFEF) // full-width forms and punctuation
+                || (codePoint >= 0x20000 && codePoint <= 0x2FA1F); // extensions B and later
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.myappnew.services.media;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import com.example.myappnew.data.Attachment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reads a media file once at capture time and fills in the {@link Attachment} metadata:
+ * byte size, MIME type, dimensions or duration, a SHA-256 content hash, and a small JPEG
+ * thumbnail stored in app files. All of this is blocking I/O; run it on
+ * <code>AppExecutors.mediaIo()</code>, never on the main thread.
+ *
+ * ---
+ * <h4>Testing Strategy (Instrumented):</h4>
+ * <ul>
+ *     <li>Probe image, audio and video fixtures copied into app storage and verify dimensions/duration and hash.</li>
+ *     <li>Verify an unreadable URI leaves the metadata empty instead of throwing.</li>
+ * </ul>
+ * ---
+ */
+public class AttachmentProbe {
+
+    private static final String TAG = "AttachmentProbe";
+
+    /** Longest edge of stored thumbnails, in pixels. */
+    public static final int THUMBNAIL_SIZE = 256;
+
+    private final Context context;
+    private final ContentResolver contentResolver;
+    private final File thumbnailDir;
+
+    public AttachmentProbe(Context context) {
+        this.context = context.getApplicationContext();
+        this.contentResolver = this.context.getContentResolver();
+        this.thumbnailDir = new File(this.context.getFilesDir(), "thumbnails");
+    }
+
+    /** Fills in metadata on {@code attachment} in place. Failures leave fields at their defaults. */
+    public Attachment probe(Attachment attachment) {
+        Uri uri = Uri.parse(attachment.uri);
+        attachment.mimeType = contentResolver.getType(uri);
+        attachment.byteSize = querySize(uri);
+        try {
+            attachment.contentHash = hash(uri);
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "cannot read " + uri + ": " + e.getMessage());
+            return attachment;
+        }
+
+        if (Attachment.KIND_IMAGE.equals(attachment.kind)) {
+            probeImage(uri, attachment);
+        } else {
+            probeTimedMedia(uri, attachment);
+        }
+        return attachment;
+    }
+
+    private long querySize(Uri uri) {
+        try (Cursor cursor = contentResolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // Some providers do not support OpenableColumns; size stays unknown.
+        }
+        return 0;
+    }
+
+    private String hash(Uri uri) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            if (in == null) {
+                throw new IOException("No stream for " + uri);
+            }
+            DigestInputStream digestIn = new DigestInputStream(in, digest);
+            byte[] buffer = new byte[64 * 1024];
+            while (digestIn.read(buffer) != -1) {
+                // reading drives the digest
+            }
+        }
+        byte[] bytes = digest.digest();
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private void probeImage(Uri uri, Attachment attachment) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        } catch (IOException e) {
+            return;
+        }
+        attachment.width = bounds.outWidth;
+        attachment.height = bounds.outHeight;
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return;
+        }
+
+        BitmapFactory.Options decode = new BitmapFactory.Options();
+        decode.inSampleSize = sampleSizeFor(bounds.outWidth, bounds.outHeight, THUMBNAIL_SIZE);
+        decode.inPreferredConfig = Bitmap.Config.RGB_565;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            Bitmap sampled = BitmapFactory.decodeStream(in, null, decode);
+            attachment.thumbnailPath = writeThumbnail(sampled, attachment.contentHash);
+        } catch (IOException e) {
+            Log.w(TAG, "thumbnail failed for " + uri + ": " + e.getMessage());
+        }
+    }
+
+    private void probeTimedMedia(Uri uri, Attachment attachment) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            attachment.durationMs = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+            if (Attachment.KIND_VIDEO.equals(attachment.kind)) {
+                attachment.width = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+                attachment.height = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+                Bitmap frame = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1
+                        ? retriever.getScaledFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, THUMBNAIL_SIZE, THUMBNAIL_SIZE)
+                        : retriever.getFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+                attachment.thumbnailPath = writeThumbnail(frame, attachment.contentHash);
+            }
+        } catch (RuntimeException | IOException e) {
+            Log.w(TAG, "cannot read media metadata for " + uri + ": " + e.getMessage());
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException | RuntimeException ignored) {
+                // release() declares IOException on newer platforms
+            }
+        }
+    }
+
+    private String writeThumbnail(Bitmap bitmap, String contentHash) throws IOException {
+        if (bitmap == null || contentHash == null) {
+            return null;
+        }
+        Bitmap scaled = scaleToFit(bitmap, THUMBNAIL_SIZE);
+        if (!thumbnailDir.exists() && !thumbnailDir.mkdirs()) {
+            throw new IOException("Cannot create " + thumbnailDir);
+        }
+        // Named by content hash, so the same file attached twice shares one thumbnail.
+        File file = new File(thumbnailDir, contentHash + ".jpg");
+        if (!file.exists()) {
+            try (OutputStream out = new FileOutputStream(file)) {
+                scaled.compress(Bitmap.CompressFormat.JPEG, 80, out);
+            }
+        }
+        if (scaled != bitmap) {
+            scaled.recycle();
+        }
+        bitmap.recycle();
+        return file.getAbsolutePath();
+    }
+
+    /** Largest power-of-two sample size that keeps both edges at or above {@code target}. */
+    static int sampleSizeFor(int width, int height, int target) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= target && height / (sampleSize * 2) >= target) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap scaleToFit(Bitmap source, int maxDimension) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width <= maxDimension && height <= maxDimension) {
+            return source;
+        }
+        float scale = (float) maxDimension / Math.max(width, height);
+        return Bitmap.createScaledBitmap(source, Math.round(width * scale), Math.round(height * scale), true);
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.myappnew.services.media;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Chooses image encode parameters (format, longer edge, quality) so the output lands just under a
+ * byte budget, instead of a fixed quality whose output size depends entirely on the photo.
+ *
+ * <ol>
+ *     <li>Start from the parameters that worked for a similar image (same kind of source and
+ *     resolution, see {@link #similarityKey}). Usually that first pass is already inside the
+ *     accepted band and the search ends there.</li>
+ *     <li>Otherwise bisect quality at the current size. If even {@link #MIN_QUALITY} is too big,
+ *     shrink the longer edge by the square root of the overshoot, since bytes scale with area.</li>
+ *     <li>Try WebP lossy once at a higher quality than the JPEG result. WebP is usually smaller at
+ *     equal quality, so it keeps more detail within the same budget.</li>
+ * </ol>
+ * The search itself does not touch Android graphics classes; {@link Encoder} does the actual
+ * encoding, so the logic is unit-tested with a fake encoder. Thread-safe.
+ */
+public class ByteBudgetCompressor {
+
+    public enum Format { JPEG, WEBP }
+
+    public static final int MIN_QUALITY = 35;
+    public static final int MAX_QUALITY = 90;
+    public static final int DEFAULT_QUALITY = 80;
+    /** Results at or above this fraction of the budget are accepted without further passes. */
+    static final double ACCEPT_FRACTION = 0.75;
+    /** Quality bisection stops once the fitting and overshooting qualities are this close. */
+    static final int QUALITY_TOLERANCE = 5;
+    static final int MAX_PASSES = 8;
+    /** An overshoot this large at the first quality tried goes straight to {@link #MIN_QUALITY}. */
+    static final double FAR_OVER_FACTOR = 1.6;
+    private static final int WEBP_QUALITY_BONUS = 10;
+    private static final int MIN_DIMENSION = 256;
+    private static final int REMEMBERED_KEYS = 32;
+
+    public static final class Params {
+        public final Format format;
+        public final int maxDimension;
+        public final int quality;
+
+        public Params(Format format, int maxDimension, int quality) {
+            this.format = format;
+            this.maxDimension = maxDimension;
+            this.quality = quality;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Params)) return false;
+            Params that = (Params) o;
+            return format == that.format && maxDimension == that.maxDimension && quality == that.quality;
+        }
+
+        @Override
+        public int hashCode() {
+            return (format.hashCode() * 31 + maxDimension) * 31 + quality;
+        }
+
+        @Override
+        public String toString() {
+            return format + "@" + maxDimension + "px/q" + quality;
+        }
+    }
+
+    /** Encodes with the given parameters and returns the output size in bytes. */
+    public interface Encoder {
+        int encode(Params params) throws IOException;
+    }
+
+    public static final class Result {
+        public final Params params;
+        public final int size;
+        /** Number of encode calls made, including a final re-encode of the chosen parameters. */
+        public final int passes;
+        public final boolean withinBudget;
+
+        Result(Params params, int size, int passes, boolean withinBudget) {
+            this.params = params;
+            this.size = size;
+            this.passes = passes;
+            this.withinBudget = withinBudget;
+        }
+    }
+
+    private final int defaultMaxDimension;
+    private final Map<String, Params> remembered = new LinkedHashMap<String, Params>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Params> eldest) {
+            return size() > REMEMBERED_KEYS;
+        }
+    };
+
+    public ByteBudgetCompressor(int defaultMaxDimension) {
+        this.defaultMaxDimension = defaultMaxDimension;
+    }
+
+    /**
+     * Groups images that compress alike: same MIME type, orientation and rough megapixel count.
+     * Photos from one camera share a key, so their parameters are found once.
+     */
+    public static String similarityKey(int width, int height, String mimeType) {
+        long pixels = (long) width * height;
+        int megapixelBucket = 63 - Long.numberOfLeadingZeros(Math.max(1, pixels / 250_000));
+        String orientation = width >= height ? "L" : "P";
+        return String.format(Locale.ROOT, "%s|%s|%d", mimeType, orientation, megapixelBucket);
+    }
+
+    /**
+     * Runs the search. When the method returns, the last call to {@code encoder} used
+     * {@link Result#params}, so the encoder's output buffer holds the chosen encoding.
+     *
+     * @param sourceMaxDimension longer edge of the source; output is never upscaled
+     */
+    public Result compress(String key, int sourceMaxDimension, int budgetBytes, Encoder encoder) throws IOException {
+        Params start;
+        synchronized (remembered) {
+            start = remembered.get(key);
+        }
+        boolean fromMemory = start != null;
+        if (start == null) {
+            start = new Params(Format.JPEG, defaultMaxDimension, DEFAULT_QUALITY);
+        }
+
+        Search search = new Search(encoder, budgetBytes);
+        int dimension = Math.min(start.maxDimension, sourceMaxDimension);
+        Params found = search.searchQuality(start.format, dimension, start.quality);
+
+        if (!fromMemory && found != null && found.format == Format.JPEG && search.passes < MAX_PASSES) {
+            Params webp = new Params(Format.WEBP, found.maxDimension, Math.min(MAX_QUALITY, found.quality + WEBP_QUALITY_BONUS));
+            int size = search.attempt(webp);
+            if (size <= budgetBytes) {
+                // Higher quality than the JPEG fit even when it happens to be a few bytes smaller.
+                search.preferFit(webp, size);
+            }
+        }
+
+        Result result = search.finish();
+        if (result.withinBudget) {
+            synchronized (remembered) {
+                remembered.put(key, result.params);
+            }
+        }
+        return result;
+    }
+
+    private static final class Search {
+        private final Encoder encoder;
+        private final int budget;
+        int passes;
+        private Params lastEncoded;
+        private Params bestFit;
+        private int bestFitSize = -1;
+        private Params smallest;
+        private int smallestSize = Integer.MAX_VALUE;
+
+        Search(Encoder encoder, int budget) {
+            this.encoder = encoder;
+            this.budget = budget;
+        }
+
+        int attempt(Params params) throws IOException {
+            int size = encoder.encode(params);
+            passes++;
+            lastEncoded = params;
+            if (size <= budget && size > bestFitSize) {
+                bestFit = params;
+                bestFitSize = size;
+            }
+            if (size < smallestSize) {
+                smallest = params;
+                smallestSize = size;
+            }
+            return size;
+        }
+
+        void preferFit(Params params, int size) {
+            bestFit = params;
+            bestFitSize = size;
+        }
+
+        /** Bisects quality, shrinking the dimension when needed. Returns the best fit so far, or null. */
+        Params searchQuality(Format format, int dimension, int quality) throws IOException {
+            int fitting = -1;      // highest quality known to fit at this dimension
+            int overshooting = -1; // lowest quality known to exceed the budget at this dimension
+            int q = clampQuality(quality);
+            while (passes < MAX_PASSES) {
+                int size = attempt(new Params(format, dimension, q));
+                if (size <= budget) {
+                    fitting = q;
+                    if (size >= budget * ACCEPT_FRACTION || q >= MAX_QUALITY) {
+                        break;
+                    }
+                } else {
+                    overshooting = q;
+                    if (q <= MIN_QUALITY) {
+                        // Quality alone cannot get there; bytes scale roughly with pixel count.
+                        int smaller = (int) (dimension * Math.sqrt((double) budget / size) * 0.95);
+                        if (smaller < MIN_DIMENSION && dimension > MIN_DIMENSION) {
+                            smaller = MIN_DIMENSION;
+                        }
+                        if (smaller < MIN_DIMENSION || smaller >= dimension) {
+                            break;
+                        }
+                        dimension = smaller;
+                        fitting = -1;
+                        overshooting = -1;
+                        // The shrink was sized for the minimum quality; bisect upward from there.
+                        q = MIN_QUALITY;
+                        continue;
+                    }
+                    if (fitting < 0 && size > budget * FAR_OVER_FACTOR) {
+                        // Quality rarely buys more than this factor; check the floor before bisecting.
+                        q = MIN_QUALITY;
+                        continue;
+                    }
+                }
+                if (fitting >= 0 && overshooting >= 0 && overshooting - fitting <= QUALITY_TOLERANCE) {
+                    break;
+                }
+                int low = fitting >= 0 ? fitting : MIN_QUALITY - 1;
+                int high = overshooting >= 0 ? overshooting : MAX_QUALITY + 1;
+                q = clampQuality((low + high + 1) / 2);
+            }
+            return bestFit;
+        }
+
+        Result finish() throws IOException {
+            Params chosen = bestFit != null ? bestFit : smallest;
+            int size = bestFit != null ? bestFitSize : smallestSize;
+            if (!chosen.equals(lastEncoded)) {
+                attempt(chosen);
+            }
+            return new Result(chosen, size, passes, bestFit != null);
+        }
+
+        private static int clampQuality(int q) {
+            return Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, q));
+        }
+    }
+}
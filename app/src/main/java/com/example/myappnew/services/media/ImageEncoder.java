@@ -0,0 +1,301 @@
+package com.example.myappnew.services.media;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Base64;
+import android.util.Base64OutputStream;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decode-to-size and encode pipeline for images sent to an LLM.
+ *
+ * <ul>
+ *     <li>Decoding goes straight to the target size (<code>ImageDecoder.setTargetSize</code> on
+ *     API 28+, <code>inSampleSize</code> below), so a 12 MP photo never exists as a 48 MB bitmap.
+ *     Opaque images decode as RGB_565, which halves the pixel memory again.</li>
+ *     <li>Encoding streams compressor output through a Base64 encoding stream into a per-thread
+ *     buffer that is reused between calls. The only full-size copy is the final String.</li>
+ * </ul>
+ * Hardware bitmaps are not used: every bitmap decoded here is compressed right away, and that
+ * needs CPU-readable pixels.
+ *
+ * Blocking; call on <code>AppExecutors.mediaIo()</code>.
+ *
+ * ---
+ * <h4>Testing Strategy (Instrumented):</h4>
+ * <ul>
+ *     <li>See <code>ImageEncoderBenchmark</code> for peak-heap and latency against the old full-decode path.</li>
+ *     <li>Verify decoded bitmaps never exceed the requested longer edge and keep the aspect ratio.</li>
+ * </ul>
+ * ---
+ */
+public class ImageEncoder {
+
+    private static final String TAG = "ImageEncoder";
+
+    /** Longer edge used when callers do not ask for a specific size; plenty for vision models. */
+    public static final int DEFAULT_MAX_DIMENSION = 1024;
+    public static final int DEFAULT_QUALITY = 70;
+
+    /** Buffers that grew past this are dropped after use instead of being kept per thread. */
+    private static final int MAX_RETAINED_BUFFER = 2 * 1024 * 1024;
+
+    private static final ThreadLocal<ReusableByteStream> BUFFERS = new ThreadLocal<ReusableByteStream>() {
+        @Override
+        protected ReusableByteStream initialValue() {
+            return new ReusableByteStream(256 * 1024);
+        }
+    };
+
+    /** Shared so parameters learned for one photo are reused for the next similar one. */
+    private static final ByteBudgetCompressor BUDGET_COMPRESSOR = new ByteBudgetCompressor(DEFAULT_MAX_DIMENSION);
+
+    private final ContentResolver contentResolver;
+
+    public ImageEncoder(Context context) {
+        this.contentResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    /** Decodes and encodes {@code uri} as Base64 (no line wraps) JPEG at the default size and quality. */
+    public String encodeBase64(Uri uri) throws IOException {
+        return encodeBase64(uri, DEFAULT_MAX_DIMENSION, Bitmap.CompressFormat.JPEG, DEFAULT_QUALITY);
+    }
+
+    public String encodeBase64(Uri uri, int maxDimension, Bitmap.CompressFormat format, int quality) throws IOException {
+        Bitmap bitmap = decodeScaled(uri, maxDimension);
+        try {
+            return encodeBase64(bitmap, format, quality);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /** Compresses {@code bitmap} and returns it as Base64 without intermediate byte arrays. */
+    public String encodeBase64(Bitmap bitmap, Bitmap.CompressFormat format, int quality) throws IOException {
+        ReusableByteStream buffer = BUFFERS.get();
+        buffer.reset();
+        try {
+            try (Base64OutputStream base64 = new Base64OutputStream(buffer, Base64.NO_WRAP)) {
+                if (!bitmap.compress(format, quality, base64)) {
+                    throw new IOException("Bitmap.compress failed for " + format);
+                }
+            }
+            return buffer.toAsciiString();
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+                BUFFERS.remove();
+            }
+        }
+    }
+
+    /** Encoded image bytes and their MIME type, ready to attach to a request as-is. */
+    public static final class EncodedImage {
+        public final byte[] bytes;
+        public final String mimeType;
+
+        EncodedImage(byte[] bytes, String mimeType) {
+            this.bytes = bytes;
+            this.mimeType = mimeType;
+        }
+    }
+
+    /**
+     * Encodes {@code uri} at or under {@code budgetBytes}, choosing format, size and quality with
+     * {@link ByteBudgetCompressor}. If the budget cannot be met at the smallest allowed size, the
+     * smallest encoding is returned.
+     */
+    public EncodedImage encodeWithinBudget(Uri uri, int budgetBytes) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Cannot read bounds of " + uri);
+        }
+        int sourceMax = Math.max(bounds.outWidth, bounds.outHeight);
+        String key = ByteBudgetCompressor.similarityKey(bounds.outWidth, bounds.outHeight, bounds.outMimeType);
+
+        // Decode once at the largest size the search may ask for; smaller sizes scale from it.
+        Bitmap decoded = decodeScaled(uri, Math.min(sourceMax, DEFAULT_MAX_DIMENSION));
+        Bitmap[] scaled = {null};
+        try {
+            ByteBudgetCompressor.Result result = BUDGET_COMPRESSOR.compress(key, sourceMax, budgetBytes, params -> {
+                Bitmap source = decoded;
+                int longer = Math.max(decoded.getWidth(), decoded.getHeight());
+                if (params.maxDimension < longer) {
+                    Bitmap current = scaled[0];
+                    if (current == null || Math.max(current.getWidth(), current.getHeight()) != params.maxDimension) {
+                        if (current != null) {
+                            current.recycle();
+                        }
+                        float scale = (float) params.maxDimension / longer;
+                        current = Bitmap.createScaledBitmap(decoded,
+                                Math.max(1, Math.round(decoded.getWidth() * scale)),
+                                Math.max(1, Math.round(decoded.getHeight() * scale)), true);
+                        scaled[0] = current;
+                    }
+                    source = current;
+                }
+                return encodeToBuffer(source, compressFormat(params.format), params.quality);
+            });
+            Log.d(TAG, result.params + " -> " + result.size + " bytes in "
+                    + result.passes + " pass(es), budget " + budgetBytes);
+            // The compressor's last encode was the chosen one, so the thread buffer holds it.
+            String mimeType = result.params.format == ByteBudgetCompressor.Format.WEBP ? "image/webp" : "image/jpeg";
+            return new EncodedImage(Arrays.copyOf(lastEncodedBytes(), result.size), mimeType);
+        } finally {
+            if (scaled[0] != null) {
+                scaled[0].recycle();
+            }
+            decoded.recycle();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    static Bitmap.CompressFormat compressFormat(ByteBudgetCompressor.Format format) {
+        if (format == ByteBudgetCompressor.Format.WEBP) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                    ? Bitmap.CompressFormat.WEBP_LOSSY
+                    : Bitmap.CompressFormat.WEBP;
+        }
+        return Bitmap.CompressFormat.JPEG;
+    }
+
+    /**
+     * Compresses {@code bitmap} into the calling thread's reusable buffer and returns the byte count.
+     * The bytes are valid until the next call on the same thread; see {@link #lastEncodedBytes()}.
+     */
+    public int encodeToBuffer(Bitmap bitmap, Bitmap.CompressFormat format, int quality) throws IOException {
+        ReusableByteStream buffer = BUFFERS.get();
+        buffer.reset();
+        if (!bitmap.compress(format, quality, buffer)) {
+            throw new IOException("Bitmap.compress failed for " + format);
+        }
+        return buffer.size();
+    }
+
+    /** Bytes written by the last {@link #encodeToBuffer} on this thread. The array may be longer. */
+    public byte[] lastEncodedBytes() {
+        return BUFFERS.get().buffer();
+    }
+
+    /** Decodes {@code uri} so that its longer edge is at most {@code maxDimension}. Never returns null. */
+    public Bitmap decodeScaled(Uri uri, int maxDimension) throws IOException {
+        Bitmap bitmap;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            ImageDecoder.Source source = ImageDecoder.createSource(contentResolver, uri);
+            bitmap = ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+                int width = info.getSize().getWidth();
+                int height = info.getSize().getHeight();
+                float scale = Math.min(1f, (float) maxDimension / Math.max(width, height));
+                decoder.setTargetSize(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                // Lets the decoder pick RGB_565 for images without alpha.
+                decoder.setMemorySizePolicy(ImageDecoder.MEMORY_POLICY_LOW_RAM);
+            });
+        } else {
+            bitmap = decodeSampled(uri, maxDimension);
+        }
+        if (bitmap == null) {
+            throw new IOException("Cannot decode " + uri);
+        }
+        return bitmap;
+    }
+
+    private Bitmap decodeSampled(Uri uri, int maxDimension) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = AttachmentProbe.sampleSizeFor(options.outWidth, options.outHeight, maxDimension);
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            sampled = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (sampled == null) {
+            return null;
+        }
+        // inSampleSize only halves; finish with one exact scale down to the target.
+        int width = sampled.getWidth();
+        int height = sampled.getHeight();
+        if (width <= maxDimension && height <= maxDimension) {
+            return sampled;
+        }
+        float scale = (float) maxDimension / Math.max(width, height);
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, Math.round(width * scale), Math.round(height * scale), true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * ByteArrayOutputStream without synchronization that exposes its array instead of copying it.
+     * close() is a no-op, so the Base64 stream can be closed to flush its last block.
+     */
+    static final class ReusableByteStream extends OutputStream {
+        private byte[] buf;
+        private int count;
+
+        ReusableByteStream(int initialCapacity) {
+            buf = new byte[initialCapacity];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(needed, buf.length * 2));
+            }
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        int size() {
+            return count;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        String toAsciiString() {
+            return new String(buf, 0, count, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.myappnew.services.media;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.Nullable;
+
+import com.example.myappnew.AppExecutors;
+import com.example.myappnew.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads downsampled images into ImageViews off the main thread, with two cache tiers:
+ * <ol>
+ *     <li>Memory: a {@link LruCache} bounded by bitmap bytes (1/8 of the heap).</li>
+ *     <li>Disk: JPEGs in <code>cacheDir/thumbnails</code>, keyed by source URI + target size, so a
+ *     cold start decodes a few KB instead of a full camera image.</li>
+ * </ol>
+ * Each request is remembered in the view's tag. Binding a new request to the same view, or calling
+ * {@link #cancel(ImageView)} from <code>onViewRecycled</code>, cancels the old one, so a recycled
+ * RecyclerView row never shows another row's image.
+ *
+ * ---
+ * <h4>Testing Strategy (Instrumented):</h4>
+ * <ul>
+ *     <li>Load the same URI twice and verify the second load is served from memory without touching the executor.</li>
+ *     <li>Clear the memory tier and verify the disk file is reused instead of the source.</li>
+ *     <li>Bind two URIs to one view in quick succession and verify only the second is displayed.</li>
+ * </ul>
+ * ---
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = "ThumbnailLoader";
+
+    /** Disk tier is trimmed back to this size, oldest files first. */
+    private static final long DISK_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final int TRIM_EVERY_N_WRITES = 20;
+
+    private static volatile ThumbnailLoader INSTANCE;
+
+    private final ContentResolver contentResolver;
+    private final File diskDir;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final AtomicInteger writesSinceTrim = new AtomicInteger();
+
+    private ThumbnailLoader(Context context) {
+        Context appContext = context.getApplicationContext();
+        this.contentResolver = appContext.getContentResolver();
+        this.diskDir = new File(appContext.getCacheDir(), "thumbnails");
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        this.memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    public static ThumbnailLoader getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (ThumbnailLoader.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ThumbnailLoader(context);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Shows {@code uri} in {@code view}, decoded so that its longer edge is at most {@code sizePx}.
+     * Must be called on the main thread. A null URI just clears the view.
+     */
+    public void load(@Nullable Uri uri, ImageView view, int sizePx) {
+        cancel(view);
+        if (uri == null) {
+            view.setImageDrawable(null);
+            return;
+        }
+        String key = uri + "@" + sizePx;
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageDrawable(null);
+        Request request = new Request(key);
+        view.setTag(R.id.tag_thumbnail_request, request);
+        AppExecutors executors = AppExecutors.getInstance();
+        request.future = executors.mediaIo().submit(() -> {
+            Bitmap bitmap = loadBlocking(uri, key, sizePx, request);
+            if (bitmap == null || request.cancelled) {
+                return;
+            }
+            executors.mainThread().execute(() -> {
+                // The view may have been rebound to another item while we were decoding.
+                if (!request.cancelled && view.getTag(R.id.tag_thumbnail_request) == request) {
+                    view.setTag(R.id.tag_thumbnail_request, null);
+                    view.setImageBitmap(bitmap);
+                }
+            });
+        });
+    }
+
+    /** Cancels any pending load for {@code view}. Call from RecyclerView's onViewRecycled. */
+    public void cancel(ImageView view) {
+        Object tag = view.getTag(R.id.tag_thumbnail_request);
+        if (tag instanceof Request) {
+            Request request = (Request) tag;
+            request.cancelled = true;
+            if (request.future != null) {
+                request.future.cancel(true);
+            }
+            view.setTag(R.id.tag_thumbnail_request, null);
+        }
+    }
+
+    /** Blocking two-tier lookup. Returns null if the source cannot be decoded or the request was cancelled. */
+    @Nullable
+    Bitmap loadBlocking(Uri uri, String key, int sizePx, @Nullable Request request) {
+        File diskFile = new File(diskDir, diskName(key));
+        Bitmap bitmap = null;
+        if (diskFile.exists()) {
+            bitmap = BitmapFactory.decodeFile(diskFile.getAbsolutePath());
+            if (bitmap != null) {
+                diskFile.setLastModified(System.currentTimeMillis());
+            }
+        }
+        if (bitmap == null) {
+            if (request != null && request.cancelled) {
+                return null;
+            }
+            try {
+                bitmap = decodeDownsampled(uri, sizePx);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "cannot decode " + uri + ": " + e.getMessage());
+                return null;
+            }
+            if (bitmap == null) {
+                return null;
+            }
+            writeToDisk(bitmap, diskFile);
+        }
+        memoryCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    private Bitmap decodeDownsampled(Uri uri, int sizePx) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            ImageDecoder.Source source = ImageDecoder.createSource(contentResolver, uri);
+            return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+                int width = info.getSize().getWidth();
+                int height = info.getSize().getHeight();
+                float scale = Math.min(1f, (float) sizePx / Math.max(width, height));
+                decoder.setTargetSize(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+                // Software pixels so the result can also be written to the disk tier.
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+            });
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = AttachmentProbe.sampleSizeFor(options.outWidth, options.outHeight, sizePx);
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    private void writeToDisk(Bitmap bitmap, File file) {
+        if (!diskDir.exists() && !diskDir.mkdirs()) {
+            return;
+        }
+        // Write under a temp name so a concurrent reader never sees a half-written file.
+        File tmp = new File(diskDir, file.getName() + ".tmp" + Thread.currentThread().getId());
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out);
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+        if (writesSinceTrim.incrementAndGet() >= TRIM_EVERY_N_WRITES) {
+            writesSinceTrim.set(0);
+            trimDisk();
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        if (total <= DISK_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= DISK_CACHE_BYTES) {
+                break;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static String diskName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(40);
+            // 20 bytes of the hash is plenty to avoid collisions in a cache directory.
+            for (int i = 0; i < 20; i++) {
+                hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+            }
+            return hex.append(".jpg").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class Request {
+        final String key;
+        volatile Future<?> future;
+        volatile boolean cancelled;
+
+        Request(String key) {
+            this.key = key;
+        }
+    }
+}
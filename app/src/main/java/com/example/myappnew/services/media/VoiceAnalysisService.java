@@ -1,28 +1,29 @@
 package com.example.myappnew.services.media;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
-// Potentially, if doing local speech-to-text:
-// import android.speech.SpeechRecognizer;
-// import android.util.Base64; // If sending audio data directly
+import android.provider.OpenableColumns;
+import android.util.Log;
 
+import com.example.myappnew.AppExecutors;
 import com.example.myappnew.services.llm.LlmRequest;
 import com.example.myappnew.services.llm.LlmResponse;
 import com.example.myappnew.services.llm.LlmService;
 import com.example.myappnew.services.llm.LlmServiceProvider;
+import com.example.myappnew.services.llm.LlmStream;
+import com.example.myappnew.services.llm.PendingLlmStream;
+import com.example.myappnew.services.llm.Prompts;
+import com.example.myappnew.services.llm.StreamListener;
 
-// import java.io.InputStream;
-// import java.io.ByteArrayOutputStream;
-// import java.io.IOException;
-
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Service for handling voice analysis.
- * Currently sends a generic prompt to an LLM indicating voice input.
- * Future enhancements could include speech-to-text.
+ * Sends the recording itself as an inline audio part so a multimodal model can listen to it.
+ * Recordings over {@link #MAX_INLINE_AUDIO_BYTES} fall back to a text-only prompt.
  *
  * ---
  * <h4>Testing Strategy (Unit Tests):</h4>
@@ -34,6 +35,11 @@ import retrofit2.Response;
  * ---
  */
 public class VoiceAnalysisService {
+    private static final String TAG = "VoiceAnalysisService";
+
+    /** Inline request data is limited to about 20 MB per request, Base64 overhead included. */
+    public static final long MAX_INLINE_AUDIO_BYTES = 12L * 1024 * 1024;
+
     private LlmService llmService;
     private Context context;
 
@@ -42,77 +48,121 @@ public class VoiceAnalysisService {
         this.llmService = llmServiceProvider.getService();
     }
 
-    public void analyzeVoice(Uri audioUri, AnalysisCallback callback) {
-        // Future enhancement: Implement speech-to-text here.
-        // For example, using Android's SpeechRecognizer or a cloud STT API.
-        // The result of STT would then be used in the prompt.
-
-        // For now, similar to image analysis, we send a generic prompt.
-        // If using OpenAI's Whisper API, you would upload the audio file and get a transcript.
-        // This transcript would then be sent to a chat/completion model.
-        // Our current LlmService is text-in, text-out.
-
-        // String transcribedText = performSpeechToText(audioUri); // Placeholder
-        // if (transcribedText == null) {
-        //     callback.onError("Failed to transcribe audio.");
-        //     return;
-        // }
-        // String prompt = "The user said: \"" + transcribedText + "\". Provide advice based on this.";
-
-        String prompt = "The user has provided a voice recording. Based on general positive psychology principles, offer a brief, encouraging piece of advice or a supportive question. (Audio content is not available to you in this simplified version).";
-        LlmRequest request = new LlmRequest(prompt);
-
-        System.out.println("VoiceAnalysisService: Sending request for audio (URI: " + audioUri.toString() + ")");
-
-        Call<LlmResponse> call = llmService.generateText(request);
-        if (call != null) {
-            call.enqueue(new Callback<LlmResponse>() {
-                @Override
-                public void onResponse(Call<LlmResponse> call, Response<LlmResponse> response) {
-                    if (response.isSuccessful() && response.body() != null && response.body().getGeneratedText() != null) {
-                        System.out.println("VoiceAnalysisService: LLM analysis successful.");
-                        callback.onSuccess(response.body().getGeneratedText());
-                    } else {
-                        String errorMsg = "LLM analysis failed: " + (response.errorBody() != null ? response.errorBody().toString() : (response.body() != null && response.body().getError() != null ? response.body().getError() : "Unknown error"));
-                        System.out.println("VoiceAnalysisService: " + errorMsg);
-                        callback.onError(errorMsg);
-                    }
-                }
+    /**
+     * Reading the recording runs on the media pool; the callback is invoked from a background thread.
+     * Cancelling the returned handle skips work not yet started and cancels the LLM call.
+     */
+    public LlmStream analyzeVoice(Uri audioUri, AnalysisCallback callback) {
+        PendingLlmStream handle = new PendingLlmStream();
+        AppExecutors.getInstance().mediaIo().execute(() -> analyzeVoiceBlocking(audioUri, callback, handle));
+        return handle;
+    }
 
-                @Override
-                public void onFailure(Call<LlmResponse> call, Throwable t) {
-                    System.err.println("VoiceAnalysisService: LLM call failed: " + t.getMessage());
-                    t.printStackTrace();
-                    callback.onError("LLM call failed: " + t.getMessage());
-                }
-            });
+    private void analyzeVoiceBlocking(Uri audioUri, AnalysisCallback callback, PendingLlmStream handle) {
+        if (handle.isCanceled()) {
+            return; // the screen went away before the media was read
+        }
+        byte[] audio = readAudio(audioUri);
+        LlmRequest request;
+        if (audio != null) {
+            String prompt = Prompts.VOICE_ANALYSIS.fill().render();
+            String mimeType = context.getContentResolver().getType(audioUri);
+            request = new LlmRequest(prompt).addAudio(audio, mimeType != null ? mimeType : "audio/mp4");
         } else {
-            String errorMsg = "VoiceAnalysisService: LlmService returned a null Call object. Cannot proceed.";
-            System.err.println(errorMsg);
-            callback.onError(errorMsg);
+            String prompt = Prompts.VOICE_ANALYSIS_WITHOUT_AUDIO.fill().render();
+            request = new LlmRequest(prompt);
         }
+
+        request.setCallSite("voice_analysis");
+        Log.d(TAG, "Sending request for audio (URI: " + audioUri.toString() + ")");
+
+        if (handle.isCanceled()) {
+            return;
+        }
+        // Streamed so the UI can show the reply as it is generated instead of waiting for all of it.
+        handle.attach(llmService.streamText(request, new StreamListener() {
+            private final StringBuilder soFar = new StringBuilder();
+
+            @Override
+            public void onChunk(String delta) {
+                soFar.append(delta);
+                callback.onPartial(soFar.toString());
+            }
+
+            @Override
+            public void onComplete(LlmResponse response) {
+                Log.d(TAG, "LLM analysis successful (ttft " + response.getTimeToFirstTokenMs() + " ms, total " + response.getLatencyMs() + " ms).");
+                callback.onSuccess(response.getGeneratedText());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                Log.e(TAG, "LLM call failed: " + t.getMessage(), t);
+                callback.onError("LLM call failed: " + t.getMessage());
+            }
+        }));
     }
 
-    // Placeholder for converting audio URI to Base64 or other formats if needed for an API
-    /*
-    private String convertAudioUriToBase64(Uri audioUri) {
-        try (InputStream inputStream = context.getContentResolver().openInputStream(audioUri)) {
-            if (inputStream == null) return null;
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = inputStream.read(buffer)) != -1) {
-                byteArrayOutputStream.write(buffer, 0, len);
+    /**
+     * Reads the recording into one exactly-sized array when the provider reports the size, so the
+     * bytes are copied once. Returns null if unreadable or larger than {@link #MAX_INLINE_AUDIO_BYTES}.
+     */
+    private byte[] readAudio(Uri audioUri) {
+        long size = -1;
+        try (Cursor cursor = context.getContentResolver().query(audioUri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                size = cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // size stays unknown
+        }
+        if (size > MAX_INLINE_AUDIO_BYTES) {
+            Log.w(TAG, "Recording is " + size + " bytes, too large to send inline.");
+            return null;
+        }
+        try (InputStream in = context.getContentResolver().openInputStream(audioUri)) {
+            if (in == null) {
+                return null;
+            }
+            if (size > 0) {
+                byte[] data = new byte[(int) size];
+                int offset = 0;
+                int read;
+                while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                    offset += read;
+                }
+                if (offset == data.length && in.read() == -1) {
+                    return data;
+                }
+                // The reported size was wrong; fall through to an unknown-size read.
+            }
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Failed to read audio: " + e.getMessage(), e);
+            return null;
+        }
+        try (InputStream in = context.getContentResolver().openInputStream(audioUri)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (out.size() > MAX_INLINE_AUDIO_BYTES) {
+                    return null;
+                }
             }
-            return Base64.encodeToString(byteArrayOutputStream.toByteArray(), Base64.DEFAULT);
-        } catch (IOException e) {
-            e.printStackTrace();
+            return out.toByteArray();
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Failed to read audio: " + e.getMessage(), e);
             return null;
         }
     }
-    */
 
     public interface AnalysisCallback {
+        /** The reply so far, called repeatedly while it streams in. */
+        default void onPartial(String textSoFar) {}
         void onSuccess(String analysisResult);
         void onError(String error);
     }
@@ -3,6 +3,10 @@ package com.example.myappnew.services.websocket;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.example.myappnew.services.http.SharedHttpClient;
+
+import java.util.concurrent.TimeUnit;
+
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -32,7 +36,8 @@ public class ChatWebSocketClient {
     private String serverUrl;
 
     public ChatWebSocketClient(String serverUrl, WebSocketListenerCallback listenerCallback) {
-        this.client = new OkHttpClient();
+        // Shares the app's connection pool and dispatcher; pings keep the idle socket alive through NATs.
+        this.client = SharedHttpClient.get().newBuilder().pingInterval(30, TimeUnit.SECONDS).build();
         this.serverUrl = serverUrl;
         this.listenerCallback = listenerCallback;
     }
@@ -102,7 +107,11 @@ public class ChatWebSocketClient {
         }
     }
 
+    /** Drops the socket immediately. The shared client's dispatcher is never shut down here. */
     public void shutdown() {
-        client.dispatcher().executorService().shutdown();
+        if (webSocket != null) {
+            webSocket.cancel();
+            webSocket = null;
+        }
     }
 }
@@ -15,6 +15,13 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import com.example.myappnew.R;
+import com.example.myappnew.services.llm.LlmCallRegistry;
+import com.example.myappnew.services.llm.LlmRequest;
+import com.example.myappnew.services.llm.LlmResponse;
+import com.example.myappnew.services.llm.LlmService;
+import com.example.myappnew.services.llm.LlmServiceProvider;
+import com.example.myappnew.services.llm.Prompts;
+import com.example.myappnew.services.llm.StreamListener;
 import com.example.myappnew.services.websocket.ChatWebSocketClient;
 import com.example.myappnew.services.websocket.WebSocketListenerCallback;
 
@@ -45,8 +52,12 @@ public class ChatFragment extends Fragment implements WebSocketListenerCallback
 
     private EditText editChatMessage;
     private Button buttonSendMessage;
+    private Button buttonAskAi;
     private TextView textChatMessages;
 
+    private LlmService llmService;
+    private LlmCallRegistry llmCalls;
+
     private ChatWebSocketClient webSocketClient;
     // Using a public test WebSocket server
     private static final String WEB_SOCKET_URL = "wss://echo.websocket.org";
@@ -62,6 +73,16 @@ public class ChatFragment extends Fragment implements WebSocketListenerCallback
         textChatMessages = root.findViewById(R.id.text_chat_messages);
         textChatMessages.setMovementMethod(new ScrollingMovementMethod()); // Enable scrolling
         buttonSendMessage.setEnabled(false); // Initially disable until connection is open
+        buttonAskAi = root.findViewById(R.id.button_ask_ai);
+        buttonAskAi.setOnClickListener(v -> {
+            String message = editChatMessage.getText().toString().trim();
+            if (message.isEmpty()) {
+                showToast("Message cannot be empty.");
+                return;
+            }
+            editChatMessage.setText("");
+            askAi(message);
+        });
 
 
         buttonSendMessage.setOnClickListener(v -> {
@@ -86,6 +107,7 @@ public class ChatFragment extends Fragment implements WebSocketListenerCallback
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
+        llmCalls = LlmCallRegistry.bindTo(getViewLifecycleOwner());
         // Initialize and connect WebSocket client
         // Ensure this URL is accessible from the environment.
         webSocketClient = new ChatWebSocketClient(WEB_SOCKET_URL, this);
@@ -93,6 +115,12 @@ public class ChatFragment extends Fragment implements WebSocketListenerCallback
         webSocketClient.connect();
     }
 
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        llmService = LlmServiceProvider.getInstance(requireContext()).getService();
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
@@ -155,6 +183,45 @@ public class ChatFragment extends Fragment implements WebSocketListenerCallback
         }
     }
 
+    /** Streams the AI reply into the transcript as it is generated. */
+    private void askAi(String message) {
+        appendMessageToView("You: " + message);
+        textChatMessages.append("AI: ");
+        buttonAskAi.setEnabled(false);
+        llmCalls.streamText(llmService, new LlmRequest(Prompts.CHAT_MESSAGE.fill().set("message", message).render()).setCallSite("chat"), new StreamListener() {
+            @Override
+            public void onChunk(String delta) {
+                postToUi(() -> textChatMessages.append(delta));
+            }
+
+            @Override
+            public void onComplete(LlmResponse response) {
+                postToUi(() -> {
+                    textChatMessages.append("\n");
+                    buttonAskAi.setEnabled(true);
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                postToUi(() -> {
+                    appendMessageToView("[AI error: " + t.getMessage() + "]");
+                    buttonAskAi.setEnabled(true);
+                });
+            }
+        });
+    }
+
+    private void postToUi(Runnable action) {
+        if (isAdded() && getActivity() != null) {
+            getActivity().runOnUiThread(() -> {
+                if (getView() != null) {
+                    action.run();
+                }
+            });
+        }
+    }
+
     private void appendMessageToView(String message) {
         // Ensure UI updates are on the main thread (already handled by runOnUiThread in callbacks)
         textChatMessages.append(message + "\n");
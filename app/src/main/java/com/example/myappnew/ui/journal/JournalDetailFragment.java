@@ -1,25 +1,42 @@
 package com.example.myappnew.ui.journal;
 
+import android.content.Context;
+import android.net.Uri;
 import android.os.Bundle;
-import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import com.example.myappnew.AppExecutors;
 import com.example.myappnew.R;
+import com.example.myappnew.data.AppDatabase;
+import com.example.myappnew.data.Attachment;
+import com.example.myappnew.data.AttachmentDao;
 import com.example.myappnew.data.JournalEntry;
+import com.example.myappnew.data.ProfileStore;
+import com.example.myappnew.services.journal.JournalSummarizer;
+import com.example.myappnew.services.llm.LlmCallRegistry;
 import com.example.myappnew.services.llm.LlmRequest;
 import com.example.myappnew.services.llm.LlmResponse;
 import com.example.myappnew.services.llm.LlmService;
 import com.example.myappnew.services.llm.LlmServiceProvider;
+import com.example.myappnew.services.llm.LlmStream;
+import com.example.myappnew.services.llm.Prompts;
+import com.example.myappnew.services.llm.StreamListener;
+import com.example.myappnew.services.media.AttachmentProbe;
+import com.example.myappnew.services.media.ThumbnailLoader;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 public class JournalDetailFragment extends Fragment {
     private TextView textContent;
@@ -27,13 +44,18 @@ public class JournalDetailFragment extends Fragment {
     private TextView textMultimodal;
     private ImageView imageView;
     private Button buttonAiAnalyze;
+    private TextView textAiResult;
 
     private JournalEntry entry;
-
-    private String lastPrompt = null;
+    private List<Attachment> attachments = new ArrayList<>();
 
     private LlmServiceProvider llmServiceProvider;
     private LlmService llmService;
+    private ProfileStore profileStore;
+    private JournalSummarizer summarizer;
+    private volatile LlmStream currentStream;
+    /** Cancels the analysis when the view is destroyed, so no reply is parsed for a dead view. */
+    private LlmCallRegistry llmCalls;
 
     @Nullable
     @Override
@@ -44,64 +66,209 @@ public class JournalDetailFragment extends Fragment {
         textMultimodal = view.findViewById(R.id.text_journal_detail_multimodal);
         imageView = view.findViewById(R.id.image_journal_detail);
         buttonAiAnalyze = view.findViewById(R.id.button_ai_analyze);
+        textAiResult = view.findViewById(R.id.text_ai_result);
 
-        // TODO: 获取并展示 JournalEntry 数据（可通过 Bundle/Args 传递）
-        // entry = ...
-        // textContent.setText(entry.getContent());
-        // textTimestamp.setText(...);
-        // textMultimodal.setText(...);
-        // if (entry.getImageUri() != null) { imageView.setImageURI(Uri.parse(entry.getImageUri())); }
-
-        buttonAiAnalyze.setOnClickListener(v -> sendPromptToAI(entry));
+        buttonAiAnalyze.setEnabled(false);
+        buttonAiAnalyze.setOnClickListener(v -> {
+            if (entry != null) {
+                sendPromptToAI(entry);
+            }
+        });
         return view;
     }
 
     @Override
-    public void onCreate(@Nullable Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        llmServiceProvider = new LlmServiceProvider();
-        llmService = llmServiceProvider.getService();
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        llmCalls = LlmCallRegistry.bindTo(getViewLifecycleOwner());
+        // 列表页只加载了摘要投影，完整的 JournalEntry（含画像和媒体字段）在这里按 id 读取
+        int entryId = getArguments() != null ? getArguments().getInt("entry_id", -1) : -1;
+        AppDatabase db = AppDatabase.getDatabase(requireContext());
+        db.journalDao().getEntryById(entryId)
+                .observe(getViewLifecycleOwner(), this::bindEntry);
+        // 媒体信息来自 attachments 表，界面线程不再通过 ContentResolver 打开文件
+        db.attachmentDao().getForEntry(entryId)
+                .observe(getViewLifecycleOwner(), this::bindAttachments);
+    }
+
+    private void bindEntry(@Nullable JournalEntry loaded) {
+        entry = loaded;
+        buttonAiAnalyze.setEnabled(loaded != null);
+        if (loaded == null) {
+            textContent.setText("日记不存在或已被删除");
+            return;
+        }
+        textContent.setText(loaded.getContent());
+        textTimestamp.setText(DateFormat.getDateTimeInstance().format(loaded.getDate()));
+    }
+
+    private void bindAttachments(List<Attachment> attachments) {
+        this.attachments = attachments;
+        if (attachments.isEmpty()) {
+            textMultimodal.setVisibility(View.GONE);
+            imageView.setVisibility(View.GONE);
+            return;
+        }
+
+        StringBuilder multimodal = new StringBuilder();
+        Attachment firstImage = null;
+        List<Attachment> unprobed = new ArrayList<>();
+        for (Attachment attachment : attachments) {
+            multimodal.append(describe(attachment)).append(' ');
+            if (firstImage == null && Attachment.KIND_IMAGE.equals(attachment.kind)) {
+                firstImage = attachment;
+            }
+            if (!attachment.isProbed()) {
+                unprobed.add(attachment);
+            }
+        }
+        textMultimodal.setText(multimodal.toString().trim());
+        textMultimodal.setVisibility(View.VISIBLE);
+
+        ThumbnailLoader thumbnailLoader = ThumbnailLoader.getInstance(requireContext());
+        if (firstImage != null) {
+            // The header is full width, so decode the original at screen width rather than
+            // upscaling the small stored thumbnail.
+            int sizePx = getResources().getDisplayMetrics().widthPixels;
+            thumbnailLoader.load(Uri.parse(firstImage.uri), imageView, sizePx);
+            imageView.setVisibility(View.VISIBLE);
+        } else {
+            thumbnailLoader.cancel(imageView);
+            imageView.setVisibility(View.GONE);
+        }
+
+        if (!unprobed.isEmpty()) {
+            probeInBackground(unprobed);
+        }
+    }
+
+    /** Rows migrated from the old URI columns have no metadata yet; probe them once and store it. */
+    private void probeInBackground(List<Attachment> unprobed) {
+        Context appContext = appContext();
+        AppExecutors executors = AppExecutors.getInstance();
+        executors.mediaIo().execute(() -> {
+            AttachmentProbe probe = new AttachmentProbe(appContext);
+            for (Attachment attachment : unprobed) {
+                probe.probe(attachment);
+            }
+            AttachmentDao dao = AppDatabase.getDatabase(appContext).attachmentDao();
+            executors.diskWrite().execute(() -> {
+                for (Attachment attachment : unprobed) {
+                    if (attachment.isProbed()) {
+                        dao.update(attachment);
+                    }
+                }
+            });
+        });
+    }
+
+    private Context appContext() {
+        return requireContext().getApplicationContext();
     }
 
-    private String generatePrompt(JournalEntry entry) {
-        StringBuilder prompt = new StringBuilder();
-        prompt.append("请作为一名专业的心理陪伴AI，根据以下用户日记内容和多模态信息，结合用户画像，给予个性化的情绪分析和疗愈建议。\n");
-        prompt.append("【日记内容】：").append(entry.getContent() == null ? "无" : entry.getContent()).append("\n");
-        if (entry.getImageUri() != null && !entry.getImageUri().isEmpty()) {
-            prompt.append("【照片】：用户上传了照片，请结合图片内容分析情绪。\n");
+    /** e.g. "[图片 4032×3024 · 2.1MB]" or "[语音 0:42]". */
+    static String describe(Attachment attachment) {
+        StringBuilder label = new StringBuilder("[");
+        switch (attachment.kind) {
+            case Attachment.KIND_AUDIO: label.append("语音"); break;
+            case Attachment.KIND_VIDEO: label.append("视频"); break;
+            default: label.append("图片"); break;
         }
-        if (entry.getAudioUri() != null && !entry.getAudioUri().isEmpty()) {
-            prompt.append("【语音】：用户上传了语音，请结合语音内容分析情绪。\n");
+        if (attachment.width > 0 && attachment.height > 0) {
+            label.append(' ').append(attachment.width).append('×').append(attachment.height);
         }
-        if (entry.getVideoUri() != null && !entry.getVideoUri().isEmpty()) {
-            prompt.append("【视频】：用户上传了视频，请结合视频内容分析情绪。\n");
+        if (attachment.durationMs > 0) {
+            long seconds = attachment.durationMs / 1000;
+            label.append(' ').append(String.format(Locale.ROOT, "%d:%02d", seconds / 60, seconds % 60));
         }
-        if (entry.getUserProfileJson() != null && !entry.getUserProfileJson().isEmpty()) {
-            prompt.append("【用户画像】：").append(entry.getUserProfileJson()).append("\n");
+        if (attachment.byteSize > 0) {
+            label.append(" · ").append(String.format(Locale.ROOT, "%.1fMB", attachment.byteSize / (1024.0 * 1024.0)));
         }
-        prompt.append("请用温暖、鼓励的语言，输出分析和建议。");
-        return prompt.toString();
+        return label.append(']').toString();
+    }
+
+    @Override
+    public void onDestroyView() {
+        ThumbnailLoader.getInstance(requireContext()).cancel(imageView);
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        llmServiceProvider = LlmServiceProvider.getInstance(requireContext());
+        llmService = llmServiceProvider.getService();
+        profileStore = ProfileStore.getInstance(requireContext());
+        summarizer = JournalSummarizer.getInstance(requireContext());
+        // 后台补齐已结束的日/周/月摘要，供下次分析使用
+        summarizer.requestUpdate();
+    }
+
+    /** Reads the profile snapshot (on a cache miss) and the journal summaries; call off the main thread. */
+    private String generatePrompt(JournalEntry entry, List<Attachment> media) {
+        // 日记、画像和历史摘要各按 token 预算截断，提示词长度有上限
+        return Prompts.journalAnalysis(entry.getContent(),
+                hasKind(media, Attachment.KIND_IMAGE),
+                hasKind(media, Attachment.KIND_AUDIO),
+                hasKind(media, Attachment.KIND_VIDEO),
+                profileStore.getJson(entry.getProfileHash()),
+                summarizer.contextFor(entry.getTimestamp()));
+    }
+
+    private static boolean hasKind(List<Attachment> media, String kind) {
+        for (Attachment attachment : media) {
+            if (kind.equals(attachment.kind)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private void sendPromptToAI(JournalEntry entry) {
-        String prompt = generatePrompt(entry);
-        lastPrompt = prompt;
-        LlmRequest request = new LlmRequest(prompt);
-        llmService.generateText(request).enqueue(new retrofit2.Callback<LlmResponse>() {
+        LlmStream previous = currentStream;
+        if (previous != null) {
+            previous.cancel();
+        }
+        textAiResult.setVisibility(View.VISIBLE);
+        textAiResult.setText("AI分析中...");
+        List<Attachment> media = attachments;
+        AppExecutors.getInstance().diskRead().execute(() -> {
+            streamPrompt(generatePrompt(entry, media));
+        });
+    }
+
+    private void streamPrompt(String prompt) {
+        LlmRequest request = new LlmRequest(prompt).setCallSite("journal_detail");
+        // 流式展示：每收到一段文字就追加显示，而不是等完整结果
+        currentStream = llmCalls.streamText(llmService, request, new StreamListener() {
+            private final StringBuilder soFar = new StringBuilder();
+
             @Override
-            public void onResponse(retrofit2.Call<LlmResponse> call, retrofit2.Response<LlmResponse> response) {
-                if (response.isSuccessful() && response.body() != null && response.body().getGeneratedText() != null) {
-                    // 展示AI分析结果
-                    Toast.makeText(getContext(), "AI分析结果：" + response.body().getGeneratedText(), Toast.LENGTH_LONG).show();
-                } else {
-                    Toast.makeText(getContext(), "AI分析失败: " + (response.body() != null ? response.body().getError() : "未知错误"), Toast.LENGTH_LONG).show();
-                }
+            public void onChunk(String delta) {
+                soFar.append(delta);
+                String text = soFar.toString();
+                postToUi(() -> textAiResult.setText(text));
             }
 
             @Override
-            public void onFailure(retrofit2.Call<LlmResponse> call, Throwable t) {
-                Toast.makeText(getContext(), "AI服务调用失败: " + t.getMessage(), Toast.LENGTH_LONG).show();
+            public void onComplete(LlmResponse response) {
+                postToUi(() -> textAiResult.setText(response.getGeneratedText()));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                postToUi(() -> textAiResult.setText("AI服务调用失败: " + t.getMessage()));
             }
         });
     }
+
+    private void postToUi(Runnable action) {
+        if (isAdded() && getActivity() != null) {
+            getActivity().runOnUiThread(() -> {
+                if (getView() != null) {
+                    action.run();
+                }
+            });
+        }
+    }
 }
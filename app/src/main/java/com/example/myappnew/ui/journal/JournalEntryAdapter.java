@@ -1,21 +1,29 @@
 package com.example.myappnew.ui.journal;
 
+import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
 import androidx.recyclerview.widget.DiffUtil;
-import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.myappnew.R;
-import com.example.myappnew.data.JournalEntry;
+import com.example.myappnew.data.JournalListItem;
+import com.example.myappnew.services.media.ThumbnailLoader;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.TimeZone;
 
 
-public class JournalEntryAdapter extends ListAdapter<JournalEntry, JournalEntryAdapter.JournalEntryViewHolder> {
+/**
+ * Paged adapter for the journal list. Only the loaded window of entries is held in memory and
+ * diffed, so insert cost does not grow with the total number of entries. Items are the
+ * {@link JournalListItem} projection; the full entity is loaded by the detail screen.
+ */
+public class JournalEntryAdapter extends PagingDataAdapter<JournalListItem, JournalEntryAdapter.JournalEntryViewHolder> {
 
     private static final SimpleDateFormat sdf;
     static {
@@ -23,20 +31,22 @@ public class JournalEntryAdapter extends ListAdapter<JournalEntry, JournalEntryA
         sdf.setTimeZone(TimeZone.getDefault());
     }
 
+    private ThumbnailLoader thumbnailLoader;
+    private int thumbnailSizePx;
+
     public JournalEntryAdapter() {
         super(DIFF_CALLBACK);
     }
 
-    private static final DiffUtil.ItemCallback<JournalEntry> DIFF_CALLBACK = new DiffUtil.ItemCallback<JournalEntry>() {
+    private static final DiffUtil.ItemCallback<JournalListItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<JournalListItem>() {
         @Override
-        public boolean areItemsTheSame(@NonNull JournalEntry oldItem, @NonNull JournalEntry newItem) {
+        public boolean areItemsTheSame(@NonNull JournalListItem oldItem, @NonNull JournalListItem newItem) {
             return oldItem.getId() == newItem.getId();
         }
 
         @Override
-        public boolean areContentsTheSame(@NonNull JournalEntry oldItem, @NonNull JournalEntry newItem) {
-            return oldItem.getContent().equals(newItem.getContent()) &&
-                   oldItem.getTimestamp() == newItem.getTimestamp();
+        public boolean areContentsTheSame(@NonNull JournalListItem oldItem, @NonNull JournalListItem newItem) {
+            return oldItem.equals(newItem);
         }
     };
 
@@ -46,10 +56,14 @@ public class JournalEntryAdapter extends ListAdapter<JournalEntry, JournalEntryA
         View itemView = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.list_item_journal_entry, parent, false);
         JournalEntryViewHolder holder = new JournalEntryViewHolder(itemView);
+        if (thumbnailLoader == null) {
+            thumbnailLoader = ThumbnailLoader.getInstance(parent.getContext());
+            thumbnailSizePx = parent.getResources().getDimensionPixelSize(R.dimen.journal_thumbnail_size);
+        }
         itemView.setOnClickListener(v -> {
             int position = holder.getAdapterPosition();
-            if (position != RecyclerView.NO_POSITION) {
-                JournalEntry entry = getItem(position);
+            JournalListItem entry = position != RecyclerView.NO_POSITION ? peek(position) : null;
+            if (entry != null) {
                 // 跳转到详情页
                 android.os.Bundle args = new android.os.Bundle();
                 args.putInt("entry_id", entry.getId());
@@ -63,32 +77,54 @@ public class JournalEntryAdapter extends ListAdapter<JournalEntry, JournalEntryA
 
     @Override
     public void onBindViewHolder(@NonNull JournalEntryViewHolder holder, int position) {
-        JournalEntry currentEntry = getItem(position);
-        holder.textContent.setText(currentEntry.getContent());
+        JournalListItem currentEntry = getItem(position);
+        if (currentEntry == null) {
+            return;
+        }
+        holder.textContent.setText(currentEntry.getSnippet());
         holder.textTimestamp.setText(sdf.format(currentEntry.getDate()));
         // 多模态内容标记
         StringBuilder multimodal = new StringBuilder();
-        if (currentEntry.getImageUri() != null && !currentEntry.getImageUri().isEmpty()) multimodal.append("[图片] ");
-        if (currentEntry.getAudioUri() != null && !currentEntry.getAudioUri().isEmpty()) multimodal.append("[语音] ");
-        if (currentEntry.getVideoUri() != null && !currentEntry.getVideoUri().isEmpty()) multimodal.append("[视频] ");
+        if (currentEntry.hasImage()) multimodal.append("[图片] ");
+        if (currentEntry.hasAudio()) multimodal.append("[语音] ");
+        if (currentEntry.hasVideo()) multimodal.append("[视频] ");
         if (multimodal.length() > 0) {
             holder.textMultimodal.setText(multimodal.toString().trim());
             holder.textMultimodal.setVisibility(View.VISIBLE);
         } else {
             holder.textMultimodal.setVisibility(View.GONE);
         }
+        String thumbnailUri = currentEntry.getThumbnailUri();
+        if (thumbnailUri != null) {
+            holder.imageThumbnail.setVisibility(View.VISIBLE);
+            thumbnailLoader.load(Uri.parse(thumbnailUri), holder.imageThumbnail, thumbnailSizePx);
+        } else {
+            thumbnailLoader.cancel(holder.imageThumbnail);
+            holder.imageThumbnail.setImageDrawable(null);
+            holder.imageThumbnail.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull JournalEntryViewHolder holder) {
+        super.onViewRecycled(holder);
+        // Stop decoding for a row that scrolled away; the holder is about to show another entry.
+        thumbnailLoader.cancel(holder.imageThumbnail);
+        holder.imageThumbnail.setImageDrawable(null);
     }
 
     static class JournalEntryViewHolder extends RecyclerView.ViewHolder {
         private final TextView textContent;
         private final TextView textTimestamp;
         private final TextView textMultimodal;
+        private final ImageView imageThumbnail;
 
         public JournalEntryViewHolder(@NonNull View itemView) {
             super(itemView);
             textContent = itemView.findViewById(R.id.text_journal_content);
             textTimestamp = itemView.findViewById(R.id.text_journal_timestamp);
             textMultimodal = itemView.findViewById(R.id.text_journal_multimodal);
+            imageThumbnail = itemView.findViewById(R.id.image_journal_thumbnail);
         }
     }
 }
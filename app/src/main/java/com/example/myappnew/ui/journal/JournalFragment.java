@@ -1,23 +1,38 @@
 package com.example.myappnew.ui.journal;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import com.example.myappnew.AppExecutors;
 import com.example.myappnew.R;
 import com.example.myappnew.data.AppDatabase;
 import com.example.myappnew.data.JournalDao;
 import com.example.myappnew.data.JournalEntry;
+import com.example.myappnew.data.JournalListItem;
+import com.example.myappnew.data.JournalPageKey;
+import com.example.myappnew.data.JournalPagingSource;
+import com.example.myappnew.data.JournalSearchResult;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import java.util.Date;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Fragment for displaying and managing journal entries.
@@ -42,6 +57,7 @@ import java.util.concurrent.Executors;
  *                 </ul>
  *             </li>
  *             <li>Test scrolling behavior if the list is long.</li>
+ *             <li>Type into the search box and verify matching entries replace the list after the debounce delay; clearing it restores the paged list.</li>
  *             <li>Test item click/long-click interactions if implemented in the future.</li>
  *         </ul>
  *     </li>
@@ -54,7 +70,18 @@ public class JournalFragment extends Fragment {
     private JournalEntryAdapter adapter;
     private FloatingActionButton fabAddEntry;
     private JournalDao journalDao;
-    private ExecutorService databaseWriteExecutor;
+    private LiveData<PagingData<JournalListItem>> pagedEntries;
+
+    private EditText searchEditText;
+    private JournalSearchAdapter searchAdapter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Bumped on every keystroke; results from an older generation are dropped.
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+    private Runnable pendingSearch;
+
+    private static final int PAGE_SIZE = 30;
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+    private static final int SEARCH_RESULT_LIMIT = 50;
 
 
     @Override
@@ -63,7 +90,12 @@ public class JournalFragment extends Fragment {
         AppDatabase db = AppDatabase.getDatabase(requireContext());
         journalDao = db.journalDao();
         adapter = new JournalEntryAdapter();
-        databaseWriteExecutor = Executors.newSingleThreadExecutor();
+        Pager<JournalPageKey, JournalListItem> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE, PAGE_SIZE, false),
+                () -> new JournalPagingSource(db));
+        // Cached in the fragment lifecycle so rotating or returning from the detail screen reuses loaded pages.
+        pagedEntries = PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), getLifecycle());
+        searchAdapter = new JournalSearchAdapter();
     }
 
     @Nullable
@@ -75,10 +107,20 @@ public class JournalFragment extends Fragment {
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         recyclerView.setAdapter(adapter);
 
+        searchEditText = root.findViewById(R.id.edit_journal_search);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) {}
+            @Override
+            public void afterTextChanged(Editable s) {
+                scheduleSearch(s.toString());
+            }
+        });
+
         fabAddEntry = root.findViewById(R.id.fab_add_journal_entry);
         fabAddEntry.setOnClickListener(v -> {
             JournalEntry newEntry = new JournalEntry("Dummy journal entry: " + new Date().toString());
-            databaseWriteExecutor.execute(() -> {
+            AppExecutors.getInstance().diskWrite().execute(() -> {
                 journalDao.insert(newEntry);
             });
         });
@@ -89,16 +131,54 @@ public class JournalFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        journalDao.getAllEntries().observe(getViewLifecycleOwner(), entries -> {
-            adapter.submitList(entries);
+        pagedEntries.observe(getViewLifecycleOwner(), pagingData ->
+                adapter.submitData(getViewLifecycleOwner().getLifecycle(), pagingData));
+    }
+
+    /**
+     * Debounces search-as-you-type: the FTS query only runs once the user pauses typing,
+     * and it runs on the shared database read pool, never on the main thread.
+     */
+    private void scheduleSearch(String query) {
+        int generation = searchGeneration.incrementAndGet();
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        if (query.trim().isEmpty()) {
+            if (recyclerView.getAdapter() != adapter) {
+                recyclerView.setAdapter(adapter);
+            }
+            searchAdapter.submitList(null);
+            return;
+        }
+        pendingSearch = () -> AppExecutors.getInstance().diskRead().execute(() -> {
+            if (generation != searchGeneration.get()) {
+                return;
+            }
+            List<JournalSearchResult> results = journalDao.search(query, SEARCH_RESULT_LIMIT);
+            mainHandler.post(() -> showSearchResults(generation, results));
         });
+        mainHandler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    private void showSearchResults(int generation, List<JournalSearchResult> results) {
+        if (generation != searchGeneration.get() || getView() == null) {
+            return;
+        }
+        if (recyclerView.getAdapter() != searchAdapter) {
+            recyclerView.setAdapter(searchAdapter);
+        }
+        searchAdapter.submitList(results);
     }
 
     @Override
-    public void onDestroy() {
-        super.onDestroy();
-        if (databaseWriteExecutor != null && !databaseWriteExecutor.isShutdown()) {
-            databaseWriteExecutor.shutdown();
+    public void onDestroyView() {
+        super.onDestroyView();
+        searchGeneration.incrementAndGet();
+        if (pendingSearch != null) {
+            mainHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
         }
     }
 }
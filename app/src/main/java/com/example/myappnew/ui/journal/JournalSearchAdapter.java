@@ -0,0 +1,111 @@
+package com.example.myappnew.ui.journal;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+import com.example.myappnew.R;
+import com.example.myappnew.data.JournalSearchResult;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Adapter for full-text search hits. Reuses the journal list item layout and renders the
+ * FTS snippet with matched terms in bold.
+ */
+public class JournalSearchAdapter extends ListAdapter<JournalSearchResult, JournalSearchAdapter.SearchResultViewHolder> {
+
+    private static final SimpleDateFormat sdf;
+    static {
+        sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+        sdf.setTimeZone(TimeZone.getDefault());
+    }
+
+    public JournalSearchAdapter() {
+        super(DIFF_CALLBACK);
+    }
+
+    private static final DiffUtil.ItemCallback<JournalSearchResult> DIFF_CALLBACK = new DiffUtil.ItemCallback<JournalSearchResult>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull JournalSearchResult oldItem, @NonNull JournalSearchResult newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull JournalSearchResult oldItem, @NonNull JournalSearchResult newItem) {
+            return oldItem.getTimestamp() == newItem.getTimestamp()
+                    && String.valueOf(oldItem.getSnippet()).equals(String.valueOf(newItem.getSnippet()));
+        }
+    };
+
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.list_item_journal_entry, parent, false);
+        SearchResultViewHolder holder = new SearchResultViewHolder(itemView);
+        itemView.setOnClickListener(v -> {
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                android.os.Bundle args = new android.os.Bundle();
+                args.putInt("entry_id", getItem(position).getId());
+                androidx.navigation.Navigation.findNavController(itemView).navigate(
+                    R.id.action_navigation_journal_to_journalDetailFragment, args
+                );
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        JournalSearchResult result = getItem(position);
+        holder.textContent.setText(highlight(result.getSnippet()));
+        holder.textTimestamp.setText(sdf.format(result.getDate()));
+        holder.textMultimodal.setVisibility(View.GONE);
+    }
+
+    private static CharSequence highlight(String snippet) {
+        if (snippet == null) {
+            return "";
+        }
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        int start = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == JournalSearchResult.HIGHLIGHT_START) {
+                start = text.length();
+            } else if (c == JournalSearchResult.HIGHLIGHT_END) {
+                if (start >= 0) {
+                    text.setSpan(new StyleSpan(Typeface.BOLD), start, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                start = -1;
+            } else {
+                text.append(c);
+            }
+        }
+        return text;
+    }
+
+    static class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        private final TextView textContent;
+        private final TextView textTimestamp;
+        private final TextView textMultimodal;
+
+        public SearchResultViewHolder(@NonNull View itemView) {
+            super(itemView);
+            textContent = itemView.findViewById(R.id.text_journal_content);
+            textTimestamp = itemView.findViewById(R.id.text_journal_timestamp);
+            textMultimodal = itemView.findViewById(R.id.text_journal_multimodal);
+        }
+    }
+}
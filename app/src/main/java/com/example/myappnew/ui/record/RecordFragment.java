@@ -3,6 +3,7 @@ package com.example.myappnew.ui.record;
 import android.Manifest;
 import android.app.Activity;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
@@ -25,9 +26,16 @@ import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
+import com.example.myappnew.AppExecutors;
 import com.example.myappnew.R;
+import com.example.myappnew.data.AppDatabase;
+import com.example.myappnew.data.Attachment;
+import com.example.myappnew.data.JournalEntry;
+import com.example.myappnew.services.llm.LlmCallRegistry;
 import com.example.myappnew.services.llm.LlmServiceProvider;
+import com.example.myappnew.services.media.AttachmentProbe;
 import com.example.myappnew.services.media.ImageAnalysisService;
+import com.example.myappnew.services.media.ThumbnailLoader;
 import com.example.myappnew.services.media.VoiceAnalysisService;
 
 /**
@@ -64,6 +72,10 @@ public class RecordFragment extends Fragment {
 
     private ImageAnalysisService imageAnalysisService;
     private VoiceAnalysisService voiceAnalysisService;
+    /** Analyses still running when the view is destroyed are cancelled with it. */
+    private LlmCallRegistry llmCalls;
+    private AttachmentProbe attachmentProbe;
+    private ThumbnailLoader thumbnailLoader;
 
     // ActivityResultLaunchers for permissions and camera
     private ActivityResultLauncher<String> requestCameraPermissionLauncher;
@@ -75,13 +87,22 @@ public class RecordFragment extends Fragment {
     private ActivityResultLauncher<Intent> recordAudioLauncher; // Using generic StartActivityForResult for MediaStore.Audio.Media.RECORD_SOUND_ACTION
     private Uri currentAudioUri; // To store URI of the recorded audio
 
+    private static final String STATE_SESSION_ENTRY_ID = "session_entry_id";
+    /** Entry that this screen's captures are attached to; 0 until the first capture is saved. */
+    private volatile int sessionEntryId;
+
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        LlmServiceProvider llmProvider = new LlmServiceProvider();
+        if (savedInstanceState != null) {
+            sessionEntryId = savedInstanceState.getInt(STATE_SESSION_ENTRY_ID);
+        }
+        LlmServiceProvider llmProvider = LlmServiceProvider.getInstance(requireContext());
         imageAnalysisService = new ImageAnalysisService(requireContext(), llmProvider);
         voiceAnalysisService = new VoiceAnalysisService(requireContext(), llmProvider);
+        attachmentProbe = new AttachmentProbe(requireContext());
+        thumbnailLoader = ThumbnailLoader.getInstance(requireContext());
 
         // Initialize permission launcher
         requestCameraPermissionLauncher = registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
@@ -102,6 +123,7 @@ public class RecordFragment extends Fragment {
             if (success) {
                 if (currentImageUri != null) {
                     showToast("Image captured successfully: " + currentImageUri.toString());
+                    saveCapturedMedia(currentImageUri, Attachment.KIND_IMAGE);
                     startImageAnalysis(currentImageUri);
                 } else {
                     showToast("Image captured, but URI is null.");
@@ -139,6 +161,7 @@ public class RecordFragment extends Fragment {
                 currentAudioUri = result.getData().getData(); // The system audio recorder returns the Uri of the saved file.
                 if (currentAudioUri != null) {
                     showToast("Audio recorded successfully: " + currentAudioUri.toString());
+                    saveCapturedMedia(currentAudioUri, Attachment.KIND_AUDIO);
                     startVoiceAnalysis(currentAudioUri);
                 } else {
                     showToast("Audio recorded, but URI is null.");
@@ -170,7 +193,7 @@ public class RecordFragment extends Fragment {
 
         buttonCaptureImage.setOnClickListener(v -> {
             Log.d(TAG_DEBUG, "Capture Image button clicked.");
-            imagePreview.setImageURI(null); // Clear previous preview
+            thumbnailLoader.load(null, imagePreview, 0); // Clear previous preview
             imagePreview.setVisibility(View.GONE);
             textAiSuggestionTitle.setVisibility(View.GONE);
             textAnalysisResult.setText("Checking camera permission...");
@@ -184,7 +207,7 @@ public class RecordFragment extends Fragment {
 
         buttonRecordVoice.setOnClickListener(v -> {
             Log.d(TAG_DEBUG, "Record Voice button clicked.");
-            imagePreview.setImageURI(null);
+            thumbnailLoader.load(null, imagePreview, 0);
             imagePreview.setVisibility(View.GONE);
             textAiSuggestionTitle.setVisibility(View.GONE);
             textAnalysisResult.setText("Checking microphone permission...");
@@ -209,6 +232,18 @@ public class RecordFragment extends Fragment {
         return root;
     }
 
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_SESSION_ENTRY_ID, sessionEntryId);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        llmCalls = LlmCallRegistry.bindTo(getViewLifecycleOwner());
+    }
+
     private void launchCamera() {
         Log.d(TAG_DEBUG, "launchCamera called.");
         textAnalysisResult.setText("Launching camera...");
@@ -251,6 +286,32 @@ public class RecordFragment extends Fragment {
         }
     }
 
+    /**
+     * Attaches the captured file to this record session's journal entry, creating the entry on the
+     * first capture, so a photo and a voice note taken together end up in one entry. The file is
+     * probed once here on the media pool (size, dimensions/duration, hash, thumbnail) so later
+     * screens only read the stored metadata.
+     */
+    private void saveCapturedMedia(Uri uri, String kind) {
+        Context appContext = requireContext().getApplicationContext();
+        AppExecutors executors = AppExecutors.getInstance();
+        executors.mediaIo().execute(() -> {
+            Attachment attachment = attachmentProbe.probe(new Attachment(0, kind, uri.toString()));
+            // diskWrite is a single thread, so sessionEntryId is only read and written on it.
+            executors.diskWrite().execute(() -> {
+                AppDatabase db = AppDatabase.getDatabase(appContext);
+                db.runInTransaction(() -> {
+                    if (sessionEntryId == 0) {
+                        sessionEntryId = (int) db.journalDao().insert(new JournalEntry(""));
+                    }
+                    attachment.entryId = sessionEntryId;
+                    db.attachmentDao().insert(attachment);
+                });
+                Log.d(TAG_DEBUG, "saveCapturedMedia - saved " + kind + " attachment for entry " + attachment.entryId);
+            });
+        });
+    }
+
     private void startImageAnalysis(Uri imageUri) {
         Log.d(TAG_DEBUG, "startImageAnalysis - received URI: " + (imageUri != null ? imageUri.toString() : "null"));
         if (imageUri == null) {
@@ -259,10 +320,23 @@ public class RecordFragment extends Fragment {
             textAiSuggestionTitle.setVisibility(View.VISIBLE);
             return;
         }
-        imagePreview.setImageURI(imageUri); // Show preview
+        // Decoded off the main thread at preview size instead of the full camera resolution.
+        // The preview has a fixed height and wraps its width, so allow a longer edge of twice that.
+        int previewSizePx = 2 * getResources().getDimensionPixelSize(R.dimen.record_preview_height);
+        thumbnailLoader.load(imageUri, imagePreview, previewSizePx);
         imagePreview.setVisibility(View.VISIBLE);
         textAnalysisResult.setText("Image captured. Starting analysis...");
-        imageAnalysisService.analyzeImage(imageUri, new ImageAnalysisService.AnalysisCallback() {
+        llmCalls.track(imageAnalysisService.analyzeImage(imageUri, new ImageAnalysisService.AnalysisCallback() {
+            @Override
+            public void onPartial(String textSoFar) {
+                if (isAddedSafely()) {
+                    requireActivity().runOnUiThread(() -> {
+                        textAiSuggestionTitle.setVisibility(View.VISIBLE);
+                        textAnalysisResult.setText(textSoFar);
+                    });
+                }
+            }
+
             @Override
             public void onSuccess(String analysisResult) {
                 if (isAddedSafely()) {
@@ -282,7 +356,7 @@ public class RecordFragment extends Fragment {
                     });
                 }
             }
-        });
+        }));
     }
 
     private void startVoiceAnalysis(Uri audioUri) {
@@ -296,7 +370,17 @@ public class RecordFragment extends Fragment {
         // No preview for audio, just indicate analysis.
         imagePreview.setVisibility(View.GONE); // Hide image preview if it was visible
         textAnalysisResult.setText("Audio recorded. Starting analysis...");
-        voiceAnalysisService.analyzeVoice(audioUri, new VoiceAnalysisService.AnalysisCallback() {
+        llmCalls.track(voiceAnalysisService.analyzeVoice(audioUri, new VoiceAnalysisService.AnalysisCallback() {
+            @Override
+            public void onPartial(String textSoFar) {
+                if (isAddedSafely()) {
+                    requireActivity().runOnUiThread(() -> {
+                        textAiSuggestionTitle.setVisibility(View.VISIBLE);
+                        textAnalysisResult.setText(textSoFar);
+                    });
+                }
+            }
+
             @Override
             public void onSuccess(String analysisResult) {
                 if (isAddedSafely()) {
@@ -316,7 +400,7 @@ public class RecordFragment extends Fragment {
                     });
                 }
             }
-        });
+        }));
     }
 
     private void showToast(String message) {
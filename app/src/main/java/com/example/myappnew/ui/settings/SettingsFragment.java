@@ -2,29 +2,82 @@ package com.example.myappnew.ui.settings;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.provider.DocumentsContract;
 import android.widget.EditText;
+import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import com.example.myappnew.AppExecutors;
 import com.example.myappnew.R;
+import com.example.myappnew.data.AppDatabase;
+import com.example.myappnew.data.JournalExporter;
+import com.example.myappnew.data.JournalImporter;
+import com.example.myappnew.data.ProfileStore;
+import com.example.myappnew.data.LlmUsageDay;
+import com.example.myappnew.services.llm.LlmBudget;
+import com.example.myappnew.services.llm.LlmMetrics;
+import com.example.myappnew.services.llm.LlmServiceProvider;
+import com.example.myappnew.services.llm.ProviderHealth;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 
 public class SettingsFragment extends Fragment {
     private EditText apiKeyEditText;
     private Button saveButton;
     private Button exportDataButton;
+    private Button importDataButton;
     private Button logoutButton;
+    private ActivityResultLauncher<String[]> importDocumentLauncher;
+    private ActivityResultLauncher<String> exportDocumentLauncher;
+    private View exportProgressLayout;
+    private ProgressBar exportProgressBar;
+    private TextView exportProgressText;
+    private TextView diagnosticsText;
+    private TextView usageText;
+    private EditText budgetSoftTokensEdit;
+    private EditText budgetHardTokensEdit;
+    private EditText budgetSoftCostEdit;
+    private EditText budgetHardCostEdit;
+    private volatile JournalExporter runningExport;
+    private boolean exportIncludeMedia;
     private static final String PREFS_NAME = "user_settings";
     private static final String KEY_API = "user_api_key";
 
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        exportDocumentLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/zip"), uri -> {
+            if (uri != null) {
+                exportJournal(uri, exportIncludeMedia);
+            }
+        });
+        importDocumentLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                importJournal(uri);
+            }
+        });
+    }
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
@@ -32,7 +85,40 @@ public class SettingsFragment extends Fragment {
         apiKeyEditText = view.findViewById(R.id.editTextApiKey);
         saveButton = view.findViewById(R.id.buttonSaveApiKey);
         exportDataButton = view.findViewById(R.id.buttonExportData);
+        importDataButton = view.findViewById(R.id.buttonImportData);
         logoutButton = view.findViewById(R.id.buttonLogout);
+        exportProgressLayout = view.findViewById(R.id.layoutExportProgress);
+        exportProgressBar = view.findViewById(R.id.progressExport);
+        exportProgressText = view.findViewById(R.id.textExportProgress);
+        view.findViewById(R.id.buttonCancelExport).setOnClickListener(v -> {
+            if (runningExport != null) {
+                runningExport.cancel();
+            }
+        });
+        if (runningExport != null) {
+            exportDataButton.setEnabled(false);
+            exportProgressLayout.setVisibility(View.VISIBLE);
+        }
+        diagnosticsText = view.findViewById(R.id.textDiagnostics);
+        view.findViewById(R.id.buttonRefreshDiagnostics).setOnClickListener(v -> {
+            refreshUsage();
+            refreshDiagnostics();
+        });
+        view.findViewById(R.id.buttonShareDiagnostics).setOnClickListener(v -> shareDiagnostics());
+        refreshDiagnostics();
+
+        usageText = view.findViewById(R.id.textUsage);
+        budgetSoftTokensEdit = view.findViewById(R.id.editBudgetSoftTokens);
+        budgetHardTokensEdit = view.findViewById(R.id.editBudgetHardTokens);
+        budgetSoftCostEdit = view.findViewById(R.id.editBudgetSoftCost);
+        budgetHardCostEdit = view.findViewById(R.id.editBudgetHardCost);
+        LlmBudget.Limits limits = LlmServiceProvider.getInstance(requireContext()).getBudget().getLimits();
+        budgetSoftTokensEdit.setText(String.valueOf(limits.softTokens));
+        budgetHardTokensEdit.setText(String.valueOf(limits.hardTokens));
+        budgetSoftCostEdit.setText(formatDollars(limits.softCostMicros));
+        budgetHardCostEdit.setText(formatDollars(limits.hardCostMicros));
+        view.findViewById(R.id.buttonSaveBudget).setOnClickListener(v -> saveBudget());
+        refreshUsage();
 
         // 加载已保存的API Key
         SharedPreferences prefs = requireContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
@@ -50,10 +136,17 @@ public class SettingsFragment extends Fragment {
         });
 
         exportDataButton.setOnClickListener(v -> {
-            // TODO: 实现实际数据导出逻辑
-            Toast.makeText(getContext(), "数据导出功能开发中...", Toast.LENGTH_SHORT).show();
+            new android.app.AlertDialog.Builder(getContext())
+                .setTitle("数据导出")
+                .setMessage("是否同时导出日记中的照片、语音和视频文件？")
+                .setPositiveButton("包含媒体", (dialog, which) -> launchExport(true))
+                .setNegativeButton("仅文字", (dialog, which) -> launchExport(false))
+                .show();
         });
 
+        importDataButton.setOnClickListener(v ->
+                importDocumentLauncher.launch(new String[]{"application/json", "application/x-ndjson", "text/*"}));
+
         logoutButton.setOnClickListener(v -> {
             new android.app.AlertDialog.Builder(getContext())
                 .setTitle("账户注销")
@@ -73,5 +166,235 @@ public class SettingsFragment extends Fragment {
         return view;
     }
 
+    private void importJournal(Uri uri) {
+        Context appContext = requireContext().getApplicationContext();
+        String type = appContext.getContentResolver().getType(uri);
+        JournalImporter.Format format = JournalImporter.detectFormat(type != null ? type : uri.getLastPathSegment());
+        importDataButton.setEnabled(false);
+        Toast.makeText(getContext(), "正在导入...", Toast.LENGTH_SHORT).show();
+        // One short transaction per batch on the bulk thread; other writes interleave between batches.
+        AppExecutors.getInstance().bulkIo().execute(() -> {
+            String message;
+            try (InputStream in = appContext.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    throw new java.io.FileNotFoundException(uri.toString());
+                }
+                JournalImporter importer = new JournalImporter(
+                        AppDatabase.getDatabase(appContext).journalDao(), ProfileStore.getInstance(appContext));
+                int count = importer.importFrom(in, format, null);
+                message = "已导入 " + count + " 条日记";
+            } catch (Exception e) {
+                message = "导入失败: " + e.getMessage();
+            }
+            final String result = message;
+            if (isAdded() && getActivity() != null) {
+                getActivity().runOnUiThread(() -> {
+                    importDataButton.setEnabled(true);
+                    Toast.makeText(getContext(), result, Toast.LENGTH_LONG).show();
+                });
+            }
+        });
+    }
+
+    private void launchExport(boolean includeMedia) {
+        exportIncludeMedia = includeMedia;
+        String date = new SimpleDateFormat("yyyyMMdd_HHmm", Locale.US).format(new Date());
+        exportDocumentLauncher.launch("journal_export_" + date + ".zip");
+    }
+
+    /**
+     * Streams the export into the document picked via SAF on a background thread.
+     * Progress is posted to the UI; the cancel button stops the job and deletes the partial file.
+     */
+    private void exportJournal(Uri uri, boolean includeMedia) {
+        Context appContext = requireContext().getApplicationContext();
+        JournalExporter exporter = new JournalExporter(AppDatabase.getDatabase(appContext).journalDao(),
+                ProfileStore.getInstance(appContext), appContext.getContentResolver());
+        runningExport = exporter;
+        exportDataButton.setEnabled(false);
+        exportProgressLayout.setVisibility(View.VISIBLE);
+        exportProgressBar.setProgress(0);
+        exportProgressText.setText("准备导出...");
+
+        // Kept off the read pool so paging and search stay responsive during a long export.
+        AppExecutors.getInstance().bulkIo().execute(() -> {
+            String message;
+            boolean failed = false;
+            try (OutputStream out = appContext.getContentResolver().openOutputStream(uri, "w")) {
+                if (out == null) {
+                    throw new java.io.FileNotFoundException(uri.toString());
+                }
+                int count = exporter.exportTo(out, includeMedia, (phase, done, total) -> postToUi(() -> {
+                    exportProgressBar.setMax(Math.max(total, 1));
+                    exportProgressBar.setProgress(done);
+                    exportProgressText.setText((phase == JournalExporter.Phase.ENTRIES ? "导出日记 " : "导出媒体 ") + done + "/" + total);
+                }));
+                message = "已导出 " + count + " 条日记";
+            } catch (InterruptedIOException e) {
+                failed = true;
+                message = "导出已取消";
+            } catch (Exception e) {
+                failed = true;
+                message = "导出失败: " + e.getMessage();
+            }
+            if (failed) {
+                try {
+                    DocumentsContract.deleteDocument(appContext.getContentResolver(), uri);
+                } catch (Exception ignored) {
+                    // Best effort: some providers do not support deletion.
+                }
+            }
+            final String result = message;
+            runningExport = null;
+            postToUi(() -> {
+                exportDataButton.setEnabled(true);
+                exportProgressLayout.setVisibility(View.GONE);
+                Toast.makeText(getContext(), result, Toast.LENGTH_LONG).show();
+            });
+        });
+    }
+
+    private void saveBudget() {
+        LlmBudget.Limits limits;
+        try {
+            limits = new LlmBudget.Limits(
+                    parseLong(budgetSoftTokensEdit), parseLong(budgetHardTokensEdit),
+                    parseMicros(budgetSoftCostEdit), parseMicros(budgetHardCostEdit));
+        } catch (NumberFormatException e) {
+            Toast.makeText(getContext(), "请输入有效的数字", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (isInverted(limits.softTokens, limits.hardTokens) || isInverted(limits.softCostMicros, limits.hardCostMicros)) {
+            Toast.makeText(getContext(), "软上限不能高于硬上限", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        LlmServiceProvider.getInstance(requireContext()).setBudgetLimits(limits);
+        Toast.makeText(getContext(), "用量上限已保存", Toast.LENGTH_SHORT).show();
+        refreshUsage();
+    }
+
+    private static boolean isInverted(long soft, long hard) {
+        return soft > 0 && hard > 0 && soft > hard;
+    }
+
+    private static long parseLong(EditText edit) {
+        String text = edit.getText().toString().trim();
+        return text.isEmpty() ? 0 : Long.parseLong(text);
+    }
+
+    private static long parseMicros(EditText edit) {
+        String text = edit.getText().toString().trim();
+        return text.isEmpty() ? 0 : Math.round(Double.parseDouble(text) * 1_000_000);
+    }
+
+    private static String formatDollars(long micros) {
+        return String.format(Locale.US, "%.2f", micros / 1_000_000.0);
+    }
+
+    /** Today's totals from memory, then the last 7 days per day from Room. */
+    private void refreshUsage() {
+        LlmServiceProvider provider = LlmServiceProvider.getInstance(requireContext());
+        AppExecutors.getInstance().diskRead().execute(() -> {
+            LlmBudget budget = provider.getBudget();
+            StringBuilder text = new StringBuilder();
+            text.append("今日: ").append(budget.todayTokens()).append(" tokens, 约 $")
+                    .append(String.format(Locale.US, "%.4f", budget.todayCostMicros() / 1_000_000.0))
+                    .append(", ").append(provider.getUsageStore().todayRequests()).append(" 次调用\n");
+            switch (budget.level()) {
+                case SOFT:
+                    text.append("已超过软上限：改用经济模型，后台分析暂停\n");
+                    break;
+                case HARD:
+                    text.append("已达到硬上限：今日不再调用 AI\n");
+                    break;
+                default:
+                    break;
+            }
+            text.append("\n近 7 天:\n");
+            String day = null;
+            long dayTokens = 0;
+            long dayCost = 0;
+            for (LlmUsageDay row : provider.getUsageStore().recentDays(7)) {
+                if (day != null && !day.equals(row.day)) {
+                    appendDay(text, day, dayTokens, dayCost);
+                    dayTokens = 0;
+                    dayCost = 0;
+                }
+                day = row.day;
+                dayTokens += row.totalTokens();
+                dayCost += row.costMicros;
+            }
+            if (day != null) {
+                appendDay(text, day, dayTokens, dayCost);
+            } else {
+                text.append("暂无记录\n");
+            }
+            String summary = text.toString();
+            postToUi(() -> usageText.setText(summary));
+        });
+    }
+
+    private static void appendDay(StringBuilder text, String day, long tokens, long costMicros) {
+        text.append(day).append("  ").append(tokens).append(" tokens  $")
+                .append(String.format(Locale.US, "%.4f", costMicros / 1_000_000.0)).append('\n');
+    }
+
+    /** Summary of the LLM call metrics, built off the main thread since it walks every histogram. */
+    private void refreshDiagnostics() {
+        LlmServiceProvider provider = LlmServiceProvider.getInstance(requireContext());
+        AppExecutors.getInstance().diskRead().execute(() -> {
+            StringBuilder text = new StringBuilder();
+            text.append("当前服务商: ").append(provider.getActiveProvider()).append('\n');
+            for (ProviderHealth.Snapshot snapshot : provider.getProviderHealth()) {
+                text.append(snapshot).append('\n');
+            }
+            text.append(provider.getRoutingStats()).append('\n');
+            text.append(provider.getSchedulerStats()).append('\n');
+            text.append(provider.getCacheStats()).append('\n');
+            List<LlmMetrics.Series> series = provider.getMetrics().getSeries();
+            if (series.isEmpty()) {
+                text.append("\n暂无 AI 调用记录");
+            }
+            for (LlmMetrics.Series s : series) {
+                text.append('\n').append(s).append('\n');
+            }
+            String summary = text.toString();
+            postToUi(() -> diagnosticsText.setText(summary));
+        });
+    }
+
+    /** Shares the JSON dump as plain text, so it can be pasted into a bug report or sent by mail. */
+    private void shareDiagnostics() {
+        LlmServiceProvider provider = LlmServiceProvider.getInstance(requireContext());
+        AppExecutors.getInstance().diskRead().execute(() -> {
+            String json = provider.dumpDiagnosticsJson();
+            postToUi(() -> {
+                android.content.Intent send = new android.content.Intent(android.content.Intent.ACTION_SEND)
+                        .setType("text/plain")
+                        .putExtra(android.content.Intent.EXTRA_SUBJECT, "AI 调用诊断数据")
+                        .putExtra(android.content.Intent.EXTRA_TEXT, json);
+                startActivity(android.content.Intent.createChooser(send, "导出诊断数据"));
+            });
+        });
+    }
+
+    private void postToUi(Runnable action) {
+        if (isAdded() && getActivity() != null) {
+            getActivity().runOnUiThread(() -> {
+                if (getView() != null) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (runningExport != null) {
+            runningExport.cancel();
+        }
+    }
+
     // 可添加导出数据、注销账号等功能按钮
 }
@@ -0,0 +1,56 @@
+package android.util;
+
+/**
+ * JVM stand-in for {@code android.util.Log} in local unit tests.
+ *
+ * The unit-test classpath puts test classes ahead of android.jar, whose stubs throw
+ * "Stub!" on every call. Production classes log through {@code Log}; this shadow lets
+ * them run under plain JUnit and echoes each line to stdout.
+ */
+public final class Log {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private Log() {
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return level >= INFO;
+    }
+
+    public static int v(String tag, String msg) {
+        return print("V", tag, msg, null);
+    }
+
+    public static int d(String tag, String msg) {
+        return print("D", tag, msg, null);
+    }
+
+    public static int i(String tag, String msg) {
+        return print("I", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg) {
+        return print("W", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return print("W", tag, msg, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return print("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return print("E", tag, msg, tr);
+    }
+
+    private static int print(String level, String tag, String msg, Throwable tr) {
+        System.out.println(level + "/" + tag + ": " + msg + (tr != null ? " (" + tr + ")" : ""));
+        return 0;
+    }
+}
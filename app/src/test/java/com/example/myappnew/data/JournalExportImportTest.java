@@ -0,0 +1,314 @@
+package com.example.myappnew.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Proxy;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class JournalExportImportTest {
+
+    /** Backs the few JournalDao methods the exporter and importer use with a list. */
+    private static final class Store {
+        final List<JournalEntry> rows = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        JournalDao dao() {
+            return (JournalDao) Proxy.newProxyInstance(JournalDao.class.getClassLoader(),
+                    new Class<?>[] {JournalDao.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "countEntries":
+                                return rows.size();
+                            case "getEntriesOlderThan":
+                                return olderThan((Long) args[0], (Integer) args[1], (Integer) args[2]);
+                            case "getAttachmentsFor":
+                                return attachmentsFor((List<?>) args[0]);
+                            case "importBatch":
+                                @SuppressWarnings("unchecked")
+                                List<JournalEntry> batch = (List<JournalEntry>) args[0];
+                                batchSizes.add(batch.size());
+                                for (JournalEntry entry : batch) {
+                                    rows.add(copy(entry));
+                                }
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        private List<Attachment> attachmentsFor(List<?> entryIds) {
+            List<Attachment> found = new ArrayList<>();
+            for (JournalEntry entry : rows) {
+                if (entryIds.contains(entry.id) && entry.attachments != null) {
+                    found.addAll(entry.attachments);
+                }
+            }
+            return found;
+        }
+
+        private List<JournalEntry> olderThan(long timestamp, int id, int limit) {
+            List<JournalEntry> sorted = new ArrayList<>(rows);
+            sorted.sort((a, b) -> a.timestamp != b.timestamp
+                    ? Long.compare(b.timestamp, a.timestamp) : Integer.compare(b.id, a.id));
+            List<JournalEntry> page = new ArrayList<>();
+            for (JournalEntry entry : sorted) {
+                if ((entry.timestamp < timestamp || (entry.timestamp == timestamp && entry.id < id))
+                        && page.size() < limit) {
+                    page.add(copy(entry));
+                }
+            }
+            return page;
+        }
+    }
+
+    private static JournalEntry copy(JournalEntry source) {
+        JournalEntry entry = new JournalEntry(source.id, source.content, source.timestamp);
+        entry.profileHash = source.profileHash;
+        entry.attachments = source.attachments != null ? new ArrayList<>(source.attachments) : null;
+        return entry;
+    }
+
+    private static JournalEntry entry(int id, long timestamp, String content) {
+        return new JournalEntry(id, content, timestamp);
+    }
+
+    private static Attachment attachment(JournalEntry entry, long id, String kind, String uri) {
+        Attachment attachment = new Attachment(entry.id, kind, uri);
+        attachment.id = id;
+        if (entry.attachments == null) {
+            entry.attachments = new ArrayList<>();
+        }
+        entry.attachments.add(attachment);
+        return attachment;
+    }
+
+    private final Map<String, String> profiles = new HashMap<>();
+
+    private String intern(String json) {
+        if (json == null) {
+            return null;
+        }
+        String hash = "h" + json.hashCode();
+        profiles.put(hash, json);
+        return hash;
+    }
+
+    private byte[] export(Store source) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JournalExporter(source.dao(), profiles::get, null).exportTo(out, false, null);
+        return out.toByteArray();
+    }
+
+    private static InputStream journalIn(byte[] zipBytes) throws IOException {
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(zipBytes));
+        for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+            if (JournalExporter.JOURNAL_ENTRY_NAME.equals(entry.getName())) {
+                return zip;
+            }
+        }
+        throw new AssertionError("no " + JournalExporter.JOURNAL_ENTRY_NAME);
+    }
+
+    @Test
+    public void jsonl_roundTripKeepsEveryField() throws IOException {
+        Store source = new Store();
+        JournalEntry full = entry(7, 1_700_000_000_000L, "第一行\n\"引号\", 逗号 and emoji 😀");
+        Attachment photo = attachment(full, 11, Attachment.KIND_IMAGE, "content://media/1");
+        photo.mimeType = "image/jpeg";
+        photo.width = 4032;
+        photo.height = 3024;
+        photo.contentHash = "abc123";
+        attachment(full, 12, Attachment.KIND_IMAGE, "content://media/3");
+        attachment(full, 13, Attachment.KIND_AUDIO, "content://media/2").durationMs = 42_000L;
+        full.profileHash = intern("{\"mood\":\"calm\"}");
+        source.rows.add(full);
+        source.rows.add(entry(8, 1_700_000_001_000L, null));
+
+        Store target = new Store();
+        int imported = new JournalImporter(target.dao(), this::intern, 10)
+                .importFrom(journalIn(export(source)), JournalImporter.Format.JSONL, null);
+
+        assertEquals(2, imported);
+        JournalEntry back = target.rows.get(1);
+        assertEquals(7, back.id);
+        assertEquals(full.timestamp, back.timestamp);
+        assertEquals(full.content, back.content);
+        assertEquals(3, back.attachments.size());
+        Attachment backPhoto = back.attachments.get(0);
+        assertEquals(Attachment.KIND_IMAGE, backPhoto.kind);
+        assertEquals("content://media/1", backPhoto.uri);
+        assertEquals("image/jpeg", backPhoto.mimeType);
+        assertEquals(4032, backPhoto.width);
+        assertEquals(3024, backPhoto.height);
+        assertEquals("abc123", backPhoto.contentHash);
+        assertEquals(photo.createdAt, backPhoto.createdAt);
+        assertEquals("content://media/3", back.attachments.get(1).uri);
+        assertEquals(42_000L, back.attachments.get(2).durationMs);
+        assertNull(target.rows.get(0).attachments);
+        assertEquals("{\"mood\":\"calm\"}", profiles.get(back.profileHash));
+        assertNull(target.rows.get(0).content);
+        assertNull(target.rows.get(0).profileHash);
+    }
+
+    @Test
+    public void export_pagesThroughEqualTimestampsExactlyOnce() throws IOException {
+        Store source = new Store();
+        for (int id = 1; id <= 450; id++) {
+            source.rows.add(entry(id, 1_000L * (id / 7), "entry " + id));
+        }
+        List<Integer> progress = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int exported = new JournalExporter(source.dao(), profiles::get, null)
+                .exportTo(out, false, (phase, done, total) -> progress.add(done));
+
+        assertEquals(450, exported);
+        assertEquals(Arrays.asList(200, 400, 450), progress);
+        Store target = new Store();
+        new JournalImporter(target.dao(), this::intern, 100)
+                .importFrom(journalIn(out.toByteArray()), JournalImporter.Format.JSONL, null);
+        assertEquals(Arrays.asList(100, 100, 100, 100, 50), target.batchSizes);
+        boolean[] seen = new boolean[451];
+        for (JournalEntry entry : target.rows) {
+            assertFalse("duplicate " + entry.id, seen[entry.id]);
+            seen[entry.id] = true;
+        }
+    }
+
+    @Test
+    public void export_cancelledBeforeStartThrows() throws IOException {
+        Store source = new Store();
+        source.rows.add(entry(1, 1L, "x"));
+        JournalExporter exporter = new JournalExporter(source.dao(), profiles::get, null);
+        exporter.cancel();
+
+        try {
+            exporter.exportTo(new ByteArrayOutputStream(), false, null);
+            fail("expected InterruptedIOException");
+        } catch (InterruptedIOException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void media_isStoredUncompressedWithItsCrc() throws IOException {
+        byte[] data = new byte[300_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        File file = File.createTempFile("media", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(data);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel source = raf.getChannel();
+             ZipOutputStream zip = new ZipOutputStream(out)) {
+            new JournalExporter(new Store().dao(), profiles::get, null)
+                    .putStored(zip, Channels.newChannel(zip), "media/1_image.jpg", source);
+        }
+
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+        ZipEntry entry = zip.getNextEntry();
+        assertEquals(ZipEntry.STORED, entry.getMethod());
+        ByteArrayOutputStream back = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = zip.read(buffer)) > 0; ) {
+            back.write(buffer, 0, n);
+        }
+        assertArrayEquals(data, back.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        assertEquals(crc.getValue(), entry.getCrc());
+    }
+
+    @Test
+    public void csv_handlesQuotingNewlinesAndMissingColumns() throws IOException {
+        String csv = "content,timestamp,id,userProfileJson\r\n"
+                + "\"逗号, 和 \"\"引号\"\"\",1000,3,\"{\"\"a\"\":1}\"\r\n"
+                + "\n"
+                + "\"两行\n内容\",2000,,\n"
+                + "末行无换行,3000,5,";
+        Store target = new Store();
+
+        int imported = new JournalImporter(target.dao(), this::intern, 10).importFrom(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), JournalImporter.Format.CSV, null);
+
+        assertEquals(3, imported);
+        assertEquals("逗号, 和 \"引号\"", target.rows.get(0).content);
+        assertEquals(3, target.rows.get(0).id);
+        assertEquals("{\"a\":1}", profiles.get(target.rows.get(0).profileHash));
+        assertEquals("两行\n内容", target.rows.get(1).content);
+        assertEquals(0, target.rows.get(1).id);
+        assertNull(target.rows.get(1).profileHash);
+        assertEquals("末行无换行", target.rows.get(2).content);
+        assertEquals(3000L, target.rows.get(2).timestamp);
+    }
+
+    @Test
+    public void import_mapsLegacyUriFieldsToAttachments() throws IOException {
+        String jsonl = "{\"imageUri\":\"content://media/1\",\"videoUri\":\"\",\"timestamp\":5000}\n";
+        String csv = "content,timestamp,audioUri\n语音,6000,content://media/2\n";
+        Store target = new Store();
+        JournalImporter importer = new JournalImporter(target.dao(), this::intern, 10);
+
+        importer.importFrom(new ByteArrayInputStream(jsonl.getBytes(StandardCharsets.UTF_8)),
+                JournalImporter.Format.JSONL, null);
+        importer.importFrom(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                JournalImporter.Format.CSV, null);
+
+        List<Attachment> fromJson = target.rows.get(0).attachments;
+        assertEquals(1, fromJson.size());
+        assertEquals(Attachment.KIND_IMAGE, fromJson.get(0).kind);
+        assertEquals("content://media/1", fromJson.get(0).uri);
+        // Stamped with the entry's timestamp even though it came after the URI.
+        assertEquals(5000L, fromJson.get(0).createdAt);
+        assertFalse(fromJson.get(0).isProbed());
+        List<Attachment> fromCsv = target.rows.get(1).attachments;
+        assertEquals(1, fromCsv.size());
+        assertEquals(Attachment.KIND_AUDIO, fromCsv.get(0).kind);
+        assertEquals(6000L, fromCsv.get(0).createdAt);
+    }
+
+    @Test
+    public void import_stopsBetweenBatchesWhenListenerSaysSo() throws IOException {
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 1; i <= 25; i++) {
+            jsonl.append("{\"id\":").append(i).append(",\"timestamp\":").append(i).append("}\n");
+        }
+        Store target = new Store();
+        List<Integer> calls = new ArrayList<>();
+
+        int imported = new JournalImporter(target.dao(), this::intern, 10).importFrom(
+                new ByteArrayInputStream(jsonl.toString().getBytes(StandardCharsets.UTF_8)),
+                JournalImporter.Format.JSONL, soFar -> {
+                    calls.add(soFar);
+                    return soFar < 20;
+                });
+
+        assertEquals(20, imported);
+        assertEquals(Arrays.asList(10, 20), calls);
+        assertEquals(20, target.rows.size());
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.myappnew.data;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JournalSearchResultTest {
+
+    /** matchinfo 'pcnalx' for one phrase in one column. */
+    private static byte[] matchInfo(int rows, int averageLength, int rowLength, int hitsThisRow, int rowsWithHits) {
+        int[] values = {1, 1, rows, averageLength, rowLength, hitsThisRow, hitsThisRow * rowsWithHits, rowsWithHits};
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static JournalSearchResult hit(int id, long timestamp, double rank) {
+        JournalSearchResult result = new JournalSearchResult();
+        result.id = id;
+        result.timestamp = timestamp;
+        result.rank = rank;
+        return result;
+    }
+
+    @Test
+    public void score_prefersRareTermsMoreHitsAndShorterEntries() {
+        double base = JournalSearchResult.score(matchInfo(1_000, 50, 50, 1, 10));
+
+        assertTrue(base > 0);
+        assertTrue(JournalSearchResult.score(matchInfo(1_000, 50, 50, 1, 2)) > base);
+        assertTrue(JournalSearchResult.score(matchInfo(1_000, 50, 50, 3, 10)) > base);
+        assertTrue(JournalSearchResult.score(matchInfo(1_000, 50, 200, 1, 10)) < base);
+        // Repeated hits saturate instead of growing linearly.
+        assertTrue(JournalSearchResult.score(matchInfo(1_000, 50, 50, 20, 10)) < 20 * base);
+    }
+
+    @Test
+    public void score_isZeroForMissingOrTruncatedMatchInfo() {
+        assertEquals(0, JournalSearchResult.score(null), 0);
+        assertEquals(0, JournalSearchResult.score(new byte[8]), 0);
+        assertEquals(0, JournalSearchResult.score(Arrays.copyOf(matchInfo(10, 5, 5, 1, 1), 20)), 0);
+    }
+
+    @Test
+    public void bestFirst_ordersByRankThenNewest() {
+        List<JournalSearchResult> hits = new ArrayList<>(Arrays.asList(
+                hit(1, 100, 0.5), hit(2, 300, 0.5), hit(3, 50, 2.0)));
+
+        Collections.sort(hits, JournalSearchResult.BEST_FIRST);
+
+        assertEquals(3, hits.get(0).id);
+        assertEquals(2, hits.get(1).id);
+        assertEquals(1, hits.get(2).id);
+    }
+
+    @Test
+    public void toMatchQuery_quotesTermsAsPrefixes() {
+        assertNull(JournalSearchResult.toMatchQuery("   "));
+        assertEquals("\"心情\"* \"tea\"*", JournalSearchResult.toMatchQuery(" 心情  te\"a* "));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.myappnew.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class LlmResponseCacheTest {
+
+    /** In-memory stand-in for the Room DAO, with the same expiry and LRU semantics as the queries. */
+    private static final class FakeDao implements LlmCacheDao {
+        final Map<String, LlmCacheEntry> rows = new LinkedHashMap<>();
+        final List<String> touched = new ArrayList<>();
+        /** Bytes of other rows, so a test can put the table near its budget. */
+        long otherBytes;
+
+        @Override
+        public LlmCacheEntry get(String cacheKey, long now) {
+            LlmCacheEntry entry = rows.get(cacheKey);
+            return entry != null && entry.expiresAt > now ? entry : null;
+        }
+
+        @Override public void upsert(LlmCacheEntry entry) { rows.put(entry.cacheKey, entry); }
+
+        @Override
+        public void touch(String cacheKey, long now) {
+            touched.add(cacheKey);
+            LlmCacheEntry entry = rows.get(cacheKey);
+            if (entry != null) {
+                entry.lastAccessedAt = now;
+            }
+        }
+
+        @Override
+        public int deleteExpired(long now) {
+            int before = rows.size();
+            rows.values().removeIf(entry -> entry.expiresAt <= now);
+            return before - rows.size();
+        }
+
+        @Override
+        public long totalSizeBytes() {
+            long total = otherBytes;
+            for (LlmCacheEntry entry : rows.values()) {
+                total += entry.sizeBytes;
+            }
+            return total;
+        }
+
+        @Override public int count() { return rows.size(); }
+
+        @Override
+        public List<String> leastRecentlyUsedKeys(int limit) {
+            List<LlmCacheEntry> entries = new ArrayList<>(rows.values());
+            entries.sort(Comparator.comparingLong(entry -> entry.lastAccessedAt));
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, entries.size()); i++) {
+                keys.add(entries.get(i).cacheKey);
+            }
+            return keys;
+        }
+
+        @Override
+        public int delete(List<String> cacheKeys) {
+            int deleted = 0;
+            for (String key : cacheKeys) {
+                if (rows.remove(key) != null) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+
+        @Override public void clear() { rows.clear(); }
+    }
+
+    private final FakeDao dao = new FakeDao();
+    private final AtomicLong now = new AtomicLong();
+    private final LlmResponseCache cache = new LlmResponseCache(dao, Runnable::run, now::get);
+
+    @Test
+    public void memoryEntryExpiresWithItsRow() {
+        cache.put("k", "model", "回复");
+        assertEquals("回复", cache.get("k"));
+
+        now.set(LlmResponseCache.TTL_MS);
+
+        assertNull(cache.peekMemory("k"));
+        assertNull(cache.get("k"));
+        assertEquals(1, cache.getStats().misses);
+    }
+
+    @Test
+    public void trimDropsEvictedRowsFromMemory() {
+        for (int i = 0; i < 16; i++) {
+            now.incrementAndGet();
+            cache.put(String.format("old%02d", i), "model", String.format("reply %02d", i));
+        }
+        // 16 more rows of 16 bytes each push the table 256 bytes over budget: one batch of
+        // the least recently used rows has to go.
+        dao.otherBytes = LlmResponseCache.MAX_DISK_BYTES - 16 * 16;
+        for (int i = 0; i < 16; i++) {
+            now.incrementAndGet();
+            cache.put(String.format("new%02d", i), "model", String.format("reply %02d", i));
+        }
+
+        assertEquals(16, dao.count());
+        assertNull(cache.peekMemory("old00"));
+        assertNull(cache.peekMemory("old15"));
+        assertEquals("reply 00", cache.peekMemory("new00"));
+        assertNull(cache.get("old00"));
+    }
+
+    @Test
+    public void memoryHitsRefreshTheRowAtMostOncePerInterval() {
+        cache.put("k", "model", "回复");
+
+        now.set(1);
+        cache.get("k");
+        now.set(LlmResponseCache.TOUCH_INTERVAL_MS);
+        cache.get("k");
+        now.set(LlmResponseCache.TOUCH_INTERVAL_MS + 1);
+        cache.get("k");
+
+        assertEquals(1, dao.touched.size());
+        assertEquals(LlmResponseCache.TOUCH_INTERVAL_MS, dao.rows.get("k").lastAccessedAt);
+        assertEquals(3, cache.getStats().memoryHits);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.myappnew.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class LlmUsageStoreTest {
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    /** In-memory stand-in for the Room DAO; rows keyed by "day|model". */
+    private static final class FakeDao implements LlmUsageDao {
+        final Map<String, LlmUsageDay> rows = new LinkedHashMap<>();
+
+        @Override
+        public void insertEmpty(String day, String model) {
+            String key = day + "|" + model;
+            if (!rows.containsKey(key)) {
+                LlmUsageDay row = new LlmUsageDay();
+                row.day = day;
+                row.model = model;
+                rows.put(key, row);
+            }
+        }
+
+        @Override
+        public void increment(String day, String model, long promptTokens, long outputTokens, long costMicros) {
+            LlmUsageDay row = rows.get(day + "|" + model);
+            row.requests++;
+            row.promptTokens += promptTokens;
+            row.outputTokens += outputTokens;
+            row.costMicros += costMicros;
+        }
+
+        @Override
+        public List<LlmUsageDay> forDay(String day) {
+            List<LlmUsageDay> result = new ArrayList<>();
+            for (LlmUsageDay row : rows.values()) {
+                if (row.day.equals(day)) {
+                    result.add(row);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public List<LlmUsageDay> since(String firstDay) {
+            List<LlmUsageDay> result = new ArrayList<>();
+            for (LlmUsageDay row : rows.values()) {
+                if (row.day.compareTo(firstDay) >= 0) {
+                    result.add(row);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int deleteBefore(String firstDay) {
+            int before = rows.size();
+            rows.values().removeIf(row -> row.day.compareTo(firstDay) < 0);
+            return before - rows.size();
+        }
+    }
+
+    private final FakeDao dao = new FakeDao();
+    private final AtomicLong now = new AtomicLong(noonOfDay(100));
+
+    private static long noonOfDay(int day) {
+        return day * DAY_MS + DAY_MS / 2 - TimeZone.getDefault().getOffset(day * DAY_MS);
+    }
+
+    @Test
+    public void record_updatesTotalsAndRollsUpPerModel() {
+        LlmUsageStore store = new LlmUsageStore(dao, Runnable::run, now::get);
+
+        store.record("gemini", 100, 20, 5);
+        store.record("gemini", 50, 10, 3);
+        store.record("deepseek", 10, 10, 7);
+
+        assertEquals(200, store.todayTokens());
+        assertEquals(15, store.todayCostMicros());
+        assertEquals(3, store.todayRequests());
+        assertEquals(2, dao.rows.size());
+        LlmUsageDay gemini = dao.rows.get(LlmUsageStore.dayKey(now.get()) + "|gemini");
+        assertEquals(2, gemini.requests);
+        assertEquals(150, gemini.promptTokens);
+        assertEquals(30, gemini.outputTokens);
+    }
+
+    @Test
+    public void load_restoresTodayAndDropsExpiredDays() {
+        new LlmUsageStore(dao, Runnable::run, now::get).record("gemini", 100, 20, 5);
+        dao.insertEmpty(LlmUsageStore.dayKey(now.get() - (LlmUsageStore.RETENTION_DAYS + 1) * DAY_MS), "old");
+
+        LlmUsageStore restarted = new LlmUsageStore(dao, Runnable::run, now::get);
+        restarted.load();
+
+        assertEquals(120, restarted.todayTokens());
+        assertEquals(1, restarted.todayRequests());
+        assertEquals(1, dao.rows.size());
+    }
+
+    @Test
+    public void totalsResetWhenTheDayChanges() {
+        LlmUsageStore store = new LlmUsageStore(dao, Runnable::run, now::get);
+        store.record("gemini", 100, 20, 5);
+
+        now.addAndGet(DAY_MS);
+
+        assertEquals(0, store.todayTokens());
+        assertEquals(0, store.todayCostMicros());
+        assertEquals(1, store.recentDays(7).size());
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.myappnew.services.journal;
+
+import com.example.myappnew.data.JournalSummary;
+import com.example.myappnew.data.JournalSummaryDao;
+import com.example.myappnew.services.llm.BudgetExceededException;
+import com.example.myappnew.services.llm.LlmBudget;
+import com.example.myappnew.services.llm.LlmRequest;
+import com.example.myappnew.services.llm.LlmResponse;
+import com.example.myappnew.services.llm.LlmService;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.mock.Calls;
+
+import static com.example.myappnew.data.JournalSummary.LEVEL_DAY;
+import static com.example.myappnew.data.JournalSummary.LEVEL_MONTH;
+import static com.example.myappnew.data.JournalSummary.LEVEL_WEEK;
+import static org.junit.Assert.*;
+
+public class JournalSummarizerTest {
+
+    /** Wednesday 2024-06-19 10:00 local time. */
+    private static final long NOW = at(2024, 6, 19, 10);
+
+    /** In-memory stand-in for the Room DAO. */
+    private static final class FakeDao implements JournalSummaryDao {
+        final List<Object[]> entries = new ArrayList<>(); // {id, timestamp, content}
+        final Map<String, JournalSummary> summaries = new TreeMap<>();
+
+        void addEntry(long timestamp, String content) {
+            entries.add(new Object[] {entries.size() + 1, timestamp, content});
+        }
+
+        @Override
+        public List<EntryStamp> entryStamps(long from, long until) {
+            List<EntryStamp> result = new ArrayList<>();
+            for (Object[] entry : entries) {
+                long timestamp = (Long) entry[1];
+                if (timestamp >= from && timestamp < until) {
+                    EntryStamp stamp = new EntryStamp();
+                    stamp.id = (Integer) entry[0];
+                    stamp.timestamp = timestamp;
+                    stamp.content = (String) entry[2];
+                    result.add(stamp);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public List<String> contentsBetween(long from, long until) {
+            List<String> result = new ArrayList<>();
+            for (Object[] entry : entries) {
+                long timestamp = (Long) entry[1];
+                if (timestamp >= from && timestamp < until && !((String) entry[2]).isEmpty()) {
+                    result.add((String) entry[2]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public JournalSummary get(String level, String periodStart) {
+            return summaries.get(level + "|" + periodStart);
+        }
+
+        @Override
+        public List<JournalSummary> between(String level, String fromKey, String untilKey) {
+            List<JournalSummary> result = new ArrayList<>();
+            for (JournalSummary summary : summaries.values()) {
+                if (summary.level.equals(level) && summary.periodStart.compareTo(fromKey) >= 0
+                        && summary.periodStart.compareTo(untilKey) < 0) {
+                    result.add(summary);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public List<JournalSummary> latestBefore(String level, String untilKey, int limit) {
+            List<JournalSummary> result = new ArrayList<>();
+            for (JournalSummary summary : summaries.values()) {
+                if (summary.level.equals(level) && summary.periodStart.compareTo(untilKey) < 0
+                        && !summary.summary.isEmpty()) {
+                    result.add(0, summary);
+                }
+            }
+            return new ArrayList<>(result.subList(0, Math.min(limit, result.size())));
+        }
+
+        @Override
+        public void upsert(JournalSummary summary) {
+            summaries.put(summary.level + "|" + summary.periodStart, summary);
+        }
+
+        @Override
+        public void delete(String level, String periodStart) {
+            summaries.remove(level + "|" + periodStart);
+        }
+
+        @Override
+        public int deleteBefore(String firstKey) {
+            int before = summaries.size();
+            summaries.values().removeIf(summary -> summary.periodStart.compareTo(firstKey) < 0);
+            return before - summaries.size();
+        }
+    }
+
+    /**
+     * Answers every prompt with a numbered summary, or refuses like the budget does. When
+     * {@code silent}, calls never answer; their callbacks are kept in {@code unanswered}.
+     */
+    private static final class FakeLlm implements LlmService {
+        final List<LlmRequest> requests = new ArrayList<>();
+        final List<Callback<LlmResponse>> unanswered = new ArrayList<>();
+        boolean refuse;
+        boolean silent;
+
+        @Override
+        public Call<LlmResponse> generateText(LlmRequest request) {
+            requests.add(request);
+            if (refuse) {
+                return Calls.failure(new BudgetExceededException(LlmBudget.Level.SOFT, "refused"));
+            }
+            if (silent) {
+                return new SilentCall(unanswered);
+            }
+            LlmResponse response = new LlmResponse();
+            response.setGeneratedText("摘要" + requests.size());
+            return Calls.response(response);
+        }
+    }
+
+    /** A call that never answers by itself. */
+    private static final class SilentCall implements Call<LlmResponse> {
+        private final List<Callback<LlmResponse>> unanswered;
+
+        SilentCall(List<Callback<LlmResponse>> unanswered) {
+            this.unanswered = unanswered;
+        }
+
+        @Override public Response<LlmResponse> execute() { throw new UnsupportedOperationException(); }
+        @Override public void enqueue(Callback<LlmResponse> callback) { unanswered.add(callback); }
+        @Override public boolean isExecuted() { return true; }
+        @Override public void cancel() { }
+        @Override public boolean isCanceled() { return false; }
+        @Override public Call<LlmResponse> clone() { return new SilentCall(unanswered); }
+        @Override public okhttp3.Request request() { return null; }
+        @Override public okio.Timeout timeout() { return okio.Timeout.NONE; }
+    }
+
+    private final FakeDao dao = new FakeDao();
+    private final FakeLlm llm = new FakeLlm();
+    private final AtomicLong now = new AtomicLong(NOW);
+    private final JournalSummarizer summarizer = new JournalSummarizer(dao, llm, Runnable::run, Runnable::run, now::get);
+
+    private static long at(int year, int month, int day, int hour) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private void addHistory() {
+        dao.addEntry(at(2024, 5, 15, 9), "五月中旬，工作顺利");
+        dao.addEntry(at(2024, 6, 10, 9), "上周一有点焦虑");
+        dao.addEntry(at(2024, 6, 14, 9), ""); // photo only
+        dao.addEntry(at(2024, 6, 17, 9), "周一上班很累");
+        dao.addEntry(at(2024, 6, 18, 20), "和朋友吃火锅");
+        dao.addEntry(at(2024, 6, 18, 21), "看了一场电影");
+        dao.addEntry(at(2024, 6, 19, 8), "今天早上");
+    }
+
+    @Test
+    public void firstPass_summarizesFinishedDaysThenWeeksThenMonths() {
+        addHistory();
+
+        summarizer.requestUpdate();
+
+        // Days 5/15, 6/10, 6/17, 6/18; weeks of 5/13 and 6/10; May. Today, this week and June are open.
+        assertEquals(7, llm.requests.size());
+        assertNull(dao.get(LEVEL_DAY, "2024-06-19"));
+        assertEquals("", dao.get(LEVEL_DAY, "2024-06-14").summary);
+        assertEquals(2, dao.get(LEVEL_DAY, "2024-06-18").sourceCount);
+        assertNotNull(dao.get(LEVEL_WEEK, "2024-06-10"));
+        assertNull(dao.get(LEVEL_WEEK, "2024-06-17"));
+        assertNotNull(dao.get(LEVEL_MONTH, "2024-05-01"));
+        assertNull(dao.get(LEVEL_MONTH, "2024-06-01"));
+
+        LlmRequest dayRequest = llm.requests.get(3);
+        assertTrue(dayRequest.getPrompt(), dayRequest.getPrompt().contains("和朋友吃火锅\n\n看了一场电影"));
+        assertEquals(LlmRequest.Priority.BACKGROUND, dayRequest.getPriority());
+        assertTrue(dayRequest.isEconomy());
+        // The week folds its day summaries, skipping the photo-only day.
+        String weekPrompt = llm.requests.get(5).getPrompt();
+        assertTrue(weekPrompt, weekPrompt.contains("6月10日：摘要2"));
+        assertFalse(weekPrompt, weekPrompt.contains("6月14日"));
+    }
+
+    @Test
+    public void laterPasses_onlySummarizeWhatChanged() {
+        addHistory();
+        summarizer.requestUpdate();
+        llm.requests.clear();
+
+        summarizer.requestUpdate();
+        assertEquals(0, llm.requests.size());
+
+        dao.addEntry(at(2024, 6, 11, 22), "补记：周二失眠了");
+        summarizer.requestUpdate();
+
+        assertEquals(2, llm.requests.size());
+        assertEquals(1, dao.get(LEVEL_DAY, "2024-06-11").sourceCount);
+        assertTrue(llm.requests.get(1).getPrompt().contains("6月11日："));
+        assertEquals("摘要2", dao.get(LEVEL_WEEK, "2024-06-10").summary);
+    }
+
+    @Test
+    public void sameLengthEdit_resummarizesItsDayAndWeek() {
+        addHistory();
+        summarizer.requestUpdate();
+        llm.requests.clear();
+
+        dao.entries.get(1)[2] = "上周一有点开心"; // was 上周一有点焦虑
+        now.addAndGet(60_000); // the week notices its day through the day summary's updatedAt
+        summarizer.requestUpdate();
+
+        assertEquals(2, llm.requests.size());
+        assertTrue(llm.requests.get(0).getPrompt().contains("上周一有点开心"));
+    }
+
+    @Test
+    public void stalledPass_isAbandonedAndItsLateReplyDropped() {
+        addHistory();
+        llm.silent = true;
+        summarizer.requestUpdate();
+        summarizer.requestUpdate(); // the first pass may still answer
+        assertEquals(1, llm.requests.size());
+
+        now.addAndGet(JournalSummarizer.STALL_TIMEOUT_MS);
+        llm.silent = false;
+        summarizer.requestUpdate();
+
+        assertEquals(8, llm.requests.size());
+        assertNotNull(dao.get(LEVEL_MONTH, "2024-05-01"));
+        String maySummary = dao.get(LEVEL_DAY, "2024-05-15").summary;
+
+        LlmResponse late = new LlmResponse();
+        late.setGeneratedText("迟到的摘要");
+        llm.unanswered.get(0).onResponse(null, Response.success(late));
+
+        assertEquals(maySummary, dao.get(LEVEL_DAY, "2024-05-15").summary);
+        // The new pass finished, so the next request starts one at once.
+        dao.addEntry(at(2024, 6, 12, 22), "周三");
+        summarizer.requestUpdate();
+        assertEquals(10, llm.requests.size());
+    }
+
+    @Test
+    public void deletedEntries_removeTheirSummariesWithoutCalls() {
+        addHistory();
+        summarizer.requestUpdate();
+        llm.requests.clear();
+
+        dao.entries.remove(0); // the only entry in May
+        summarizer.requestUpdate();
+
+        assertEquals(0, llm.requests.size());
+        assertNull(dao.get(LEVEL_DAY, "2024-05-15"));
+        assertNull(dao.get(LEVEL_WEEK, "2024-05-13"));
+        assertNull(dao.get(LEVEL_MONTH, "2024-05-01"));
+    }
+
+    @Test
+    public void budgetRefusal_endsThePassAndTheNextOneResumes() {
+        addHistory();
+        llm.refuse = true;
+
+        summarizer.requestUpdate();
+
+        assertEquals(1, llm.requests.size());
+        assertTrue(dao.summaries.isEmpty());
+
+        llm.refuse = false;
+        summarizer.requestUpdate();
+
+        assertNotNull(dao.get(LEVEL_MONTH, "2024-05-01"));
+    }
+
+    @Test
+    public void firstPass_isCappedAndContinuesNextTime() {
+        for (int day = 1; day <= 12; day++) {
+            dao.addEntry(at(2024, 6, day, 12), "第" + day + "天");
+        }
+
+        summarizer.requestUpdate();
+        assertEquals(JournalSummarizer.MAX_CALLS_PER_PASS, llm.requests.size());
+
+        summarizer.requestUpdate();
+        assertNotNull(dao.get(LEVEL_DAY, "2024-06-12"));
+        assertNotNull(dao.get(LEVEL_WEEK, "2024-06-10"));
+    }
+
+    @Test
+    public void contextFor_listsOlderPeriodsFirstAndStopsBeforeTheEntrysDay() {
+        addHistory();
+        summarizer.requestUpdate();
+
+        String context = summarizer.contextFor(at(2024, 6, 19, 8));
+
+        String[] lines = context.split("\n");
+        assertEquals(4, lines.length);
+        // May is already covered by its week of 5/13, so its month summary is left out.
+        assertTrue(lines[0], lines[0].startsWith("5月13日起的一周："));
+        assertTrue(lines[1], lines[1].startsWith("6月10日起的一周："));
+        assertTrue(lines[2], lines[2].startsWith("6月17日："));
+        assertTrue(lines[3], lines[3].startsWith("6月18日："));
+
+        assertEquals(3, summarizer.contextFor(at(2024, 6, 18, 20)).split("\n").length);
+        assertEquals("", summarizer.contextFor(at(2024, 5, 1, 8)));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import retrofit2.Call;
+
+import static org.junit.Assert.*;
+
+public class BudgetLlmServiceTest {
+
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong cost = new AtomicLong();
+    private final LlmBudget budget = new LlmBudget(tokens::get, cost::get, new LlmBudget.Limits(1_000, 2_000, 500, 0));
+
+    /** Records the last request it was asked to stream and answers nothing. */
+    private static final class FakeProvider implements LlmService {
+        final AtomicReference<LlmRequest> last = new AtomicReference<>();
+
+        @Override
+        public Call<LlmResponse> generateText(LlmRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LlmStream streamText(LlmRequest request, StreamListener listener) {
+            last.set(request);
+            return new PendingLlmStream();
+        }
+    }
+
+    private static final class ErrorCollector implements StreamListener {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        @Override public void onChunk(String delta) { }
+        @Override public void onComplete(LlmResponse response) { }
+        @Override public void onError(Throwable t) { error.set(t); }
+    }
+
+    @Test
+    public void levels_switchAtEachLimitAndIgnoreDisabledOnes() {
+        LlmBudget.Limits limits = new LlmBudget.Limits(1_000, 2_000, 500, 0);
+
+        assertEquals(LlmBudget.Level.NORMAL, LlmBudget.levelFor(limits, 999, 499));
+        assertEquals(LlmBudget.Level.SOFT, LlmBudget.levelFor(limits, 1_000, 0));
+        assertEquals(LlmBudget.Level.SOFT, LlmBudget.levelFor(limits, 0, 500));
+        assertEquals(LlmBudget.Level.HARD, LlmBudget.levelFor(limits, 2_000, 0));
+        // hard cost limit is 0, i.e. disabled
+        assertEquals(LlmBudget.Level.SOFT, LlmBudget.levelFor(limits, 0, Long.MAX_VALUE));
+        assertEquals(LlmBudget.Level.NORMAL, LlmBudget.levelFor(new LlmBudget.Limits(0, 0, 0, 0), 1_000_000, 1_000_000));
+    }
+
+    @Test
+    public void costMicros_followsPriceTable() {
+        // 1M input + 1M output tokens of gemini-1.5-flash: $0.075 + $0.30
+        assertEquals(375_000, LlmBudget.costMicros(GeminiLlmServiceImpl.MODEL_NAME, 1_000_000, 1_000_000));
+        assertEquals(187_500, LlmBudget.costMicros(GeminiLlmServiceImpl.ECONOMY_MODEL_NAME, 1_000_000, 1_000_000));
+        assertEquals(0, LlmBudget.costMicros("mock", 1_000, 1_000));
+        assertEquals(0, LlmBudget.costMicros(null, 1_000, 1_000));
+    }
+
+    @Test
+    public void belowSoftLimit_requestIsSentUnchanged() {
+        FakeProvider provider = new FakeProvider();
+        BudgetLlmService service = new BudgetLlmService(provider, budget, Runnable::run);
+
+        service.streamText(new LlmRequest("hi"), new ErrorCollector());
+
+        assertFalse(provider.last.get().isEconomy());
+    }
+
+    @Test
+    public void pastSoftLimit_interactiveIsDegradedAndBackgroundRefused() {
+        tokens.set(1_500);
+        FakeProvider provider = new FakeProvider();
+        BudgetLlmService service = new BudgetLlmService(provider, budget, Runnable::run);
+
+        LlmRequest interactive = new LlmRequest("hi");
+        service.streamText(interactive, new ErrorCollector());
+        assertTrue(provider.last.get().isEconomy());
+        assertNotSame(interactive, provider.last.get());
+        assertFalse(interactive.isEconomy());
+
+        ErrorCollector background = new ErrorCollector();
+        provider.last.set(null);
+        service.streamText(new LlmRequest("summary").setPriority(LlmRequest.Priority.BACKGROUND), background);
+        assertNull(provider.last.get());
+        assertTrue(background.error.get() instanceof BudgetExceededException);
+        assertFalse(SchedulingLlmService.isTransient(background.error.get()));
+    }
+
+    @Test
+    public void pastHardLimit_everythingIsRefused() {
+        tokens.set(2_000);
+        FakeProvider provider = new FakeProvider();
+        BudgetLlmService service = new BudgetLlmService(provider, budget, Runnable::run);
+        ErrorCollector collector = new ErrorCollector();
+
+        service.streamText(new LlmRequest("hi"), collector);
+
+        assertNull(provider.last.get());
+        assertEquals(LlmBudget.Level.HARD, ((BudgetExceededException) collector.error.get()).getLevel());
+    }
+}
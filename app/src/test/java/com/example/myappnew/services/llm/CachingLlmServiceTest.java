@@ -0,0 +1,275 @@
+package com.example.myappnew.services.llm;
+
+import com.example.myappnew.data.LlmCacheDao;
+import com.example.myappnew.data.LlmCacheEntry;
+import com.example.myappnew.data.LlmResponseCache;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import retrofit2.Call;
+import retrofit2.mock.Calls;
+
+import static org.junit.Assert.*;
+
+public class CachingLlmServiceTest {
+
+    private static final String MODEL = "test-model";
+
+    /** In-memory stand-in for the Room DAO; expiry is the only query semantics the cache relies on. */
+    private static final class FakeDao implements LlmCacheDao {
+        final Map<String, LlmCacheEntry> rows = new HashMap<>();
+
+        @Override
+        public LlmCacheEntry get(String cacheKey, long now) {
+            LlmCacheEntry entry = rows.get(cacheKey);
+            return entry != null && entry.expiresAt > now ? entry : null;
+        }
+
+        @Override public void upsert(LlmCacheEntry entry) { rows.put(entry.cacheKey, entry); }
+        @Override public void touch(String cacheKey, long now) { }
+        @Override public int deleteExpired(long now) { return 0; }
+        @Override public long totalSizeBytes() { return 0; }
+        @Override public int count() { return rows.size(); }
+        @Override public List<String> leastRecentlyUsedKeys(int limit) { return new ArrayList<>(); }
+        @Override public int delete(List<String> cacheKeys) { return 0; }
+        @Override public void clear() { rows.clear(); }
+    }
+
+    /** Runs queued lookups only when the test says so. */
+    private static final class ManualExecutor implements Executor {
+        final Queue<Runnable> queued = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        void runAll() {
+            for (Runnable next; (next = queued.poll()) != null; ) {
+                next.run();
+            }
+        }
+    }
+
+    /** Keeps the listener of the last stream so the test decides how it ends. */
+    private static final class FakeProvider implements LlmService {
+        final List<StreamListener> listeners = new ArrayList<>();
+        int generateCalls;
+        Runnable onStreamStart = () -> { };
+        volatile boolean cancelled;
+
+        @Override
+        public Call<LlmResponse> generateText(LlmRequest request) {
+            generateCalls++;
+            return Calls.response(reply("from provider"));
+        }
+
+        @Override
+        public LlmStream streamText(LlmRequest request, StreamListener listener) {
+            listeners.add(listener);
+            onStreamStart.run();
+            return new LlmStream() {
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+
+                @Override
+                public boolean isCanceled() {
+                    return cancelled;
+                }
+            };
+        }
+
+        StreamListener last() {
+            return listeners.get(listeners.size() - 1);
+        }
+    }
+
+    private static final class Collector implements StreamListener {
+        final StringBuilder text = new StringBuilder();
+        LlmResponse completed;
+        Throwable error;
+
+        @Override public void onChunk(String delta) { text.append(delta); }
+        @Override public void onComplete(LlmResponse response) { completed = response; }
+        @Override public void onError(Throwable t) { error = t; }
+    }
+
+    private final FakeDao dao = new FakeDao();
+    private final LlmResponseCache cache = new LlmResponseCache(dao, Runnable::run, () -> 1_000L);
+    private final FakeProvider provider = new FakeProvider();
+    private final ManualExecutor lookups = new ManualExecutor();
+    /** Advances 5ms on every read, so a hit's timings are exact. */
+    private final AtomicLong clock = new AtomicLong();
+    private final CachingLlmService service = new CachingLlmService(provider, cache, MODEL, lookups,
+            () -> clock.addAndGet(5));
+
+    private static LlmResponse reply(String text) {
+        LlmResponse response = new LlmResponse();
+        response.setGeneratedText(text);
+        response.setFinishReason("STOP");
+        return response;
+    }
+
+    private static LlmResponse economyReply(String text) {
+        LlmResponse response = reply(text);
+        response.setEconomy(true);
+        return response;
+    }
+
+    private Collector stream(String prompt) {
+        Collector collector = new Collector();
+        service.streamText(new LlmRequest(prompt), collector);
+        lookups.runAll();
+        return collector;
+    }
+
+    @Test
+    public void stream_secondIdenticalRequestIsServedFromCache() {
+        Collector first = stream("今天的心情");
+        provider.last().onChunk("平静");
+        provider.last().onComplete(reply("平静"));
+
+        Collector second = stream("今天的心情");
+
+        assertEquals(1, provider.listeners.size());
+        assertEquals("平静", first.text.toString());
+        assertEquals("平静", second.text.toString());
+        assertEquals("平静", second.completed.getGeneratedText());
+        assertEquals(5, second.completed.getTimeToFirstTokenMs());
+        assertEquals(10, second.completed.getLatencyMs());
+        LlmResponseCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.misses);
+        assertEquals(1, stats.memoryHits);
+    }
+
+    @Test
+    public void stream_differentPromptMisses() {
+        stream("a");
+        provider.last().onComplete(reply("reply a"));
+
+        stream("b");
+
+        assertEquals(2, provider.listeners.size());
+    }
+
+    @Test
+    public void stream_errorsAndEmptyRepliesAreNotStored() {
+        stream("p");
+        LlmResponse failed = reply("partial");
+        failed.setError("HTTP 500");
+        provider.last().onComplete(failed);
+        stream("p");
+        provider.last().onComplete(reply(""));
+        stream("p");
+        provider.last().onError(new IOException("offline"));
+
+        Collector fourth = stream("p");
+
+        assertEquals(4, provider.listeners.size());
+        assertTrue(dao.rows.isEmpty());
+        assertNull(fourth.completed);
+    }
+
+    @Test
+    public void stream_truncatedReplyIsNotStored() {
+        stream("p");
+        LlmResponse truncated = reply("说到一半");
+        truncated.setFinishReason("MAX_TOKENS");
+        provider.last().onComplete(truncated);
+
+        stream("p");
+
+        assertEquals(2, provider.listeners.size());
+        assertTrue(dao.rows.isEmpty());
+    }
+
+    @Test
+    public void stream_economyRepliesNeverAnswerFullQualityRequests() {
+        Collector economy = new Collector();
+        service.streamText(new LlmRequest("p").setEconomy(true), economy);
+        lookups.runAll();
+        provider.last().onComplete(economyReply("简短"));
+
+        stream("p");
+
+        assertEquals(2, provider.listeners.size());
+        assertEquals(1, dao.rows.size());
+    }
+
+    @Test
+    public void stream_replyDowngradedToEconomyAfterLookupIsNotStored() {
+        service.streamText(new LlmRequest("p"), new Collector());
+        lookups.runAll();
+        // BudgetLlmService sent an economy copy below the cache once the soft limit was reached.
+        provider.last().onComplete(economyReply("简短"));
+
+        stream("p");
+
+        assertEquals(2, provider.listeners.size());
+        assertTrue(dao.rows.isEmpty());
+    }
+
+    @Test
+    public void stream_cancelBeforeLookupRunsNeverStartsUpstream() {
+        Collector collector = new Collector();
+        LlmStream stream = service.streamText(new LlmRequest("p"), collector);
+
+        stream.cancel();
+        lookups.runAll();
+
+        assertTrue(provider.listeners.isEmpty());
+        assertNull(collector.completed);
+    }
+
+    @Test
+    public void stream_cancelWhileLookupStartsUpstreamCancelsIt() {
+        AtomicReference<LlmStream> outer = new AtomicReference<>();
+        // The caller cancels after the lookup missed but before the upstream handle is attached.
+        provider.onStreamStart = () -> outer.get().cancel();
+
+        outer.set(service.streamText(new LlmRequest("p"), new Collector()));
+        lookups.runAll();
+
+        assertEquals(1, provider.listeners.size());
+        assertTrue(provider.cancelled);
+    }
+
+    @Test
+    public void stream_replyLargerThanMemoryTierIsStillCachedOnDisk() {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 300_000; i++) {
+            large.append('x');
+        }
+        stream("long");
+        provider.last().onComplete(reply(large.toString()));
+
+        Collector second = stream("long");
+
+        assertEquals(1, provider.listeners.size());
+        assertEquals(large.length(), second.text.length());
+        assertEquals(1, cache.getStats().diskHits);
+    }
+
+    @Test
+    public void generateText_hitSkipsProvider() throws IOException {
+        LlmResponse first = service.generateText(new LlmRequest("p")).execute().body();
+        LlmResponse second = service.generateText(new LlmRequest("p")).execute().body();
+
+        assertEquals(1, provider.generateCalls);
+        assertEquals("from provider", first.getGeneratedText());
+        assertEquals("from provider", second.getGeneratedText());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import retrofit2.Call;
+
+import static org.junit.Assert.*;
+
+public class CoalescingLlmServiceTest {
+
+    /** Keeps each stream's listener so the test drives chunks and completion. */
+    private static final class FakeProvider implements LlmService {
+        final List<StreamListener> listeners = new ArrayList<>();
+        final List<Boolean> cancelled = new ArrayList<>();
+        Runnable onStreamStart = () -> { };
+
+        @Override
+        public Call<LlmResponse> generateText(LlmRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LlmStream streamText(LlmRequest request, StreamListener listener) {
+            int index = listeners.size();
+            listeners.add(listener);
+            cancelled.add(false);
+            onStreamStart.run();
+            return new LlmStream() {
+                @Override
+                public void cancel() {
+                    cancelled.set(index, true);
+                }
+
+                @Override
+                public boolean isCanceled() {
+                    return cancelled.get(index);
+                }
+            };
+        }
+    }
+
+    private static final class Collector implements StreamListener {
+        final List<String> chunks = new ArrayList<>();
+        LlmResponse completed;
+        Throwable error;
+
+        @Override public void onChunk(String delta) { chunks.add(delta); }
+        @Override public void onComplete(LlmResponse response) { completed = response; }
+        @Override public void onError(Throwable t) { error = t; }
+    }
+
+    private final FakeProvider provider = new FakeProvider();
+    private final CoalescingLlmService service = new CoalescingLlmService(provider, "test-model");
+
+    private static LlmResponse reply(String text) {
+        LlmResponse response = new LlmResponse();
+        response.setGeneratedText(text);
+        return response;
+    }
+
+    @Test
+    public void overlappingStreams_reachProviderOnce() {
+        Collector first = new Collector();
+        Collector second = new Collector();
+
+        service.streamText(new LlmRequest("p"), first);
+        service.streamText(new LlmRequest("p"), second);
+        provider.listeners.get(0).onChunk("a");
+        provider.listeners.get(0).onComplete(reply("a"));
+
+        assertEquals(1, provider.listeners.size());
+        assertEquals(1, service.getCoalescedCount());
+        assertEquals("[a]", first.chunks.toString());
+        assertEquals("[a]", second.chunks.toString());
+        assertEquals("a", first.completed.getGeneratedText());
+        assertEquals("a", second.completed.getGeneratedText());
+    }
+
+    @Test
+    public void lateSubscriber_getsTextSoFarThenLiveChunks() {
+        Collector early = new Collector();
+        service.streamText(new LlmRequest("p"), early);
+        StreamListener upstream = provider.listeners.get(0);
+        upstream.onChunk("今天");
+        upstream.onChunk("很好");
+
+        Collector late = new Collector();
+        service.streamText(new LlmRequest("p"), late);
+        upstream.onChunk("。");
+        upstream.onComplete(reply("今天很好。"));
+
+        assertEquals(1, provider.listeners.size());
+        assertEquals("[今天, 很好, 。]", early.chunks.toString());
+        assertEquals("[今天很好, 。]", late.chunks.toString());
+        assertEquals("今天很好。", late.completed.getGeneratedText());
+    }
+
+    @Test
+    public void oneSubscriberCancelling_othersKeepStreaming() {
+        Collector leaving = new Collector();
+        Collector staying = new Collector();
+        LlmStream leavingStream = service.streamText(new LlmRequest("p"), leaving);
+        LlmStream stayingStream = service.streamText(new LlmRequest("p"), staying);
+        StreamListener upstream = provider.listeners.get(0);
+        upstream.onChunk("a");
+
+        leavingStream.cancel();
+        upstream.onChunk("b");
+
+        assertTrue(leavingStream.isCanceled());
+        assertFalse(provider.cancelled.get(0));
+        assertEquals("[a]", leaving.chunks.toString());
+        assertEquals("[a, b]", staying.chunks.toString());
+
+        stayingStream.cancel();
+
+        assertTrue(provider.cancelled.get(0));
+        assertNull(leaving.completed);
+        assertNull(leaving.error);
+        assertNull(staying.completed);
+    }
+
+    @Test
+    public void errors_reachEverySubscriber() {
+        Collector first = new Collector();
+        Collector second = new Collector();
+        service.streamText(new LlmRequest("p"), first);
+        service.streamText(new LlmRequest("p"), second);
+
+        provider.listeners.get(0).onError(new IllegalStateException("HTTP 500"));
+
+        assertEquals("HTTP 500", first.error.getMessage());
+        assertEquals("HTTP 500", second.error.getMessage());
+    }
+
+    @Test
+    public void providerCall_isMadeOutsideTheFlightLock() throws InterruptedException {
+        AtomicBoolean otherKeyStarted = new AtomicBoolean();
+        // While the first provider call is being made, another thread streams a different prompt.
+        // If the call were made under SingleFlight's lock, that thread would block until it returned.
+        provider.onStreamStart = () -> {
+            if (provider.listeners.size() > 1) {
+                return;
+            }
+            Thread other = new Thread(() -> {
+                service.streamText(new LlmRequest("other"), new Collector());
+                otherKeyStarted.set(true);
+            });
+            other.start();
+            try {
+                other.join(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        service.streamText(new LlmRequest("p"), new Collector());
+
+        assertTrue(otherKeyStarted.get());
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.myappnew.services.llm;
+
+import com.example.myappnew.services.http.SharedHttpClient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+public class DeepSeekLlmServiceImplTest {
+
+    private static final long TICK_MS = 100;
+
+    private MockWebServer server;
+    private DeepSeekLlmServiceImpl service;
+    /** Advances by {@link #TICK_MS} on every read, so stream timings are exact. */
+    private final AtomicLong clock = new AtomicLong();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        service = new DeepSeekLlmServiceImpl("test-key", server.url("/").toString(),
+                SharedHttpClient.get(), Runnable::run, () -> clock.addAndGet(TICK_MS));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private static String completion(String content, String finishReason) {
+        return "{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + content
+                + "\"},\"finish_reason\":\"" + finishReason + "\"}],"
+                + "\"usage\":{\"prompt_tokens\":5,\"completion_tokens\":2,\"total_tokens\":7}}";
+    }
+
+    private static String chunk(String delta, String finishReason) {
+        return "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + delta + "\"},\"finish_reason\":"
+                + (finishReason == null ? "null" : "\"" + finishReason + "\"") + "}]}\n\n";
+    }
+
+    private static MockResponse eventStream(String body) {
+        return new MockResponse().setHeader("Content-Type", "text/event-stream").setBody(body);
+    }
+
+    /** Streams a request and waits for it to complete or fail. */
+    private static final class Collector implements StreamListener {
+        final List<String> chunks = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<LlmResponse> response = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        @Override
+        public void onChunk(String delta) {
+            chunks.add(delta);
+        }
+
+        @Override
+        public void onComplete(LlmResponse r) {
+            response.set(r);
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error.set(t);
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("stream did not finish", done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void generateText_postsChatCompletionWithAuthAndMapsReply() throws Exception {
+        server.enqueue(new MockResponse().setBody(completion("你好", "stop")));
+
+        Response<LlmResponse> response = service.generateText(new LlmRequest("打个招呼")).execute();
+
+        assertTrue(response.isSuccessful());
+        assertEquals("你好", response.body().getGeneratedText());
+        assertNull(response.body().getError());
+        assertEquals(5, response.body().getPromptTokens());
+        assertEquals(2, response.body().getOutputTokens());
+        assertEquals("stop", response.body().getFinishReason());
+        RecordedRequest recorded = server.takeRequest();
+        assertEquals("POST", recorded.getMethod());
+        assertEquals("/chat/completions", recorded.getPath());
+        assertEquals("Bearer test-key", recorded.getHeader("Authorization"));
+        String body = recorded.getBody().readUtf8();
+        assertTrue(body, body.contains("\"model\":\"deepseek-chat\""));
+        assertTrue(body, body.contains("\"stream\":false"));
+        assertTrue(body, body.contains("\"role\":\"user\""));
+        assertTrue(body, body.contains("打个招呼"));
+    }
+
+    @Test
+    public void generateText_economyCapsReplyLength() throws Exception {
+        server.enqueue(new MockResponse().setBody(completion("短", "stop")));
+
+        LlmResponse response = service.generateText(new LlmRequest("hi").setEconomy(true)).execute().body();
+
+        assertEquals(DeepSeekLlmServiceImpl.MODEL_NAME, response.getModel());
+        assertTrue(response.isEconomy());
+        String body = server.takeRequest().getBody().readUtf8();
+        assertTrue(body, body.contains("\"max_tokens\":" + LlmRequest.ECONOMY_MAX_OUTPUT_TOKENS));
+    }
+
+    @Test
+    public void generateText_keepsHttpStatusForScheduler() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setBody("{\"error\":{\"message\":\"rate limited\"}}"));
+
+        Response<LlmResponse> response = service.generateText(new LlmRequest("hi")).execute();
+
+        assertFalse(response.isSuccessful());
+        assertEquals(429, response.code());
+    }
+
+    @Test
+    public void generateText_truncatedReplyCarriesError() throws Exception {
+        server.enqueue(new MockResponse().setBody(completion("partial", "length")));
+
+        LlmResponse response = service.generateText(new LlmRequest("hi")).execute().body();
+
+        assertEquals("partial", response.getGeneratedText());
+        assertNotNull(response.getError());
+    }
+
+    @Test
+    public void generateText_cloneSendsAFreshRequest() throws Exception {
+        server.enqueue(new MockResponse().setBody(completion("one", "stop")));
+        server.enqueue(new MockResponse().setBody(completion("two", "stop")));
+
+        Call<LlmResponse> call = service.generateText(new LlmRequest("hi"));
+        assertEquals("one", call.execute().body().getGeneratedText());
+        assertEquals("two", call.clone().execute().body().getGeneratedText());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void streamText_deliversSseChunksInOrder() throws Exception {
+        server.enqueue(eventStream(chunk("今天", null) + ": keep-alive\n\n" + chunk("很好", null)
+                + chunk("。", "stop") + "data: [DONE]\n\n"));
+        Collector collector = new Collector();
+
+        service.streamText(new LlmRequest("hi"), collector);
+        collector.await();
+
+        assertNull(collector.error.get());
+        assertEquals(Arrays.asList("今天", "很好", "。"), collector.chunks);
+        assertEquals("今天很好。", collector.response.get().getGeneratedText());
+        assertNull(collector.response.get().getError());
+        RecordedRequest recorded = server.takeRequest();
+        assertEquals("text/event-stream", recorded.getHeader("Accept"));
+        assertEquals("Bearer test-key", recorded.getHeader("Authorization"));
+        assertTrue(recorded.getBody().readUtf8().contains("\"stream\":true"));
+    }
+
+    @Test
+    public void streamText_stampsTimeToFirstTokenAndLatency() throws Exception {
+        server.enqueue(eventStream(chunk("今天", null) + chunk("很好", "stop") + "data: [DONE]\n\n"));
+        Collector collector = new Collector();
+
+        service.streamText(new LlmRequest("hi"), collector);
+        collector.await();
+
+        // The clock is read when the request is issued, at the first chunk, and at completion.
+        LlmResponse response = collector.response.get();
+        assertEquals(TICK_MS, response.getTimeToFirstTokenMs());
+        assertEquals(2 * TICK_MS, response.getLatencyMs());
+    }
+
+    @Test
+    public void streamText_requestsAndKeepsFinalUsageChunk() throws Exception {
+        server.enqueue(eventStream(chunk("好", "stop")
+                + "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":9,\"completion_tokens\":1,\"total_tokens\":10}}\n\n"
+                + "data: [DONE]\n\n"));
+        Collector collector = new Collector();
+
+        service.streamText(new LlmRequest("hi"), collector);
+        collector.await();
+
+        assertEquals(9, collector.response.get().getPromptTokens());
+        assertEquals(1, collector.response.get().getOutputTokens());
+        assertEquals("stop", collector.response.get().getFinishReason());
+        assertTrue(server.takeRequest().getBody().readUtf8().contains("\"include_usage\":true"));
+    }
+
+    @Test
+    public void streamText_lengthFinishReasonMarksResponse() throws Exception {
+        server.enqueue(eventStream(chunk("cut", "length") + "data: [DONE]\n\n"));
+        Collector collector = new Collector();
+
+        service.streamText(new LlmRequest("hi"), collector);
+        collector.await();
+
+        assertEquals("cut", collector.response.get().getGeneratedText());
+        assertNotNull(collector.response.get().getError());
+    }
+
+    @Test
+    public void streamText_closedMidReplyFailsSoRoutingCanFailOver() throws Exception {
+        server.enqueue(eventStream(chunk("今天", null) + chunk("很", null)));
+        Collector collector = new Collector();
+
+        service.streamText(new LlmRequest("hi"), collector);
+        collector.await();
+
+        assertNull(collector.response.get());
+        assertEquals(Arrays.asList("今天", "很"), collector.chunks);
+        assertEquals("DeepSeek stream closed before [DONE]", collector.error.get().getMessage());
+        assertTrue(SchedulingLlmService.isTransient(collector.error.get()));
+    }
+
+    @Test
+    public void streamText_httpErrorReportsStatusSoItIsRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setBody("{\"error\":{\"message\":\"slow down\"}}"));
+        Collector collector = new Collector();
+
+        service.streamText(new LlmRequest("hi"), collector);
+        collector.await();
+
+        assertNull(collector.response.get());
+        assertTrue(collector.error.get().getMessage(), collector.error.get().getMessage().contains("429"));
+        assertTrue(SchedulingLlmService.isTransient(collector.error.get()));
+    }
+
+    @Test
+    public void mediaRequestsFailWithoutReachingTheServer() throws Exception {
+        Collector collector = new Collector();
+
+        service.streamText(new LlmRequest("describe").addImage(new byte[] {1, 2, 3}, "image/jpeg"), collector);
+        collector.await();
+
+        assertNotNull(collector.error.get());
+        assertEquals(0, server.getRequestCount());
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+public class LlmMetricsTest {
+
+    private final LlmMetrics metrics = new LlmMetrics();
+
+    /** Answers every stream synchronously with {@code reply}, or fails with {@code error}. */
+    private static final class FakeProvider implements LlmService {
+        final LlmResponse reply;
+        final Throwable error;
+        final Response<LlmResponse> callResponse;
+
+        FakeProvider(LlmResponse reply, Throwable error, Response<LlmResponse> callResponse) {
+            this.reply = reply;
+            this.error = error;
+            this.callResponse = callResponse;
+        }
+
+        @Override
+        public Call<LlmResponse> generateText(LlmRequest request) {
+            return new FakeCall(callResponse);
+        }
+
+        @Override
+        public LlmStream streamText(LlmRequest request, StreamListener listener) {
+            if (error != null) {
+                listener.onError(error);
+            } else if (reply != null) {
+                listener.onChunk(reply.getGeneratedText());
+                listener.onComplete(reply);
+            }
+            return new PendingLlmStream();
+        }
+    }
+
+    private static final class FakeCall implements Call<LlmResponse> {
+        final Response<LlmResponse> response;
+        boolean canceled;
+
+        FakeCall(Response<LlmResponse> response) {
+            this.response = response;
+        }
+
+        @Override public Response<LlmResponse> execute() { return response; }
+        @Override public void enqueue(Callback<LlmResponse> callback) { callback.onResponse(this, response); }
+        @Override public boolean isExecuted() { return false; }
+        @Override public void cancel() { canceled = true; }
+        @Override public boolean isCanceled() { return canceled; }
+        @Override public Call<LlmResponse> clone() { return new FakeCall(response); }
+        @Override public okhttp3.Request request() { return null; }
+        @Override public okio.Timeout timeout() { return okio.Timeout.NONE; }
+    }
+
+    private static final StreamListener IGNORE = new StreamListener() {
+        @Override public void onChunk(String delta) { }
+        @Override public void onComplete(LlmResponse response) { }
+        @Override public void onError(Throwable t) { }
+    };
+
+    private static LlmResponse reply(String text, int promptTokens, int outputTokens, String finishReason) {
+        LlmResponse response = new LlmResponse();
+        response.setGeneratedText(text);
+        response.setUsage(promptTokens, outputTokens);
+        response.setFinishReason(finishReason);
+        return response;
+    }
+
+    @Test
+    public void histogram_percentilesAreWithinOneBucket() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(500, histogram.mean());
+        assertEquals(1000, histogram.max());
+        long p50 = histogram.percentile(0.5);
+        assertTrue("p50=" + p50, p50 >= 500 && p50 <= 500 * 1.25);
+        long p99 = histogram.percentile(0.99);
+        assertTrue("p99=" + p99, p99 >= 990 && p99 <= 1000);
+        assertEquals(0, new Histogram().percentile(0.5));
+    }
+
+    @Test
+    public void histogram_bucketEdgesCoverEveryValue() {
+        for (long v = 0; v < 5000; v++) {
+            int bucket = Histogram.bucketFor(v);
+            assertTrue("value " + v, v <= Histogram.upperBound(bucket));
+            assertTrue("value " + v, bucket == 0 || v > Histogram.upperBound(bucket - 1));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(Histogram.bucketFor(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void stream_successRecordsUsageAndFinishReasonPerCallSite() {
+        MetricsLlmService service = new MetricsLlmService(
+                new FakeProvider(reply("你好", 12, 3, "STOP"), null, null), "GEMINI", metrics);
+
+        service.streamText(new LlmRequest("hi").setCallSite("chat"), IGNORE);
+        service.streamText(new LlmRequest("hi").setCallSite("chat"), IGNORE);
+        service.streamText(new LlmRequest("hi").setCallSite("journal_detail"), IGNORE);
+
+        LlmMetrics.Series chat = metrics.series("GEMINI", "chat");
+        assertEquals(2, chat.requests());
+        assertEquals(2, chat.successes());
+        assertEquals(24, chat.promptTokens());
+        assertEquals(6, chat.outputTokens());
+        assertEquals(Long.valueOf(2), chat.finishReasons().get("STOP"));
+        assertEquals(2, chat.timeToFirstByteMs().count());
+        assertEquals(1, metrics.series("GEMINI", "journal_detail").requests());
+        assertEquals(2, metrics.getSeries().size());
+    }
+
+    @Test
+    public void stream_failuresAreClassedByStatusOrType() {
+        new MetricsLlmService(new FakeProvider(null, new IOException("DeepSeek HTTP 429: slow down"), null),
+                "DEEPSEEK", metrics).streamText(new LlmRequest("hi"), IGNORE);
+        new MetricsLlmService(new FakeProvider(null, new SocketTimeoutException("timeout"), null),
+                "DEEPSEEK", metrics).streamText(new LlmRequest("hi"), IGNORE);
+        LlmResponse blocked = new LlmResponse();
+        blocked.setBlockReason("SAFETY");
+        new MetricsLlmService(new FakeProvider(null, new EmptyReplyException(blocked), null),
+                "DEEPSEEK", metrics).streamText(new LlmRequest("hi"), IGNORE);
+
+        LlmMetrics.Series series = metrics.series("DEEPSEEK", "other");
+        assertEquals(3, series.failures());
+        assertEquals(Long.valueOf(1), series.errorClasses().get("HTTP 429"));
+        assertEquals(Long.valueOf(1), series.errorClasses().get("SocketTimeoutException"));
+        assertEquals(Long.valueOf(1), series.errorClasses().get("EmptyReplyException"));
+        assertEquals(Long.valueOf(1), series.finishReasons().get("BLOCKED_SAFETY"));
+    }
+
+    @Test
+    public void stream_cancelBeforeReplyCountsOnlyAsCancelled() {
+        MetricsLlmService service = new MetricsLlmService(new FakeProvider(null, null, null), "GEMINI", metrics);
+
+        LlmStream stream = service.streamText(new LlmRequest("hi"), IGNORE);
+        stream.cancel();
+        stream.cancel();
+
+        LlmMetrics.Series series = metrics.series("GEMINI", "other");
+        assertEquals(1, series.cancellations());
+        assertEquals(0, series.failures());
+        assertEquals(0, series.latencyMs().count());
+    }
+
+    @Test
+    public void generateText_httpErrorIsRecordedAsFailure() throws Exception {
+        Response<LlmResponse> unavailable = Response.error(503, ResponseBody.create("", null));
+        MetricsLlmService service = new MetricsLlmService(new FakeProvider(null, null, unavailable), "GEMINI", metrics);
+
+        assertEquals(503, service.generateText(new LlmRequest("hi")).execute().code());
+
+        LlmMetrics.Series series = metrics.series("GEMINI", "other");
+        assertEquals(1, series.failures());
+        assertEquals(Long.valueOf(1), series.errorClasses().get("HTTP 503"));
+    }
+
+    @Test
+    public void usageListenerSeesOnlyRepliesWithUsage() {
+        List<String> seen = new ArrayList<>();
+        metrics.setUsageListener((provider, response) -> seen.add(provider + ":" + response.getPromptTokens()));
+
+        new MetricsLlmService(new FakeProvider(reply("ok", 7, 1, "STOP"), null, null), "GEMINI", metrics)
+                .streamText(new LlmRequest("hi"), IGNORE);
+        new MetricsLlmService(new FakeProvider(reply("ok", 0, 0, null), null, null), "MOCK", metrics)
+                .streamText(new LlmRequest("hi"), IGNORE);
+
+        assertEquals(Collections.singletonList("GEMINI:7"), seen);
+    }
+
+    @Test
+    public void requestBytesCountUtf8PromptAndMedia() {
+        LlmRequest request = new LlmRequest("心情").addImage(new byte[100], "image/jpeg");
+
+        assertEquals(6 + 100, MetricsLlmService.requestBytes(request));
+    }
+
+    @Test
+    public void toJsonListsEverySeries() {
+        new MetricsLlmService(new FakeProvider(reply("ok", 1, 1, "STOP"), null, null), "MOCK", metrics)
+                .streamText(new LlmRequest("hi").setCallSite("chat"), IGNORE);
+
+        String json = metrics.toJson().toString();
+
+        assertTrue(json, json.contains("\"provider\":\"MOCK\""));
+        assertTrue(json, json.contains("\"callSite\":\"chat\""));
+        assertTrue(json, json.contains("\"p95\""));
+    }
+}
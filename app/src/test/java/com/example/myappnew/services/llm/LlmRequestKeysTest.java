@@ -0,0 +1,41 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LlmRequestKeysTest {
+
+    private static final String MODEL = "gemini-1.5-flash-latest";
+
+    @Test
+    public void keyFor_ignoresWhitespaceAndUnicodeComposition() {
+        String key = LlmRequestKeys.keyFor(MODEL, new LlmRequest("今天 心情é 不错"));
+        assertEquals(key, LlmRequestKeys.keyFor(MODEL, new LlmRequest("  今天\n\t心情e\u0301   不错 ")));
+    }
+
+    @Test
+    public void keyFor_dependsOnModelEconomyAndPrompt() {
+        String key = LlmRequestKeys.keyFor(MODEL, new LlmRequest("hello"));
+        assertNotEquals(key, LlmRequestKeys.keyFor("mock", new LlmRequest("hello")));
+        assertNotEquals(key, LlmRequestKeys.keyFor(MODEL, new LlmRequest("hello").setEconomy(true)));
+        assertNotEquals(key, LlmRequestKeys.keyFor(MODEL, new LlmRequest("hello!")));
+    }
+
+    @Test
+    public void keyFor_hashesMediaContentAndType() {
+        byte[] photo = {1, 2, 3, 4};
+        String key = LlmRequestKeys.keyFor(MODEL, new LlmRequest("describe").addImage(photo, "image/jpeg"));
+
+        assertEquals(key, LlmRequestKeys.keyFor(MODEL, new LlmRequest("describe").addImage(photo.clone(), "image/jpeg")));
+        assertNotEquals(key, LlmRequestKeys.keyFor(MODEL, new LlmRequest("describe").addImage(new byte[] {1, 2, 3, 5}, "image/jpeg")));
+        assertNotEquals(key, LlmRequestKeys.keyFor(MODEL, new LlmRequest("describe").addImage(photo, "image/webp")));
+        assertNotEquals(key, LlmRequestKeys.keyFor(MODEL, new LlmRequest("describe").addAudio(photo, "image/jpeg")));
+        assertNotEquals(key, LlmRequestKeys.keyFor(MODEL, new LlmRequest("describe")));
+    }
+
+    @Test
+    public void keyFor_keepsFieldBoundaries() {
+        assertNotEquals(LlmRequestKeys.keyFor("ab", new LlmRequest("c")), LlmRequestKeys.keyFor("a", new LlmRequest("bc")));
+    }
+}
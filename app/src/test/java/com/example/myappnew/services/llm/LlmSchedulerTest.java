@@ -0,0 +1,168 @@
+package com.example.myappnew.services.llm;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LlmSchedulerTest {
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> started = new ArrayList<>();
+    private final List<SettableFuture<String>> running = new ArrayList<>();
+
+    @After
+    public void shutDown() {
+        timer.shutdownNow();
+    }
+
+    private LlmScheduler scheduler(int maxConcurrent, int maxAttempts) {
+        return new LlmScheduler("test", new LlmScheduler.Config(maxConcurrent, 600, 100, maxAttempts, 1, 5), timer);
+    }
+
+    private ListenableFuture<String> submit(LlmScheduler scheduler, LlmRequest.Priority priority, String name) {
+        return scheduler.submit(priority, () -> {
+            synchronized (started) {
+                started.add(name);
+            }
+            SettableFuture<String> future = SettableFuture.create();
+            synchronized (running) {
+                running.add(future);
+            }
+            return future;
+        }, t -> t instanceof SocketTimeoutException);
+    }
+
+    @Test
+    public void capsConcurrency() {
+        LlmScheduler scheduler = scheduler(2, 1);
+        submit(scheduler, LlmRequest.Priority.BACKGROUND, "a");
+        submit(scheduler, LlmRequest.Priority.BACKGROUND, "b");
+        submit(scheduler, LlmRequest.Priority.BACKGROUND, "c");
+
+        assertEquals(2, started.size());
+        assertEquals(2, scheduler.getStats().running);
+        assertEquals(Integer.valueOf(1), scheduler.getStats().queueDepth.get(LlmRequest.Priority.BACKGROUND));
+
+        running.get(0).set("done");
+        assertEquals(3, started.size());
+    }
+
+    @Test
+    public void interactiveLaneGoesFirst() {
+        LlmScheduler scheduler = scheduler(1, 1);
+        submit(scheduler, LlmRequest.Priority.BATCH, "running");
+        submit(scheduler, LlmRequest.Priority.BATCH, "batch");
+        submit(scheduler, LlmRequest.Priority.BACKGROUND, "background");
+        submit(scheduler, LlmRequest.Priority.INTERACTIVE, "tap");
+
+        running.get(0).set("done");
+        running.get(1).set("done");
+        running.get(2).set("done");
+
+        assertEquals("running", started.get(0));
+        assertEquals("tap", started.get(1));
+        assertEquals("background", started.get(2));
+        assertEquals("batch", started.get(3));
+    }
+
+    @Test
+    public void retriesTransientFailureWithBackoff() throws Exception {
+        LlmScheduler scheduler = scheduler(1, 3);
+        ListenableFuture<String> result = submit(scheduler, LlmRequest.Priority.INTERACTIVE, "x");
+
+        running.get(0).setException(new SocketTimeoutException());
+        waitForStarts(2);
+        running.get(1).set("ok");
+
+        assertEquals("ok", result.get(1, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getStats().retries);
+    }
+
+    @Test
+    public void doesNotRetryPermanentFailure() throws Exception {
+        LlmScheduler scheduler = scheduler(1, 3);
+        ListenableFuture<String> result = submit(scheduler, LlmRequest.Priority.INTERACTIVE, "x");
+
+        running.get(0).setException(new IOException("blocked"));
+
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertEquals("blocked", e.getCause().getMessage());
+        }
+        assertEquals(1, started.size());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        LlmScheduler scheduler = scheduler(1, 2);
+        ListenableFuture<String> result = submit(scheduler, LlmRequest.Priority.INTERACTIVE, "x");
+
+        running.get(0).setException(new SocketTimeoutException());
+        waitForStarts(2);
+        running.get(1).setException(new SocketTimeoutException());
+
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    @Test
+    public void cancellingQueuedTaskRemovesItAndCancellingRunningTaskCancelsAttempt() {
+        LlmScheduler scheduler = scheduler(1, 1);
+        ListenableFuture<String> first = submit(scheduler, LlmRequest.Priority.INTERACTIVE, "first");
+        ListenableFuture<String> queued = submit(scheduler, LlmRequest.Priority.INTERACTIVE, "queued");
+
+        queued.cancel(false);
+        assertEquals(Integer.valueOf(0), scheduler.getStats().queueDepth.get(LlmRequest.Priority.INTERACTIVE));
+
+        first.cancel(false);
+        assertTrue(running.get(0).isCancelled());
+        assertEquals(1, started.size());
+        assertEquals(0, scheduler.getStats().running);
+    }
+
+    @Test
+    public void waitsForRateLimitPermit() throws Exception {
+        LlmScheduler scheduler = new LlmScheduler("test", new LlmScheduler.Config(4, 61, 1, 1, 1, 5), timer);
+        submit(scheduler, LlmRequest.Priority.INTERACTIVE, "a");
+        ListenableFuture<String> second = submit(scheduler, LlmRequest.Priority.INTERACTIVE, "b");
+
+        // Burst of one; the next permit refills after one second.
+        assertEquals(1, started.size());
+        assertEquals(1, scheduler.getStats().rateLimitedWaits);
+        waitForStarts(2);
+        running.get(1).set("ok");
+        assertEquals("ok", second.get(1, TimeUnit.SECONDS));
+    }
+
+    private void waitForStarts(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 3000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (started) {
+                if (started.size() >= count) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        fail("only " + started.size() + " attempts started");
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PendingLlmStreamTest {
+
+    private static final class FakeStream implements LlmStream {
+        boolean cancelled;
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return cancelled;
+        }
+    }
+
+    @Test
+    public void cancelReachesTheAttachedStream() {
+        PendingLlmStream handle = new PendingLlmStream();
+        FakeStream stream = new FakeStream();
+
+        assertTrue(handle.attach(stream));
+        handle.cancel();
+
+        assertTrue(handle.isCanceled());
+        assertTrue(stream.cancelled);
+    }
+
+    @Test
+    public void streamAttachedAfterCancelIsCancelledAtOnce() {
+        PendingLlmStream handle = new PendingLlmStream();
+        handle.cancel();
+        FakeStream late = new FakeStream();
+
+        assertFalse(handle.attach(late));
+        assertTrue(late.cancelled);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class PromptTemplateTest {
+
+    private static String repeat(String s, int times) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            out.append(s);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void estimator_countsCjkPerCharacterAndEnglishPerWordPiece() {
+        assertEquals(0, TokenEstimator.estimate(null));
+        assertEquals(4, TokenEstimator.estimate("今天很好"));
+        assertEquals(5, TokenEstimator.estimate("今天很好。"));
+        // 16 letters, spaces free -> 4 tokens
+        assertEquals(4, TokenEstimator.estimate("abcd efgh ijkl mnop"));
+        assertEquals(2, TokenEstimator.estimate("😀")); // emoji
+    }
+
+    @Test
+    public void estimator_prefixAndSuffixAgreeWithEstimate() {
+        String text = "今天去公园散步 with friends，心情很好😀";
+        for (int budget = 0; budget <= TokenEstimator.estimate(text); budget++) {
+            int end = TokenEstimator.prefixEnd(text, budget);
+            assertTrue(TokenEstimator.estimate(text.substring(0, end)) <= budget);
+            assertFalse("split surrogate", end > 0 && Character.isHighSurrogate(text.charAt(end - 1)));
+            int start = TokenEstimator.suffixStart(text, budget);
+            assertTrue(TokenEstimator.estimate(text.substring(start)) <= budget);
+        }
+        assertEquals(text.length(), TokenEstimator.prefixEnd(text, 1_000));
+        assertEquals(0, TokenEstimator.suffixStart(text, 1_000));
+    }
+
+    @Test
+    public void fill_rendersSlotsInPlaceAndLeavesUnsetSlotsEmpty() {
+        PromptTemplate template = PromptTemplate.builder("A {{x}} B {{ y }} C {{x}}")
+                .slot("x", 10, PromptTemplate.Truncation.HEAD)
+                .slot("y", 10, PromptTemplate.Truncation.HEAD)
+                .build();
+
+        assertEquals("A 1 B 2 C 1", template.fill().set("x", "1").set("y", "2").render());
+        assertEquals("A 1 B  C 1", template.fill().set("x", "1").render());
+    }
+
+    @Test
+    public void build_rejectsUndeclaredUnusedAndUnclosedSlots() {
+        assertThrows(() -> PromptTemplate.builder("{{a}}").build());
+        assertThrows(() -> PromptTemplate.builder("x").slot("a", 1, PromptTemplate.Truncation.HEAD).build());
+        assertThrows(() -> PromptTemplate.builder("{{a").slot("a", 1, PromptTemplate.Truncation.HEAD).build());
+        assertThrows(() -> PromptTemplate.builder("{{a}}").slot("a", 1, PromptTemplate.Truncation.HEAD).build()
+                .fill().set("b", "value"));
+    }
+
+    private static void assertThrows(Runnable action) {
+        try {
+            action.run();
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void head_cutsAtSentenceEndNearBudget() {
+        StringBuilder out = new StringBuilder();
+        String text = repeat("今天心情很好。", 10); // 7 tokens per sentence
+
+        PromptTemplate.appendTruncated(out, text, 24, PromptTemplate.Truncation.HEAD);
+
+        assertEquals(repeat("今天心情很好。", 3) + PromptTemplate.ELLIPSIS, out.toString());
+    }
+
+    @Test
+    public void tail_keepsTheEnd() {
+        StringBuilder out = new StringBuilder();
+        String text = "first sentence. " + repeat("word ", 100) + "last words here.";
+
+        PromptTemplate.appendTruncated(out, text, 12, PromptTemplate.Truncation.TAIL);
+
+        assertTrue(out.toString(), out.toString().startsWith(PromptTemplate.ELLIPSIS));
+        assertTrue(out.toString(), out.toString().endsWith("last words here."));
+        assertTrue(TokenEstimator.estimate(out) <= 12);
+    }
+
+    @Test
+    public void middle_keepsOpeningAndConclusion() {
+        StringBuilder out = new StringBuilder();
+        String text = "开头。" + repeat("中间的内容。", 500) + "结尾。";
+
+        PromptTemplate.appendTruncated(out, text, 60, PromptTemplate.Truncation.MIDDLE);
+
+        String result = out.toString();
+        assertTrue(result, result.startsWith("开头。"));
+        assertTrue(result, result.endsWith("结尾。"));
+        assertTrue(result, result.contains(PromptTemplate.ELLIPSIS));
+        assertTrue(TokenEstimator.estimate(result) <= 60);
+    }
+
+    @Test
+    public void renderedPromptNeverExceedsMaxTokens() {
+        String hugeEntry = repeat("今天发生了很多事情，我有点累但也很开心。Some English too. ", 2_000);
+        String hugeProfile = "{\"notes\":\"" + repeat("喜欢画画", 1_000) + "\"}";
+
+        String hugeHistory = repeat("2024-05-01：心情平稳，和朋友吃饭。\n", 200) + "2024-06-30：考试结束，很轻松。";
+
+        String prompt = Prompts.journalAnalysis(hugeEntry, true, true, true, hugeProfile, hugeHistory);
+
+        assertTrue(TokenEstimator.estimate(prompt) <= Prompts.JOURNAL_ANALYSIS.maxTokens());
+        assertTrue(prompt.contains("【照片】"));
+        // History keeps its newest lines.
+        assertTrue(prompt.contains("2024-06-30：考试结束，很轻松。\n"));
+        assertTrue(prompt.endsWith("请用温暖、鼓励的语言，输出分析和建议。"));
+        assertEquals(Collections.emptyList(),
+                Prompts.JOURNAL_ANALYSIS.fill().set("content", "短").set("profile", "{}").truncatedSlots());
+    }
+
+    @Test
+    public void shortValuesAreUnchanged() {
+        String prompt = Prompts.journalAnalysis("今天很好", false, false, false, null, "");
+
+        assertTrue(prompt, prompt.contains("【日记内容】：今天很好\n"));
+        assertTrue(prompt, prompt.contains("【用户画像】：无\n"));
+        assertTrue(prompt, prompt.contains("【近期回顾】：无\n"));
+        assertFalse(prompt, prompt.contains("【照片】"));
+    }
+}
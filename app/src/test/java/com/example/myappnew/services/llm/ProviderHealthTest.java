@@ -0,0 +1,102 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ProviderHealthTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final ProviderHealth health = new ProviderHealth("test", nanos::get);
+
+    private void advanceMs(long ms) {
+        nanos.addAndGet(ms * 1_000_000L);
+    }
+
+    @Test
+    public void percentilesNeedEnoughSamples() {
+        for (int i = 1; i < ProviderHealth.MIN_SAMPLES; i++) {
+            health.recordSuccess(i * 100);
+        }
+        assertEquals(-1, health.percentile(0.5));
+
+        for (int i = ProviderHealth.MIN_SAMPLES; i <= 20; i++) {
+            health.recordSuccess(i * 100);
+        }
+        assertEquals(1000, health.percentile(0.5));
+        assertEquals(1900, health.percentile(0.95));
+        assertEquals(2000, health.percentile(1.0));
+    }
+
+    @Test
+    public void oldSamplesLeaveTheWindow() {
+        for (int i = 0; i < 10; i++) {
+            health.recordSuccess(5000);
+        }
+        advanceMs(ProviderHealth.WINDOW_MS + 1);
+        for (int i = 0; i < 10; i++) {
+            health.recordSuccess(200);
+        }
+        assertEquals(200, health.percentile(0.95));
+    }
+
+    @Test
+    public void consecutiveFailuresOpenTheCircuitForTheCoolDown() {
+        health.recordSuccess(100);
+        for (int i = 0; i < ProviderHealth.FAILURE_THRESHOLD; i++) {
+            assertTrue(health.tryAcquire());
+            health.recordFailure(100);
+        }
+
+        assertEquals(ProviderHealth.State.OPEN, health.getState());
+        assertFalse(health.isAvailable());
+        assertFalse(health.tryAcquire());
+
+        advanceMs(ProviderHealth.COOL_DOWN_MS);
+        assertTrue(health.isAvailable());
+        assertTrue("one probe is let through", health.tryAcquire());
+        assertFalse("but only one", health.tryAcquire());
+    }
+
+    @Test
+    public void probeOutcomeClosesOrReopens() {
+        for (int i = 0; i < ProviderHealth.FAILURE_THRESHOLD; i++) {
+            health.recordFailure(100);
+        }
+        advanceMs(ProviderHealth.COOL_DOWN_MS);
+        assertTrue(health.tryAcquire());
+        health.recordFailure(100);
+        assertEquals(ProviderHealth.State.OPEN, health.getState());
+
+        advanceMs(ProviderHealth.COOL_DOWN_MS);
+        assertTrue(health.tryAcquire());
+        health.recordSuccess(100);
+        assertEquals(ProviderHealth.State.CLOSED, health.getState());
+        assertTrue(health.tryAcquire());
+        assertTrue(health.tryAcquire());
+    }
+
+    @Test
+    public void highErrorRateOpensWithoutAStreak() {
+        for (int i = 0; i < 4; i++) {
+            health.recordSuccess(100);
+            health.recordFailure(100);
+        }
+        health.recordFailure(100);
+
+        assertEquals(ProviderHealth.State.OPEN, health.getState());
+    }
+
+    @Test
+    public void releasedProbeCanBeRetried() {
+        for (int i = 0; i < ProviderHealth.FAILURE_THRESHOLD; i++) {
+            health.recordFailure(100);
+        }
+        advanceMs(ProviderHealth.COOL_DOWN_MS);
+        assertTrue(health.tryAcquire());
+        health.release();
+        assertTrue(health.tryAcquire());
+    }
+}
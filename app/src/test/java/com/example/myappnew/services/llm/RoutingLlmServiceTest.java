@@ -0,0 +1,337 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.mock.Calls;
+
+import static org.junit.Assert.*;
+
+public class RoutingLlmServiceTest {
+
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(2);
+
+    @After
+    public void shutDown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Streams {@code reply} as one chunk after {@code delayMs}, or fails with {@code error}. With
+     * {@code replyError} set it instead completes with that error and no text. Non-streamed calls
+     * answer {@code reply} at once.
+     */
+    private final class FakeProvider implements LlmService {
+        final String reply;
+        final long delayMs;
+        final Throwable error;
+        final AtomicInteger started = new AtomicInteger();
+        volatile String replyError;
+        volatile LlmRequest lastRequest;
+        volatile boolean cancelled;
+
+        FakeProvider(String reply, long delayMs, Throwable error) {
+            this.reply = reply;
+            this.delayMs = delayMs;
+            this.error = error;
+        }
+
+        @Override
+        public Call<LlmResponse> generateText(LlmRequest request) {
+            started.incrementAndGet();
+            lastRequest = request;
+            LlmResponse response = new LlmResponse();
+            response.setGeneratedText(reply);
+            return Calls.response(response);
+        }
+
+        @Override
+        public LlmStream streamText(LlmRequest request, StreamListener listener) {
+            started.incrementAndGet();
+            lastRequest = request;
+            ScheduledFuture<?> pending = timer.schedule(() -> {
+                if (error != null) {
+                    listener.onError(error);
+                } else if (replyError != null) {
+                    LlmResponse rejected = new LlmResponse();
+                    rejected.setError(replyError);
+                    listener.onComplete(rejected);
+                } else {
+                    listener.onChunk(reply);
+                    listener.onComplete(new LlmResponse());
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+            return new LlmStream() {
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                    pending.cancel(false);
+                }
+
+                @Override
+                public boolean isCanceled() {
+                    return cancelled;
+                }
+            };
+        }
+    }
+
+    private static final class Collector implements StreamListener {
+        final List<String> chunks = new ArrayList<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onChunk(String delta) {
+            chunks.add(delta);
+        }
+
+        @Override
+        public void onComplete(LlmResponse response) {
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error.set(t);
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("request did not finish", done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static ProviderHealth healthWithLatency(String name, long latencyMs) {
+        ProviderHealth health = new ProviderHealth(name);
+        for (int i = 0; i < ProviderHealth.MIN_SAMPLES; i++) {
+            health.recordSuccess(latencyMs);
+        }
+        return health;
+    }
+
+    private Collector stream(RoutingLlmService router, LlmRequest request) throws InterruptedException {
+        Collector collector = new Collector();
+        router.streamText(request, collector);
+        collector.await();
+        return collector;
+    }
+
+    @Test
+    public void prefersTheFastestMeasuredProvider() throws Exception {
+        FakeProvider slow = new FakeProvider("slow", 10, null);
+        FakeProvider fast = new FakeProvider("fast", 10, null);
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("slow", slow, healthWithLatency("slow", 2000), true),
+                new RoutingLlmService.Route("fast", fast, healthWithLatency("fast", 100), true)), timer);
+
+        Collector collector = stream(router, new LlmRequest("hi").setPriority(LlmRequest.Priority.BACKGROUND));
+
+        assertEquals(Arrays.asList("fast"), collector.chunks);
+        assertEquals(0, slow.started.get());
+    }
+
+    @Test
+    public void hedgesAnInteractiveRequestPastP95AndCancelsTheLoser() throws Exception {
+        FakeProvider stuck = new FakeProvider("late", 5000, null);
+        FakeProvider backup = new FakeProvider("backup", 20, null);
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("stuck", stuck, healthWithLatency("stuck", RoutingLlmService.MIN_HEDGE_DELAY_MS), true),
+                new RoutingLlmService.Route("backup", backup, new ProviderHealth("backup"), true)), timer);
+
+        Collector collector = stream(router, new LlmRequest("hi"));
+
+        assertNull(collector.error.get());
+        assertEquals(Arrays.asList("backup"), collector.chunks);
+        assertTrue("loser is cancelled", stuck.cancelled);
+        assertEquals(1, router.getStats().hedged);
+        assertEquals(1, router.getStats().hedgeWins);
+    }
+
+    @Test
+    public void backgroundRequestsAreNotHedged() throws Exception {
+        FakeProvider primary = new FakeProvider("primary", 600, null);
+        FakeProvider backup = new FakeProvider("backup", 20, null);
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("primary", primary, healthWithLatency("primary", RoutingLlmService.MIN_HEDGE_DELAY_MS), true),
+                new RoutingLlmService.Route("backup", backup, new ProviderHealth("backup"), true)), timer);
+
+        Collector collector = stream(router, new LlmRequest("hi").setPriority(LlmRequest.Priority.BACKGROUND));
+
+        assertEquals(Arrays.asList("primary"), collector.chunks);
+        assertEquals(0, backup.started.get());
+        assertEquals(0, router.getStats().hedged);
+    }
+
+    @Test
+    public void failsOverOnAProviderFault() throws Exception {
+        FakeProvider broken = new FakeProvider(null, 5, new IOException("HTTP 503"));
+        FakeProvider backup = new FakeProvider("backup", 5, null);
+        ProviderHealth brokenHealth = new ProviderHealth("broken");
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("broken", broken, brokenHealth, true),
+                new RoutingLlmService.Route("backup", backup, new ProviderHealth("backup"), true)), timer);
+
+        Collector collector = stream(router, new LlmRequest("hi"));
+
+        assertEquals(Arrays.asList("backup"), collector.chunks);
+        assertEquals(1, router.getStats().failovers);
+        assertEquals(1.0, brokenHealth.errorRate(), 0.0);
+        assertFalse("a leg with a backup is not retried", broken.lastRequest.allowsRetries());
+        assertTrue("the last provider keeps its retries", backup.lastRequest.allowsRetries());
+    }
+
+    @Test
+    public void rejectedReplyIsNotALatencySample() throws Exception {
+        FakeProvider rejecting = new FakeProvider(null, 5, null);
+        rejecting.replyError = "HTTP 400";
+        ProviderHealth rejectingHealth = new ProviderHealth("rejecting");
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("rejecting", rejecting, rejectingHealth, true)), timer);
+
+        stream(router, new LlmRequest("hi").setPriority(LlmRequest.Priority.BACKGROUND));
+
+        assertEquals(0, rejectingHealth.snapshot().samples);
+        assertEquals(0.0, rejectingHealth.errorRate(), 0.0);
+    }
+
+    @Test
+    public void clientErrorsAreReportedNotFailedOver() throws Exception {
+        FakeProvider blocking = new FakeProvider(null, 5, new IOException("Prompt was blocked"));
+        FakeProvider backup = new FakeProvider("backup", 5, null);
+        ProviderHealth blockingHealth = new ProviderHealth("blocking");
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("blocking", blocking, blockingHealth, true),
+                new RoutingLlmService.Route("backup", backup, new ProviderHealth("backup"), true)), timer);
+
+        Collector collector = stream(router, new LlmRequest("hi").setPriority(LlmRequest.Priority.BACKGROUND));
+
+        assertEquals("Prompt was blocked", collector.error.get().getMessage());
+        assertEquals(0, backup.started.get());
+        assertEquals("a blocked prompt is not a provider fault", 0.0, blockingHealth.errorRate(), 0.0);
+    }
+
+    @Test
+    public void openCircuitTakesAProviderOutOfRotation() throws Exception {
+        FakeProvider tripped = new FakeProvider("tripped", 5, null);
+        FakeProvider backup = new FakeProvider("backup", 5, null);
+        ProviderHealth trippedHealth = new ProviderHealth("tripped");
+        for (int i = 0; i < ProviderHealth.FAILURE_THRESHOLD; i++) {
+            trippedHealth.recordFailure(100);
+        }
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("tripped", tripped, trippedHealth, true),
+                new RoutingLlmService.Route("backup", backup, new ProviderHealth("backup"), true)), timer);
+
+        Collector collector = stream(router, new LlmRequest("hi"));
+
+        assertEquals(Arrays.asList("backup"), collector.chunks);
+        assertEquals(0, tripped.started.get());
+    }
+
+    @Test
+    public void mediaRequestsSkipTextOnlyProviders() throws Exception {
+        FakeProvider textOnly = new FakeProvider("text", 5, null);
+        FakeProvider multimodal = new FakeProvider("vision", 5, null);
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("textOnly", textOnly, new ProviderHealth("textOnly"), false),
+                new RoutingLlmService.Route("multimodal", multimodal, new ProviderHealth("multimodal"), true)), timer);
+
+        Collector collector = stream(router, new LlmRequest("describe").addImage(new byte[] {1}, "image/jpeg"));
+
+        assertEquals(Arrays.asList("vision"), collector.chunks);
+        assertEquals(0, textOnly.started.get());
+    }
+
+    @Test
+    public void cancelStopsEveryLeg() throws Exception {
+        FakeProvider slow = new FakeProvider("slow", 5000, null);
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("slow", slow, new ProviderHealth("slow"), true)), timer);
+        Collector collector = new Collector();
+
+        LlmStream stream = router.streamText(new LlmRequest("hi"), collector);
+        stream.cancel();
+
+        assertTrue(stream.isCanceled());
+        assertTrue(slow.cancelled);
+        assertFalse(collector.done.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    /** Records what a call reported to its callback. */
+    private static final class CallCollector implements Callback<LlmResponse> {
+        final AtomicReference<Response<LlmResponse>> response = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        @Override
+        public void onResponse(Call<LlmResponse> call, Response<LlmResponse> r) {
+            response.set(r);
+        }
+
+        @Override
+        public void onFailure(Call<LlmResponse> call, Throwable t) {
+            error.set(t);
+        }
+    }
+
+    @Test
+    public void callCancelledBeforeEnqueueFailsWithoutReachingAProvider() {
+        FakeProvider provider = new FakeProvider("reply", 0, null);
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("provider", provider, new ProviderHealth("provider"), true)), timer);
+        Call<LlmResponse> call = router.generateText(new LlmRequest("hi"));
+        CallCollector collector = new CallCollector();
+
+        call.cancel();
+        call.enqueue(collector);
+
+        assertTrue(call.isCanceled());
+        assertTrue(call.isExecuted());
+        assertNull(collector.response.get());
+        assertEquals("Canceled", collector.error.get().getMessage());
+        assertEquals(0, provider.started.get());
+    }
+
+    @Test
+    public void callRunsAtMostOnce() throws Exception {
+        FakeProvider provider = new FakeProvider("reply", 0, null);
+        RoutingLlmService router = new RoutingLlmService(Arrays.asList(
+                new RoutingLlmService.Route("provider", provider, new ProviderHealth("provider"), true)), timer);
+        Call<LlmResponse> call = router.generateText(new LlmRequest("hi"));
+        CallCollector collector = new CallCollector();
+
+        call.enqueue(collector);
+
+        assertEquals("reply", collector.response.get().body().getGeneratedText());
+        try {
+            call.enqueue(new CallCollector());
+            fail("second enqueue should throw");
+        } catch (IllegalStateException expected) {
+            assertEquals("Already executed", expected.getMessage());
+        }
+        try {
+            call.execute();
+            fail("execute after enqueue should throw");
+        } catch (IllegalStateException expected) {
+            assertEquals("Already executed", expected.getMessage());
+        }
+        assertEquals(1, provider.started.get());
+        assertEquals("reply", call.clone().execute().body().getGeneratedText());
+        assertEquals(2, provider.started.get());
+    }
+}
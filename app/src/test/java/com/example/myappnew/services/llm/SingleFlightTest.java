@@ -0,0 +1,105 @@
+package com.example.myappnew.services.llm;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final AtomicInteger starts = new AtomicInteger();
+    private SettableFuture<String> upstream;
+
+    private ListenableFuture<String> call(String key) {
+        return flights.execute(key, () -> {
+            starts.incrementAndGet();
+            upstream = SettableFuture.create();
+            return upstream;
+        });
+    }
+
+    @Test
+    public void concurrentCallersShareOneOperation() throws Exception {
+        ListenableFuture<String> first = call("k");
+        ListenableFuture<String> second = call("k");
+
+        assertEquals(1, starts.get());
+        assertEquals(1, flights.joinedCount());
+        upstream.set("reply");
+        assertEquals("reply", first.get());
+        assertEquals("reply", second.get());
+    }
+
+    @Test
+    public void differentKeysRunSeparately() {
+        call("a");
+        call("b");
+
+        assertEquals(2, starts.get());
+        assertEquals(2, flights.inFlightCount());
+    }
+
+    @Test
+    public void cancellingOneCallerKeepsSharedOperationForOthers() throws Exception {
+        ListenableFuture<String> first = call("k");
+        ListenableFuture<String> second = call("k");
+        SettableFuture<String> shared = upstream;
+
+        first.cancel(true);
+
+        assertTrue(first.isCancelled());
+        assertFalse(shared.isCancelled());
+        shared.set("reply");
+        assertEquals("reply", second.get());
+    }
+
+    @Test
+    public void cancellingEveryCallerCancelsSharedOperationAndReleasesKey() {
+        ListenableFuture<String> first = call("k");
+        ListenableFuture<String> second = call("k");
+        SettableFuture<String> shared = upstream;
+
+        first.cancel(false);
+        second.cancel(false);
+
+        assertTrue(shared.isCancelled());
+        assertEquals(0, flights.inFlightCount());
+        call("k");
+        assertEquals(2, starts.get());
+    }
+
+    @Test
+    public void completionReleasesKeySoNextCallStartsAgain() throws Exception {
+        call("k");
+        upstream.set("first");
+        assertEquals(0, flights.inFlightCount());
+
+        ListenableFuture<String> next = call("k");
+
+        assertEquals(2, starts.get());
+        assertFalse(next.isDone());
+    }
+
+    @Test
+    public void failureReachesEveryCaller() throws Exception {
+        ListenableFuture<String> first = call("k");
+        ListenableFuture<String> second = call("k");
+        upstream.setException(new IllegalStateException("quota"));
+
+        for (ListenableFuture<String> future : Arrays.asList(first, second)) {
+            try {
+                future.get();
+                fail("expected failure");
+            } catch (ExecutionException e) {
+                assertEquals("quota", e.getCause().getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.myappnew.services.llm;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    private long now;
+    private final TokenBucket bucket = TokenBucket.forQuota(15, 4, () -> now);
+
+    @Test
+    public void burstIsAvailableImmediately() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void refillsAtQuotaMinusBurst() {
+        for (int i = 0; i < 4; i++) {
+            bucket.tryAcquire();
+        }
+        // 11 permits per minute after the burst: one every ~5.45 s.
+        long wait = bucket.nanosUntilAvailable();
+        assertTrue(wait > TimeUnit.SECONDS.toNanos(5) && wait < TimeUnit.SECONDS.toNanos(6));
+
+        now += wait;
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void neverExceedsQuotaInAnyMinute() {
+        int granted = 0;
+        for (long t = 0; t < TimeUnit.SECONDS.toNanos(60); t += TimeUnit.MILLISECONDS.toNanos(100)) {
+            now = t;
+            while (bucket.tryAcquire()) {
+                granted++;
+            }
+        }
+        assertTrue("granted " + granted, granted <= 15);
+        assertTrue("granted " + granted, granted >= 14);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.myappnew.services.media;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteBudgetCompressorTest {
+
+    private static final int BUDGET = 200 * 1024;
+    private static final String KEY = ByteBudgetCompressor.similarityKey(4000, 3000, "image/jpeg");
+
+    /** Size grows with pixel count and quality; WebP comes out 30% smaller at equal quality. */
+    private static final class FakeEncoder implements ByteBudgetCompressor.Encoder {
+        int calls;
+        ByteBudgetCompressor.Params last;
+
+        @Override
+        public int encode(ByteBudgetCompressor.Params params) {
+            calls++;
+            last = params;
+            double bytesPerPixel = 0.02 + 0.3 * params.quality / 100.0;
+            if (params.format == ByteBudgetCompressor.Format.WEBP) {
+                bytesPerPixel *= 0.7;
+            }
+            return (int) ((long) params.maxDimension * params.maxDimension * bytesPerPixel);
+        }
+    }
+
+    @Test
+    public void compress_landsInsideBudgetBand() throws Exception {
+        FakeEncoder encoder = new FakeEncoder();
+        ByteBudgetCompressor.Result result = new ByteBudgetCompressor(1024).compress(KEY, 4000, BUDGET, encoder);
+
+        assertTrue(result.withinBudget);
+        assertTrue(result.size <= BUDGET);
+        assertTrue(result.size >= BUDGET * ByteBudgetCompressor.ACCEPT_FRACTION);
+        assertEquals(encoder.calls, result.passes);
+        // The encoder's output buffer must hold the chosen encoding.
+        assertEquals(result.params, encoder.last);
+    }
+
+    @Test
+    public void compress_prefersWebpWhenItFitsAtHigherQuality() throws Exception {
+        ByteBudgetCompressor.Result result = new ByteBudgetCompressor(1024).compress(KEY, 4000, BUDGET, new FakeEncoder());
+
+        assertEquals(ByteBudgetCompressor.Format.WEBP, result.params.format);
+    }
+
+    @Test
+    public void compress_similarImageReusesParametersInOnePass() throws Exception {
+        ByteBudgetCompressor compressor = new ByteBudgetCompressor(1024);
+        ByteBudgetCompressor.Result first = compressor.compress(KEY, 4000, BUDGET, new FakeEncoder());
+
+        FakeEncoder encoder = new FakeEncoder();
+        ByteBudgetCompressor.Result second = compressor.compress(
+                ByteBudgetCompressor.similarityKey(4032, 3024, "image/jpeg"), 4032, BUDGET, encoder);
+
+        assertEquals(first.params, second.params);
+        assertEquals(1, encoder.calls);
+    }
+
+    @Test
+    public void compress_shrinksDimensionWhenQualityIsNotEnough() throws Exception {
+        ByteBudgetCompressor.Result result = new ByteBudgetCompressor(1024).compress(KEY, 4000, 20 * 1024, new FakeEncoder());
+
+        assertTrue(result.withinBudget);
+        assertTrue(result.params.maxDimension < 1024);
+        assertTrue(result.passes <= ByteBudgetCompressor.MAX_PASSES + 1);
+    }
+
+    @Test
+    public void compress_unreachableBudgetReturnsSmallestAttempt() throws Exception {
+        FakeEncoder encoder = new FakeEncoder();
+        ByteBudgetCompressor.Result result = new ByteBudgetCompressor(1024).compress(KEY, 4000, 100, encoder);
+
+        assertFalse(result.withinBudget);
+        assertEquals(ByteBudgetCompressor.MIN_QUALITY, result.params.quality);
+        assertEquals(result.params, encoder.last);
+    }
+
+    @Test
+    public void compress_neverUpscalesSmallSources() throws Exception {
+        ByteBudgetCompressor.Result result = new ByteBudgetCompressor(1024).compress(
+                ByteBudgetCompressor.similarityKey(500, 400, "image/png"), 500, BUDGET, new FakeEncoder());
+
+        assertTrue(result.params.maxDimension <= 500);
+        assertTrue(result.withinBudget);
+    }
+}